@@ -134,6 +134,24 @@ public interface Database extends Iterable<Table>, Closeable, Flushable
   public static final String ENABLE_EXPRESSION_EVALUATION_PROPERTY =
     "com.healthmarketscience.jackcess.enableExpressionEvaluation";
 
+  /** system property which can be used to set the default total number of
+   * index pages which may be cached by all the indexes of a database (see
+   * {@link #setIndexPageCacheSize}).  Defaults to {@code 0} (a fixed number
+   * of pages per index).
+   * @usage _intermediate_field_
+   */
+  public static final String INDEX_PAGE_CACHE_SIZE_PROPERTY =
+    "com.healthmarketscience.jackcess.indexPageCacheSize";
+
+  /** system property which can be used to set the fill factor (as a
+   * percentage of the available space) of the index pages written when an
+   * index is built for an existing table (e.g. via {@link
+   * IndexBuilder#addToTable}).  Defaults to {@code 90}.
+   * @usage _advanced_field_
+   */
+  public static final String INDEX_FILL_FACTOR_PROPERTY =
+    "com.healthmarketscience.jackcess.indexFillFactor";
+
   /** system property which can be used to set the default date/Time type.
    * Value should be one of {@link DateTimeType} enum values.
    * @usage _general_field_
@@ -182,6 +200,19 @@ public interface Database extends Iterable<Table>, Closeable, Flushable
     }
   }
 
+  /**
+   * A unit of work which is executed by {@link Database#batch}.
+   * @param <T> the type of the result of the work
+   * @usage _intermediate_class_
+   */
+  public interface UnitOfWork<T>
+  {
+    /**
+     * Performs the work, returning an optional result.
+     */
+    public T execute() throws IOException;
+  }
+
   /**
    * Returns the File underlying this Database
    */
@@ -343,17 +374,56 @@ public interface Database extends Iterable<Table>, Closeable, Flushable
   /**
    * Flushes any current changes to the database file (and any linked
    * databases) to disk.
+   * @throws IllegalStateException if a bulk load session is active for any
+   *         table (see {@link Table#beginBulkLoad})
    * @usage _general_method_
    */
   @Override
   public void flush() throws IOException;
 
+  /**
+   * Durability barrier: ensures that all the changes made so far are
+   * flushed to disk.  Unlike {@link #flush}, the file is only synced if
+   * there are changes which have not yet been synced (e.g. changes left
+   * pending by "group commit", see {@link DatabaseBuilder#setGroupCommit}).
+   * Note, unlike {@link #flush}, linked databases are not synced.
+   * @usage _intermediate_method_
+   */
+  public void sync() throws IOException;
+
+  /**
+   * Executes the given unit of work as a single logical write operation.
+   * Within the unit of work (including any nested units of work), the
+   * bookkeeping stored in the table definitions (row counts, next
+   * auto-numbers and index entry counts) is accumulated in memory instead of
+   * being written after every row modification, and is written once when the
+   * outermost unit of work completes (whether or not it completes
+   * successfully).  The row data and index pages are still written as each
+   * row modification completes.  If the database is configured for
+   * "auto-sync", the file is synced once the outermost unit of work
+   * completes.
+   * <p>
+   * Note, other programs reading the database file may see out-of-date row
+   * counts until the outermost unit of work completes.  Also, index pages
+   * which are only read (not modified) during the unit of work are not
+   * purged from the index page caches until the next row modification, so
+   * a unit of work which does many index lookups and few modifications may
+   * temporarily exceed the configured index page cache size.
+   *
+   * @param work the unit of work to execute
+   * @return the result of the unit of work
+   * @usage _intermediate_method_
+   */
+  public <T> T batch(UnitOfWork<T> work) throws IOException;
+
   /**
    * Close the database file (and any linked databases).  A Database
    * <b>must</b> be closed after use or changes could be lost and the Database
    * file corrupted.  A Database instance should be treated like any other
    * external resource which would be closed in a finally block (e.g. an
-   * OutputStream or jdbc Connection).
+   * OutputStream or jdbc Connection).  Any active bulk load sessions are
+   * ended (see {@link Table#endBulkLoad()}) before the file is closed, and
+   * the file is closed even if ending a session fails.
    * @usage _general_method_
    */
   @Override
@@ -509,6 +579,26 @@ public interface Database extends Iterable<Table>, Closeable, Flushable
    */
   public void setEvaluateExpressions(Boolean evaluateExpressions);
 
+  /**
+   * Gets the current index page cache size, the total number of index pages
+   * which may be cached by all the open indexes of this database.  The
+   * budget is shared evenly among the currently loaded indexes (with a small
+   * minimum per index).  Within each index, interior pages are retained in
+   * preference to leaf pages, and frequently used pages are retained in
+   * preference to pages which were only used once.  A value of {@code 0}
+   * (the default) caches a fixed number of pages for each index.
+   * @usage _intermediate_method_
+   */
+  public int getIndexPageCacheSize();
+
+  /**
+   * Sets the new index page cache size for this database (see {@link
+   * #getIndexPageCacheSize}).  If {@code null}, resets to the default value.
+   * @throws IllegalArgumentException if the given size is negative
+   * @usage _intermediate_method_
+   */
+  public void setIndexPageCacheSize(Integer newSize);
+
   /**
    * Gets currently configured ColumnValidatorFactory (always non-{@code null}).
    * @usage _intermediate_method_
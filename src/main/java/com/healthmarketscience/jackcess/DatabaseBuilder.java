@@ -60,6 +60,11 @@ public class DatabaseBuilder
   private boolean _readOnly;
   /** whether or not to auto-sync writes to the filesystem */
   private boolean _autoSync = Database.DEFAULT_AUTO_SYNC;
+  /** max time auto-synced writes may be left unsynced (group commit) */
+  private long _groupCommitMaxDelayMillis;
+  /** max number of auto-synced writes which may be left unsynced (group
+      commit) */
+  private int _groupCommitMaxWrites = 1;
   /** optional charset for mdbs with unspecified charsets */
   private Charset _charset;
   /** optional timezone override for interpreting dates */
@@ -138,6 +143,33 @@ public class DatabaseBuilder
     return this;
   }
 
+  /**
+   * Enables "group commit" for auto-syncing (only applicable if auto-sync is
+   * enabled).  Instead of flushing every write operation to disk upon
+   * completion, writes are flushed once the given number of write operations
+   * have completed or once the first unflushed write completed at least the
+   * given time ago (whichever comes first).  This trades a small window of
+   * potentially lost writes for far fewer disk syncs.  Note, the window is
+   * only checked when a write operation completes, pending writes may be
+   * flushed at any time using {@link Database#sync}.
+   *
+   * @param maxDelayMillis age after which unflushed writes are flushed when
+   *                       the next write completes (not on a timer), 0 for
+   *                       no time limit
+   * @param maxWrites max number of completed writes which may be left
+   *                  unflushed, 1 flushes every write (the default)
+   * @usage _advanced_method_
+   */
+  public DatabaseBuilder setGroupCommit(long maxDelayMillis, int maxWrites) {
+    if((maxDelayMillis < 0L) || (maxWrites < 1)) {
+      throw new IllegalArgumentException(
+          "Invalid group commit window " + maxDelayMillis + "ms/" + maxWrites);
+    }
+    _groupCommitMaxDelayMillis = maxDelayMillis;
+    _groupCommitMaxWrites = maxWrites;
+    return this;
+  }
+
   /**
    * Sets the Charset to use, if {@code null}, uses default.
    * @usage _intermediate_method_
@@ -264,16 +296,20 @@ public class DatabaseBuilder
    * Opens an existingnew Database using the configured information.
    */
   public Database open() throws IOException {
-    return DatabaseImpl.open(_mdbFile, _readOnly, _channel, _autoSync, _charset,
-                             _timeZone, _codecProvider);
+    DatabaseImpl db = DatabaseImpl.open(_mdbFile, _readOnly, _channel,
+                                        _autoSync, _charset, _timeZone,
+                                        _codecProvider);
+    db.setGroupCommit(_groupCommitMaxDelayMillis, _groupCommitMaxWrites);
+    return db;
   }
 
   /**
    * Creates a new Database using the configured information.
    */
   public Database create() throws IOException {
-    Database db = DatabaseImpl.create(_fileFormat, _mdbFile, _channel, _autoSync,
-                                      _charset, _timeZone);
+    DatabaseImpl db = DatabaseImpl.create(_fileFormat, _mdbFile, _channel,
+                                          _autoSync, _charset, _timeZone);
+    db.setGroupCommit(_groupCommitMaxDelayMillis, _groupCommitMaxWrites);
     if(_dbProps != null) {
       PropertyMap props = db.getDatabaseProperties();
       props.putAll(_dbProps.values());
@@ -17,6 +17,7 @@ limitations under the License.
 package com.healthmarketscience.jackcess;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -84,6 +85,74 @@ public interface Index
    */
   public CursorBuilder newCursor();
 
+  /**
+   * Returns an Iterable over the RowIds of the rows whose index entries fall
+   * within the given range, in index order.  The bounds are given as index
+   * column values (in the order of the index columns) and may contain only a
+   * prefix of the index columns, in which case all entries matching that
+   * prefix are considered equal to the bound.  Only the index pages are
+   * read, so this is a cheap way to count rows in a range or to find the
+   * matching rows without loading them.  If the matching rows are needed
+   * (but not in index order), {@link Table#getRows} can be used to fetch
+   * them in data page order.
+   *
+   * @param lower the lower bound index column values, or {@code null} for
+   *              no lower bound
+   * @param lowerInclusive whether or not the lower bound is inclusive
+   * @param upper the upper bound index column values, or {@code null} for
+   *              no upper bound
+   * @param upperInclusive whether or not the upper bound is inclusive
+   * @throws RuntimeIOException if an IOException is thrown while reading
+   *         the index
+   * @usage _intermediate_method_
+   */
+  public Iterable<RowId> range(Object[] lower, boolean lowerInclusive,
+                               Object[] upper, boolean upperInclusive);
+
+  /**
+   * Returns an Iterable over the index column values of the index entries
+   * within the given range (see {@link #range}), in index order.  The values
+   * are decoded directly from the index entries, so queries which only need
+   * the indexed columns can be answered without reading any table data.
+   * Only the values of numeric, date/time and boolean columns can be
+   * decoded (text index entries are not reversible), so the returned arrays
+   * contain the values for the leading index columns which have decodable
+   * types.  Note that the same value array may appear multiple times in a
+   * row for a non-unique index.
+   *
+   * @throws UnsupportedOperationException if the first column of this index
+   *         is not decodable
+   * @throws RuntimeIOException if an IOException is thrown while reading
+   *         the index
+   * @usage _intermediate_method_
+   */
+  public Iterable<Object[]> rangeValues(Object[] lower, boolean lowerInclusive,
+                                        Object[] upper, boolean upperInclusive);
+
+  /**
+   * Finds the RowIds of the rows matching each of the given keys.  Each key
+   * is a list of index column values (in the order of the index columns),
+   * possibly only a prefix of the index columns.  This is much more
+   * efficient than looking up each key individually (e.g. using {@link
+   * IndexCursor#findFirstRowByEntry}) when there are many keys, as the keys
+   * are matched in a single pass through the index.  Only the index pages
+   * are read, the rows for all the keys can be fetched in data page order
+   * using {@link Table#getRows}.
+   *
+   * @return a list of the matching RowIds (in index order) for each key, in
+   *         the iteration order of the given keys
+   * @usage _intermediate_method_
+   */
+  public List<List<RowId>> lookupAll(Collection<? extends Object[]> keys)
+    throws IOException;
+
+  /**
+   * Returns a new PreparedLookup for performing many individual key lookups
+   * against this index as cheaply as possible.
+   * @usage _intermediate_method_
+   */
+  public PreparedLookup prepareLookup();
+
   /**
    * Information about a Column in an Index
    */
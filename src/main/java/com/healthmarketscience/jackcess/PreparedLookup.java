@@ -0,0 +1,100 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Reusable, single key lookup against an {@link Index}, obtained from {@link
+ * Index#prepareLookup}.  The index columns are resolved once and the buffers
+ * used to encode each key (and to search the index) are re-used across
+ * lookups, making this much cheaper than {@link
+ * IndexCursor#findFirstRowByEntry} for performing many individual lookups
+ * (e.g. fetching rows by primary key).  The int/long methods encode the key
+ * directly for indexes on a single integral column, without creating any
+ * intermediate objects.
+ * <p>
+ * Each lookup must specify a value for every column of the index, and
+ * matches the index entries using the index's notion of equality (e.g. text
+ * values are compared case-insensitively, see {@link Index#isUnique}).  If
+ * multiple rows match a key, the first one in index order is found.
+ * <p>
+ * Lookups always reflect the current state of the index.  Instances are
+ * <i>not</i> thread-safe.
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public interface PreparedLookup
+{
+  public Index getIndex();
+
+  /**
+   * Restricts the columns returned by the {@code findRow} methods to the
+   * given column names ({@code null} for all columns).
+   * @usage _general_method_
+   */
+  public PreparedLookup setColumnNames(Collection<String> columnNames);
+
+  /**
+   * @return the RowId of the first row matching the given index column
+   *         values (in the order of the index columns), {@code null} if no
+   *         row matches
+   * @throws IllegalArgumentException if a value is not given for each of
+   *         the index columns
+   * @usage _general_method_
+   */
+  public RowId findRowId(Object... entryValues) throws IOException;
+
+  /**
+   * @return the RowId of the first row matching the given key value (for an
+   *         index with a single column), {@code null} if no row matches
+   * @usage _general_method_
+   */
+  public RowId findRowId(int key) throws IOException;
+
+  /**
+   * @return the RowId of the first row matching the given key value (for an
+   *         index with a single column), {@code null} if no row matches
+   * @usage _general_method_
+   */
+  public RowId findRowId(long key) throws IOException;
+
+  /**
+   * @return the first row matching the given index column values (in the
+   *         order of the index columns), {@code null} if no row matches
+   * @throws IllegalArgumentException if a value is not given for each of
+   *         the index columns
+   * @usage _general_method_
+   */
+  public Row findRow(Object... entryValues) throws IOException;
+
+  /**
+   * @return the first row matching the given key value (for an index with a
+   *         single column), {@code null} if no row matches
+   * @usage _general_method_
+   */
+  public Row findRow(int key) throws IOException;
+
+  /**
+   * @return the first row matching the given key value (for an index with a
+   *         single column), {@code null} if no row matches
+   * @usage _general_method_
+   */
+  public Row findRow(long key) throws IOException;
+}
@@ -17,6 +17,7 @@ limitations under the License.
 package com.healthmarketscience.jackcess;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,24 @@ public interface Table extends Iterable<Row>
     DISPLAY;
   }
 
+  /**
+   * enum which controls where new rows are written in a table.
+   * @usage _intermediate_class_
+   */
+  public enum RowPlacement {
+    /** new rows are only written to the last data page of the table (or a
+        new data page) */
+    APPEND,
+    /** new rows which do not fit on the last data page are written to the
+        first data page (in page order, starting from the last page chosen)
+        with enough space, reclaiming the space of deleted rows */
+    FIRST_FIT,
+    /** new rows which do not fit on the last data page are written to the
+        data page with the least (but enough) space among nearby pages,
+        reclaiming the space of deleted rows */
+    BEST_FIT;
+  }
+
   /**
    * @return The name of the table
    * @usage _general_method_
@@ -112,6 +131,22 @@ public interface Table extends Iterable<Row>
    */
   public void setAllowAutoNumberInsert(Boolean allowAutoNumInsert);
 
+  /**
+   * Gets the current policy for where new rows are written in this table.
+   * Defaults to {@link RowPlacement#APPEND}.
+   * @usage _intermediate_method_
+   */
+  public RowPlacement getRowPlacement();
+
+  /**
+   * Sets the policy for where new rows are written in this table.  If
+   * {@code null}, resets to {@link RowPlacement#APPEND}.  Note, the other
+   * policies need to read all the data pages of the table the first time
+   * they are used.
+   * @usage _intermediate_method_
+   */
+  public void setRowPlacement(RowPlacement rowPlacement);
+
   /**
    * @return All of the columns in this table (unmodifiable List)
    * @usage _general_method_
@@ -257,6 +292,71 @@ public interface Table extends Iterable<Row>
   public <M extends Map<String,Object>> List<M> addRowsFromMaps(List<M> rows) 
     throws IOException;
 
+  /**
+   * Starts a bulk load session for this table.  While a bulk load session is
+   * active, rows added to this table (via {@link #addRow} or {@link
+   * #addRows}) are only written to the data pages, and the corresponding
+   * index entries are buffered (spilling to temp files if necessary).  When
+   * the session is ended (via {@link #endBulkLoad}), the buffered entries
+   * are sorted and merged into each index in key order, which is much faster
+   * than updating the indexes for each added row.
+   * <p>
+   * Note, the indexes of this table do <i>not</i> include the rows added
+   * during the session until the session is ended, so index based lookups
+   * will not find the new rows.  Uniqueness constraints are not enforced
+   * until the session is ended, and rows may not be updated or deleted while
+   * the session is active.
+   * <p>
+   * A session must be ended before the Database is closed.  Closing the
+   * Database ends any active sessions (as if by {@link #endBulkLoad()}), and
+   * {@link Database#flush} is not allowed while a session is active.
+   *
+   * @throws IllegalStateException if a bulk load session is already active
+   * @usage _intermediate_method_
+   */
+  public void beginBulkLoad();
+
+  /**
+   * Ends the current bulk load session, equivalent to {@code
+   * endBulkLoad(true)}.
+   *
+   * @throws ConstraintViolationException if any rows added during the session
+   *         violate a uniqueness constraint, in which case all the rows added
+   *         during the session have been removed
+   * @usage _intermediate_method_
+   */
+  public void endBulkLoad() throws IOException;
+
+  /**
+   * Ends the current bulk load session, merging the index entries for all
+   * rows added during the session into the indexes of this table.  Rows which
+   * violate a uniqueness constraint (either with an existing row or another
+   * row added during the session) are all reported together.  If {@code
+   * rollbackOnViolation} is {@code true}, any violations cause all the rows
+   * added during the session to be removed (and an exception to be thrown).
+   * Otherwise, only the violating rows are removed and their ids returned.
+   *
+   * @param rollbackOnViolation whether or not all the rows added during the
+   *                            session should be removed if any row violates
+   *                            a uniqueness constraint
+   * @return the ids of the rows which were removed due to uniqueness
+   *         violations (empty if none)
+   * @throws ConstraintViolationException if {@code rollbackOnViolation} is
+   *         {@code true} and any rows added during the session violate a
+   *         uniqueness constraint
+   * @throws IllegalStateException if a bulk load session is not active
+   * @usage _intermediate_method_
+   */
+  public List<RowId> endBulkLoad(boolean rollbackOnViolation)
+    throws IOException;
+
+  /**
+   * @return {@code true} if a bulk load session is currently active for this
+   *         table, {@code false} otherwise
+   * @usage _intermediate_method_
+   */
+  public boolean isBulkLoading();
+
   /**
    * Update the given row.  Provided Row must have previously been returned
    * from this Table.
@@ -265,6 +365,77 @@ public interface Table extends Iterable<Row>
    */
   public Row updateRow(Row row) throws IOException;
 
+  /**
+   * Removes all the rows from this table.  Unlike deleting the rows one at a
+   * time, all the data pages (and any long value pages owned by the columns
+   * of this table) are returned to the database, the indexes are reset to
+   * empty and the next auto-number is reset.  If foreign keys are enforced,
+   * the rows in any tables which reference this table are checked (or
+   * deleted/nulled) as if each row were deleted.
+   *
+   * @return the number of rows removed
+   * @throws ConstraintViolationException if a foreign key constraint
+   *         prevents the rows from being removed, in which case no rows are
+   *         removed
+   * @usage _intermediate_method_
+   */
+  public int truncate() throws IOException;
+
+  /**
+   * Moves the rows of this table so that they are densely packed into the
+   * lowest numbered data pages of this table, returning the emptied data
+   * pages to the database, and then rebuilds the indexes of this table so
+   * that the index pages are densely packed as well.  Any overflow rows
+   * (rows which grew too large for their original page when updated) which
+   * are moved are re-written as normal rows.  The long value data of the
+   * rows is not moved.
+   * <p>
+   * Note, the ids of all the moved rows change, so any RowIds previously
+   * retrieved from this table may no longer be valid.
+   *
+   * @see #defragment(int)
+   * @usage _intermediate_method_
+   */
+  public void defragment() throws IOException;
+
+  /**
+   * Performs a bounded amount of the work done by {@link #defragment()},
+   * emptying at most the given number of data pages.  This allows the
+   * defragmentation to be done incrementally (e.g. by calling this method
+   * periodically until it returns {@code false}), so that other work on the
+   * database does not need to wait for the whole table to be defragmented.
+   * Once no more data pages can be emptied, the indexes are rebuilt if any
+   * rows were moved.
+   * <p>
+   * Note, the ids of all the moved rows change, so any RowIds previously
+   * retrieved from this table may no longer be valid.
+   *
+   * @param maxPages the max number of data pages to empty, must be positive
+   * @return {@code true} if there may be more work to do, {@code false} if
+   *         the table is fully defragmented
+   * @usage _intermediate_method_
+   */
+  public boolean defragment(int maxPages) throws IOException;
+
+  /**
+   * Sets the given column values (column name -&gt; value) on all the rows
+   * with the given ids, the values of any other columns are kept.  Provided
+   * RowIds must have previously been returned from this Table.  The rows are
+   * updated in data page order.  If only fixed length columns are updated
+   * (and the table has no calculated columns or row validation), the column
+   * data is patched in place, each data page is written once, and only the
+   * indexes which include an updated column are maintained.
+   *
+   * @return the number of rows updated
+   * @throws IllegalArgumentException if a given rowId is not valid
+   * @throws BatchUpdateException if updating any of the rows fails (the
+   *         update count indicates how many rows were updated)
+   * @usage _intermediate_method_
+   */
+  public int updateRows(Collection<? extends RowId> rowIds,
+                        Map<String,?> values)
+    throws IOException;
+
   /**
    * Delete the given row.  Provided Row must have previously been returned
    * from this Table.
@@ -273,6 +444,22 @@ public interface Table extends Iterable<Row>
    */
   public Row deleteRow(Row row) throws IOException;
 
+  /**
+   * Deletes the rows with the given ids.  Provided RowIds must have
+   * previously been returned from this Table.  The rows are deleted in
+   * batches in data page order, each data page is written once per batch,
+   * the index entries are removed in sorted order, and the table definition
+   * is updated once.  This is much faster than deleting many rows
+   * individually.  Any rows which are already deleted are ignored.
+   *
+   * @return the number of rows deleted
+   * @throws IllegalArgumentException if a given rowId is not valid
+   * @throws BatchUpdateException if deleting any of the rows fails (the
+   *         update count indicates how many rows were deleted)
+   * @usage _intermediate_method_
+   */
+  public int deleteRows(Collection<? extends RowId> rowIds) throws IOException;
+
   /**
    * Calls {@link #reset} on this table and returns a modifiable
    * Iterator which will iterate through all the rows of this table.  Use of
@@ -288,6 +475,23 @@ public interface Table extends Iterable<Row>
   @Override
   public Iterator<Row> iterator();
 
+  /**
+   * Returns an Iterable over the rows with the given RowIds (as found, for
+   * instance, by {@link Index#range}).  The rows are fetched in data page
+   * order (<i>not</i> the iteration order of the given RowIds), so each data
+   * page is read at most once.  Duplicate RowIds are only returned once and
+   * RowIds for rows which have since been deleted are skipped.
+   * @param rowIds the RowIds of the rows to fetch, collected when the
+   *               returned Iterable's iterator is created
+   * @param columnNames Only column names in this collection will be
+   *                    returned, or {@code null} for all columns
+   * @throws RuntimeIOException if an IOException is thrown by one of the
+   *         operations, the actual exception will be contained within
+   * @usage _intermediate_method_
+   */
+  public Iterable<Row> getRows(Iterable<? extends RowId> rowIds,
+                               Collection<String> columnNames);
+
   /**
    * After calling this method, {@link #getNextRow} will return the first row
    * in the table, see {@link Cursor#reset} (uses the {@link #getDefaultCursor
@@ -172,6 +172,15 @@ class CalculatedColumnUtil
       buffer.rewind();
       return buffer;
     }
+
+    @Override
+    protected void writeRealData(Object obj, int remainingRowLength,
+                                 ByteBuffer buffer)
+      throws IOException
+    {
+      // calculated values are wrapped with extra data
+      buffer.put(writeRealData(obj, remainingRowLength, buffer.order()));
+    }
   }
 
   /**
@@ -218,6 +227,15 @@ class CalculatedColumnUtil
       return ByteBuffer.wrap(
           toBooleanValue(obj) ? CALC_BOOL_TRUE : CALC_BOOL_FALSE).order(order);
     }
+
+    @Override
+    protected void writeRealData(Object obj, int remainingRowLength,
+                                 ByteBuffer buffer)
+      throws IOException
+    {
+      // calculated values are wrapped with extra data
+      buffer.put(writeRealData(obj, remainingRowLength, buffer.order()));
+    }
   }
 
   /**
@@ -262,6 +280,15 @@ class CalculatedColumnUtil
       return wrapCalculatedValue(super.writeRealData(
                                      obj, remainingRowLength, order));
     }
+
+    @Override
+    protected void writeRealData(Object obj, int remainingRowLength,
+                                 ByteBuffer buffer)
+      throws IOException
+    {
+      // calculated values are wrapped with extra data
+      buffer.put(writeRealData(obj, remainingRowLength, buffer.order()));
+    }
   }
 
   /**
@@ -361,6 +388,15 @@ class CalculatedColumnUtil
       return buffer;
     }
 
+    @Override
+    protected void writeRealData(Object obj, int remainingRowLength,
+                                 ByteBuffer buffer)
+      throws IOException
+    {
+      // calculated values are wrapped with extra data
+      buffer.put(writeRealData(obj, remainingRowLength, buffer.order()));
+    }
+
     private static BigDecimal readCalcNumericValue(ByteBuffer buffer)
     {
       short totalLen = buffer.getShort();
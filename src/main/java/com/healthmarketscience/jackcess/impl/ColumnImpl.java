@@ -182,6 +182,8 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
   { (byte)0xFF, (byte)0XFE };
   private static final char MIN_COMPRESS_CHAR = 1;
   private static final char MAX_COMPRESS_CHAR = 0xFF;
+  /** charset used for uncompressed text in jet4+ databases */
+  private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
 
   /** auto numbers must be > 0 */
   static final int INVALID_AUTO_NUMBER = 0;
@@ -356,6 +358,14 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
     // base does nothing
   }
 
+  /**
+   * Deallocates all the pages owned by this column (used when a table is
+   * truncated).
+   */
+  void deallocateOwnedPages() throws IOException {
+    // base does nothing
+  }
+
   /**
    * Secondary column initialization after the table is fully loaded.
    */
@@ -1390,6 +1400,67 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
     return buffer;
   }
 
+  /**
+   * Serialize an Object for this column directly into the given buffer (at
+   * its current position, using the byte order of the buffer).  Avoids
+   * allocating an intermediate buffer for the value (except for long values
+   * which may be written to separate pages).
+   * @param obj Object to serialize
+   * @param remainingRowLength remaining space in the row for the value
+   * @param buffer buffer to which the bytes are written
+   * @throws java.nio.BufferOverflowException if the value does not fit in
+   *         the remaining space of the buffer
+   */
+  void write(Object obj, int remainingRowLength, ByteBuffer buffer)
+    throws IOException
+  {
+    if(isRawData(obj)) {
+      // just slap it right in (not for the faint of heart!)
+      buffer.put(((RawData)obj).getBytes());
+      return;
+    }
+
+    writeRealData(obj, remainingRowLength, buffer);
+  }
+
+  /**
+   * Serialize an Object directly into the given buffer.  Subclasses which
+   * customize {@link #writeRealData(Object,int,ByteOrder)} must also override
+   * this method.
+   */
+  protected void writeRealData(Object obj, int remainingRowLength,
+                               ByteBuffer buffer)
+    throws IOException
+  {
+    if(!isVariableLength() || !getType().isVariableLength()) {
+      writeFixedLengthField(obj, buffer);
+      return;
+    }
+
+    // this is an "inline" var length field
+    switch(getType()) {
+    case NUMERIC:
+      // don't ask me why numerics are "var length" columns...
+      writeNumericValue(buffer, obj);
+      return;
+
+    case TEXT:
+      encodeTextValue(obj, 0, getLengthInUnits(), false, buffer);
+      return;
+
+    case BINARY:
+    case UNKNOWN_0D:
+    case UNSUPPORTED_VARLEN:
+      // should already be "encoded"
+      break;
+    default:
+      throw new RuntimeException(withErrorContext(
+              "unexpected inline var length type: " + getType()));
+    }
+
+    buffer.put(toByteArray(obj));
+  }
+
   /**
    * Serialize an Object into a raw byte value for this column
    * @param obj Object to serialize
@@ -1445,7 +1516,7 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
       // length...
       int numChars = getLengthInUnits();
       // force uncompressed encoding for fixed length text
-      buffer.put(encodeTextValue(obj, numChars, numChars, true));
+      encodeTextValue(obj, numChars, numChars, true, buffer);
       break;
     case GUID:
       writeGUIDValue(buffer, obj);
@@ -1572,6 +1643,55 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
   ByteBuffer encodeTextValue(Object obj, int minChars, int maxChars,
                              boolean forceUncompressed)
     throws IOException
+  {
+    CharSequence text = toTextValue(obj, minChars, maxChars);
+
+    // may only compress if column type allows it
+    if(isCompressible(text, forceUncompressed)) {
+      ByteBuffer buffer = ByteBuffer.allocate(TEXT_COMPRESSION_HEADER.length +
+                                              text.length());
+      writeCompressedText(text, buffer);
+      buffer.flip();
+      return buffer;
+    }
+
+    return encodeUncompressedText(text, getCharset());
+  }
+
+  /**
+   * Encodes a text value (possibly compressing) directly into the given
+   * buffer.
+   */
+  void encodeTextValue(Object obj, int minChars, int maxChars,
+                       boolean forceUncompressed, ByteBuffer buffer)
+    throws IOException
+  {
+    CharSequence text = toTextValue(obj, minChars, maxChars);
+
+    // may only compress if column type allows it
+    if(isCompressible(text, forceUncompressed)) {
+      writeCompressedText(text, buffer);
+      return;
+    }
+
+    Charset charset = getCharset();
+    if(!UTF_16LE.equals(charset) || containsSurrogates(text)) {
+      // let the charset handle any encoding oddities
+      buffer.put(encodeUncompressedText(text, charset));
+      return;
+    }
+
+    // common case, just write the chars (in little endian order, regardless
+    // of the order of the buffer)
+    for(int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      buffer.put((byte)c);
+      buffer.put((byte)(c >>> 8));
+    }
+  }
+
+  private CharSequence toTextValue(Object obj, int minChars, int maxChars)
+    throws IOException
   {
     CharSequence text = toCharSequence(obj);
     if((text.length() > maxChars) || (text.length() < minChars)) {
@@ -1580,24 +1700,31 @@ public class ColumnImpl implements Column, Comparable<ColumnImpl>, DateTimeConte
                             " column, max " + maxChars
                             + ", min " + minChars + ", got " + text.length()));
     }
+    return text;
+  }
 
-    // may only compress if column type allows it
-    if(!forceUncompressed && isCompressedUnicode() &&
-       (text.length() <= getFormat().MAX_COMPRESSED_UNICODE_SIZE) &&
-       isUnicodeCompressible(text)) {
-
-      byte[] encodedChars = new byte[TEXT_COMPRESSION_HEADER.length +
-                                     text.length()];
-      encodedChars[0] = TEXT_COMPRESSION_HEADER[0];
-      encodedChars[1] = TEXT_COMPRESSION_HEADER[1];
-      for(int i = 0; i < text.length(); ++i) {
-        encodedChars[i + TEXT_COMPRESSION_HEADER.length] =
-          (byte)text.charAt(i);
-      }
-      return ByteBuffer.wrap(encodedChars);
+  private boolean isCompressible(CharSequence text, boolean forceUncompressed)
+  {
+    return (!forceUncompressed && isCompressedUnicode() &&
+            (text.length() <= getFormat().MAX_COMPRESSED_UNICODE_SIZE) &&
+            isUnicodeCompressible(text));
+  }
+
+  private static void writeCompressedText(CharSequence text, ByteBuffer buffer)
+  {
+    buffer.put(TEXT_COMPRESSION_HEADER);
+    for(int i = 0; i < text.length(); ++i) {
+      buffer.put((byte)text.charAt(i));
     }
+  }
 
-    return encodeUncompressedText(text, getCharset());
+  private static boolean containsSurrogates(CharSequence text) {
+    for(int i = 0; i < text.length(); ++i) {
+      if(Character.isSurrogate(text.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
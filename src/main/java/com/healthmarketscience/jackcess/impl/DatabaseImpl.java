@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
@@ -42,6 +43,7 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -324,10 +326,30 @@ public class DatabaseImpl implements Database, DateTimeContext
   private boolean _allowAutoNumInsert;
   /** whether or not to evaluate expressions */
   private boolean _evaluateExpressions;
+  /** total number of index pages which may be cached by all indexes */
+  private int _indexPageCacheSize;
+  /** tracks the index page caches sharing the index page cache size */
+  private final IndexPageCacheBudget _indexPageCacheBudget =
+    new IndexPageCacheBudget();
+  /** number of index page lookups satisfied by the index page caches */
+  private long _indexPageCacheHits;
+  /** number of index page lookups which read the page from the file */
+  private long _indexPageCacheMisses;
   /** factory for ColumnValidators */
   private ColumnValidatorFactory _validatorFactory = SimpleColumnValidatorFactory.INSTANCE;
   /** cache of in-use tables */
   private final TableCache _tableCache = new TableCache();
+  /** nesting depth of the currently executing units of work (see {@link
+      #batch}) */
+  private int _batchDepth;
+  /** tables whose table definition updates have been deferred until the
+      outermost unit of work completes */
+  private final Set<TableImpl> _pendingTableDefs =
+    new LinkedHashSet<TableImpl>();
+  /** tables with an active bulk load session (see {@link
+      TableImpl#beginBulkLoad}), also keeps the tables in memory */
+  private final Set<TableImpl> _bulkLoadTables =
+    new LinkedHashSet<TableImpl>();
   /** handler for reading/writing properteies */
   private PropertyMaps.Handler _propsHandler;
   /** ID of the Databases system object */
@@ -541,6 +563,7 @@ public class DatabaseImpl implements Database, DateTimeContext
     _enforceForeignKeys = getDefaultEnforceForeignKeys();
     _allowAutoNumInsert = getDefaultAllowAutoNumberInsert();
     _evaluateExpressions = getDefaultEvaluateExpressions();
+    _indexPageCacheSize = getDefaultIndexPageCacheSize();
     _fileFormat = fileFormat;
     setZoneInfo(timeZone, null);
     _dtf = ColumnImpl.getDateTimeFactory(getDefaultDateTimeType());
@@ -787,6 +810,125 @@ public class DatabaseImpl implements Database, DateTimeContext
     _evaluateExpressions = evaluateExpressions;
   }
 
+  @Override
+  public int getIndexPageCacheSize() {
+    return _indexPageCacheSize;
+  }
+
+  @Override
+  public void setIndexPageCacheSize(Integer newSize) {
+    if(newSize == null) {
+      newSize = getDefaultIndexPageCacheSize();
+    }
+    if(newSize < 0) {
+      throw new IllegalArgumentException(withErrorContext(
+          "Invalid index page cache size " + newSize));
+    }
+    _indexPageCacheSize = newSize;
+  }
+
+  /**
+   * Registers a newly initialized IndexPageCache as a user of the shared
+   * index page cache budget.
+   */
+  void registerIndexPageCache(IndexPageCache pageCache) {
+    _indexPageCacheBudget.register(pageCache);
+  }
+
+  /**
+   * Returns the max number of pages which the given IndexPageCache may
+   * currently retain, or {@code defaultSize} if no total index page cache
+   * size is configured.
+   */
+  int getIndexPageCacheShare(int defaultSize, int minSize) {
+    if(_indexPageCacheSize <= 0) {
+      return defaultSize;
+    }
+    return Math.max(minSize, _indexPageCacheSize /
+                    Math.max(1, _indexPageCacheBudget.getNumCaches()));
+  }
+
+  /**
+   * Records a lookup in an IndexPageCache.
+   */
+  void recordIndexPageCacheAccess(boolean hit) {
+    if(hit) {
+      ++_indexPageCacheHits;
+    } else {
+      ++_indexPageCacheMisses;
+    }
+  }
+
+  /**
+   * Returns the number of index page lookups satisfied by the index page
+   * caches of this database.
+   * @usage _advanced_method_
+   */
+  public long getIndexPageCacheHitCount() {
+    return _indexPageCacheHits;
+  }
+
+  /**
+   * Returns the number of index page lookups which required reading the
+   * page from the file.
+   * @usage _advanced_method_
+   */
+  public long getIndexPageCacheMissCount() {
+    return _indexPageCacheMisses;
+  }
+
+  /**
+   * Resets the index page cache hit/miss counts to 0.
+   * @usage _advanced_method_
+   */
+  public void resetIndexPageCacheStats() {
+    _indexPageCacheHits = 0L;
+    _indexPageCacheMisses = 0L;
+  }
+
+  /**
+   * Configures "group commit" for auto-syncing, see {@link
+   * DatabaseBuilder#setGroupCommit}.
+   * @usage _advanced_method_
+   */
+  public void setGroupCommit(long maxDelayMillis, int maxWrites) {
+    _pageChannel.setGroupCommit(maxDelayMillis, maxWrites);
+  }
+
+  /**
+   * Returns the number of times the database file has been synced to disk.
+   * @usage _advanced_method_
+   */
+  public long getSyncCount() {
+    return _pageChannel.getSyncCount();
+  }
+
+  /**
+   * Returns the total time (in nanoseconds) spent syncing the database file
+   * to disk.
+   * @usage _advanced_method_
+   */
+  public long getSyncTimeNanos() {
+    return _pageChannel.getSyncTimeNanos();
+  }
+
+  /**
+   * Returns the longest time (in nanoseconds) spent in a single sync of the
+   * database file to disk.
+   * @usage _advanced_method_
+   */
+  public long getMaxSyncTimeNanos() {
+    return _pageChannel.getMaxSyncTimeNanos();
+  }
+
+  /**
+   * Resets the sync count and times to 0.
+   * @usage _advanced_method_
+   */
+  public void resetSyncStats() {
+    _pageChannel.resetSyncStats();
+  }
+
   @Override
   public ColumnValidatorFactory getColumnValidatorFactory() {
     return _validatorFactory;
@@ -1848,24 +1990,131 @@ public class DatabaseImpl implements Database, DateTimeContext
     return CursorImpl.createCursor(table);
   }
 
+  @Override
+  public <T> T batch(UnitOfWork<T> work) throws IOException {
+    _pageChannel.startWrite();
+    ++_batchDepth;
+    try {
+      return work.execute();
+    } finally {
+      try {
+        if(--_batchDepth == 0) {
+          // the changes made by the work are written even if it failed (the
+          // row data has already been written)
+          writePendingTableDefinitions();
+        }
+      } finally {
+        _pageChannel.finishWrite();
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if a unit of work is currently executing, in which
+   * case the table definition update for the given table is deferred until
+   * the outermost unit of work completes, {@code false} otherwise.
+   */
+  boolean deferTableDefinitionUpdate(TableImpl table) {
+    if(_batchDepth == 0) {
+      return false;
+    }
+    _pendingTableDefs.add(table);
+    return true;
+  }
+
+  /**
+   * Writes all the deferred table definition updates.
+   */
+  private void writePendingTableDefinitions() throws IOException {
+    while(!_pendingTableDefs.isEmpty()) {
+      TableImpl table = _pendingTableDefs.iterator().next();
+      table.writePendingTableDefinition();
+      // only discard once written (a failed write will be retried)
+      _pendingTableDefs.remove(table);
+    }
+  }
+
+  /**
+   * Records that a bulk load session was started for the given table.
+   */
+  void bulkLoadStarted(TableImpl table) {
+    _bulkLoadTables.add(table);
+  }
+
+  /**
+   * Records that the bulk load session for the given table was ended.
+   */
+  void bulkLoadEnded(TableImpl table) {
+    _bulkLoadTables.remove(table);
+  }
+
+  /**
+   * Ends all the active bulk load sessions (merging the buffered index
+   * entries into the indexes and discarding any temp files).  All the
+   * sessions are ended even if some fail, the first failure is thrown.
+   */
+  private void endBulkLoads() throws IOException {
+    Exception failure = null;
+    while(!_bulkLoadTables.isEmpty()) {
+      TableImpl table = _bulkLoadTables.iterator().next();
+      try {
+        table.endBulkLoad();
+      } catch(IOException | RuntimeException e) {
+        if(failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+      // the session is always ended
+      _bulkLoadTables.remove(table);
+    }
+    if(failure instanceof IOException) {
+      throw (IOException)failure;
+    }
+    if(failure != null) {
+      throw (RuntimeException)failure;
+    }
+  }
+
   @Override
   public void flush() throws IOException {
+    if(!_bulkLoadTables.isEmpty()) {
+      throw new IllegalStateException(withErrorContext(
+          "Cannot flush while a bulk load session is active for table " +
+          _bulkLoadTables.iterator().next().getName()));
+    }
     if(_linkedDbs != null) {
       for(Database linkedDb : _linkedDbs.values()) {
         linkedDb.flush();
       }
     }
+    writePendingTableDefinitions();
     _pageChannel.flush();
   }
 
+  @Override
+  public void sync() throws IOException {
+    writePendingTableDefinitions();
+    _pageChannel.sync();
+  }
+
   @Override
   public void close() throws IOException {
-    if(_linkedDbs != null) {
-      for(Database linkedDb : _linkedDbs.values()) {
-        linkedDb.close();
+    try {
+      if(_linkedDbs != null) {
+        for(Database linkedDb : _linkedDbs.values()) {
+          linkedDb.close();
+        }
+      }
+      try {
+        endBulkLoads();
+      } finally {
+        writePendingTableDefinitions();
       }
+    } finally {
+      _pageChannel.close();
     }
-    _pageChannel.close();
   }
 
   public void validateNewTableName(String name) throws IOException {
@@ -2113,6 +2362,44 @@ public class DatabaseImpl implements Database, DateTimeContext
     return false;
   }
 
+  /**
+   * Returns the default index page cache size.  This defaults to {@code 0}
+   * (a fixed number of pages per index), but can be overridden using the
+   * system property
+   * {@value com.healthmarketscience.jackcess.Database#INDEX_PAGE_CACHE_SIZE_PROPERTY}.
+   * @usage _advanced_method_
+   */
+  public static int getDefaultIndexPageCacheSize()
+  {
+    String prop = System.getProperty(INDEX_PAGE_CACHE_SIZE_PROPERTY);
+    if(prop != null) {
+      prop = prop.trim();
+      if(!prop.isEmpty()) {
+        return Math.max(0, Integer.parseInt(prop));
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the default index fill factor percentage.  This defaults to
+   * {@code 90}, but can be overridden using the system property
+   * {@value com.healthmarketscience.jackcess.Database#INDEX_FILL_FACTOR_PROPERTY}
+   * (values are limited to the range 50 to 100).
+   * @usage _advanced_method_
+   */
+  public static int getDefaultIndexFillFactor()
+  {
+    String prop = System.getProperty(INDEX_FILL_FACTOR_PROPERTY);
+    if(prop != null) {
+      prop = prop.trim();
+      if(!prop.isEmpty()) {
+        return Math.min(100, Math.max(50, Integer.parseInt(prop)));
+      }
+    }
+    return 90;
+  }
+
   /**
    * Returns the default DateTimeType.  This defaults to
    * {@link DateTimeType#DATE}, but can be overridden using the system
@@ -2708,6 +2995,35 @@ public class DatabaseImpl implements Database, DateTimeContext
     }
   }
 
+  /**
+   * Tracks the currently in-use index page caches which share the index page
+   * cache size.
+   */
+  private static final class IndexPageCacheBudget
+  {
+    private final Set<Reference<IndexPageCache>> _caches =
+      new HashSet<Reference<IndexPageCache>>();
+    private final ReferenceQueue<IndexPageCache> _queue =
+      new ReferenceQueue<IndexPageCache>();
+
+    public void register(IndexPageCache pageCache) {
+      purgeOldRefs();
+      _caches.add(new WeakReference<IndexPageCache>(pageCache, _queue));
+    }
+
+    public int getNumCaches() {
+      purgeOldRefs();
+      return _caches.size();
+    }
+
+    private void purgeOldRefs() {
+      Reference<? extends IndexPageCache> oldRef = null;
+      while((oldRef = _queue.poll()) != null) {
+        _caches.remove(oldRef);
+      }
+    }
+  }
+
   /**
    * Cache of currently in-use tables, allows re-use of existing tables.
    */
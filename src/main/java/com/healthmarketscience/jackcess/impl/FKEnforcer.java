@@ -228,9 +228,7 @@ final class FKEnforcer
 
     // first, check the tables for which we are the primary table in the
     // relationship (but not cascading)
-    for(Joiner joiner : _primaryJoinersChkDel) {
-      requireNoSecondaryValues(joiner, row);
-    }
+    checkDeleteRow(row);
 
     // next, delete from the tables for which we are the primary table in
     // the relationship
@@ -245,6 +243,40 @@ final class FKEnforcer
     }
   }
 
+  /**
+   * Checks the foreign-key constraints which would prevent deleting a row
+   * (without modifying any other tables).
+   *
+   * @param row old row in the Table's row format, including all values used
+   *            in any foreign-key relationships
+   */
+  public void checkDeleteRow(Object[] row) throws IOException {
+    if(!enforcing()) {
+      return;
+    }
+    initialize();
+
+    for(Joiner joiner : _primaryJoinersChkDel) {
+      requireNoSecondaryValues(joiner, row);
+    }
+  }
+
+  /**
+   * Returns {@code true} if deleting rows from the table requires foreign-key
+   * handling (the table is the primary table in an enforced relationship),
+   * {@code false} otherwise.
+   */
+  public boolean isDeleteEnforced() throws IOException {
+    if(!enforcing()) {
+      return false;
+    }
+    initialize();
+
+    return (!_primaryJoinersChkDel.isEmpty() ||
+            !_primaryJoinersDoDel.isEmpty() ||
+            !_primaryJoinersDoNull.isEmpty());
+  }
+
   private static void requirePrimaryValues(Joiner joiner, Object[] row) 
     throws IOException 
   {
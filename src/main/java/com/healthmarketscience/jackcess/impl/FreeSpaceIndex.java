@@ -0,0 +1,283 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Index of the space which could be reclaimed on the data pages of a table
+ * (data page number -&gt; free space plus the space used by deleted rows).
+ * The index is built lazily (by scanning the data pages of the table) the
+ * first time it is used and is then maintained as rows are deleted.  The
+ * values are only hints, the actual page contents are always checked before
+ * a page is reused.
+ * <p>
+ * Only the rows which have both the deleted and overflow flags set (which is
+ * how deleted rows are marked) are considered reclaimable.  Rows which only
+ * have the deleted flag set hold the data for overflow rows.  When a page is
+ * reused, the data of the deleted rows is dropped and the remaining rows are
+ * moved to the end of the page.  The row numbers of the remaining rows do
+ * not change (so any existing RowIds remain valid).
+ *
+ * @author James Ahlborn
+ */
+final class FreeSpaceIndex
+{
+  /** max number of candidate pages examined by the best-fit policy */
+  static final int LOCALITY_WINDOW = 32;
+
+  private final TableImpl _table;
+  /** data page number -&gt; reclaimable bytes, {@code null} until the data
+      pages have been scanned */
+  private TreeMap<Integer,Integer> _pageSpace;
+  /** the last page returned by {@link #findPage}, searches start here to
+      keep new rows together */
+  private int _lastPageNumber;
+
+  FreeSpaceIndex(TableImpl table) {
+    _table = table;
+  }
+
+  /**
+   * Discards the current contents of the index (it will be rebuilt on next
+   * use).
+   */
+  void reset() {
+    _pageSpace = null;
+    _lastPageNumber = 0;
+  }
+
+  /**
+   * Records that a row of the given size was deleted from the given page.
+   */
+  void rowDeleted(int pageNumber, int rowSize) {
+    if(_pageSpace == null) {
+      // will be found when the data pages are scanned
+      return;
+    }
+    Integer space = _pageSpace.get(pageNumber);
+    _pageSpace.put(pageNumber, ((space != null) ? space : 0) + rowSize);
+  }
+
+  /**
+   * Records the current reclaimable space on the given page.
+   */
+  void update(int pageNumber, int space) {
+    if(_pageSpace == null) {
+      return;
+    }
+    if(space > 0) {
+      _pageSpace.put(pageNumber, space);
+    } else {
+      _pageSpace.remove(pageNumber);
+    }
+  }
+
+  /**
+   * Finds a data page which may have at least the given amount of
+   * reclaimable space according to the given placement policy.
+   *
+   * @param spaceNeeded the space needed for the new row (including the row
+   *                    location)
+   * @param placement the placement policy
+   * @param excludePageNumber a page which may not be chosen
+   * @return the chosen page number, or
+   *         {@link PageChannel#INVALID_PAGE_NUMBER} if no page has enough
+   *         space
+   */
+  int findPage(int spaceNeeded, Table.RowPlacement placement,
+               int excludePageNumber)
+    throws IOException
+  {
+    if(placement == Table.RowPlacement.APPEND) {
+      return PageChannel.INVALID_PAGE_NUMBER;
+    }
+    if(_pageSpace == null) {
+      _pageSpace = scanDataPages();
+    }
+
+    int bestPageNumber = PageChannel.INVALID_PAGE_NUMBER;
+    int bestSpace = Integer.MAX_VALUE;
+    int numCandidates = 0;
+
+    // search from the last chosen page to the end, then wrap around
+    Integer pageNumber = _pageSpace.ceilingKey(_lastPageNumber);
+    for(int i = 0; i < _pageSpace.size(); ++i) {
+      if(pageNumber == null) {
+        pageNumber = _pageSpace.firstKey();
+      }
+
+      int space = _pageSpace.get(pageNumber);
+      if((space >= spaceNeeded) && (pageNumber != excludePageNumber)) {
+
+        if(placement == Table.RowPlacement.FIRST_FIT) {
+          bestPageNumber = pageNumber;
+          break;
+        }
+
+        if(space < bestSpace) {
+          bestPageNumber = pageNumber;
+          bestSpace = space;
+        }
+        if(++numCandidates == LOCALITY_WINDOW) {
+          break;
+        }
+      }
+
+      pageNumber = _pageSpace.higherKey(pageNumber);
+    }
+
+    if(bestPageNumber != PageChannel.INVALID_PAGE_NUMBER) {
+      _lastPageNumber = bestPageNumber;
+    }
+    return bestPageNumber;
+  }
+
+  /**
+   * Finds the lowest numbered data page below the given page which may have
+   * at least the given amount of reclaimable space (used to pack rows into
+   * the beginning of the table).
+   *
+   * @param spaceNeeded the space needed for the row (including the row
+   *                    location)
+   * @param maxPageNumber the chosen page must be less than this page
+   * @return the chosen page number, or
+   *         {@link PageChannel#INVALID_PAGE_NUMBER} if no page has enough
+   *         space
+   */
+  int findLowestPage(int spaceNeeded, int maxPageNumber)
+    throws IOException
+  {
+    if(_pageSpace == null) {
+      _pageSpace = scanDataPages();
+    }
+
+    for(Map.Entry<Integer,Integer> e :
+          _pageSpace.headMap(maxPageNumber, false).entrySet()) {
+      if(e.getValue() >= spaceNeeded) {
+        return e.getKey();
+      }
+    }
+    return PageChannel.INVALID_PAGE_NUMBER;
+  }
+
+  /**
+   * Reads all the data pages of the table and returns the reclaimable space
+   * of each page which could hold another row.
+   */
+  private TreeMap<Integer,Integer> scanDataPages() throws IOException
+  {
+    TreeMap<Integer,Integer> pageSpace = new TreeMap<Integer,Integer>();
+    PageChannel pageChannel = _table.getPageChannel();
+    JetFormat format = _table.getFormat();
+    ByteBuffer buffer = pageChannel.createPageBuffer();
+
+    UsageMap.PageCursor pageCursor = _table.getOwnedPagesCursor();
+    while(true) {
+      int pageNumber = pageCursor.getNextPage();
+      if(pageNumber < 0) {
+        break;
+      }
+      pageChannel.readPage(buffer, pageNumber);
+      if(buffer.get(0) != PageTypes.DATA) {
+        continue;
+      }
+      int space = getReclaimableSpace(buffer, format);
+      if(space > 0) {
+        pageSpace.put(pageNumber, space);
+      }
+    }
+
+    return pageSpace;
+  }
+
+  /**
+   * Returns the free space plus the space used by deleted rows on the given
+   * data page, or 0 if no more rows can be added to the page.
+   */
+  static int getReclaimableSpace(ByteBuffer dataPage, JetFormat format)
+  {
+    int rowsOnPage = dataPage.getShort(format.OFFSET_NUM_ROWS_ON_DATA_PAGE);
+    if(rowsOnPage >= format.MAX_NUM_ROWS_ON_DATA_PAGE) {
+      return 0;
+    }
+
+    int space = dataPage.getShort(format.OFFSET_FREE_SPACE);
+    for(int i = 0; i < rowsOnPage; ++i) {
+      if(isDeadRow(dataPage.getShort(
+                       TableImpl.getRowStartOffset(i, format)))) {
+        space += (TableImpl.findRowEnd(dataPage, i, format) -
+                  TableImpl.findRowStart(dataPage, i, format));
+      }
+    }
+    return space;
+  }
+
+  /**
+   * Drops the data of the deleted rows on the given data page, moving the
+   * remaining rows to the end of the page.  The row numbers (and flags) of
+   * all the rows are unchanged, the deleted rows are left with no data.
+   *
+   * @return the number of bytes reclaimed
+   */
+  static int compactDataPage(ByteBuffer dataPage, JetFormat format)
+  {
+    int rowsOnPage = dataPage.getShort(format.OFFSET_NUM_ROWS_ON_DATA_PAGE);
+    byte[] origPage = ByteUtil.copyOf(dataPage.array(), format.PAGE_SIZE);
+
+    int rowEnd = format.PAGE_SIZE;
+    int newRowEnd = format.PAGE_SIZE;
+    for(int i = 0; i < rowsOnPage; ++i) {
+      int rowStartOffset = TableImpl.getRowStartOffset(i, format);
+      short rowStartFlags = dataPage.getShort(rowStartOffset);
+      int rowStart = TableImpl.cleanRowStart(rowStartFlags);
+
+      int rowSize = (isDeadRow(rowStartFlags) ? 0 : (rowEnd - rowStart));
+      int newRowStart = newRowEnd - rowSize;
+      System.arraycopy(origPage, rowStart, dataPage.array(), newRowStart,
+                       rowSize);
+      dataPage.putShort(rowStartOffset,
+                        (short)(newRowStart | (rowStartFlags ^ rowStart)));
+
+      rowEnd = rowStart;
+      newRowEnd = newRowStart;
+    }
+
+    int reclaimed = newRowEnd - rowEnd;
+    if(reclaimed > 0) {
+      ByteUtil.clearRange(dataPage, rowEnd, newRowEnd);
+      dataPage.putShort(format.OFFSET_FREE_SPACE,
+                        (short)(dataPage.getShort(format.OFFSET_FREE_SPACE) +
+                                reclaimed));
+    }
+    return reclaimed;
+  }
+
+  /**
+   * Returns {@code true} if the row with the given row start flags has been
+   * deleted (and its space may be reclaimed), {@code false} otherwise.
+   */
+  static boolean isDeadRow(short rowStartFlags) {
+    return (TableImpl.isDeletedRow(rowStartFlags) &&
+            TableImpl.isOverflowRow(rowStartFlags));
+  }
+}
@@ -48,6 +48,14 @@ public class GeneralIndexCodes extends GeneralLegacyIndexCodes {
         EXT_CODES_FILE, FIRST_EXT_CHAR, LAST_EXT_CHAR);
   }
 
+  private static final class CodeTable
+  {
+    /** flattened codes for all the chars in BMP 0 (used by the
+        TextIndexEncoder).  use nested class to lazy load the codes */
+    private static final TextIndexEncoder.CodeTable _value =
+      TextIndexEncoder.CodeTable.load(CODES_FILE, EXT_CODES_FILE);
+  }
+
   static final GeneralIndexCodes GEN_INSTANCE = new GeneralIndexCodes();
 
   GeneralIndexCodes() {
@@ -67,4 +75,13 @@ public class GeneralIndexCodes extends GeneralLegacyIndexCodes {
     return ExtCodes._values[extOffset];
   }
 
+  /**
+   * Returns the flattened codes for all the chars in BMP 0.
+   */
+  @Override
+  TextIndexEncoder.CodeTable getCodeTable()
+  {
+    return CodeTable._value;
+  }
+
 }
@@ -276,6 +276,14 @@ public class GeneralLegacyIndexCodes {
         EXT_CODES_FILE, FIRST_EXT_CHAR, LAST_EXT_CHAR);
   }
 
+  private static final class CodeTable
+  {
+    /** flattened codes for all the chars in BMP 0 (used by the
+        TextIndexEncoder).  use nested class to lazy load the codes */
+    private static final TextIndexEncoder.CodeTable _value =
+      TextIndexEncoder.CodeTable.load(CODES_FILE, EXT_CODES_FILE);
+  }
+
   static final GeneralLegacyIndexCodes GEN_LEG_INSTANCE = 
     new GeneralLegacyIndexCodes();
   
@@ -295,6 +303,14 @@ public class GeneralLegacyIndexCodes {
     return ExtCodes._values[extOffset];
   }
 
+  /**
+   * Returns the flattened codes for all the chars in BMP 0.
+   */
+  TextIndexEncoder.CodeTable getCodeTable()
+  {
+    return CodeTable._value;
+  }
+
   /**
    * Loads the CharHandlers for the given range of characters from the
    * resource file with the given name.
@@ -543,6 +559,20 @@ public class GeneralLegacyIndexCodes {
       }
     }
 
+    writeTrailingCodes(bout, prevLength, extraCodes, unprintableCodes,
+                       crazyCodes, isAscending);
+  }
+
+  /**
+   * Writes the end of a text index entry (the extra, crazy and unprintable
+   * codes collected for the chars of the entry), flipping the bytes written
+   * since the given previous length if the entry is descending.
+   */
+  static void writeTrailingCodes(
+      ByteStream bout, int prevLength, ExtraCodesStream extraCodes,
+      ByteStream unprintableCodes, ByteStream crazyCodes, boolean isAscending)
+    throws IOException
+  {
     // write end text flag
     bout.write(END_TEXT);
 
@@ -605,7 +635,7 @@ public class GeneralLegacyIndexCodes {
   /**
    * Encodes the given extra code info in the given stream.
    */
-  private static void writeExtraCodes(
+  static void writeExtraCodes(
       int charOffset, byte[] bytes, byte extraCodeModifier,
       ExtraCodesStream extraCodes)
     throws IOException
@@ -668,7 +698,7 @@ public class GeneralLegacyIndexCodes {
   /**
    * Encodes the given unprintable char codes in the given stream.
    */
-  private static void writeUnprintableCodes(
+  static void writeUnprintableCodes(
       int charOffset, byte[] bytes, ByteStream unprintableCodes,
       ExtraCodesStream extraCodes)
     throws IOException
@@ -745,15 +775,22 @@ public class GeneralLegacyIndexCodes {
    * Extension of ByteStream which keeps track of an additional char count and
    * the length of any "unprintable" code prefix.
    */
-  private static final class ExtraCodesStream extends ByteStream
+  static final class ExtraCodesStream extends ByteStream
   {
     private int _numChars;
     private int _unprintablePrefixLen; 
 
-    private ExtraCodesStream(int length) {
+    ExtraCodesStream(int length) {
       super(length);
     }
 
+    @Override
+    public void reset() {
+      super.reset();
+      _numChars = 0;
+      _unprintablePrefixLen = 0;
+    }
+
     public int getNumChars() {
       return _numChars;
     }
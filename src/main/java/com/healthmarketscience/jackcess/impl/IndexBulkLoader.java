@@ -0,0 +1,767 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.healthmarketscience.jackcess.ConstraintViolationException;
+import com.healthmarketscience.jackcess.RuntimeIOException;
+import static com.healthmarketscience.jackcess.impl.IndexData.*;
+
+/**
+ * Utility class used to populate an index with many rows at once (e.g. the
+ * rows of an existing table or the rows added during a bulk load session).
+ * The index entries are collected and sorted (spilling sorted runs to temp
+ * files for large tables).  For an empty index, the index pages are then
+ * written "bottom-up", filling each page up to the configured fill factor
+ * (see {@link DatabaseImpl#getDefaultIndexFillFactor}).  This is much faster
+ * than adding the entries one at a time, and results in a compact index.
+ * For an index which already has entries, the sorted entries are merged into
+ * the existing pages in key order.
+ *
+ * @author James Ahlborn
+ * @usage _advanced_class_
+ */
+final class IndexBulkLoader implements Closeable
+{
+  private static final String TEMP_FILE_PREFIX = "jackcess_idx_";
+  /** approximate per-entry memory overhead (entry, rowId and byte[]) */
+  private static final int ENTRY_OVERHEAD = 64;
+  /** default approximate max memory used for entries before spilling a
+      sorted run to a temp file */
+  private static final long DEFAULT_MAX_MEMORY = 32L * 1024L * 1024L;
+  /** number of entries merged into an existing index between writes of the
+      modified index pages */
+  private static final int MERGE_WRITE_INTERVAL = 1000;
+
+  private final IndexData _indexData;
+  /** the currently collected (unsorted) entries */
+  private final List<Entry> _entries = new ArrayList<Entry>();
+  /** the sorted runs spilled to temp files */
+  private final List<SortedRun> _runs = new ArrayList<SortedRun>();
+  /** the merged entries of the sorted runs (if any) */
+  private MergeIterator _mergeIter;
+  /** approximate memory used by the currently collected entries */
+  private long _entriesMemory;
+  /** whether or not the currently collected entries are sorted */
+  private boolean _sorted = true;
+  private long _maxMemory = DEFAULT_MAX_MEMORY;
+  private int _fillFactor = DatabaseImpl.getDefaultIndexFillFactor();
+
+  IndexBulkLoader(IndexData indexData) {
+    _indexData = indexData;
+  }
+
+  IndexData getIndexData() {
+    return _indexData;
+  }
+
+  /**
+   * Sets the approximate max memory used for collected entries before they
+   * are spilled to a temp file.
+   */
+  void setMaxMemory(long maxMemory) {
+    _maxMemory = maxMemory;
+  }
+
+  /**
+   * Sets the fill factor (percentage of available space) for the written
+   * index pages.
+   */
+  void setFillFactor(int fillFactor) {
+    if((fillFactor < 1) || (fillFactor > 100)) {
+      throw new IllegalArgumentException(_indexData.withErrorContext(
+          "Invalid fill factor " + fillFactor));
+    }
+    _fillFactor = fillFactor;
+  }
+
+  /**
+   * Adds the given row to the entries which will be loaded into the index.
+   * All constraints which do not depend on the other entries in the index
+   * are checked before this method returns.
+   */
+  public void addRow(Object[] row, RowIdImpl rowId) throws IOException {
+    addEntry(_indexData.createBulkLoadEntry(row, rowId));
+  }
+
+  /**
+   * Adds the given entry (as returned from {@link
+   * IndexData#createBulkLoadEntry}) to the entries which will be loaded into
+   * the index.
+   */
+  void addEntry(Entry entry) throws IOException {
+    if(entry == null) {
+      return;
+    }
+    _entries.add(entry);
+    _sorted = false;
+    _entriesMemory += entry.size() + ENTRY_OVERHEAD;
+    if(_entriesMemory > _maxMemory) {
+      spillEntries();
+    }
+  }
+
+  /**
+   * Writes all the added entries to the (currently empty) index.
+   *
+   * @throws ConstraintViolationException if the entries violate the
+   *         uniqueness constraint for the index
+   */
+  public void load() throws IOException {
+    load(null);
+  }
+
+  /**
+   * Writes all the added entries to the (currently empty) index, skipping
+   * any entries for the given rowIds.
+   *
+   * @param skipRowIds optional rowIds of the entries which should not be
+   *                   loaded
+   *
+   * @throws ConstraintViolationException if the entries violate the
+   *         uniqueness constraint for the index
+   */
+  public void load(RowIdSet skipRowIds) throws IOException {
+    // the index pages are written directly, so any outstanding changes must
+    // be written first
+    _indexData.update();
+    if(!_indexData.isEmpty()) {
+      throw new IllegalStateException(_indexData.withErrorContext(
+          "Bulk load requires an empty index"));
+    }
+
+    int maxPageEntrySize = _indexData.getMaxPageEntrySize();
+    int fillPageEntrySize = (int)((maxPageEntrySize * (long)_fillFactor) / 100);
+    LevelWriter leafWriter = new LevelWriter(
+        true, maxPageEntrySize, fillPageEntrySize);
+
+    boolean isUnique = _indexData.isUnique();
+    int uniqueEntryCount = 0;
+    Entry prevEntry = null;
+    try {
+      Iterator<Entry> entryIter = newSortedIterator();
+      while(entryIter.hasNext()) {
+        Entry entry = entryIter.next();
+        if(isSkipped(entry, skipRowIds)) {
+          continue;
+        }
+        boolean isDupeEntry = ((prevEntry != null) &&
+                               entry.equalsEntryBytes(prevEntry));
+        if(isDupeEntry) {
+          if(isUnique && !_indexData.isAllNullEntry(entry)) {
+            throw new ConstraintViolationException(
+                _indexData.withErrorContext(
+                    "Row " + entry.getRowId() +
+                    " violates uniqueness constraint for index"));
+          }
+        } else {
+          ++uniqueEntryCount;
+        }
+        leafWriter.addEntry(entry);
+        prevEntry = entry;
+      }
+    } catch(RuntimeIOException e) {
+      throw (IOException)e.getCause();
+    }
+    leafWriter.finish();
+
+    _entries.clear();
+    _entriesMemory = 0L;
+
+    _indexData.bulkLoadCompleted(uniqueEntryCount);
+  }
+
+  /**
+   * Adds all the added entries to the index, which may already contain
+   * entries.  If the index is currently empty, the index pages are written
+   * "bottom-up" (see {@link #load(RowIdSet)}), otherwise the entries are
+   * added to the existing index pages in key order.  The entries must
+   * already have been checked for uniqueness violations (see {@link
+   * #findUniqueViolations}).
+   *
+   * @param skipRowIds optional rowIds of the entries which should not be
+   *                   added
+   */
+  public void merge(RowIdSet skipRowIds) throws IOException {
+    if(_indexData.isEmpty()) {
+      load(skipRowIds);
+      return;
+    }
+
+    try {
+      int numAdded = 0;
+      Iterator<Entry> entryIter = newSortedIterator();
+      while(entryIter.hasNext()) {
+        Entry entry = entryIter.next();
+        if(isSkipped(entry, skipRowIds)) {
+          continue;
+        }
+        _indexData.addBulkLoadEntry(entry);
+        if((++numAdded % MERGE_WRITE_INTERVAL) == 0) {
+          // periodically flush the modified index pages so that the index
+          // page cache does not grow unbounded
+          _indexData.update();
+        }
+      }
+    } catch(RuntimeIOException e) {
+      throw (IOException)e.getCause();
+    }
+
+    _entries.clear();
+    _entriesMemory = 0L;
+  }
+
+  /**
+   * Adds the rowIds of any added entries which would violate the uniqueness
+   * constraint of the index (either with other added entries or with
+   * existing entries in the index) to the given set.  For a group of added
+   * entries with the same key, the first entry which is not already in the
+   * given set is considered valid (unless the key is already in the index).
+   *
+   * @return {@code true} if any rowIds were added to the given set, {@code
+   *         false} otherwise
+   */
+  public boolean findUniqueViolations(RowIdSet violationRowIds)
+    throws IOException
+  {
+    return findUniqueViolations(violationRowIds, true);
+  }
+
+  /**
+   * Returns {@code true} if any of the added entries violate the uniqueness
+   * constraint of the index with each other (ignoring any existing entries
+   * in the index), {@code false} otherwise.
+   */
+  public boolean hasUniqueViolations() throws IOException {
+    return findUniqueViolations(new RowIdSet(), false);
+  }
+
+  private boolean findUniqueViolations(RowIdSet violationRowIds,
+                                       boolean checkExisting)
+    throws IOException
+  {
+    if(!_indexData.isUnique()) {
+      return false;
+    }
+
+    checkExisting = (checkExisting && !_indexData.isEmpty());
+    boolean found = false;
+    try {
+      Entry prevEntry = null;
+      Iterator<Entry> entryIter = newSortedIterator();
+      while(entryIter.hasNext()) {
+        Entry entry = entryIter.next();
+        if(isSkipped(entry, violationRowIds) ||
+           _indexData.isAllNullEntry(entry)) {
+          continue;
+        }
+        if(((prevEntry != null) && entry.equalsEntryBytes(prevEntry)) ||
+           (checkExisting && _indexData.containsEntryBytes(entry))) {
+          violationRowIds.add(entry.getRowId());
+          found = true;
+          continue;
+        }
+        prevEntry = entry;
+      }
+    } catch(RuntimeIOException e) {
+      throw (IOException)e.getCause();
+    }
+    return found;
+  }
+
+  /**
+   * Returns {@code true} if the added entries exactly match the current
+   * entries of the index, {@code false} otherwise.
+   * <p>
+   * Forces index initialization.
+   */
+  public boolean matchesIndex() throws IOException {
+    _indexData.initialize();
+    try {
+      IndexData.EntryCursor cursor = _indexData.cursor();
+      Entry endEntry = cursor.getLastEntry();
+      Iterator<Entry> entryIter = newSortedIterator();
+      while(true) {
+        Entry idxEntry = cursor.getNextEntry();
+        boolean idxDone = endEntry.equals(idxEntry);
+        if(!entryIter.hasNext()) {
+          return idxDone;
+        }
+        if(idxDone || !entryIter.next().equals(idxEntry)) {
+          return false;
+        }
+      }
+    } catch(RuntimeIOException e) {
+      throw (IOException)e.getCause();
+    }
+  }
+
+  /**
+   * Sorts the added entries (or spills the remaining entries to a final
+   * sorted run), so that the remaining work when the entries are consumed
+   * is minimal.  This method does not access the index itself and may be
+   * called from a different thread than the one which loads the index.
+   */
+  public void sort() throws IOException {
+    if(_runs.isEmpty()) {
+      if(!_sorted) {
+        Collections.sort(_entries);
+        _sorted = true;
+      }
+    } else {
+      spillEntries();
+    }
+  }
+
+  private static boolean isSkipped(Entry entry, RowIdSet skipRowIds) {
+    return ((skipRowIds != null) && !skipRowIds.isEmpty() &&
+            skipRowIds.contains(entry.getRowId()));
+  }
+
+  /**
+   * Returns an iterator over all the added entries in sorted order.  May be
+   * called multiple times (any previously returned iterator is invalidated).
+   */
+  private Iterator<Entry> newSortedIterator() throws IOException {
+    closeMergeIterator();
+    sort();
+    if(_runs.isEmpty()) {
+      return _entries.iterator();
+    }
+    _mergeIter = new MergeIterator(_runs);
+    return _mergeIter;
+  }
+
+  private void closeMergeIterator() {
+    if(_mergeIter != null) {
+      _mergeIter.close();
+      _mergeIter = null;
+    }
+  }
+
+  /**
+   * Discards any temp files.
+   */
+  @Override
+  public void close() {
+    closeMergeIterator();
+    for(SortedRun run : _runs) {
+      run.delete();
+    }
+    _runs.clear();
+  }
+
+  /**
+   * Sorts the currently collected entries and writes them to a temp file.
+   */
+  private void spillEntries() throws IOException {
+    if(_entries.isEmpty()) {
+      return;
+    }
+    Collections.sort(_entries);
+    SortedRun run = new SortedRun(Files.createTempFile(TEMP_FILE_PREFIX,
+                                                       ".tmp"));
+    _runs.add(run);
+    run.write(_entries);
+    _entries.clear();
+    _entriesMemory = 0L;
+  }
+
+  /**
+   * Allocates a new page for the index.
+   */
+  private int allocatePage() throws IOException {
+    int pageNumber = _indexData.getPageChannel().allocateNewPage();
+    _indexData.addOwnedPage(pageNumber);
+    return pageNumber;
+  }
+
+  /**
+   * Writes the pages for one level of the index, passing the node entries
+   * for the written pages to the next level up.  The last page written for
+   * the top level of the index becomes the root page.
+   */
+  private final class LevelWriter
+  {
+    private final boolean _leaf;
+    private final int _maxPageEntrySize;
+    private final int _fillPageEntrySize;
+    /** the entries for the current page */
+    private final List<Entry> _pageEntries = new ArrayList<Entry>();
+    private int _pageEntriesSize;
+    private int _pageNumber = INVALID_INDEX_PAGE_NUMBER;
+    private int _prevPageNumber = INVALID_INDEX_PAGE_NUMBER;
+    private int _numWrittenPages;
+    private LevelWriter _parent;
+
+    private LevelWriter(boolean leaf, int maxPageEntrySize,
+                        int fillPageEntrySize) {
+      _leaf = leaf;
+      _maxPageEntrySize = maxPageEntrySize;
+      _fillPageEntrySize = fillPageEntrySize;
+    }
+
+    public void addEntry(Entry entry) throws IOException {
+      if(!_pageEntries.isEmpty() && isPageFull(entry)) {
+        writePage(false);
+      }
+      _pageEntries.add(entry);
+      _pageEntriesSize += entry.size();
+    }
+
+    /**
+     * Returns {@code true} if the given entry should be added to a new page.
+     */
+    private boolean isPageFull(Entry entry) {
+      // the last entry on a node page is stored as the "child tail" and does
+      // not count towards the page size, so adding an entry to a node page
+      // only makes the current last entry count
+      int newSize = (_leaf ? (_pageEntriesSize + entry.size()) :
+                     _pageEntriesSize);
+      if(newSize > _maxPageEntrySize) {
+        return true;
+      }
+      // node pages need at least two children or the tree will never
+      // converge on a single root page
+      return ((newSize > _fillPageEntrySize) &&
+              (_leaf || (_pageEntries.size() >= 2)));
+    }
+
+    /**
+     * Writes the current page and adds the node entry for the page to the
+     * parent level.
+     */
+    private void writePage(boolean lastPage) throws IOException {
+      if(_pageNumber == INVALID_INDEX_PAGE_NUMBER) {
+        _pageNumber = allocatePage();
+      }
+      int nextPageNumber = (lastPage ? INVALID_INDEX_PAGE_NUMBER :
+                            allocatePage());
+
+      Entry lastEntry = _pageEntries.get(_pageEntries.size() - 1);
+      writeDataPage(_pageNumber, _prevPageNumber, nextPageNumber);
+
+      if(_parent == null) {
+        _parent = new LevelWriter(false, _maxPageEntrySize,
+                                  _fillPageEntrySize);
+      }
+      _parent.addEntry(lastEntry.asNodeEntry(_pageNumber));
+
+      _prevPageNumber = _pageNumber;
+      _pageNumber = nextPageNumber;
+      _pageEntries.clear();
+      _pageEntriesSize = 0;
+      ++_numWrittenPages;
+    }
+
+    /**
+     * Writes the remaining entries for this level (and any parent levels).
+     */
+    public void finish() throws IOException {
+      if(_numWrittenPages == 0) {
+        // all the entries for this level fit on one page, so this is the
+        // root page
+        writeDataPage(_indexData.getRootPageNumber(),
+                      INVALID_INDEX_PAGE_NUMBER, INVALID_INDEX_PAGE_NUMBER);
+        return;
+      }
+      writePage(true);
+      _parent.finish();
+    }
+
+    private void writeDataPage(int pageNumber, int prevPageNumber,
+                               int nextPageNumber)
+      throws IOException
+    {
+      List<Entry> entries = _pageEntries;
+      int totalEntrySize = _pageEntriesSize;
+      int childTailPageNumber = INVALID_INDEX_PAGE_NUMBER;
+      if(!_leaf && (entries.size() > 1)) {
+        // the last child is stored as the child tail page
+        Entry lastEntry = entries.get(entries.size() - 1);
+        entries = entries.subList(0, entries.size() - 1);
+        totalEntrySize -= lastEntry.size();
+        childTailPageNumber = lastEntry.getSubPageNumber();
+      }
+
+      byte[] entryPrefix = (!entries.isEmpty() ?
+                            IndexPageCache.findCommonPrefix(
+                                entries.get(0),
+                                entries.get(entries.size() - 1)) :
+                            EMPTY_PREFIX);
+
+      _indexData.writeDataPage(new BulkDataPage(
+          pageNumber, _leaf, prevPageNumber, nextPageNumber,
+          childTailPageNumber, totalEntrySize, entryPrefix, entries));
+    }
+  }
+
+  /**
+   * Simple, immutable implementation of a DataPage used for writing.
+   */
+  private static final class BulkDataPage extends DataPage
+  {
+    private final int _pageNumber;
+    private final boolean _leaf;
+    private final int _prevPageNumber;
+    private final int _nextPageNumber;
+    private final int _childTailPageNumber;
+    private final int _totalEntrySize;
+    private final byte[] _entryPrefix;
+    private final List<Entry> _entries;
+
+    private BulkDataPage(int pageNumber, boolean leaf, int prevPageNumber,
+                         int nextPageNumber, int childTailPageNumber,
+                         int totalEntrySize, byte[] entryPrefix,
+                         List<Entry> entries) {
+      _pageNumber = pageNumber;
+      _leaf = leaf;
+      _prevPageNumber = prevPageNumber;
+      _nextPageNumber = nextPageNumber;
+      _childTailPageNumber = childTailPageNumber;
+      _totalEntrySize = totalEntrySize;
+      _entryPrefix = entryPrefix;
+      _entries = entries;
+    }
+
+    @Override
+    public int getPageNumber() { return _pageNumber; }
+
+    @Override
+    public boolean isLeaf() { return _leaf; }
+    @Override
+    public void setLeaf(boolean isLeaf) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getPrevPageNumber() { return _prevPageNumber; }
+    @Override
+    public void setPrevPageNumber(int pageNumber) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getNextPageNumber() { return _nextPageNumber; }
+    @Override
+    public void setNextPageNumber(int pageNumber) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getChildTailPageNumber() { return _childTailPageNumber; }
+    @Override
+    public void setChildTailPageNumber(int pageNumber) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getTotalEntrySize() { return _totalEntrySize; }
+    @Override
+    public void setTotalEntrySize(int totalSize) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getEntryPrefix() { return _entryPrefix; }
+    @Override
+    public void setEntryPrefix(byte[] entryPrefix) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Entry> getEntries() { return _entries; }
+    @Override
+    public void setEntries(List<Entry> entries) {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public void addEntry(int idx, Entry entry) {
+      throw new UnsupportedOperationException();
+    }
+    @Override
+    public Entry removeEntry(int idx) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A run of sorted (leaf) entries stored in a temp file.
+   */
+  private static final class SortedRun
+  {
+    private final Path _file;
+    private int _numEntries;
+
+    private SortedRun(Path file) {
+      _file = file;
+    }
+
+    public void write(List<Entry> entries) throws IOException {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(_file)));
+      try {
+        for(Entry entry : entries) {
+          byte[] entryBytes = entry.getEntryBytes();
+          out.writeInt(entryBytes.length);
+          out.write(entryBytes);
+          out.writeInt(entry.getRowId().getPageNumber());
+          out.writeByte(entry.getRowId().getRowNumber());
+        }
+      } finally {
+        out.close();
+      }
+      _numEntries = entries.size();
+    }
+
+    public RunReader newReader() throws IOException {
+      return new RunReader(this);
+    }
+
+    public void delete() {
+      try {
+        Files.deleteIfExists(_file);
+      } catch(IOException ignored) {
+        // we tried...
+      }
+    }
+  }
+
+  /**
+   * Reads the entries from a SortedRun.
+   */
+  private static final class RunReader
+  {
+    private final DataInputStream _in;
+    private int _remaining;
+    private Entry _entry;
+
+    private RunReader(SortedRun run) throws IOException {
+      _in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(run._file)));
+      _remaining = run._numEntries;
+    }
+
+    public Entry getEntry() {
+      return _entry;
+    }
+
+    /**
+     * Reads the next entry from the run.
+     * @return {@code true} if there was another entry, {@code false} if the
+     *         run is exhausted (and closed)
+     */
+    public boolean readNext() throws IOException {
+      if(_remaining == 0) {
+        _entry = null;
+        _in.close();
+        return false;
+      }
+      --_remaining;
+      byte[] entryBytes = new byte[_in.readInt()];
+      _in.readFully(entryBytes);
+      int pageNumber = _in.readInt();
+      int rowNumber = _in.readUnsignedByte();
+      _entry = createEntry(entryBytes, new RowIdImpl(pageNumber, rowNumber));
+      return true;
+    }
+
+    public void close() {
+      ByteUtil.closeQuietly(_in);
+    }
+  }
+
+  /**
+   * Merges the entries of multiple SortedRuns into one sorted sequence.
+   */
+  private static final class MergeIterator implements Iterator<Entry>
+  {
+    private final PriorityQueue<RunReader> _readers;
+
+    private MergeIterator(List<SortedRun> runs) throws IOException {
+      _readers = new PriorityQueue<RunReader>(
+          runs.size(), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader r1, RunReader r2) {
+              return r1.getEntry().compareTo(r2.getEntry());
+            }
+          });
+      boolean success = false;
+      List<RunReader> readers = new ArrayList<RunReader>();
+      try {
+        for(SortedRun run : runs) {
+          RunReader reader = run.newReader();
+          readers.add(reader);
+          if(reader.readNext()) {
+            _readers.add(reader);
+          }
+        }
+        success = true;
+      } finally {
+        if(!success) {
+          for(RunReader reader : readers) {
+            reader.close();
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !_readers.isEmpty();
+    }
+
+    @Override
+    public Entry next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      RunReader reader = _readers.poll();
+      Entry entry = reader.getEntry();
+      try {
+        if(reader.readNext()) {
+          _readers.add(reader);
+        }
+      } catch(IOException e) {
+        throw new RuntimeIOException(e);
+      }
+      return entry;
+    }
+
+    public void close() {
+      for(RunReader reader : _readers) {
+        reader.close();
+      }
+      _readers.clear();
+    }
+  }
+}
@@ -19,13 +19,19 @@ package com.healthmarketscience.jackcess.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
 
 import com.healthmarketscience.jackcess.ConstraintViolationException;
 import com.healthmarketscience.jackcess.Index;
@@ -628,6 +634,211 @@ public class IndexData {
                            row, change);
   }
 
+  /**
+   * Creates the entry for the given row for a bulk load of this index (see
+   * {@link IndexBulkLoader}).  All constraints which do not depend on the
+   * other entries in the index are checked before this method returns.
+   *
+   * @param row Row to add
+   * @param rowId rowId of the row to be added
+   *
+   * @return the new entry, or {@code null} if the row is not included in
+   *         this index
+   */
+  Entry createBulkLoadEntry(Object[] row, RowIdImpl rowId)
+    throws IOException
+  {
+    int nullCount = countNullValues(row);
+    boolean isNullEntry = (nullCount == _columns.size());
+    if(shouldIgnoreNulls() && isNullEntry) {
+      // nothing to do
+      return null;
+    }
+    if((nullCount > 0) && (isBackingPrimaryKey() || isRequired())) {
+      throw new ConstraintViolationException(withErrorContext(
+          "Null value found in row " + Arrays.asList(row) +
+          " for primary key or required index"));
+    }
+
+    return new Entry(createEntryBytes(row), rowId);
+  }
+
+  /**
+   * Returns a new (leaf) entry with the given entry bytes and rowId.
+   */
+  static Entry createEntry(byte[] entryBytes, RowIdImpl rowId) {
+    return new Entry(entryBytes, rowId);
+  }
+
+  /**
+   * Returns {@code true} if the given entry is for a row with all {@code
+   * null} index column values, {@code false} otherwise.
+   */
+  boolean isAllNullEntry(Entry entry) {
+    byte[] entryBytes = entry.getEntryBytes();
+    if(entryBytes.length != _columns.size()) {
+      return false;
+    }
+    for(int i = 0; i < entryBytes.length; ++i) {
+      if(entryBytes[i] != getNullEntryFlag(_columns.get(i).isAscending())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if this index does not currently have any entries,
+   * {@code false} otherwise.
+   * <p>
+   * Forces index initialization.
+   */
+  boolean isEmpty() throws IOException {
+    initialize();
+    DataPage rootPage = getDataPage(getRootPageNumber());
+    return (rootPage.isLeaf() && rootPage.isEmpty());
+  }
+
+  /**
+   * Completes a bulk load of this index (see {@link IndexBulkLoader}) which
+   * wrote the index pages directly.
+   *
+   * @param uniqueEntryCount the number of unique entries which were loaded
+   */
+  void bulkLoadCompleted(int uniqueEntryCount) throws IOException {
+    _uniqueEntryCount += uniqueEntryCount;
+    ++_modCount;
+    // discard any stale pages
+    _pageCache.reset(getRootPageNumber());
+  }
+
+  /**
+   * Removes all the entries from this index, leaving an empty root page.  All
+   * the other pages of the index are freed.
+   * <p>
+   * Forces index initialization.
+   */
+  void clear() throws IOException {
+    // make sure the current index pages are consistent
+    update();
+
+    int rootPageNumber = getRootPageNumber();
+    Set<Integer> pageNumbers = new LinkedHashSet<Integer>();
+    collectPageNumbers(rootPageNumber, pageNumbers);
+    pageNumbers.remove(rootPageNumber);
+
+    ByteBuffer buffer = _indexBufferH.getPageBuffer(getPageChannel());
+    writeDataPage(buffer, NEW_ROOT_DATA_PAGE,
+                  getTable().getTableDefPageNumber(), getFormat());
+    getPageChannel().writePage(buffer, rootPageNumber);
+
+    for(Integer pageNumber : pageNumbers) {
+      getPageChannel().deallocatePage(pageNumber);
+      if(_ownedPages.containsPageNumber(pageNumber)) {
+        _ownedPages.removePageNumber(pageNumber);
+      }
+    }
+
+    _uniqueEntryCount = 0;
+    ++_modCount;
+    _pageCache.reset(rootPageNumber);
+  }
+
+  /**
+   * Adds the page numbers of the given index page and all its descendents to
+   * the given set.
+   */
+  private void collectPageNumbers(int pageNumber, Set<Integer> pageNumbers)
+    throws IOException
+  {
+    if((pageNumber == INVALID_INDEX_PAGE_NUMBER) ||
+       !pageNumbers.add(pageNumber)) {
+      return;
+    }
+    DataPage dataPage = getDataPage(pageNumber);
+    if(dataPage.isLeaf()) {
+      return;
+    }
+    for(Entry entry : dataPage.getEntries()) {
+      collectPageNumbers(entry.getSubPageNumber(), pageNumbers);
+    }
+    collectPageNumbers(dataPage.getChildTailPageNumber(), pageNumbers);
+  }
+
+  /**
+   * Returns {@code true} if this index contains an entry with the same entry
+   * bytes as the given entry (ignoring the rowId), {@code false} otherwise.
+   * <p>
+   * Forces index initialization.
+   */
+  boolean containsEntryBytes(Entry entry) throws IOException {
+    initialize();
+    // the "first" entry for the given bytes sorts before any real entries
+    // with the same bytes
+    Position pos = getNextPosition(findEntryPosition(
+        new Entry(entry.getEntryBytes(), RowIdImpl.FIRST_ROW_ID)));
+    return ((pos != null) && entry.equalsEntryBytes(pos.getEntry()));
+  }
+
+  /**
+   * Returns an entry which can be used to search for the first entry with
+   * the given entry bytes (see {@link #findFirstRowId}).
+   */
+  static Entry createSearchEntry(byte[] entryBytes) {
+    return new Entry(entryBytes, RowIdImpl.FIRST_ROW_ID);
+  }
+
+  /**
+   * Returns the rowId of the first entry in this index with the same entry
+   * bytes as the given search entry (as returned from {@link
+   * #createSearchEntry}), {@code null} if there is no such entry.  Unlike
+   * the EntryCursor, does not create any Position instances or (for index
+   * pages which have not been modified) Entry instances.
+   * <p>
+   * Forces index initialization.
+   */
+  RowIdImpl findFirstRowId(Entry searchEntry) throws IOException {
+    initialize();
+    DataPage dataPage = findDataPage(searchEntry);
+    int idx = dataPage.findEntry(searchEntry);
+    if(idx < 0) {
+      idx = missingIndexToInsertionPoint(idx);
+    }
+    if(idx >= dataPage.getEntries().size()) {
+      // the next entry (if any) is on a following page
+      dataPage = getNextNonEmptyDataPage(dataPage);
+      if(dataPage == null) {
+        return null;
+      }
+      idx = 0;
+    }
+
+    List<Entry> entries = dataPage.getEntries();
+    byte[] entryBytes = searchEntry.getEntryBytes();
+    if(entries instanceof CompactEntryList) {
+      return ((CompactEntryList)entries).getRowIdIfEntryBytesEqual(
+          idx, entryBytes);
+    }
+    Entry entry = entries.get(idx);
+    return (Arrays.equals(entryBytes, entry.getEntryBytes()) ?
+            entry.getRowId() : null);
+  }
+
+  /**
+   * Adds the given entry (as returned from {@link #createBulkLoadEntry}) to
+   * this index as part of a bulk load which is merging entries into an
+   * existing index (see {@link IndexBulkLoader#merge}).
+   * <p>
+   * Forces index initialization.
+   */
+  void addBulkLoadEntry(Entry entry) throws IOException {
+    initialize();
+    AddRowPendingChange change = new AddRowPendingChange(null);
+    prepareAddEntry(entry, isAllNullEntry(entry),
+                    new Object[]{entry.getRowId()}, change);
+    change.commit();
+  }
+
   /**
    * Adds an entry to the correct index dataPage, maintaining the order.
    */
@@ -755,6 +966,49 @@ public class IndexData {
     return removedEntry;
   }
 
+  /**
+   * Removes multiple rows from this index.  The entries are removed in
+   * sorted order, so that the index pages are visited sequentially (rather
+   * than in table order).
+   * <p>
+   * Forces index initialization.
+   *
+   * @param rows Rows to remove (only the index columns need to be filled in)
+   * @param rowIds rowIds of the rows to be removed (in the same order as the
+   *               rows)
+   */
+  void deleteRows(List<Object[]> rows, List<RowIdImpl> rowIds)
+    throws IOException
+  {
+    List<Entry> oldEntries = new ArrayList<Entry>(rows.size());
+    for(int i = 0; i < rows.size(); ++i) {
+      Object[] row = rows.get(i);
+      int nullCount = countNullValues(row);
+      if(shouldIgnoreNulls() && (nullCount == _columns.size())) {
+        // nothing to do
+        continue;
+      }
+      oldEntries.add(new Entry(createEntryBytes(row), rowIds.get(i)));
+    }
+
+    if(oldEntries.isEmpty()) {
+      return;
+    }
+
+    // make sure we've parsed the entries
+    initialize();
+
+    Collections.sort(oldEntries);
+    for(Entry oldEntry : oldEntries) {
+      if(removeEntry(oldEntry) != null) {
+        ++_modCount;
+      } else {
+        LOG.warn(withErrorContext(
+            "Failed removing index entry " + oldEntry));
+      }
+    }
+  }
+
   /**
    * Undoes a previous row deletion.
    */
@@ -883,6 +1137,50 @@ public class IndexData {
                            findEntryPosition(endEntry));
   }
 
+  /**
+   * Returns an Iterable over the entries of this index within the range
+   * defined by the given lower and upper bounds.  The bounds are given as
+   * index column values (as for {@link #constructPartialIndexRowFromEntry}),
+   * and may contain only a prefix of the index columns.  When a prefix is
+   * given, all entries which match that prefix are considered equal to the
+   * bound (and included or excluded accordingly).  Only the index pages are
+   * read, the table data pages are never touched.
+   *
+   * @param lower the lower bound index column values, or {@code null} for
+   *              the first entry
+   * @param lowerInclusive whether or not the lower bound is inclusive
+   * @param upper the upper bound index column values, or {@code null} for
+   *              the last entry
+   * @param upperInclusive whether or not the upper bound is inclusive
+   */
+  public Iterable<Entry> range(Object[] lower, final boolean lowerInclusive,
+                               Object[] upper, final boolean upperInclusive)
+  {
+    // for a prefix, the trailing column values determine where the bound
+    // falls relative to the matching entries
+    final Object[] startRow = ((lower != null) ?
+                               constructPartialIndexRowFromEntry(
+                                   (lowerInclusive ? MIN_VALUE : MAX_VALUE),
+                                   lower) :
+                               null);
+    final Object[] endRow = ((upper != null) ?
+                             constructPartialIndexRowFromEntry(
+                                 (upperInclusive ? MAX_VALUE : MIN_VALUE),
+                                 upper) :
+                             null);
+    return new Iterable<Entry>() {
+      @Override
+      public Iterator<Entry> iterator() {
+        try {
+          return new RangeIterator(cursor(startRow, lowerInclusive,
+                                          endRow, upperInclusive));
+        } catch(IOException e) {
+          throw new RuntimeIOException(e);
+        }
+      }
+    };
+  }
+
   private Position findEntryPosition(Entry entry)
     throws IOException
   {
@@ -908,16 +1206,7 @@ public class IndexData {
     if(nextIdx < curPos.getDataPage().getEntries().size()) {
       nextPos = new Position(curPos.getDataPage(), nextIdx);
     } else {
-      int nextPageNumber = curPos.getDataPage().getNextPageNumber();
-      DataPage nextDataPage = null;
-      while(nextPageNumber != INVALID_INDEX_PAGE_NUMBER) {
-        DataPage dp = getDataPage(nextPageNumber);
-        if(!dp.isEmpty()) {
-          nextDataPage = dp;
-          break;
-        }
-        nextPageNumber = dp.getNextPageNumber();
-      }
+      DataPage nextDataPage = getNextNonEmptyDataPage(curPos.getDataPage());
       if(nextDataPage != null) {
         nextPos = new Position(nextDataPage, 0);
       }
@@ -925,6 +1214,24 @@ public class IndexData {
     return nextPos;
   }
 
+  /**
+   * Returns the first non-empty leaf page after the given one, or
+   * {@code null} if none.
+   */
+  private DataPage getNextNonEmptyDataPage(DataPage dataPage)
+    throws IOException
+  {
+    int nextPageNumber = dataPage.getNextPageNumber();
+    while(nextPageNumber != INVALID_INDEX_PAGE_NUMBER) {
+      DataPage dp = getDataPage(nextPageNumber);
+      if(!dp.isEmpty()) {
+        return dp;
+      }
+      nextPageNumber = dp.getNextPageNumber();
+    }
+    return null;
+  }
+
   /**
    * Returns the Position before the given one, or {@code null} if none.
    */
@@ -955,6 +1262,146 @@ public class IndexData {
     return prevPos;
   }
 
+  /**
+   * Finds the RowIds of the entries matching each of the given keys.  Each
+   * key is a list of index column values (as for {@link
+   * #constructPartialIndexRowFromEntry}), possibly only a prefix of the
+   * index columns.  Instead of searching the index from the root for each
+   * key, the keys are sorted by their entry bytes and matched in a single
+   * forward walk of the leaf pages, only searching from the root when the
+   * next key is not on the current (or next) leaf page.
+   *
+   * @return a list of the matching RowIds (in index order) for each key, in
+   *         the iteration order of the given keys
+   */
+  public List<List<RowIdImpl>> lookupAll(Collection<? extends Object[]> keys)
+    throws IOException
+  {
+    initialize();
+
+    // encode the lookup bounds for all keys
+    List<KeyLookup> lookups = new ArrayList<KeyLookup>(keys.size());
+    for(Object[] key : keys) {
+      Entry startEntry = new Entry(
+          createEntryBytes(constructPartialIndexRowFromEntry(MIN_VALUE, key)),
+          RowIdImpl.FIRST_ROW_ID);
+      Entry endEntry = new Entry(
+          createEntryBytes(constructPartialIndexRowFromEntry(MAX_VALUE, key)),
+          RowIdImpl.LAST_ROW_ID);
+      lookups.add(new KeyLookup(startEntry, endEntry));
+    }
+
+    List<KeyLookup> sortedLookups = new ArrayList<KeyLookup>(lookups);
+    Collections.sort(sortedLookups);
+
+    DataPage dataPage = null;
+    KeyLookup prevLookup = null;
+    for(KeyLookup lookup : sortedLookups) {
+
+      if((prevLookup != null) && (prevLookup.compareTo(lookup) == 0)) {
+        // duplicate key, same results
+        lookup._rowIds = prevLookup._rowIds;
+        continue;
+      }
+      prevLookup = lookup;
+
+      Entry startEntry = lookup._startEntry;
+      dataPage = findLookupDataPage(dataPage, startEntry);
+
+      int idx = dataPage.findEntry(startEntry);
+      if(idx < 0) {
+        idx = missingIndexToInsertionPoint(idx);
+      }
+
+      List<RowIdImpl> rowIds = new ArrayList<RowIdImpl>();
+      DataPage curDataPage = dataPage;
+      while(curDataPage != null) {
+        List<Entry> entries = curDataPage.getEntries();
+        if(idx >= entries.size()) {
+          curDataPage = getNextNonEmptyDataPage(curDataPage);
+          idx = 0;
+          continue;
+        }
+        Entry entry = entries.get(idx);
+        if(entry.compareTo(lookup._endEntry) >= 0) {
+          break;
+        }
+        rowIds.add(entry.getRowId());
+        ++idx;
+      }
+      lookup._rowIds = rowIds;
+    }
+
+    List<List<RowIdImpl>> results = new ArrayList<List<RowIdImpl>>(
+        lookups.size());
+    for(KeyLookup lookup : lookups) {
+      results.add(lookup._rowIds);
+    }
+    return results;
+  }
+
+  /**
+   * Returns the leaf page on which the given entry would be found, using
+   * the given current leaf page (or its next page) if possible, otherwise
+   * searching from the root.
+   */
+  private DataPage findLookupDataPage(DataPage curDataPage, Entry entry)
+    throws IOException
+  {
+    if((curDataPage != null) && !curDataPage.isEmpty()) {
+      List<Entry> entries = curDataPage.getEntries();
+      if(entry.compareTo(entries.get(0)) >= 0) {
+        if(entry.compareTo(entries.get(entries.size() - 1)) <= 0) {
+          return curDataPage;
+        }
+        DataPage nextDataPage = getNextNonEmptyDataPage(curDataPage);
+        if(nextDataPage != null) {
+          entries = nextDataPage.getEntries();
+          if(entry.compareTo(entries.get(entries.size() - 1)) <= 0) {
+            return nextDataPage;
+          }
+        }
+      }
+    }
+    return findDataPage(entry);
+  }
+
+  /**
+   * Returns the number of leading columns of this index whose values can be
+   * decoded directly from the index entries.
+   * @see #decodeEntryValues
+   */
+  public int getDecodableColumnCount() {
+    int count = 0;
+    for(ColumnDescriptor col : _columns) {
+      if(!col.isDecodable()) {
+        break;
+      }
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Decodes the index column values from the bytes of the given entry (no
+   * table data is read).  Only the leading columns which are decodable are
+   * returned (see {@link #getDecodableColumnCount}), in index column order.
+   */
+  public Object[] decodeEntryValues(Entry entry)
+    throws IOException
+  {
+    if(!entry.isValid()) {
+      throw new IllegalArgumentException(
+          withErrorContext("Invalid entry given " + entry));
+    }
+    Object[] values = new Object[getDecodableColumnCount()];
+    ByteBuffer buffer = ByteBuffer.wrap(entry.getEntryBytes());
+    for(int i = 0; i < values.length; ++i) {
+      values[i] = _columns.get(i).readValue(buffer);
+    }
+    return values;
+  }
+
   /**
    * Returns the valid insertion point for an index indicating a missing
    * entry.
@@ -1182,7 +1629,8 @@ public class IndexData {
 
   /**
    * Reads an index page, populating the correct collection based on the page
-   * type (node or leaf).
+   * type (node or leaf).  The entries are stored in a compact form (see
+   * {@link CompactEntryList}).
    */
   protected void readDataPage(DataPage dataPage)
     throws IOException
@@ -1200,56 +1648,70 @@ public class IndexData {
     int entryMaskLength = getFormat().SIZE_INDEX_ENTRY_MASK;
     int entryMaskPos = getFormat().OFFSET_INDEX_ENTRY_MASK;
     int entryPos = entryMaskPos + entryMaskLength;
-    int lastStart = 0;
-    int totalEntrySize = 0;
-    byte[] entryPrefix = null;
-    List<Entry> entries = new ArrayList<Entry>();
-    TempBufferHolder tmpEntryBufferH =
-      TempBufferHolder.newHolder(TempBufferHolder.Type.HARD, true,
-                                 ENTRY_BYTE_ORDER);
-
-    Entry prevEntry = FIRST_ENTRY;
+
+    // the entry mask has a bit set at the end of each entry
+    int numEntries = 0;
+    for (int i = 0; i < entryMaskLength; i++) {
+      numEntries += Integer.bitCount(
+          ByteUtil.asUnsignedByte(buffer.get(entryMaskPos + i)));
+    }
+    int[] entryOffsets = new int[numEntries + 1];
+    int entryIdx = 0;
     for (int i = 0; i < entryMaskLength; i++) {
       byte entryMask = buffer.get(entryMaskPos + i);
       for (int j = 0; j < 8; j++) {
         if ((entryMask & (1 << j)) != 0) {
-          int length = (i * 8) + j - lastStart;
-          buffer.position(entryPos + lastStart);
-
-          // determine if we can read straight from the index page (if no
-          // entryPrefix).  otherwise, create temp buf with complete entry.
-          ByteBuffer curEntryBuffer = buffer;
-          int curEntryLen = length;
-          if(entryPrefix != null) {
-            curEntryBuffer = getTempEntryBuffer(
-                buffer, length, entryPrefix, tmpEntryBufferH);
-            curEntryLen += entryPrefix.length;
-          }
-          totalEntrySize += curEntryLen;
-
-          Entry entry = newEntry(curEntryBuffer, curEntryLen, isLeaf);
-          if(prevEntry.compareTo(entry) >= 0) {
-            throw new IOException(withErrorContext(
-                    "Unexpected order in index entries, " +
-                    prevEntry + " >= " + entry));
-          }
+          entryOffsets[++entryIdx] = (i * 8) + j;
+        }
+      }
+    }
 
-          entries.add(entry);
+    byte[] entryPrefix = EMPTY_PREFIX;
+    if((numEntries > 0) && (entryPrefixLength > 0)) {
+      // the first entry includes the shared entry prefix
+      entryPrefix = ByteUtil.getBytes(buffer, entryPos, entryPrefixLength);
+    }
 
-          if((entries.size() == 1) && (entryPrefixLength > 0)) {
-            // read any shared entry prefix
-            entryPrefix = new byte[entryPrefixLength];
-            buffer.position(entryPos + lastStart);
-            buffer.get(entryPrefix);
-          }
+    // copy the complete bytes of each entry (re-expanding the shared entry
+    // prefix) into one array, converting the offsets as we go
+    int totalEntrySize = ((numEntries > 0) ?
+                          (entryOffsets[numEntries] +
+                           (entryPrefix.length * (numEntries - 1))) : 0);
+    byte[] entryBytes = new byte[totalEntrySize];
+    int minEntryLen = CompactEntryList.getTrailingLength(isLeaf);
+    int lastStart = 0;
+    int curPos = 0;
+    for(int i = 0; i < numEntries; ++i) {
+      int lastEnd = entryOffsets[i + 1];
+      entryOffsets[i] = curPos;
+      if(i > 0) {
+        System.arraycopy(entryPrefix, 0, entryBytes, curPos,
+                         entryPrefix.length);
+        curPos += entryPrefix.length;
+      }
+      int length = lastEnd - lastStart;
+      System.arraycopy(buffer.array(), entryPos + lastStart, entryBytes,
+                       curPos, length);
+      curPos += length;
+      if((curPos - entryOffsets[i]) < minEntryLen) {
+        throw new IOException(withErrorContext(
+                "Unexpected index entry length " + (curPos - entryOffsets[i])));
+      }
+      lastStart = lastEnd;
+    }
+    entryOffsets[numEntries] = curPos;
 
-          lastStart += length;
-          prevEntry = entry;
-        }
+    CompactEntryList entries = new CompactEntryList(
+        entryBytes, entryOffsets, isLeaf);
+    for(int i = 1; i < numEntries; ++i) {
+      if(entries.compareEntries(i - 1, i) >= 0) {
+        throw new IOException(withErrorContext(
+                "Unexpected order in index entries, " +
+                entries.get(i - 1) + " >= " + entries.get(i)));
       }
     }
 
-    dataPage.setEntryPrefix(entryPrefix != null ? entryPrefix : EMPTY_PREFIX);
+    dataPage.setEntryPrefix(entryPrefix);
     dataPage.setEntries(entries);
     dataPage.setTotalEntrySize(totalEntrySize);
 
@@ -1277,23 +1739,17 @@ public class IndexData {
   }
 
   /**
-   * Returns an entry buffer containing the relevant data for an entry given
-   * the valuePrefix.
+   * Finds the given entry in the given sorted list of entries.
+   *
+   * @return the index of the entry if found, otherwise {@code (-(insertion
+   *         point) - 1)} (see {@link Collections#binarySearch})
    */
-  private ByteBuffer getTempEntryBuffer(
-      ByteBuffer indexPage, int entryLen, byte[] valuePrefix,
-      TempBufferHolder tmpEntryBufferH)
-  {
-    ByteBuffer tmpEntryBuffer = tmpEntryBufferH.getBuffer(
-        getPageChannel(), valuePrefix.length + entryLen);
-
-    // combine valuePrefix and rest of entry from indexPage, then prep for
-    // reading
-    tmpEntryBuffer.put(valuePrefix);
-    tmpEntryBuffer.put(indexPage.array(), indexPage.position(), entryLen);
-    tmpEntryBuffer.flip();
-
-    return tmpEntryBuffer;
+  static int findEntry(List<Entry> entries, Entry entry) {
+    if(entries instanceof CompactEntryList) {
+      // avoid creating Entry instances while searching
+      return ((CompactEntryList)entries).find(entry);
+    }
+    return Collections.binarySearch(entries, entry);
   }
 
   /**
@@ -1378,6 +1834,73 @@ public class IndexData {
     return _entryBuffer.toByteArray();
   }
 
+  /**
+   * Creates the entry bytes for the given index column values (as for
+   * {@link #constructPartialIndexRowFromEntry}), possibly only a prefix of
+   * the index columns.  Entry bytes compare in index order using {@link
+   * #BYTE_CODE_COMPARATOR}.
+   */
+  public byte[] createEntryBytesFromEntry(Object... values)
+    throws IOException
+  {
+    return createEntryBytes(constructPartialIndexRowFromEntry(
+                                MIN_VALUE, values));
+  }
+
+  /**
+   * Writes the entry bytes for the given index column values (one for each
+   * of the index columns, in the order of the index columns) to the given
+   * stream.  Unlike {@link #createEntryBytesFromEntry}, does not create a
+   * row array or a new byte[].
+   *
+   * @throws IllegalArgumentException if the wrong number of values are
+   *         provided
+   */
+  void writeEntryBytesFromEntry(Object[] values, ByteStream bout)
+    throws IOException
+  {
+    if(values.length != _columns.size()) {
+      throw new IllegalArgumentException(withErrorContext(
+          "Wrong number of column values given " + values.length +
+          ", expected " + _columns.size()));
+    }
+    for(int i = 0; i < values.length; ++i) {
+      _columns.get(i).writeValue(values[i], bout);
+    }
+  }
+
+  /**
+   * Whether or not this index consists of a single integral column whose
+   * entry bytes can be written directly from a primitive value (see {@link
+   * #writeEntryBytesFromEntry(long,ByteStream)}).
+   */
+  boolean isIntegralEntry() {
+    return ((_columns.size() == 1) &&
+            (_columns.get(0) instanceof IntegerColumnDescriptor) &&
+            ((IntegerColumnDescriptor)_columns.get(0)).isIntegral());
+  }
+
+  /**
+   * Writes the entry bytes for the given value of the single integral column
+   * of this index to the given stream, without creating any intermediate
+   * objects.
+   *
+   * @return {@code true} if the value was written, {@code false} if the value
+   *         is out of range for the column (and therefore cannot match any
+   *         entry in this index)
+   * @throws IllegalStateException if this is not an integral index (see
+   *         {@link #isIntegralEntry})
+   */
+  boolean writeEntryBytesFromEntry(long value, ByteStream bout)
+  {
+    if(!isIntegralEntry()) {
+      throw new IllegalStateException(withErrorContext(
+          "Index is not a single integral column"));
+    }
+    return ((IntegerColumnDescriptor)_columns.get(0)).writeLongValue(
+        value, bout);
+  }
+
   /**
    * Finds the data page for the given entry.
    */
@@ -1433,6 +1956,29 @@ public class IndexData {
     return column.write(value, 0, ENTRY_BYTE_ORDER).array();
   }
 
+  /**
+   * Reads the (encoded) bytes of a number value of the given column type
+   * from the given entry buffer.
+   */
+  private static byte[] readNumberColumnBytes(ByteBuffer buffer,
+                                              ColumnImpl column)
+  {
+    byte[] valueBytes = new byte[column.getType().getFixedSize()];
+    buffer.get(valueBytes);
+    return valueBytes;
+  }
+
+  /**
+   * Reads the value of the given column type from a (big endian) byte array
+   * and returns it.
+   */
+  private static Object decodeNumberColumnValue(byte[] valueBytes,
+                                                ColumnImpl column)
+    throws IOException
+  {
+    return column.read(valueBytes, ENTRY_BYTE_ORDER);
+  }
+
   /**
    * Writes a binary value using the general binary entry encoding rules.
    */
@@ -1662,6 +2208,36 @@ public class IndexData {
     protected abstract void writeNonNullValue(Object value, ByteStream bout)
       throws IOException;
 
+    /**
+     * Whether or not values for this column can be decoded from the index
+     * entry bytes (the encoding for some column types, e.g. text, is not
+     * reversible).
+     */
+    public boolean isDecodable() {
+      return false;
+    }
+
+    /**
+     * Reads the value for this column from the given buffer, which must be
+     * positioned at the start of the column's entry bytes.  On return, the
+     * buffer will be positioned after the column's entry bytes.
+     */
+    protected final Object readValue(ByteBuffer buffer)
+      throws IOException
+    {
+      if(isNullEntry(buffer.get())) {
+        return null;
+      }
+      return readNonNullValue(buffer);
+    }
+
+    protected Object readNonNullValue(ByteBuffer buffer)
+      throws IOException
+    {
+      throw new UnsupportedOperationException(
+          "Cannot decode index entries for column " + getName());
+    }
+
     @Override
     public String toString() {
       return CustomToStringStyle.builder(this)
@@ -1699,6 +2275,72 @@ public class IndexData {
 
       bout.write(valueBytes);
     }
+
+    /**
+     * Whether or not the column holds (unscaled) integral values.
+     */
+    private boolean isIntegral() {
+      switch(getColumn().getType()) {
+      case INT:
+      case LONG:
+      case COMPLEX_TYPE:
+      case BIG_INT:
+        return true;
+      default:
+        return false;
+      }
+    }
+
+    /**
+     * Writes the given integral value (including the start flag), following
+     * the same rules as {@link #writeNonNullValue}.
+     *
+     * @return {@code false} if the value does not fit in the column type
+     */
+    private boolean writeLongValue(long value, ByteStream bout)
+    {
+      int size = getColumn().getType().getFixedSize();
+      if(size < 8) {
+        long maxValue = (1L << ((size * 8) - 1)) - 1L;
+        if((value > maxValue) || (value < (-maxValue - 1L))) {
+          return false;
+        }
+      }
+
+      bout.write(getStartEntryFlag(isAscending()));
+
+      // write big endian bytes, flipping the first bit (and all the bits if
+      // descending)
+      int flipMask = (isAscending() ? 0 : 0xFF);
+      for(int i = size - 1; i >= 0; --i) {
+        int b = (int)(value >>> (i * 8)) & 0xFF;
+        if(i == (size - 1)) {
+          b ^= 0x80;
+        }
+        bout.write(b ^ flipMask);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isDecodable() {
+      return true;
+    }
+
+    @Override
+    protected Object readNonNullValue(ByteBuffer buffer)
+      throws IOException
+    {
+      byte[] valueBytes = readNumberColumnBytes(buffer, getColumn());
+
+      // reverse the bit twiddling rules above
+      if(!isAscending()) {
+        flipBytes(valueBytes);
+      }
+      flipFirstBitInByte(valueBytes, 0);
+
+      return decodeNumberColumnValue(valueBytes, getColumn());
+    }
   }
 
   /**
@@ -1738,6 +2380,32 @@ public class IndexData {
 
       bout.write(valueBytes);
     }
+
+    @Override
+    public boolean isDecodable() {
+      return true;
+    }
+
+    @Override
+    protected Object readNonNullValue(ByteBuffer buffer)
+      throws IOException
+    {
+      byte[] valueBytes = readNumberColumnBytes(buffer, getColumn());
+
+      // after the bit twiddling rules above, the first bit is set for
+      // ascending non-negative numbers and descending negative numbers
+      boolean isFirstBitSet = ((valueBytes[0] & 0x80) != 0);
+      boolean isNegative = (isFirstBitSet != isAscending());
+
+      if(isNegative == isAscending()) {
+        flipBytes(valueBytes);
+      }
+      if(!isNegative) {
+        flipFirstBitInByte(valueBytes, 0);
+      }
+
+      return decodeNumberColumnValue(valueBytes, getColumn());
+    }
   }
 
   /**
@@ -1843,6 +2511,22 @@ public class IndexData {
 
       bout.write(valueBytes);
     }
+
+    @Override
+    public boolean isDecodable() {
+      return true;
+    }
+
+    @Override
+    protected Object readNonNullValue(ByteBuffer buffer)
+      throws IOException
+    {
+      byte[] valueBytes = readNumberColumnBytes(buffer, getColumn());
+      if(!isAscending()) {
+        flipBytes(valueBytes);
+      }
+      return decodeNumberColumnValue(valueBytes, getColumn());
+    }
   }
 
   /**
@@ -1871,6 +2555,19 @@ public class IndexData {
           (isAscending() ? ASC_BOOLEAN_TRUE : DESC_BOOLEAN_TRUE) :
           (isAscending() ? ASC_BOOLEAN_FALSE : DESC_BOOLEAN_FALSE));
     }
+
+    @Override
+    public boolean isDecodable() {
+      return true;
+    }
+
+    @Override
+    protected Object readNonNullValue(ByteBuffer buffer)
+      throws IOException
+    {
+      return (buffer.get() ==
+              (isAscending() ? ASC_BOOLEAN_TRUE : DESC_BOOLEAN_TRUE));
+    }
   }
 
   /**
@@ -1879,6 +2576,9 @@ public class IndexData {
   private static final class GenLegTextColumnDescriptor
     extends ColumnDescriptor
   {
+    /** lazily created, only needed when writing entries */
+    private TextIndexEncoder _encoder;
+
     private GenLegTextColumnDescriptor(ColumnImpl column, byte flags)
       throws IOException
     {
@@ -1889,8 +2589,11 @@ public class IndexData {
     protected void writeNonNullValue(Object value, ByteStream bout)
       throws IOException
     {
-      GeneralLegacyIndexCodes.GEN_LEG_INSTANCE.writeNonNullIndexTextValue(
-          value, bout, isAscending());
+      if(_encoder == null) {
+        _encoder = new TextIndexEncoder(
+            GeneralLegacyIndexCodes.GEN_LEG_INSTANCE);
+      }
+      _encoder.writeNonNullIndexTextValue(value, bout, isAscending());
     }
   }
 
@@ -1899,6 +2602,9 @@ public class IndexData {
    */
   private static final class GenTextColumnDescriptor extends ColumnDescriptor
   {
+    /** lazily created, only needed when writing entries */
+    private TextIndexEncoder _encoder;
+
     private GenTextColumnDescriptor(ColumnImpl column, byte flags)
       throws IOException
     {
@@ -1909,8 +2615,10 @@ public class IndexData {
     protected void writeNonNullValue(Object value, ByteStream bout)
       throws IOException
     {
-      GeneralIndexCodes.GEN_INSTANCE.writeNonNullIndexTextValue(
-          value, bout, isAscending());
+      if(_encoder == null) {
+        _encoder = new TextIndexEncoder(GeneralIndexCodes.GEN_INSTANCE);
+      }
+      _encoder.writeNonNullIndexTextValue(value, bout, isAscending());
     }
   }
 
@@ -2556,6 +3264,64 @@ public class IndexData {
     }
   }
 
+  /**
+   * Iterator over the entries of an EntryCursor (moving forward), not
+   * modifiable.
+   */
+  private static final class RangeIterator implements Iterator<Entry>
+  {
+    private final EntryCursor _cursor;
+    private Entry _next;
+
+    private RangeIterator(EntryCursor cursor) {
+      _cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if(_next == null) {
+        try {
+          _next = _cursor.getNextEntry();
+        } catch(IOException e) {
+          throw new RuntimeIOException(e);
+        }
+      }
+      return !_cursor.getLastEntry().equals(_next);
+    }
+
+    @Override
+    public Entry next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Entry rtn = _next;
+      _next = null;
+      return rtn;
+    }
+  }
+
+  /**
+   * Value object for the state of a single key in a {@link #lookupAll}
+   * call.
+   */
+  private static final class KeyLookup implements Comparable<KeyLookup>
+  {
+    private final Entry _startEntry;
+    private final Entry _endEntry;
+    private List<RowIdImpl> _rowIds;
+
+    private KeyLookup(Entry startEntry, Entry endEntry) {
+      _startEntry = startEntry;
+      _endEntry = endEntry;
+    }
+
+    @Override
+    public int compareTo(KeyLookup other) {
+      int cmp = _startEntry.compareTo(other._startEntry);
+      return ((cmp != 0) ? cmp : _endEntry.compareTo(other._endEntry));
+    }
+  }
+
   /**
    * Simple value object for maintaining some cursor state.
    */
@@ -2705,7 +3471,7 @@ public class IndexData {
     }
 
     public final int findEntry(Entry entry) {
-      return Collections.binarySearch(getEntries(), entry);
+      return IndexData.findEntry(getEntries(), entry);
     }
 
     @Override
@@ -2788,6 +3554,209 @@ public class IndexData {
     public Entry removeEntry(int idx) { return null; }
   }
 
+  /**
+   * Compact, read-only list of the entries read from an index page.  The
+   * complete bytes of all the entries (including the shared entry prefix and
+   * the trailing rowId/sub-page bytes) are kept in one array along with a
+   * table of the entry offsets.  Entry instances are only created when
+   * retrieved from the list, and searching the list compares directly
+   * against the stored bytes.  Pages which are modified are converted to a
+   * normal list of entries by the IndexPageCache.
+   */
+  static final class CompactEntryList extends AbstractList<Entry>
+    implements RandomAccess
+  {
+    /** the complete bytes of all the entries */
+    private final byte[] _entryBytes;
+    /** the offsets of each entry in _entryBytes, with a final offset for the
+        end of the last entry */
+    private final int[] _entryOffsets;
+    private final boolean _leaf;
+
+    private CompactEntryList(byte[] entryBytes, int[] entryOffsets,
+                             boolean isLeaf) {
+      _entryBytes = entryBytes;
+      _entryOffsets = entryOffsets;
+      _leaf = isLeaf;
+    }
+
+    /**
+     * Returns the number of bytes following the entry value bytes for an
+     * entry on a leaf/node page.
+     */
+    private static int getTrailingLength(boolean isLeaf) {
+      // 4 bytes for the rowId, plus 4 bytes for the sub-page number for
+      // node entries
+      return (isLeaf ? 4 : 8);
+    }
+
+    @Override
+    public int size() {
+      return _entryOffsets.length - 1;
+    }
+
+    @Override
+    public Entry get(int idx) {
+      if((idx < 0) || (idx >= size())) {
+        throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " +
+                                            size());
+      }
+      int start = _entryOffsets[idx];
+      int len = _entryOffsets[idx + 1] - start;
+      try {
+        return newEntry(ByteBuffer.wrap(_entryBytes, start, len), len, _leaf);
+      } catch(IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+
+    /**
+     * Finds the given entry in this list.
+     *
+     * @return the index of the entry if found, otherwise {@code (-(insertion
+     *         point) - 1)} (see {@link Collections#binarySearch})
+     */
+    public int find(Entry entry) {
+      int low = 0;
+      int high = size() - 1;
+      while(low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compareTo(mid, entry);
+        if(cmp < 0) {
+          low = mid + 1;
+        } else if(cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    /**
+     * Compares the entry at the given index to the given entry (consistent
+     * with {@link Entry#compareTo}).
+     */
+    private int compareTo(int idx, Entry entry) {
+      int start = _entryOffsets[idx];
+      int valueLen = getValueLength(idx);
+
+      if(entry.isValid()) {
+        // compare by actual byte values
+        byte[] otherBytes = entry.getEntryBytes();
+        int entryCmp = compareBytes(_entryBytes, start, valueLen,
+                                    otherBytes, 0, otherBytes.length);
+        if(entryCmp != 0) {
+          return entryCmp;
+        }
+      } else {
+        // all the entries on a page are normal, valid entries
+        int typeCmp = EntryType.NORMAL.compareTo(entry.getType());
+        if(typeCmp != 0) {
+          return typeCmp;
+        }
+      }
+
+      // at this point we let the RowId decide the final result
+      RowIdImpl rowId = entry.getRowId();
+      int typeCmp = RowIdImpl.Type.NORMAL.compareTo(rowId.getType());
+      if(typeCmp != 0) {
+        return typeCmp;
+      }
+      int rowIdPos = start + valueLen;
+      int pageCmp = Integer.compare(getPageNumber(rowIdPos),
+                                    rowId.getPageNumber());
+      if(pageCmp != 0) {
+        return pageCmp;
+      }
+      return Integer.compare(getRowNumber(rowIdPos), rowId.getRowNumber());
+    }
+
+    /**
+     * Compares the entries at the given indexes (consistent with {@link
+     * Entry#compareTo}).
+     */
+    private int compareEntries(int idx1, int idx2) {
+      int start1 = _entryOffsets[idx1];
+      int valueLen1 = getValueLength(idx1);
+      int start2 = _entryOffsets[idx2];
+      int valueLen2 = getValueLength(idx2);
+      int entryCmp = compareBytes(_entryBytes, start1, valueLen1,
+                                  _entryBytes, start2, valueLen2);
+      if(entryCmp != 0) {
+        return entryCmp;
+      }
+      // the (big endian) rowId bytes compare correctly as unsigned bytes
+      return compareBytes(_entryBytes, start1 + valueLen1, 4,
+                          _entryBytes, start2 + valueLen2, 4);
+    }
+
+    /**
+     * Returns the rowId of the entry at the given index if the value bytes of
+     * that entry are equal to the given bytes, {@code null} otherwise.
+     */
+    public RowIdImpl getRowIdIfEntryBytesEqual(int idx, byte[] entryBytes) {
+      int start = _entryOffsets[idx];
+      int valueLen = getValueLength(idx);
+      if(compareBytes(_entryBytes, start, valueLen,
+                      entryBytes, 0, entryBytes.length) != 0) {
+        return null;
+      }
+      int rowIdPos = start + valueLen;
+      return new RowIdImpl(getPageNumber(rowIdPos), getRowNumber(rowIdPos));
+    }
+
+    /**
+     * Returns the sub-page number of the node entry at the given index.
+     */
+    public int getSubPageNumber(int idx) {
+      if(_leaf) {
+        throw new UnsupportedOperationException();
+      }
+      // the sub-page number is the last 4 (big endian) bytes of the entry
+      int pos = _entryOffsets[idx + 1] - 4;
+      return ((_entryBytes[pos] << 24) |
+              (ByteUtil.asUnsignedByte(_entryBytes[pos + 1]) << 16) |
+              (ByteUtil.asUnsignedByte(_entryBytes[pos + 2]) << 8) |
+              ByteUtil.asUnsignedByte(_entryBytes[pos + 3]));
+    }
+
+    private int getValueLength(int idx) {
+      return _entryOffsets[idx + 1] - _entryOffsets[idx] -
+        getTrailingLength(_leaf);
+    }
+
+    private int getPageNumber(int rowIdPos) {
+      return ((ByteUtil.asUnsignedByte(_entryBytes[rowIdPos]) << 16) |
+              (ByteUtil.asUnsignedByte(_entryBytes[rowIdPos + 1]) << 8) |
+              ByteUtil.asUnsignedByte(_entryBytes[rowIdPos + 2]));
+    }
+
+    private int getRowNumber(int rowIdPos) {
+      return ByteUtil.asUnsignedByte(_entryBytes[rowIdPos + 3]);
+    }
+
+    /**
+     * Compares the given byte ranges (consistent with {@link
+     * #BYTE_CODE_COMPARATOR}).
+     */
+    private static int compareBytes(byte[] left, int leftOffset, int leftLen,
+                                    byte[] right, int rightOffset,
+                                    int rightLen) {
+      int len = Math.min(leftLen, rightLen);
+      int pos = 0;
+      while((pos < len) &&
+            (left[leftOffset + pos] == right[rightOffset + pos])) {
+        ++pos;
+      }
+      if(pos < len) {
+        return ((ByteUtil.asUnsignedByte(left[leftOffset + pos]) <
+                 ByteUtil.asUnsignedByte(right[rightOffset + pos])) ? -1 : 1);
+      }
+      return ((leftLen < rightLen) ? -1 : ((leftLen > rightLen) ? 1 : 0));
+    }
+  }
+
   /**
    * Utility class which maintains information about a pending index update.
    * An instance of this class can be used to complete the change (by calling
@@ -18,13 +18,18 @@ package com.healthmarketscience.jackcess.impl;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import com.healthmarketscience.jackcess.CursorBuilder;
 import com.healthmarketscience.jackcess.Index;
 import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.RuntimeIOException;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -238,6 +243,90 @@ public class IndexImpl implements Index, Comparable<IndexImpl>
   public CursorBuilder newCursor() {
     return getTable().newCursor().setIndex(this);
   }
+
+  @Override
+  public Iterable<RowId> range(Object[] lower, boolean lowerInclusive,
+                               Object[] upper, boolean upperInclusive)
+  {
+    final Iterable<IndexData.Entry> entries = rangeEntries(
+        lower, lowerInclusive, upper, upperInclusive);
+    return new Iterable<RowId>() {
+      @Override
+      public Iterator<RowId> iterator() {
+        final Iterator<IndexData.Entry> iter = entries.iterator();
+        return new Iterator<RowId>() {
+          @Override
+          public boolean hasNext() {
+            return iter.hasNext();
+          }
+          @Override
+          public RowId next() {
+            return iter.next().getRowId();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public Iterable<Object[]> rangeValues(Object[] lower, boolean lowerInclusive,
+                                        Object[] upper, boolean upperInclusive)
+  {
+    if(getIndexData().getDecodableColumnCount() == 0) {
+      throw new UnsupportedOperationException(withErrorContext(
+          "Cannot decode values for index column " +
+          getColumns().get(0).getName()));
+    }
+    final Iterable<IndexData.Entry> entries = rangeEntries(
+        lower, lowerInclusive, upper, upperInclusive);
+    return new Iterable<Object[]>() {
+      @Override
+      public Iterator<Object[]> iterator() {
+        final Iterator<IndexData.Entry> iter = entries.iterator();
+        return new Iterator<Object[]>() {
+          @Override
+          public boolean hasNext() {
+            return iter.hasNext();
+          }
+          @Override
+          public Object[] next() {
+            try {
+              return getIndexData().decodeEntryValues(iter.next());
+            } catch(IOException e) {
+              throw new RuntimeIOException(e);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public List<List<RowId>> lookupAll(Collection<? extends Object[]> keys)
+    throws IOException
+  {
+    List<List<RowId>> results = new ArrayList<List<RowId>>(keys.size());
+    for(List<RowIdImpl> rowIds : getIndexData().lookupAll(keys)) {
+      results.add(Collections.<RowId>unmodifiableList(rowIds));
+    }
+    return results;
+  }
+
+  @Override
+  public PreparedLookupImpl prepareLookup() {
+    return new PreparedLookupImpl(this);
+  }
+
+  /**
+   * Returns an Iterable over the index entries within the given range.
+   * @see #range
+   */
+  public Iterable<IndexData.Entry> rangeEntries(
+      Object[] lower, boolean lowerInclusive,
+      Object[] upper, boolean upperInclusive)
+  {
+    return getIndexData().range(lower, lowerInclusive, upper, upperInclusive);
+  }
   
   /**
    * Whether or not the complete index state has been read.
@@ -21,7 +21,6 @@ import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -42,9 +41,16 @@ public class IndexPageCache
   }
 
   /** max number of pages to cache (unless a write operation is in
-      progress) */
-  private static final int MAX_CACHE_SIZE = 25;
-  
+      progress) when the database does not configure an index page cache
+      size */
+  private static final int DEFAULT_MAX_CACHE_SIZE = 25;
+  /** min number of pages to cache when sharing the database index page cache
+      size with other indexes */
+  private static final int MIN_CACHE_SIZE = 4;
+  /** max access count tracked for a page (bounds the number of "second
+      chances" a frequently used page gets during a purge) */
+  private static final int MAX_ACCESS_COUNT = 8;
+
   /** the index whose pages this cache is managing */
   private final IndexData _indexData;
   /** the root page for the index */
@@ -58,8 +64,11 @@ public class IndexPageCache
       // only purge when the size is too big and a logical write operation is
       // not in progress (while an update is happening, the pages can be in
       // flux and removing pages from the cache can cause problems)
-      if((size() > MAX_CACHE_SIZE) && !getPageChannel().isWriting()) {
-        purgeOldPages();
+      if(!getPageChannel().isWriting()) {
+        int maxCacheSize = getMaxCacheSize();
+        if(size() > maxCacheSize) {
+          purgeOldPages(maxCacheSize);
+        }
       }
       return false;
     }
@@ -79,6 +88,19 @@ public class IndexPageCache
   public PageChannel getPageChannel() {
     return getIndexData().getPageChannel();
   }
+
+  private DatabaseImpl getDatabase() {
+    return getIndexData().getTable().getDatabase();
+  }
+
+  /**
+   * Returns the max number of pages which this cache should currently retain
+   * (unless a write operation is in progress).
+   */
+  private int getMaxCacheSize() {
+    return getDatabase().getIndexPageCacheShare(
+        DEFAULT_MAX_CACHE_SIZE, MIN_CACHE_SIZE);
+  }
   
   /**
    * Sets the root page for this index, must be called before normal usage.
@@ -86,6 +108,28 @@ public class IndexPageCache
    * @param pageNumber the root page number
    */
   public void setRootPageNumber(int pageNumber) throws IOException {
+    getDatabase().registerIndexPageCache(this);
+    loadRootPage(pageNumber);
+  }
+
+  /**
+   * Discards all the cached pages (which must not have any outstanding
+   * changes) and reloads the root page.  Used after the index pages have
+   * been written directly (e.g. by a bulk load).
+   *
+   * @param pageNumber the root page number
+   */
+  public void reset(int pageNumber) throws IOException {
+    if(!_modifiedPages.isEmpty()) {
+      throw new IllegalStateException(withErrorContext(
+              "Cannot reset index page cache with modified pages"));
+    }
+    _dataPages.clear();
+    _rootPage = null;
+    loadRootPage(pageNumber);
+  }
+
+  private void loadRootPage(int pageNumber) throws IOException {
     _rootPage = getDataPage(pageNumber);
     // root page has no parent
     _rootPage.initParentPage(INVALID_INDEX_PAGE_NUMBER, false);
@@ -104,8 +148,9 @@ public class IndexPageCache
     // finally, write all the modified pages (which are not being deleted)
     writeDataPages();
     // after we write everything, we can purge our cache if necessary
-    if(_dataPages.size() > MAX_CACHE_SIZE) {
-      purgeOldPages();
+    int maxCacheSize = getMaxCacheSize();
+    if(_dataPages.size() > maxCacheSize) {
+      purgeOldPages(maxCacheSize);
     }
   }
 
@@ -220,7 +265,11 @@ public class IndexPageCache
     throws IOException
   {
     DataPageMain dataPage = _dataPages.get(pageNumber);
-    if((dataPage == null) && (pageNumber > INVALID_INDEX_PAGE_NUMBER)) {
+    if(dataPage != null) {
+      dataPage.recordAccess();
+      getDatabase().recordIndexPageCacheAccess(true);
+    } else if(pageNumber > INVALID_INDEX_PAGE_NUMBER) {
+      getDatabase().recordIndexPageCacheAccess(false);
       dataPage = readDataPage(pageNumber)._main;
       _dataPages.put(pageNumber, dataPage);
     }
@@ -320,6 +369,10 @@ public class IndexPageCache
       validateEntryForPage(dpMain, newEntry);
     }
 
+    // the entries need to be modifiable (and retain their identity) before
+    // we start grabbing them
+    dpExtra.getModifiableEntries();
+
     // note, it's slightly ucky, but we need to load the parent page before we
     // start mucking with our entries because our parent may use our entries.
     CacheDataPage parentDataPage = (!dpMain.isRoot() ?
@@ -332,6 +385,10 @@ public class IndexPageCache
 
     switch(upType) {
     case ADD:
+      // keep track of entries added at the end of the page (the last entry
+      // of a node page is the tail, so additions before it count)
+      dpExtra.recordAdd(entryIdx >= (dpExtra._entryView.size() -
+                                     (dpMain._leaf ? 0 : 1)));
       dpExtra._entryView.add(entryIdx, newEntry);
       entrySizeDiff += newEntry.size();
       break;
@@ -607,6 +664,7 @@ public class IndexPageCache
     DataPageExtra origExtra = origDataPage._extra;
 
     setModified(origDataPage);
+    origExtra.getModifiableEntries();
     
     int numEntries = origExtra._entries.size();
     if(numEntries < 2) {
@@ -623,6 +681,7 @@ public class IndexPageCache
       origDataPage = newDataPage;
       origMain = newDataPage._main;
       origExtra = newDataPage._extra;
+      origExtra.getModifiableEntries();
     }
 
     // note, it's slightly ucky, but we need to load the parent page before we
@@ -630,9 +689,18 @@ public class IndexPageCache
     DataPageMain parentMain = origMain.getParentPage();
     CacheDataPage parentDataPage = new CacheDataPage(parentMain);
     
-    // note, there are many, many ways this could be improved/tweaked.  for
-    // now, we just want it to be functional...
-    // so, we will naively move half the entries from one page to a new page.
+    // generally, we naively move half the entries from one page to a new
+    // page.  however, if entries are only being appended to the last page
+    // (e.g. an auto-number or timestamp index), an even split would leave
+    // every page half empty, so we instead fill up the new page and leave
+    // only a few entries on the last page for the subsequent appends.
+    int numHeadEntries = ((numEntries + 1) / 2);
+    if(origExtra.isTailAppending() &&
+       (origMain._nextPageNumber == INVALID_INDEX_PAGE_NUMBER)) {
+      numHeadEntries = getTailSplitEntryCount(origExtra._entries);
+    } else {
+      origExtra.resetAddStats();
+    }
 
     CacheDataPage newDataPage = allocateNewCacheDataPage(
         parentMain._pageNumber, origMain._leaf);
@@ -640,7 +708,7 @@ public class IndexPageCache
     DataPageExtra newExtra = newDataPage._extra;
     
     List<Entry> headEntries =
-      origExtra._entries.subList(0, ((numEntries + 1) / 2));
+      origExtra._entries.subList(0, numHeadEntries);
 
     // move first half of the entries from old page to new page (so we do not
     // need to muck with any tail entries)
@@ -677,6 +745,29 @@ public class IndexPageCache
     addParentEntry(parentDataPage, newDataPage);
   }
 
+  /**
+   * Returns the number of entries to move to the new page when splitting the
+   * last page of an index to which entries are being appended.  The new page
+   * is filled up to the index fill factor (see {@link
+   * DatabaseImpl#getDefaultIndexFillFactor}), leaving at least one entry on
+   * the original page.
+   */
+  private int getTailSplitEntryCount(List<Entry> entries) {
+    int fillSize = (int)((getIndexData().getMaxPageEntrySize() *
+                          (long)DatabaseImpl.getDefaultIndexFillFactor()) / 100);
+    int numEntries = entries.size();
+    int numHeadEntries = 0;
+    int totalSize = 0;
+    while(numHeadEntries < (numEntries - 1)) {
+      totalSize += entries.get(numHeadEntries).size();
+      if(totalSize > fillSize) {
+        break;
+      }
+      ++numHeadEntries;
+    }
+    return Math.max(numHeadEntries, 1);
+  }
+
   /**
    * Copies the current root page info into a new page and nests this page
    * under the root page.  This must be done when the root page needs to be
@@ -707,6 +798,8 @@ public class IndexPageCache
     newExtra._entries = rootExtra._entries;
     newExtra._entryPrefix = rootExtra._entryPrefix;
     newExtra._totalEntrySize = rootExtra._totalEntrySize;
+    newExtra._tailAddCount = rootExtra._tailAddCount;
+    newExtra._tailAddsOnly = rootExtra._tailAddsOnly;
     newExtra.setEntryView(newMain);
 
     if(!newMain._leaf) {
@@ -917,8 +1010,8 @@ public class IndexPageCache
         }
       }
 
-      Entry nodeEntry = extra._entryView.get(idx);
-      curPage = curPage.getChildPage(nodeEntry);
+      // avoid materializing the node entry just to get the sub-page number
+      curPage = curPage.getChildPage(extra._entryView.getSubPageNumber(idx));
     }
   }
 
@@ -945,7 +1038,7 @@ public class IndexPageCache
    *
    * @return a valid entry prefix for the page
    */
-  private static byte[] findCommonPrefix(Entry e1, Entry e2)
+  static byte[] findCommonPrefix(Entry e1, Entry e2)
   {
     byte[] b1 = e1.getEntryBytes();
     byte[] b2 = e2.getEntryBytes();
@@ -1127,21 +1220,55 @@ public class IndexPageCache
   }
 
   /**
-   * Trims the size of the _dataPages cache appropriately (assuming caller has
-   * already verified that the cache needs trimming).
+   * Trims the size of the _dataPages cache to the given size (assuming caller
+   * has already verified that the cache needs trimming).  Pages are purged
+   * least recently used first, but leaf pages are purged before interior
+   * pages (which are needed by every lookup) and leaf pages which have been
+   * used more than once get a "second chance" before being purged.  The root
+   * page is never purged.
+   */
+  private void purgeOldPages(int maxCacheSize) {
+    // first pass, purge leaf pages which have not been re-used (giving
+    // frequently used pages another chance)
+    if(purgeOldPages(maxCacheSize, true, true)) {
+      return;
+    }
+    // next, purge any leaf pages
+    if(purgeOldPages(maxCacheSize, true, false)) {
+      return;
+    }
+    // lastly, purge interior pages
+    purgeOldPages(maxCacheSize, false, false);
+  }
+
+  /**
+   * Purges the least recently used pages matching the given criteria until
+   * the cache is at most the given size.
+   *
+   * @return {@code true} if the cache has been trimmed to the given size,
+   *         {@code false} otherwise
    */
-  private void purgeOldPages() {
+  private boolean purgeOldPages(int maxCacheSize, boolean leafOnly,
+                                boolean secondChance) {
     Iterator<DataPageMain> iter = _dataPages.values().iterator();
     while(iter.hasNext()) {
       DataPageMain dpMain = iter.next();
       // note, we never purge the root page
-      if(dpMain != _rootPage) {
-        iter.remove();
-        if(_dataPages.size() <= MAX_CACHE_SIZE) {
-          break;
-        } 
+      if((dpMain == _rootPage) || (leafOnly && !dpMain._leaf)) {
+        continue;
+      }
+      if(secondChance && (dpMain._accessCount > 1)) {
+        // age the page, it will be purged if not used again before the next
+        // purge
+        dpMain._accessCount >>= 1;
+        continue;
+      }
+      iter.remove();
+      if(_dataPages.size() <= maxCacheSize) {
+        return true;
       }
     }
+    return false;
   }
   
   @Override
@@ -1172,6 +1299,9 @@ public class IndexPageCache
     public Integer _parentPageNumber;
     public boolean _leaf;
     public boolean _tail;
+    /** approximate number of recent uses of this page (see {@link
+        #purgeOldPages}) */
+    private int _accessCount = 1;
     private Reference<DataPageExtra> _extra;
 
     private DataPageMain(int pageNumber) {
@@ -1185,6 +1315,12 @@ public class IndexPageCache
     public boolean isRoot() {
       return(this == _rootPage);
     }
+
+    private void recordAccess() {
+      if(_accessCount < MAX_ACCESS_COUNT) {
+        ++_accessCount;
+      }
+    }
     
     public boolean isTail() throws IOException
     {
@@ -1230,7 +1366,12 @@ public class IndexPageCache
     
     public DataPageMain getChildPage(Entry e) throws IOException
     {
-      Integer childPageNumber = e.getSubPageNumber();
+      return getChildPage(e.getSubPageNumber());
+    }
+
+    public DataPageMain getChildPage(Integer childPageNumber)
+      throws IOException
+    {
       return getChildPage(childPageNumber,
                           isChildTailPageNumber(childPageNumber));
     }
@@ -1305,14 +1446,53 @@ public class IndexPageCache
     public byte[] _entryPrefix;
     public int _totalEntrySize;
     public boolean _modified;
+    /** number of entries added at the end of this page since it was loaded
+        (or last split) */
+    public int _tailAddCount;
+    /** whether or not all the entries added since this page was loaded (or
+        last split) were added at the end of this page */
+    public boolean _tailAddsOnly = true;
 
     private DataPageExtra()
     {
     }
 
+    public void recordAdd(boolean isTailAdd) {
+      if(isTailAdd) {
+        ++_tailAddCount;
+      } else {
+        _tailAddsOnly = false;
+      }
+    }
+
+    public void resetAddStats() {
+      _tailAddCount = 0;
+      _tailAddsOnly = true;
+    }
+
+    /**
+     * Returns {@code true} if entries are only being appended to the end of
+     * this page, {@code false} otherwise.
+     */
+    public boolean isTailAppending() {
+      return (_tailAddsOnly && (_tailAddCount > 0));
+    }
+
     public void setEntryView(DataPageMain main) throws IOException {
       _entryView = new EntryListView(main, this);
     }
+
+    /**
+     * Returns the entries for this page, first converting them to a
+     * modifiable list if they are still in the compact form in which they
+     * were read.
+     */
+    public List<Entry> getModifiableEntries() {
+      if(_entries instanceof CompactEntryList) {
+        _entries = new ArrayList<Entry>(_entries);
+      }
+      return _entries;
+    }
     
     public void updateEntryPrefix() {
       if(_entryPrefix.length == 0) {
@@ -1460,6 +1640,10 @@ public class IndexPageCache
     private List<Entry> getEntries() {
       return _extra._entries;
     }
+
+    private List<Entry> getModifiableEntries() {
+      return _extra.getModifiableEntries();
+    }
     
     @Override
     public int size() {
@@ -1481,21 +1665,21 @@ public class IndexPageCache
     public Entry set(int idx, Entry newEntry) {
       return (isCurrentChildTailIndex(idx) ?
               setChildTailEntry(newEntry) :
-              getEntries().set(idx, newEntry));
+              getModifiableEntries().set(idx, newEntry));
     }
     
     @Override
     public void add(int idx, Entry newEntry) {
       // note, we will never add to the "tail" entry, that will always be
       // handled through promoteTail
-      getEntries().add(idx, newEntry);
+      getModifiableEntries().add(idx, newEntry);
     }
     
     @Override
     public Entry remove(int idx) {
       return (isCurrentChildTailIndex(idx) ?
               setChildTailEntry(null) :
-              getEntries().remove(idx));
+              getModifiableEntries().remove(idx));
     }
     
     public Entry setChildTailEntry(Entry newEntry) {
@@ -1512,6 +1696,16 @@ public class IndexPageCache
       return(idx == getEntries().size());
     }
 
+    public Integer getSubPageNumber(int idx) {
+      if(isCurrentChildTailIndex(idx)) {
+        return _childTailEntry.getSubPageNumber();
+      }
+      List<Entry> entries = getEntries();
+      return ((entries instanceof CompactEntryList) ?
+              ((CompactEntryList)entries).getSubPageNumber(idx) :
+              entries.get(idx).getSubPageNumber());
+    }
+
     public Entry getLast() {
       return(hasChildTail() ? _childTailEntry :
              (!getEntries().isEmpty() ?
@@ -1521,18 +1715,30 @@ public class IndexPageCache
     public Entry demoteTail() {
       Entry tail = _childTailEntry;
       _childTailEntry = null;
-      getEntries().add(tail);
+      getModifiableEntries().add(tail);
       return tail;
     }
     
     public Entry promoteTail() {
-      Entry last = getEntries().remove(getEntries().size() - 1);
+      List<Entry> entries = getModifiableEntries();
+      Entry last = entries.remove(entries.size() - 1);
       _childTailEntry = last;
       return last;
     }
     
     public int find(Entry e) {
-      return Collections.binarySearch(this, e);
+      int numEntries = getEntries().size();
+      int idx = findEntry(getEntries(), e);
+      if(hasChildTail() && (idx == -(numEntries + 1))) {
+        // the child tail entry is always the last entry
+        int cmp = _childTailEntry.compareTo(e);
+        if(cmp == 0) {
+          idx = numEntries;
+        } else if(cmp < 0) {
+          idx = -(numEntries + 2);
+        }
+      }
+      return idx;
     }
 
   }
@@ -0,0 +1,260 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.healthmarketscience.jackcess.Row;
+
+/**
+ * Utility class used to collect the entries for multiple indexes of a table
+ * with a single scan of the table.  The rows are read on the calling thread
+ * and handed off (in batches) to a separate thread for each index, which
+ * encodes and sorts the index entries using an {@link IndexBulkLoader}.
+ * Once collected, the loaders can be used to rebuild the indexes
+ * "bottom-up" or to check the existing index entries.
+ * <p>
+ * Note, the index pages themselves are only ever accessed from the calling
+ * thread.
+ *
+ * @author James Ahlborn
+ * @usage _advanced_class_
+ */
+final class IndexRebuilder implements Closeable
+{
+  /** number of rows handed off to the entry collectors at a time */
+  private static final int BATCH_SIZE = 1000;
+  /** max number of batches waiting for each entry collector */
+  private static final int MAX_QUEUED_BATCHES = 4;
+  /** marker batch indicating that all the rows have been read */
+  private static final Batch END_BATCH = new Batch();
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "jackcess-index-rebuild");
+      t.setDaemon(true);
+      return t;
+    }
+  };
+
+  private final TableImpl _table;
+  private final List<IndexBulkLoader> _loaders =
+    new ArrayList<IndexBulkLoader>();
+
+  IndexRebuilder(TableImpl table, List<IndexData> indexDatas) {
+    _table = table;
+    for(IndexData indexData : indexDatas) {
+      _loaders.add(new IndexBulkLoader(indexData));
+    }
+  }
+
+  /**
+   * @return the loaders for the indexes, in the order the indexes were given
+   */
+  public List<IndexBulkLoader> getLoaders() {
+    return Collections.unmodifiableList(_loaders);
+  }
+
+  /**
+   * Reads all the rows of the table, collecting and sorting the entries for
+   * all the indexes.
+   */
+  public void collectEntries() throws IOException {
+    if(_loaders.isEmpty()) {
+      return;
+    }
+
+    // grab the columns involved in any of the indexes
+    Set<ColumnImpl> idxCols = new LinkedHashSet<ColumnImpl>();
+    for(IndexBulkLoader loader : _loaders) {
+      for(IndexData.ColumnDescriptor col : loader.getIndexData().getColumns()) {
+        idxCols.add(col.getColumn());
+      }
+    }
+    int numCols = _table.getColumnCount();
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+        _loaders.size(), THREAD_FACTORY);
+    try {
+
+      List<EntryCollector> collectors = new ArrayList<EntryCollector>();
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for(IndexBulkLoader loader : _loaders) {
+        EntryCollector collector = new EntryCollector(loader);
+        collectors.add(collector);
+        results.add(executor.submit(collector));
+      }
+
+      try {
+        Batch batch = new Batch();
+        for(Row row : CursorImpl.createCursor(_table).newIterable()
+              .addColumns(idxCols)) {
+          // each row array is shared (read-only) by all the collectors
+          Object[] rowVals = new Object[numCols];
+          for(ColumnImpl col : idxCols) {
+            col.setRowValue(rowVals, col.getRowValue(row));
+          }
+          batch.add(rowVals, (RowIdImpl)row.getId());
+          if(batch.size() == BATCH_SIZE) {
+            putBatch(collectors, batch);
+            batch = new Batch();
+          }
+        }
+        if(batch.size() > 0) {
+          putBatch(collectors, batch);
+        }
+      } finally {
+        // always let the collectors finish
+        putBatch(collectors, END_BATCH);
+      }
+
+      for(Future<Void> result : results) {
+        waitFor(result);
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Discards any temp files used by the loaders.
+   */
+  @Override
+  public void close() {
+    for(IndexBulkLoader loader : _loaders) {
+      loader.close();
+    }
+  }
+
+  private void putBatch(List<EntryCollector> collectors, Batch batch)
+    throws IOException
+  {
+    try {
+      for(EntryCollector collector : collectors) {
+        collector.put(batch);
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException)new InterruptedIOException(_table.withErrorContext(
+          "Interrupted while collecting index entries")).initCause(e);
+    }
+  }
+
+  private void waitFor(Future<Void> result) throws IOException {
+    try {
+      result.get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException)new InterruptedIOException(_table.withErrorContext(
+          "Interrupted while collecting index entries")).initCause(e);
+    } catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if(cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new IllegalStateException(_table.withErrorContext(
+          "Failed collecting index entries"), cause);
+    }
+  }
+
+  /**
+   * A batch of rows (and their ids) handed off to the entry collectors.
+   */
+  private static final class Batch
+  {
+    private final List<Object[]> _rows = new ArrayList<Object[]>(BATCH_SIZE);
+    private final List<RowIdImpl> _rowIds =
+      new ArrayList<RowIdImpl>(BATCH_SIZE);
+
+    public void add(Object[] row, RowIdImpl rowId) {
+      _rows.add(row);
+      _rowIds.add(rowId);
+    }
+
+    public int size() {
+      return _rows.size();
+    }
+  }
+
+  /**
+   * Collects the entries for a single index on a separate thread.
+   */
+  private static final class EntryCollector implements Callable<Void>
+  {
+    private final IndexBulkLoader _loader;
+    private final BlockingQueue<Batch> _batches =
+      new ArrayBlockingQueue<Batch>(MAX_QUEUED_BATCHES);
+
+    private EntryCollector(IndexBulkLoader loader) {
+      _loader = loader;
+    }
+
+    public void put(Batch batch) throws InterruptedException {
+      _batches.put(batch);
+    }
+
+    @Override
+    public Void call() throws Exception {
+      Throwable failure = null;
+      Batch batch = null;
+      while((batch = _batches.take()) != END_BATCH) {
+        if(failure != null) {
+          // keep draining the queue so that the reader does not block
+          continue;
+        }
+        try {
+          for(int i = 0; i < batch.size(); ++i) {
+            _loader.addRow(batch._rows.get(i), batch._rowIds.get(i));
+          }
+        } catch(Throwable t) {
+          failure = t;
+        }
+      }
+      if(failure instanceof Exception) {
+        throw (Exception)failure;
+      }
+      if(failure != null) {
+        throw (Error)failure;
+      }
+      _loader.sort();
+      return null;
+    }
+  }
+}
@@ -77,6 +77,13 @@ class LongValueColumnImpl extends ColumnImpl
     _lvalBufferH.collectUsageMapPages(pages);
   }
 
+  @Override
+  void deallocateOwnedPages() throws IOException {
+    if(_lvalBufferH != null) {
+      _lvalBufferH.deallocateOwnedPages();
+    }
+  }
+
   @Override
   void postTableLoadInit() throws IOException {
     if(_lvalBufferH == null) {
@@ -136,6 +143,16 @@ class LongValueColumnImpl extends ColumnImpl
     return writeLongValue(toByteArray(obj), remainingRowLength);
   }
 
+  @Override
+  protected void writeRealData(Object obj, int remainingRowLength,
+                               ByteBuffer buffer)
+    throws IOException
+  {
+    // the long value definition (and possibly the data) is written to a
+    // separate buffer, as the data may end up on other pages
+    buffer.put(writeRealData(obj, remainingRowLength, buffer.order()));
+  }
+
   /**
    * @param lvalDefinition Column value that points to an LVAL record
    * @return The LVAL data
@@ -459,6 +476,14 @@ class LongValueColumnImpl extends ColumnImpl
       // base does nothing
     }
 
+    /**
+     * Deallocates all the long value pages owned by the column.  The legacy
+     * shared pages are not tracked, so only the current page is discarded.
+     */
+    public void deallocateOwnedPages() throws IOException {
+      clear();
+    }
+
     protected abstract TempPageHolder getBufferHolder();
   }
 
@@ -536,6 +561,12 @@ class LongValueColumnImpl extends ColumnImpl
       super.clear();
     }
 
+    @Override
+    public void deallocateOwnedPages() throws IOException {
+      super.clear();
+      TableImpl.deallocatePages(_ownedPages, _freeSpacePages);
+    }
+
     @Override
     public void collectUsageMapPages(Collection<Integer> pages) {
       pages.add(_ownedPages.getTablePageNumber());
@@ -22,6 +22,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channel;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -67,6 +68,24 @@ public class PageChannel implements Channel, Flushable {
   private TempPageHolder _fullPageEncodeBufferH;
   private TempBufferHolder _tempDecodeBufferH;
   private int _writeCount;
+  /** max number of completed logical write operations which may be left
+      unsynced when auto-syncing (group commit), 1 syncs every operation */
+  private int _groupCommitMaxWrites = 1;
+  /** age (in nanos) of the first unsynced logical write operation after
+      which the next completed operation syncs the channel when auto-syncing
+      (group commit), 0 for no limit */
+  private long _groupCommitMaxDelayNanos;
+  /** number of completed logical write operations since the last sync */
+  private int _unsyncedWrites;
+  /** time (in nanos) at which the first unsynced logical write operation
+      completed */
+  private long _firstUnsyncedWriteTime;
+  /** number of times the channel has been synced */
+  private long _syncCount;
+  /** total time (in nanos) spent syncing the channel */
+  private long _syncTimeNanos;
+  /** longest time (in nanos) spent in a single sync of the channel */
+  private long _maxSyncTimeNanos;
   
   /**
    * Only used by unit tests
@@ -126,6 +145,38 @@ public class PageChannel implements Channel, Flushable {
     return _autoSync;
   }
 
+  /**
+   * Configures "group commit" for auto-syncing.  Instead of syncing the
+   * channel after every logical write operation, the channel is synced once
+   * the given number of logical write operations have completed or once the
+   * first unsynced operation completed at least the given time ago
+   * (whichever comes first).  Note, there is no background thread, so
+   * unsynced operations are only synced when a later write operation
+   * completes, or on {@link #sync}, {@link #flush} or {@link #close}.
+   *
+   * @param maxDelayMillis age after which unsynced operations are synced
+   *                       when the next operation completes, 0 for no time
+   *                       limit
+   * @param maxWrites max number of completed operations which may be left
+   *                  unsynced, 1 syncs after every operation
+   */
+  public void setGroupCommit(long maxDelayMillis, int maxWrites) {
+    if((maxDelayMillis < 0L) || (maxWrites < 1)) {
+      throw new IllegalArgumentException(
+          "Invalid group commit window " + maxDelayMillis + "ms/" + maxWrites);
+    }
+    _groupCommitMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    _groupCommitMaxWrites = maxWrites;
+  }
+
+  public int getGroupCommitMaxWrites() {
+    return _groupCommitMaxWrites;
+  }
+
+  public long getGroupCommitMaxDelayMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(_groupCommitMaxDelayNanos);
+  }
+
   /**
    * Begins a "logical" write operation.  See {@link #finishWrite} for more
    * details.
@@ -152,15 +203,88 @@ public class PageChannel implements Channel, Flushable {
    * finally block which wraps a logical write operation (which is preceded by
    * a {@link #startWrite} call).  Logical write operations may be nested.  If
    * the database is configured for "auto-sync", the channel will be flushed
-   * when the outermost operation is complete,
+   * when the outermost operation is complete (or, if "group commit" is
+   * configured, when the current group of operations is complete, see
+   * {@link #setGroupCommit}).
    */
   public void finishWrite() throws IOException {
     assertWriting();
-    if((--_writeCount == 0) && _autoSync) {
+    if(--_writeCount != 0) {
+      return;
+    }
+    if(++_unsyncedWrites == 1) {
+      _firstUnsyncedWriteTime = System.nanoTime();
+    }
+    if(_autoSync && isGroupComplete()) {
       flush();
     }
   }
 
+  /**
+   * Returns {@code true} if the current group of unsynced logical write
+   * operations should be synced, {@code false} otherwise.
+   */
+  private boolean isGroupComplete() {
+    return ((_unsyncedWrites >= _groupCommitMaxWrites) ||
+            ((_groupCommitMaxDelayNanos > 0L) &&
+             ((System.nanoTime() - _firstUnsyncedWriteTime) >=
+              _groupCommitMaxDelayNanos)));
+  }
+
+  /**
+   * Syncs the channel if any logical write operations have completed since
+   * the last sync (or a logical write operation is in progress), otherwise
+   * does nothing.
+   *
+   * @return {@code true} if the channel was synced, {@code false} otherwise
+   */
+  public boolean sync() throws IOException {
+    if((_unsyncedWrites == 0) && !isWriting()) {
+      return false;
+    }
+    flush();
+    return true;
+  }
+
+  /**
+   * Returns the number of completed logical write operations which have not
+   * yet been synced.
+   */
+  public int getUnsyncedWriteCount() {
+    return _unsyncedWrites;
+  }
+
+  /**
+   * Returns the number of times the channel has been synced.
+   */
+  public long getSyncCount() {
+    return _syncCount;
+  }
+
+  /**
+   * Returns the total time (in nanoseconds) spent syncing the channel.
+   */
+  public long getSyncTimeNanos() {
+    return _syncTimeNanos;
+  }
+
+  /**
+   * Returns the longest time (in nanoseconds) spent in a single sync of the
+   * channel.
+   */
+  public long getMaxSyncTimeNanos() {
+    return _maxSyncTimeNanos;
+  }
+
+  /**
+   * Resets the sync statistics to 0.
+   */
+  public void resetSyncStats() {
+    _syncCount = 0L;
+    _syncTimeNanos = 0L;
+    _maxSyncTimeNanos = 0L;
+  }
+
   /**
    * Returns {@code true} if a logical write operation is in progress, {@code
    * false} otherwise.
@@ -391,7 +515,13 @@ public class PageChannel implements Channel, Flushable {
   
   @Override
   public void flush() throws IOException {
+    long start = System.nanoTime();
     _channel.force(true);
+    long syncTime = System.nanoTime() - start;
+    _unsyncedWrites = 0;
+    ++_syncCount;
+    _syncTimeNanos += syncTime;
+    _maxSyncTimeNanos = Math.max(_maxSyncTimeNanos, syncTime);
   }
   
   @Override
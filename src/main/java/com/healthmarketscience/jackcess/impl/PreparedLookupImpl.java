@@ -0,0 +1,139 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.healthmarketscience.jackcess.PreparedLookup;
+import static com.healthmarketscience.jackcess.impl.ByteUtil.ByteStream;
+
+/**
+ * Implementation of PreparedLookup which encodes each key into a re-used
+ * buffer and searches the index directly (without an EntryCursor).
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public class PreparedLookupImpl implements PreparedLookup
+{
+  private final IndexImpl _index;
+  private final IndexData _indexData;
+  /** whether or not int/long keys can be encoded directly */
+  private final boolean _integral;
+  /** buffer for encoding the key entry bytes */
+  private final ByteStream _keyBuffer = new ByteStream();
+  /** the bytes of the current search entry (keys with the same encoded
+      length share the same entry) */
+  private byte[] _searchBytes;
+  private IndexData.Entry _searchEntry;
+  /** lazily created state for reading the found rows */
+  private TableImpl.RowState _rowState;
+  private Collection<String> _columnNames;
+
+  PreparedLookupImpl(IndexImpl index) {
+    _index = index;
+    _indexData = index.getIndexData();
+    _integral = _indexData.isIntegralEntry();
+  }
+
+  @Override
+  public IndexImpl getIndex() {
+    return _index;
+  }
+
+  @Override
+  public PreparedLookupImpl setColumnNames(Collection<String> columnNames) {
+    _columnNames = columnNames;
+    return this;
+  }
+
+  @Override
+  public RowIdImpl findRowId(Object... entryValues) throws IOException {
+    _keyBuffer.reset();
+    _indexData.writeEntryBytesFromEntry(entryValues, _keyBuffer);
+    return findRowId();
+  }
+
+  @Override
+  public RowIdImpl findRowId(int key) throws IOException {
+    return (_integral ? findIntegralRowId(key) : findRowId(new Object[]{key}));
+  }
+
+  @Override
+  public RowIdImpl findRowId(long key) throws IOException {
+    return (_integral ? findIntegralRowId(key) : findRowId(new Object[]{key}));
+  }
+
+  @Override
+  public RowImpl findRow(Object... entryValues) throws IOException {
+    return getRow(findRowId(entryValues));
+  }
+
+  @Override
+  public RowImpl findRow(int key) throws IOException {
+    return getRow(findRowId(key));
+  }
+
+  @Override
+  public RowImpl findRow(long key) throws IOException {
+    return getRow(findRowId(key));
+  }
+
+  private RowIdImpl findIntegralRowId(long key) throws IOException {
+    _keyBuffer.reset();
+    if(!_indexData.writeEntryBytesFromEntry(key, _keyBuffer)) {
+      // value does not fit in the column, cannot match anything
+      return null;
+    }
+    return findRowId();
+  }
+
+  /**
+   * Finds the first entry matching the bytes currently in the key buffer.
+   */
+  private RowIdImpl findRowId() throws IOException {
+    int len = _keyBuffer.getLength();
+    if((_searchBytes == null) || (_searchBytes.length != len)) {
+      _searchBytes = new byte[len];
+      _searchEntry = IndexData.createSearchEntry(_searchBytes);
+    }
+    // the search entry is private to this lookup, so we can update the
+    // entry bytes in place
+    System.arraycopy(_keyBuffer.getBytes(), 0, _searchBytes, 0, len);
+    return _indexData.findFirstRowId(_searchEntry);
+  }
+
+  private RowImpl getRow(RowIdImpl rowId) throws IOException {
+    if(rowId == null) {
+      return null;
+    }
+    if(_rowState == null) {
+      _rowState = _index.getTable().createRowState();
+    }
+    _rowState.reset();
+    return _index.getTable().getRow(_rowState, rowId, _columnNames);
+  }
+
+  @Override
+  public String toString() {
+    return CustomToStringStyle.builder(this)
+      .append("index", _index.getName())
+      .append("table", _index.getTable().getName())
+      .toString();
+  }
+}
@@ -73,6 +73,14 @@ public class PropertyMaps implements Iterable<PropertyMapImpl>
     return _maps.isEmpty();
   }
 
+  /**
+   * @return {@code true} if this instance is stored in the database (and
+   *         therefore can be saved), {@code false} otherwise
+   */
+  public boolean isSaveable() {
+    return (_rowId != null);
+  }
+
   /**
    * @return the unnamed "default" PropertyMap in this group, creating if
    *         necessary.
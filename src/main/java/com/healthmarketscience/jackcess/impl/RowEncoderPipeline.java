@@ -0,0 +1,282 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility class used to prepare the rows being added to a table on multiple
+ * threads.  The rows are handed off (in chunks) to a pool of workers which
+ * fill in default values, run the column validators, calculate any
+ * calculated columns, run the row validator and encode each row into its own
+ * buffer.  The calling thread (the "writer") assigns the autonumbers for
+ * each chunk before it is handed off and consumes the prepared rows in the
+ * original order (see {@link TableImpl#addRowsParallel}).
+ * <p>
+ * Note, the expression evaluation contexts are shared by all users of a
+ * column, so any expression evaluation is serialized across the workers.
+ * Long value columns may write their data to other pages, so if the table
+ * has any long value columns, the rows are encoded on the writer thread.
+ *
+ * @author James Ahlborn
+ * @usage _advanced_class_
+ */
+final class RowEncoderPipeline implements Closeable
+{
+  /** number of rows handed off to a worker at a time */
+  private static final int CHUNK_SIZE = 256;
+  /** max number of chunks per worker waiting to be written */
+  private static final int MAX_QUEUED_CHUNKS_PER_THREAD = 2;
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "jackcess-row-encoder");
+      t.setDaemon(true);
+      return t;
+    }
+  };
+
+  private final TableImpl _table;
+  private final List<? extends Object[]> _rows;
+  private final TableImpl.WriteRowState _writeRowState;
+  private final ExecutorService _executor;
+  private final int _maxQueuedChunks;
+  /** whether or not the rows can be encoded by the workers */
+  private final boolean _encodeInWorkers;
+  /** lock used to serialize expression evaluation, {@code null} if
+      expressions are not evaluated */
+  private final Object _evalLock;
+  /** the chunks handed off to the workers, in row order */
+  private final Deque<Future<Chunk>> _chunks = new ArrayDeque<Future<Chunk>>();
+  /** number of rows handed off to the workers (all of which have had their
+      autonumbers assigned) */
+  private int _numSubmitted;
+  /** the chunk currently being consumed by the writer */
+  private Chunk _curChunk;
+  private int _curIdx;
+  /** set when the pipeline is closed, the workers stop preparing rows once
+      this is set */
+  private volatile boolean _cancelled;
+
+  RowEncoderPipeline(TableImpl table, List<? extends Object[]> rows,
+                     TableImpl.WriteRowState writeRowState, int numThreads)
+  {
+    _table = table;
+    _rows = rows;
+    _writeRowState = writeRowState;
+    _executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
+    _maxQueuedChunks = numThreads * MAX_QUEUED_CHUNKS_PER_THREAD;
+
+    boolean hasLongValues = false;
+    for(ColumnImpl col : table.getColumns()) {
+      if(col.getType().isLongValue()) {
+        hasLongValues = true;
+        break;
+      }
+    }
+    _encodeInWorkers = !hasLongValues;
+    _evalLock = (table.getDatabase().isEvaluateExpressions() ?
+                 new Object() : null);
+  }
+
+  /**
+   * @return the number of rows which have had their autonumbers assigned
+   */
+  public int getAutoNumAssignCount() {
+    return _numSubmitted;
+  }
+
+  /**
+   * Returns the encoded data for the next row (in the original row order),
+   * waiting for it to be prepared if necessary.
+   *
+   * @param writeBuffer buffer used to encode the row if the row cannot be
+   *                    encoded by the workers
+   * @throws IOException (or RuntimeException) if preparing the row failed
+   */
+  public ByteBuffer nextRowData(ByteBuffer writeBuffer) throws IOException
+  {
+    if((_curChunk == null) || (_curIdx == _curChunk._rows.size())) {
+      submitChunks();
+      _curChunk = waitFor(_chunks.removeFirst());
+      _curIdx = 0;
+    }
+
+    Chunk chunk = _curChunk;
+    int idx = _curIdx++;
+    if(idx == chunk._failedIdx) {
+      Exception failure = chunk._failure;
+      if(failure instanceof IOException) {
+        throw (IOException)failure;
+      }
+      throw (RuntimeException)failure;
+    }
+
+    if(_encodeInWorkers) {
+      return ByteBuffer.wrap(chunk._rowData[idx]);
+    }
+    return _table.createRow(chunk._rows.get(idx), writeBuffer);
+  }
+
+  /**
+   * Shuts down the workers (abandoning any unconsumed rows).  Waits for any
+   * running workers to stop, so no worker touches the table or the rows once
+   * this method returns.  Note, the workers are not interrupted (an
+   * interrupt during a channel read would close the database file channel),
+   * they stop at the next row instead.
+   */
+  @Override
+  public void close() {
+    _cancelled = true;
+    for(Future<Chunk> chunk : _chunks) {
+      chunk.cancel(false);
+    }
+    _executor.shutdown();
+
+    boolean interrupted = false;
+    while(true) {
+      try {
+        if(_executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+          break;
+        }
+      } catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Hands off chunks of rows to the workers until the max number of chunks
+   * are queued (or all the rows have been handed off).
+   */
+  private void submitChunks() throws IOException
+  {
+    while((_chunks.size() < _maxQueuedChunks) &&
+          (_numSubmitted < _rows.size())) {
+      int endIdx = Math.min(_numSubmitted + CHUNK_SIZE, _rows.size());
+      List<? extends Object[]> rows = _rows.subList(_numSubmitted, endIdx);
+
+      // autonumbers must be assigned in row order
+      for(Object[] row : rows) {
+        _table.handleAutoNumbersForAdd(row, _writeRowState);
+        ++_numSubmitted;
+      }
+
+      _chunks.addLast(_executor.submit(new Chunk(rows)));
+    }
+  }
+
+  private Chunk waitFor(Future<Chunk> result) throws IOException {
+    try {
+      return result.get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException)new InterruptedIOException(_table.withErrorContext(
+          "Interrupted while preparing rows")).initCause(e);
+    } catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new IllegalStateException(_table.withErrorContext(
+          "Failed preparing rows"), cause);
+    }
+  }
+
+  /**
+   * Prepares the values of the given row, everything except the
+   * autonumbers.
+   */
+  private void prepareRow(Object[] row) throws IOException
+  {
+    if(_evalLock == null) {
+      _table.validateRowForAdd(row);
+      _table.calculateRowForAdd(row);
+      return;
+    }
+
+    synchronized(_evalLock) {
+      _table.validateRowForAdd(row);
+      _table.calculateRowForAdd(row);
+    }
+  }
+
+  /**
+   * A chunk of rows prepared by a single worker.  If preparing a row fails,
+   * the failure is recorded and the remaining rows in the chunk are ignored
+   * (the writer will not get past the failed row).  If the pipeline is
+   * closed, the remaining rows in the chunk are abandoned.
+   */
+  private final class Chunk implements Callable<Chunk>
+  {
+    private final List<? extends Object[]> _rows;
+    private final byte[][] _rowData;
+    private int _failedIdx = -1;
+    private Exception _failure;
+
+    private Chunk(List<? extends Object[]> rows) {
+      _rows = rows;
+      _rowData = (_encodeInWorkers ? new byte[rows.size()][] : null);
+    }
+
+    @Override
+    public Chunk call() {
+      ByteBuffer buffer = (_encodeInWorkers ?
+                           _table.getPageChannel().createPageBuffer() : null);
+      for(int i = 0; i < _rows.size(); ++i) {
+        if(_cancelled) {
+          // the writer has given up, the remaining rows will not be consumed
+          break;
+        }
+        try {
+          Object[] row = _rows.get(i);
+          prepareRow(row);
+
+          if(buffer != null) {
+            buffer.clear();
+            _table.createRow(row, buffer);
+            byte[] rowData = new byte[buffer.remaining()];
+            buffer.get(rowData);
+            _rowData[i] = rowData;
+          }
+        } catch(Exception e) {
+          _failedIdx = i;
+          _failure = e;
+          break;
+        }
+      }
+      return this;
+    }
+  }
+}
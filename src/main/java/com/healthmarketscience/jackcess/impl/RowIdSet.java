@@ -0,0 +1,219 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.healthmarketscience.jackcess.RowId;
+
+/**
+ * Compact set of (valid) RowIds which iterates in data page order.  Each
+ * RowId is packed into a single int (page number in the upper bits, row
+ * number in the lowest byte), so the natural int ordering of the packed
+ * values matches the physical ordering of the rows in the database file.
+ * This enables fetching a collection of rows while reading each data page at
+ * most once.
+ *
+ * @author James Ahlborn
+ */
+public class RowIdSet implements Iterable<RowIdImpl>
+{
+  private static final int ROW_NUMBER_BITS = 8;
+  private static final int ROW_NUMBER_MASK = (1 << ROW_NUMBER_BITS) - 1;
+  private static final int MAX_PAGE_NUMBER =
+    Integer.MAX_VALUE >>> ROW_NUMBER_BITS;
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** the packed rowIds, only the first _size values are valid */
+  private int[] _rowIds;
+  /** the number of valid packed rowIds */
+  private int _size;
+  /** whether or not the packed rowIds are currently sorted and unique */
+  private boolean _sorted = true;
+
+  public RowIdSet() {
+    this(INITIAL_CAPACITY);
+  }
+
+  public RowIdSet(int initialCapacity) {
+    _rowIds = new int[Math.max(initialCapacity, 1)];
+  }
+
+  /**
+   * Adds the given RowId to this set.
+   * @throws IllegalArgumentException if the rowId is not a valid row
+   */
+  public void add(RowId rowId) {
+    RowIdImpl rowIdImpl = (RowIdImpl)rowId;
+    if(!rowIdImpl.isValid()) {
+      throw new IllegalArgumentException("Invalid rowId " + rowId);
+    }
+    addPacked(pack(rowIdImpl.getPageNumber(), rowIdImpl.getRowNumber()));
+  }
+
+  /**
+   * Adds all the given RowIds to this set.
+   */
+  public void addAll(Iterable<? extends RowId> rowIds) {
+    for(RowId rowId : rowIds) {
+      add(rowId);
+    }
+  }
+
+  /**
+   * Adds all the RowIds in the given set to this set (set union).
+   */
+  public void addAll(RowIdSet other) {
+    sort();
+    other.sort();
+    int[] merged = new int[_size + other._size];
+    int newSize = 0;
+    int i = 0;
+    int j = 0;
+    while((i < _size) || (j < other._size)) {
+      int val = 0;
+      if((j == other._size) ||
+         ((i < _size) && (_rowIds[i] <= other._rowIds[j]))) {
+        val = _rowIds[i++];
+        if((j < other._size) && (val == other._rowIds[j])) {
+          ++j;
+        }
+      } else {
+        val = other._rowIds[j++];
+      }
+      merged[newSize++] = val;
+    }
+    _rowIds = ((merged.length > 0) ? merged : new int[1]);
+    _size = newSize;
+  }
+
+  /**
+   * Removes all the RowIds from this set which are not in the given set
+   * (set intersection).
+   */
+  public void retainAll(RowIdSet other) {
+    sort();
+    other.sort();
+    int newSize = 0;
+    int j = 0;
+    for(int i = 0; (i < _size) && (j < other._size); ++i) {
+      int val = _rowIds[i];
+      while((j < other._size) && (other._rowIds[j] < val)) {
+        ++j;
+      }
+      if((j < other._size) && (other._rowIds[j] == val)) {
+        _rowIds[newSize++] = val;
+        ++j;
+      }
+    }
+    _size = newSize;
+  }
+
+  private void addPacked(int packedRowId) {
+    if(_size == _rowIds.length) {
+      _rowIds = Arrays.copyOf(_rowIds, _rowIds.length * 2);
+    }
+    if(_sorted && (_size > 0) && (_rowIds[_size - 1] >= packedRowId)) {
+      _sorted = false;
+    }
+    _rowIds[_size++] = packedRowId;
+  }
+
+  public int size() {
+    sort();
+    return _size;
+  }
+
+  public boolean isEmpty() {
+    return (_size == 0);
+  }
+
+  /**
+   * Returns {@code true} if this set contains the given RowId, {@code false}
+   * otherwise.
+   */
+  public boolean contains(RowId rowId) {
+    RowIdImpl rowIdImpl = (RowIdImpl)rowId;
+    if(!rowIdImpl.isValid()) {
+      return false;
+    }
+    sort();
+    return (Arrays.binarySearch(
+                _rowIds, 0, _size,
+                pack(rowIdImpl.getPageNumber(),
+                     rowIdImpl.getRowNumber())) >= 0);
+  }
+
+  /**
+   * Returns an Iterator over the RowIds in this set in data page order.
+   */
+  @Override
+  public Iterator<RowIdImpl> iterator() {
+    sort();
+    return new Iterator<RowIdImpl>() {
+      private int _idx;
+      @Override
+      public boolean hasNext() {
+        return (_idx < _size);
+      }
+      @Override
+      public RowIdImpl next() {
+        if(!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int packedRowId = _rowIds[_idx++];
+        return new RowIdImpl(packedRowId >>> ROW_NUMBER_BITS,
+                             packedRowId & ROW_NUMBER_MASK);
+      }
+    };
+  }
+
+  /**
+   * Sorts the packed rowIds and removes any duplicates (if necessary).
+   */
+  private void sort() {
+    if(_sorted) {
+      return;
+    }
+    Arrays.sort(_rowIds, 0, _size);
+    int newSize = 0;
+    for(int i = 0; i < _size; ++i) {
+      if((newSize == 0) || (_rowIds[newSize - 1] != _rowIds[i])) {
+        _rowIds[newSize++] = _rowIds[i];
+      }
+    }
+    _size = newSize;
+    _sorted = true;
+  }
+
+  private static int pack(int pageNumber, int rowNumber) {
+    if((pageNumber > MAX_PAGE_NUMBER) || (rowNumber > ROW_NUMBER_MASK)) {
+      throw new IllegalArgumentException(
+          "RowId out of range " + pageNumber + ":" + rowNumber);
+    }
+    return ((pageNumber << ROW_NUMBER_BITS) | rowNumber);
+  }
+
+  @Override
+  public String toString() {
+    return CustomToStringStyle.valueBuilder(this)
+      .append("size", size())
+      .toString();
+  }
+}
@@ -25,14 +25,17 @@ import java.nio.charset.Charset;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -48,6 +51,7 @@ import com.healthmarketscience.jackcess.JackcessException;
 import com.healthmarketscience.jackcess.PropertyMap;
 import com.healthmarketscience.jackcess.Row;
 import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.RuntimeIOException;
 import com.healthmarketscience.jackcess.Table;
 import com.healthmarketscience.jackcess.expr.Identifier;
 import com.healthmarketscience.jackcess.util.ErrorHandler;
@@ -78,6 +82,9 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
   private static final int MAX_BYTE = 256;
 
+  /** max number of rows handled at a time by {@link #deleteRows} */
+  private static final int DELETE_BATCH_SIZE = 10000;
+
   /**
    * Table type code for system tables
    * @usage _intermediate_class_
@@ -183,6 +190,16 @@ public class TableImpl implements Table, PropertyMaps.Owner
   /** optional flag indicating whether or not auto numbers can be directly
       inserted by the user */
   private Boolean _allowAutoNumInsert;
+  /** policy for where new rows are written */
+  private RowPlacement _rowPlacement = RowPlacement.APPEND;
+  /** index of the space which could be reclaimed on the data pages */
+  private final FreeSpaceIndex _freeSpaceIndex = new FreeSpaceIndex(this);
+  /** whether or not rows have been moved by {@link #defragment(int)} since
+      the indexes were last rebuilt */
+  private boolean _defragMovedRows;
+  /** whether or not a table definition update has been deferred by the
+      current unit of work */
+  private boolean _tableDefUpdatePending;
   /** foreign-key enforcer for this table */
   private final FKEnforcer _fkEnforcer;
   /** table validator if any (and enabled) */
@@ -191,6 +208,8 @@ public class TableImpl implements Table, PropertyMaps.Owner
   /** default cursor for iterating through the table, kept here for basic
       table traversal */
   private CursorImpl _defaultCursor;
+  /** the currently active bulk load session, if any */
+  private BulkLoad _bulkLoad;
 
   /**
    * Only used by unit tests
@@ -394,6 +413,17 @@ public class TableImpl implements Table, PropertyMaps.Owner
     _allowAutoNumInsert = allowAutoNumInsert;
   }
 
+  @Override
+  public RowPlacement getRowPlacement() {
+    return _rowPlacement;
+  }
+
+  @Override
+  public void setRowPlacement(RowPlacement rowPlacement) {
+    _rowPlacement = ((rowPlacement != null) ? rowPlacement :
+                     RowPlacement.APPEND);
+  }
+
   /**
    * @usage _advanced_method_
    */
@@ -448,6 +478,16 @@ public class TableImpl implements Table, PropertyMaps.Owner
     return Collections.unmodifiableList(_columns);
   }
 
+  /**
+   * Returns the current modification count of this table, which changes
+   * whenever the table definition or any of the table's data pages are
+   * written.  May be used to detect changes to the rows of this table.
+   * @usage _advanced_method_
+   */
+  public int getModCount() {
+    return _modCount;
+  }
+
   @Override
   public ColumnImpl getColumn(String name) {
     for(ColumnImpl column : _columns) {
@@ -655,6 +695,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
     throws IOException
   {
     requireValidRowId(rowId);
+    requireNotBulkLoading();
 
     getPageChannel().startWrite();
     try {
@@ -699,6 +740,9 @@ public class TableImpl implements Table, PropertyMaps.Owner
       rowBuffer.putShort(rowIndex, (short)(rowBuffer.getShort(rowIndex)
                                            | DELETED_ROW_MASK | OVERFLOW_ROW_MASK));
       writeDataPage(rowBuffer, pageNumber);
+      _freeSpaceIndex.rowDeleted(
+          pageNumber, findRowEnd(rowBuffer, rowNumber, getFormat()) -
+          findRowStart(rowBuffer, rowNumber, getFormat()));
 
       // update the indexes
       for(IndexData indexData : _indexDatas) {
@@ -713,11 +757,370 @@ public class TableImpl implements Table, PropertyMaps.Owner
     }
   }
 
+  @Override
+  public int deleteRows(Collection<? extends RowId> rowIds) throws IOException
+  {
+    requireNotBulkLoading();
+
+    RowIdSet rowIdSet = new RowIdSet(rowIds.size());
+    for(RowId rowId : rowIds) {
+      requireValidRowId((RowIdImpl)rowId);
+      rowIdSet.add(rowId);
+    }
+    if(rowIdSet.isEmpty()) {
+      return 0;
+    }
+
+    getPageChannel().startWrite();
+    try {
+
+      int numDeleted = 0;
+      RowState rowState = createRowState();
+      List<RowIdImpl> batchRowIds = new ArrayList<RowIdImpl>();
+      List<Object[]> batchRowValues = new ArrayList<Object[]>();
+      try {
+
+        // the rows are handled in data page order
+        Iterator<RowIdImpl> iter = rowIdSet.iterator();
+        while(iter.hasNext()) {
+
+          batchRowIds.clear();
+          batchRowValues.clear();
+          Exception readFailure = null;
+          try {
+            readRowsForDelete(iter, rowState, batchRowIds, batchRowValues);
+          } catch(Exception e) {
+            // the rows read so far have passed the foreign key checks, so
+            // delete them before bailing out
+            readFailure = e;
+          }
+
+          numDeleted += deleteRowBatch(batchRowIds, batchRowValues);
+
+          if(readFailure != null) {
+            throw readFailure;
+          }
+        }
+
+        // make sure table def gets updated
+        updateTableDefinition(-numDeleted);
+
+      } catch(Exception deleteFailure) {
+
+        if(numDeleted > 0) {
+          // attempt to record the rows already deleted
+          try {
+            updateTableDefinition(-numDeleted);
+          } catch(Exception flushFailure) {
+            LOG.warn(withErrorContext(
+                    "Secondary row failure which preceded the write failure"),
+                     deleteFailure);
+            numDeleted = 0;
+            deleteFailure = flushFailure;
+          }
+        }
+
+        throw new BatchUpdateException(
+            numDeleted, withErrorContext("Failed deleting rows"),
+            deleteFailure);
+      }
+
+      return numDeleted;
+
+    } finally {
+      getPageChannel().finishWrite();
+    }
+  }
+
+  /**
+   * Reads the next batch of rows to be deleted from the given iterator,
+   * filling in the index values (and checking the foreign keys) for each
+   * row.  Rows which are already deleted are skipped.
+   */
+  private void readRowsForDelete(Iterator<RowIdImpl> iter, RowState rowState,
+                                 List<RowIdImpl> rowIds,
+                                 List<Object[]> rowValuesList)
+    throws IOException
+  {
+    while(iter.hasNext() && (rowIds.size() < DELETE_BATCH_SIZE)) {
+
+      RowIdImpl rowId = iter.next();
+      positionAtRowHeader(rowState, rowId);
+      if(rowState.isDeleted()) {
+        // don't care about duplicate deletion
+        continue;
+      }
+      requireNonDeletedRow(rowState, rowId);
+
+      // attempt to fill in index column values
+      Object[] rowValues = null;
+      if(!_indexDatas.isEmpty()) {
+
+        // move to row data to get index values
+        ByteBuffer rowBuffer = positionAtRowData(rowState, rowId);
+
+        for(ColumnImpl idxCol : _indexColumns) {
+          getRowColumn(getFormat(), rowBuffer, idxCol, rowState, null);
+        }
+
+        // use any read rowValues to help update the indexes
+        rowValues = rowState.getRowCacheValues();
+
+        // check foreign keys before proceeding w/ deletion
+        _fkEnforcer.deleteRow(rowValues);
+      }
+
+      rowIds.add(rowId);
+      rowValuesList.add(rowValues);
+    }
+  }
+
+  /**
+   * Deletes a batch of rows (in data page order) and removes them from the
+   * indexes.
+   * @return the number of rows which were deleted
+   */
+  private int deleteRowBatch(List<RowIdImpl> rowIds,
+                             List<Object[]> rowValuesList)
+    throws IOException
+  {
+    BitSet deleted = new BitSet(rowIds.size());
+    int numDeleted = markRowsDeleted(rowIds, deleted);
+    if((numDeleted == 0) || _indexDatas.isEmpty()) {
+      return numDeleted;
+    }
+
+    if(numDeleted < rowIds.size()) {
+      // some rows were deleted by someone else (e.g. a cascading delete), so
+      // they are already gone from the indexes
+      List<RowIdImpl> delRowIds = new ArrayList<RowIdImpl>(numDeleted);
+      List<Object[]> delRowValues = new ArrayList<Object[]>(numDeleted);
+      for(int i = deleted.nextSetBit(0); i >= 0;
+          i = deleted.nextSetBit(i + 1)) {
+        delRowIds.add(rowIds.get(i));
+        delRowValues.add(rowValuesList.get(i));
+      }
+      rowIds = delRowIds;
+      rowValuesList = delRowValues;
+    }
+
+    // update the indexes
+    for(IndexData indexData : _indexDatas) {
+      indexData.deleteRows(rowValuesList, rowIds);
+    }
+    return numDeleted;
+  }
+
   @Override
   public Row getNextRow() throws IOException {
     return getDefaultCursor().getNextRow();
   }
 
+  @Override
+  public void beginBulkLoad() {
+    if(_bulkLoad != null) {
+      throw new IllegalStateException(withErrorContext(
+          "Bulk load is already active"));
+    }
+    _bulkLoad = new BulkLoad();
+    getDatabase().bulkLoadStarted(this);
+  }
+
+  @Override
+  public void endBulkLoad() throws IOException {
+    endBulkLoad(true);
+  }
+
+  @Override
+  public List<RowId> endBulkLoad(boolean rollbackOnViolation)
+    throws IOException
+  {
+    if(_bulkLoad == null) {
+      throw new IllegalStateException(withErrorContext(
+          "Bulk load is not active"));
+    }
+    BulkLoad bulkLoad = _bulkLoad;
+    _bulkLoad = null;
+    getDatabase().bulkLoadEnded(this);
+
+    getPageChannel().startWrite();
+    try {
+      return bulkLoad.finish(rollbackOnViolation);
+    } finally {
+      bulkLoad.close();
+      getPageChannel().finishWrite();
+    }
+  }
+
+  @Override
+  public boolean isBulkLoading() {
+    return (_bulkLoad != null);
+  }
+
+  /**
+   * Rebuilds all the indexes of this table from the current rows of the
+   * table.  The table is read once, the entries for each index are encoded
+   * and sorted on a separate thread per index, and then each index is
+   * written "bottom-up" (see {@link IndexBulkLoader}).  This can be used to
+   * repair indexes which are inconsistent with the table data, or to compact
+   * indexes which have become sparse over time.
+   *
+   * @throws ConstraintViolationException if the current rows violate the
+   *         uniqueness constraint of an index, in which case no indexes are
+   *         modified
+   * @usage _advanced_method_
+   */
+  public void rebuildIndexes() throws IOException
+  {
+    requireNotBulkLoading();
+
+    IndexRebuilder rebuilder = new IndexRebuilder(this, _indexDatas);
+    try {
+      rebuilder.collectEntries();
+
+      // check all the indexes before modifying any of them
+      for(IndexBulkLoader loader : rebuilder.getLoaders()) {
+        if(loader.hasUniqueViolations()) {
+          throw new ConstraintViolationException(
+              loader.getIndexData().withErrorContext(
+                  "Rows violate uniqueness constraint for index"));
+        }
+      }
+
+      getPageChannel().startWrite();
+      try {
+        for(IndexBulkLoader loader : rebuilder.getLoaders()) {
+          loader.getIndexData().clear();
+          loader.load();
+        }
+
+        // write the updated unique entry counts
+        updateTableDefinition(0);
+      } finally {
+        getPageChannel().finishWrite();
+      }
+
+    } finally {
+      rebuilder.close();
+    }
+  }
+
+  /**
+   * Checks all the indexes of this table against the current rows of the
+   * table (using the same single table scan as {@link #rebuildIndexes}).
+   * The indexes are not modified.
+   *
+   * @return the indexes whose entries do not match the current rows of the
+   *         table (empty if all the indexes are consistent)
+   * @usage _advanced_method_
+   */
+  public List<IndexImpl> checkIndexes() throws IOException
+  {
+    requireNotBulkLoading();
+
+    Set<IndexData> badIndexDatas = new HashSet<IndexData>();
+    IndexRebuilder rebuilder = new IndexRebuilder(this, _indexDatas);
+    try {
+      rebuilder.collectEntries();
+      for(IndexBulkLoader loader : rebuilder.getLoaders()) {
+        if(!loader.matchesIndex()) {
+          badIndexDatas.add(loader.getIndexData());
+        }
+      }
+    } finally {
+      rebuilder.close();
+    }
+
+    List<IndexImpl> badIndexes = new ArrayList<IndexImpl>();
+    for(IndexImpl index : _indexes) {
+      if(badIndexDatas.contains(index.getIndexData())) {
+        badIndexes.add(index);
+      }
+    }
+    return badIndexes;
+  }
+
+  /**
+   * Marks the given rows as deleted without updating the indexes (used for
+   * rows whose index entries were never added).
+   * @return the number of rows which were deleted
+   */
+  private int markRowsDeleted(RowIdSet rowIds) throws IOException
+  {
+    return markRowsDeleted(rowIds, null);
+  }
+
+  /**
+   * Marks the given rows as deleted without updating the indexes.  The rows
+   * must be in data page order, each modified data page is written once.
+   * Invalid and already deleted rows are skipped.
+   *
+   * @param rowIds header rowIds of the rows to delete
+   * @param deleted optional, the indexes of the rows which were actually
+   *                deleted are set in this BitSet
+   * @return the number of rows which were deleted
+   */
+  private int markRowsDeleted(Iterable<RowIdImpl> rowIds, BitSet deleted)
+    throws IOException
+  {
+    ByteBuffer pageBuffer = null;
+    int pageNumber = PageChannel.INVALID_PAGE_NUMBER;
+    int rowsOnPage = 0;
+    boolean modified = false;
+    int numDeleted = 0;
+    int idx = -1;
+    for(RowIdImpl rowId : rowIds) {
+
+      ++idx;
+      if(rowId.getPageNumber() != pageNumber) {
+
+        if(modified) {
+          writeDataPage(pageBuffer, pageNumber);
+          modified = false;
+        }
+
+        pageNumber = rowId.getPageNumber();
+        rowsOnPage = 0;
+        if((pageNumber >= 0) && _ownedPages.containsPageNumber(pageNumber)) {
+          if(pageBuffer == null) {
+            pageBuffer = getPageChannel().createPageBuffer();
+          }
+          getPageChannel().readPage(pageBuffer, pageNumber);
+          rowsOnPage = getRowsOnDataPage(pageBuffer, getFormat());
+        }
+      }
+
+      int rowNumber = rowId.getRowNumber();
+      if((rowNumber < 0) || (rowNumber >= rowsOnPage)) {
+        // invalid row
+        continue;
+      }
+
+      // delete flag always gets set in the "header" row (even if data is on
+      // overflow row)
+      int rowIndex = getRowStartOffset(rowNumber, getFormat());
+      short rowStart = pageBuffer.getShort(rowIndex);
+      if(isDeletedRow(rowStart)) {
+        continue;
+      }
+      pageBuffer.putShort(rowIndex, (short)(rowStart | DELETED_ROW_MASK |
+                                            OVERFLOW_ROW_MASK));
+      _freeSpaceIndex.rowDeleted(
+          pageNumber, findRowEnd(pageBuffer, rowNumber, getFormat()) -
+          cleanRowStart(rowStart));
+      modified = true;
+      ++numDeleted;
+      if(deleted != null) {
+        deleted.set(idx);
+      }
+    }
+
+    if(modified) {
+      writeDataPage(pageBuffer, pageNumber);
+    }
+    return numDeleted;
+  }
+
   /**
    * Reads a single column from the given row.
    * @usage _advanced_method_
@@ -1063,6 +1466,25 @@ public class TableImpl implements Table, PropertyMaps.Owner
     return getDefaultCursor().iterator();
   }
 
+  @Override
+  public Iterable<Row> getRows(final Iterable<? extends RowId> rowIds,
+                               final Collection<String> columnNames)
+  {
+    return new Iterable<Row>() {
+      @Override
+      public Iterator<Row> iterator() {
+        RowIdSet rowIdSet = null;
+        if(rowIds instanceof RowIdSet) {
+          rowIdSet = (RowIdSet)rowIds;
+        } else {
+          rowIdSet = new RowIdSet();
+          rowIdSet.addAll(rowIds);
+        }
+        return new PageOrderRowIterator(rowIdSet.iterator(), columnNames);
+      }
+    };
+  }
+
   /**
    * Writes a new table defined by the given TableCreator to the database.
    * @usage _advanced_method_
@@ -1389,6 +1811,8 @@ public class TableImpl implements Table, PropertyMaps.Owner
    */
   protected IndexData mutateAddIndexData(TableUpdater mutator) throws IOException
   {
+    requireNotBulkLoading();
+
     IndexBuilder index = mutator.getIndex();
     JetFormat format = mutator.getFormat();
 
@@ -1491,15 +1915,22 @@ public class TableImpl implements Table, PropertyMaps.Owner
       idxCols.add(col.getColumn());
     }
 
-    // iterate through all the rows and add them to the index
-    Object[] rowVals = new Object[_columns.size()];
-    for(Row row : getDefaultCursor().newIterable().addColumns(idxCols)) {
-      for(Column col : idxCols) {
-        col.setRowValue(rowVals, col.getRowValue(row));
+    // iterate through all the rows and collect the index entries, then
+    // build the index pages "bottom-up"
+    IndexBulkLoader loader = new IndexBulkLoader(idxData);
+    try {
+      Object[] rowVals = new Object[_columns.size()];
+      for(Row row : getDefaultCursor().newIterable().addColumns(idxCols)) {
+        for(Column col : idxCols) {
+          col.setRowValue(rowVals, col.getRowValue(row));
+        }
+
+        loader.addRow(rowVals, (RowIdImpl)row.getId());
       }
 
-      IndexData.commitAll(
-          idxData.prepareAddRow(rowVals, (RowIdImpl)row.getId(), null));
+      loader.load();
+    } finally {
+      loader.close();
     }
 
     updateTableDefinition(0);
@@ -1627,6 +2058,9 @@ public class TableImpl implements Table, PropertyMaps.Owner
       TableUpdater mutator)
     throws IOException
   {
+    // the mutation is based on the current table definition
+    writePendingTableDefinition();
+
     // load complete table definition
     ByteBuffer tableBuffer = _tableDefBufferH.setPage(getPageChannel(),
                                                       _tableDefPageNumber);
@@ -2215,13 +2649,50 @@ public class TableImpl implements Table, PropertyMaps.Owner
     }
   }
 
+  /**
+   * Adds multiple rows to this table (with the same semantics as {@link
+   * #addRows(List)}), preparing and encoding the rows on the given number of
+   * worker threads (see {@link RowEncoderPipeline}).  The calling thread
+   * assigns any autonumbers and then places the rows on the data pages,
+   * updates the indexes and writes the pages, in the order of the given rows.
+   * This is useful for large batches of wide rows, where encoding the row
+   * data is the bottleneck.
+   * <p>
+   * Note, any custom {@link com.healthmarketscience.jackcess.ColumnValidator}
+   * instances must be thread-safe.
+   *
+   * @param rows List of Object[] row values
+   * @param numThreads number of worker threads to use for encoding the rows
+   * @usage _advanced_method_
+   */
+  public List<? extends Object[]> addRowsParallel(
+      List<? extends Object[]> rows, int numThreads)
+    throws IOException
+  {
+    if(numThreads < 1) {
+      throw new IllegalArgumentException(withErrorContext(
+          "Invalid number of threads " + numThreads));
+    }
+    return addRows(rows, true, numThreads);
+  }
+
+  private List<? extends Object[]> addRows(List<? extends Object[]> rows,
+                                           final boolean isBatchWrite)
+    throws IOException
+  {
+    return addRows(rows, isBatchWrite, 0);
+  }
+
   /**
    * Add multiple rows to this table, only writing to disk after all
    * rows have been written, and every time a data page is filled.
    * @param rows List of Object[] row values
+   * @param numThreads number of worker threads used to prepare the rows, 0
+   *                   to prepare the rows on the calling thread
    */
   private List<? extends Object[]> addRows(List<? extends Object[]> rows,
-                                           final boolean isBatchWrite)
+                                           final boolean isBatchWrite,
+                                           int numThreads)
     throws IOException
   {
     if(rows.isEmpty()) {
@@ -2229,6 +2700,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
     }
 
     getPageChannel().startWrite();
+    RowEncoderPipeline pipeline = null;
     try {
 
       ByteBuffer dataPage = null;
@@ -2260,35 +2732,41 @@ public class TableImpl implements Table, PropertyMaps.Owner
             // we copied the row, so put the copy back into the rows list
             dupeRows.set(i, row);
           }
+        }
 
-          // handle various value massaging activities
-          for(ColumnImpl column : _columns) {
-            if(!column.isAutoNumber()) {
-              Object val = column.getRowValue(row);
-              if(val == null) {
-                val = column.generateDefaultValue();
-              }
-              // pass input value through column validator
-              column.setRowValue(row, column.validate(val));
-            }
-          }
+        if(numThreads > 0) {
+          pipeline = new RowEncoderPipeline(this, rows, writeRowState,
+                                            numThreads);
+        }
 
-          // fill in autonumbers
-          handleAutoNumbersForAdd(row, writeRowState);
-          ++autoNumAssignCount;
+        for (int i = 0; i < rows.size(); i++) {
+
+          Object[] row = rows.get(i);
+          ByteBuffer rowData = null;
 
-          // need to assign calculated values after all the other fields are
-          // filled in but before final validation
-          _calcColEval.calculate(row);
+          if(pipeline == null) {
 
-          // run row validation if enabled
-          if(_rowValidator != null) {
-            _rowValidator.validate(row);
-          }
+            // handle various value massaging activities
+            validateRowForAdd(row);
+
+            // fill in autonumbers
+            handleAutoNumbersForAdd(row, writeRowState);
+            ++autoNumAssignCount;
+
+            // need to assign calculated values after all the other fields
+            // are filled in but before final validation
+            calculateRowForAdd(row);
+
+            // write the row of data to a temporary buffer
+            rowData = createRow(
+                row, _writeRowBufferH.getPageBuffer(getPageChannel()));
+
+          } else {
 
-          // write the row of data to a temporary buffer
-          ByteBuffer rowData = createRow(
-              row, _writeRowBufferH.getPageBuffer(getPageChannel()));
+            // the row was prepared (and possibly encoded) by the workers
+            rowData = pipeline.nextRowData(
+                _writeRowBufferH.getPageBuffer(getPageChannel()));
+          }
 
           int rowSize = rowData.remaining();
           if (rowSize > getFormat().MAX_ROW_SIZE) {
@@ -2307,7 +2785,15 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
           // before we actually write the row data, we verify all the database
           // constraints.
-          if(!_indexDatas.isEmpty()) {
+          if(_bulkLoad != null) {
+
+            // handle foreign keys before adding to table
+            _fkEnforcer.addRow(row);
+
+            // the index updates are deferred until the bulk load is ended
+            _bulkLoad.addRow(row, rowId);
+
+          } else if(!_indexDatas.isEmpty()) {
 
             IndexData.PendingChange idxChange = null;
             try {
@@ -2351,10 +2837,20 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
         boolean isWriteFailure = isWriteFailure(rowWriteFailure);
 
+        if(pipeline != null) {
+          // stop the workers before touching the rows (or the table) again
+          pipeline.close();
+          // the autonumbers are assigned before the rows are handed off to
+          // the workers
+          autoNumAssignCount = pipeline.getAutoNumAssignCount();
+        }
+
         if(!isWriteFailure && (autoNumAssignCount > updateCount)) {
           // we assigned some autonumbers which won't get written.  attempt to
-          // recover them so we don't get ugly "holes"
-          restoreAutoNumbersFromAdd(rows.get(autoNumAssignCount - 1));
+          // recover them so we don't get ugly "holes" (the autonumbers are
+          // assigned in row order, so restore back to the first unwritten
+          // row)
+          restoreAutoNumbersFromAdd(rows.get(updateCount));
         }
 
         if(!isBatchWrite) {
@@ -2401,12 +2897,48 @@ public class TableImpl implements Table, PropertyMaps.Owner
       }
 
     } finally {
+      if(pipeline != null) {
+        pipeline.close();
+      }
       getPageChannel().finishWrite();
     }
 
     return rows;
   }
 
+  /**
+   * Fills in any default values and passes the input values through the
+   * column validators for a row which is being added.
+   */
+  void validateRowForAdd(Object[] row) throws IOException
+  {
+    for(ColumnImpl column : _columns) {
+      if(!column.isAutoNumber()) {
+        Object val = column.getRowValue(row);
+        if(val == null) {
+          val = column.generateDefaultValue();
+        }
+        // pass input value through column validator
+        column.setRowValue(row, column.validate(val));
+      }
+    }
+  }
+
+  /**
+   * Fills in the calculated values and runs the row validation (if enabled)
+   * for a row which is being added.  Must be called after all the other
+   * values (including autonumbers) have been filled in.
+   */
+  void calculateRowForAdd(Object[] row) throws IOException
+  {
+    _calcColEval.calculate(row);
+
+    // run row validation if enabled
+    if(_rowValidator != null) {
+      _rowValidator.validate(row);
+    }
+  }
+
   private static boolean isWriteFailure(Throwable t) {
     while(t != null) {
       if((t instanceof IOException) && !(t instanceof JackcessException)) {
@@ -2452,6 +2984,436 @@ public class TableImpl implements Table, PropertyMaps.Owner
     updateRow(rowId, row);
   }
 
+  @Override
+  public int truncate() throws IOException
+  {
+    requireNotBulkLoading();
+
+    getPageChannel().startWrite();
+    try {
+
+      if(_fkEnforcer.isDeleteEnforced()) {
+        // handle the relationships for which this is the primary table before
+        // removing any rows
+        List<Object[]> rowValuesList = new ArrayList<Object[]>();
+        for(Row row : CursorImpl.createCursor(this).newIterable()
+              .addColumns(_indexColumns)) {
+          Object[] rowValues = new Object[_columns.size()];
+          for(ColumnImpl col : _indexColumns) {
+            col.setRowValue(rowValues, col.getRowValue(row));
+          }
+          rowValuesList.add(rowValues);
+        }
+
+        // check all the rows before cascading any deletes
+        for(Object[] rowValues : rowValuesList) {
+          _fkEnforcer.checkDeleteRow(rowValues);
+        }
+        for(Object[] rowValues : rowValuesList) {
+          _fkEnforcer.deleteRow(rowValues);
+        }
+      }
+
+      int numRows = _rowCount;
+
+      // discard the cached pages before they are freed
+      _addRowBufferH.clear();
+      _longValueBufferH.clear();
+
+      deallocatePages(_ownedPages, _freeSpacePages);
+      for(ColumnImpl col : _columns) {
+        col.deallocateOwnedPages();
+      }
+
+      for(IndexData indexData : _indexDatas) {
+        indexData.clear();
+      }
+
+      // any cached row data is now invalid
+      ++_modCount;
+      _freeSpaceIndex.reset();
+
+      _lastLongAutoNumber = 0;
+      updateTableDefinition(-numRows);
+
+      return numRows;
+
+    } finally {
+      getPageChannel().finishWrite();
+    }
+  }
+
+  /**
+   * Deallocates all the pages in the given owned pages usage map, removing
+   * them from the given usage maps.
+   */
+  static void deallocatePages(UsageMap ownedPages, UsageMap freeSpacePages)
+    throws IOException
+  {
+    // grab the page numbers before modifying the usage maps
+    List<Integer> pageNumbers = new ArrayList<Integer>();
+    UsageMap.PageCursor pageCursor = ownedPages.cursor();
+    while(true) {
+      int pageNumber = pageCursor.getNextPage();
+      if(pageNumber < 0) {
+        break;
+      }
+      pageNumbers.add(pageNumber);
+    }
+
+    PageChannel pageChannel = ownedPages.getPageChannel();
+    for(Integer pageNumber : pageNumbers) {
+      if(freeSpacePages.containsPageNumber(pageNumber)) {
+        freeSpacePages.removePageNumber(pageNumber);
+      }
+      ownedPages.removePageNumber(pageNumber);
+      pageChannel.deallocatePage(pageNumber);
+    }
+  }
+
+  @Override
+  public void defragment() throws IOException
+  {
+    requireNotBulkLoading();
+
+    getPageChannel().startWrite();
+    try {
+      defragmentDataPages(Integer.MAX_VALUE);
+
+      // write the index pages "bottom-up"
+      rebuildIndexes();
+      _defragMovedRows = false;
+    } finally {
+      getPageChannel().finishWrite();
+    }
+  }
+
+  @Override
+  public boolean defragment(int maxPages) throws IOException
+  {
+    requireNotBulkLoading();
+    if(maxPages < 1) {
+      throw new IllegalArgumentException(withErrorContext(
+          "Invalid max pages " + maxPages));
+    }
+
+    getPageChannel().startWrite();
+    try {
+      if(defragmentDataPages(maxPages)) {
+        return true;
+      }
+
+      if(_defragMovedRows) {
+        // the index entries of the moved rows were updated one at a time,
+        // which leaves the index pages sparse
+        rebuildIndexes();
+        _defragMovedRows = false;
+      }
+      return false;
+    } finally {
+      getPageChannel().finishWrite();
+    }
+  }
+
+  /**
+   * Empties up to the given number of data pages (starting from the last
+   * data page of this table) by moving their rows into the lowest data
+   * pages of this table which have room for them.
+   *
+   * @return {@code true} if the given number of pages were emptied (there
+   *         may be more work to do), {@code false} if no more pages can be
+   *         emptied
+   */
+  private boolean defragmentDataPages(int maxPages) throws IOException
+  {
+    Defragmenter defragmenter = new Defragmenter();
+    try {
+      for(int i = 0; i < maxPages; ++i) {
+        if(!defragmenter.emptyLastDataPage()) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      if(defragmenter.isModified()) {
+        // write any index changes
+        updateTableDefinition(0);
+      }
+    }
+  }
+
+  @Override
+  public int updateRows(Collection<? extends RowId> rowIds,
+                        Map<String,?> values)
+    throws IOException
+  {
+    requireNotBulkLoading();
+
+    RowIdSet rowIdSet = new RowIdSet(rowIds.size());
+    for(RowId rowId : rowIds) {
+      requireValidRowId((RowIdImpl)rowId);
+      rowIdSet.add(rowId);
+    }
+    if(rowIdSet.isEmpty()) {
+      return 0;
+    }
+
+    Object[] updateRow = asUpdateRow(values);
+    List<ColumnImpl> updateCols = new ArrayList<ColumnImpl>();
+    boolean canPatch = (_calcColEval.isEmpty() && (_rowValidator == null));
+    for(ColumnImpl column : _columns) {
+      if(column.getRowValue(updateRow) != Column.KEEP_VALUE) {
+        updateCols.add(column);
+        canPatch &= (!column.isVariableLength() && !column.isAutoNumber() &&
+                     !column.isCalculated());
+      }
+    }
+    if(updateCols.isEmpty()) {
+      return 0;
+    }
+
+    getPageChannel().startWrite();
+    try {
+      return (canPatch ?
+              patchRows(rowIdSet, updateRow, updateCols) :
+              updateRows(rowIdSet, updateRow));
+    } finally {
+      getPageChannel().finishWrite();
+    }
+  }
+
+  /**
+   * Updates the given rows one at a time using the full update logic.
+   */
+  private int updateRows(RowIdSet rowIds, Object[] updateRow)
+    throws IOException
+  {
+    RowState rowState = createRowState();
+    int updateCount = 0;
+    try {
+      for(RowIdImpl rowId : rowIds) {
+        updateRow(rowState, rowId, dupeRow(updateRow, updateRow.length));
+        ++updateCount;
+      }
+    } catch(Exception updateFailure) {
+      throw new BatchUpdateException(
+          updateCount, withErrorContext("Failed updating rows"),
+          updateFailure);
+    }
+    return updateCount;
+  }
+
+  /**
+   * Updates the given fixed length columns of the given rows by patching
+   * the column data and null mask bits in place.  Each data page is written
+   * once and only the indexes which include an updated column are updated.
+   * Rows which cannot be patched (e.g. rows on overflow pages or rows
+   * written before columns were added to the table) are updated using the
+   * full update logic.
+   */
+  private int patchRows(RowIdSet rowIds, Object[] updateRow,
+                        List<ColumnImpl> updateCols)
+    throws IOException
+  {
+    JetFormat format = getFormat();
+
+    // the new values are the same for every row, so validate and encode them
+    // once
+    byte[][] colData = new byte[updateCols.size()][];
+    for(int i = 0; i < updateCols.size(); ++i) {
+      ColumnImpl column = updateCols.get(i);
+      Object value = column.validate(column.getRowValue(updateRow));
+      column.setRowValue(updateRow, value);
+      if((value != null) && !column.storeInNullMask()) {
+        ByteBuffer data = column.write(value, 0);
+        colData[i] = ByteUtil.getBytes(data, data.remaining());
+      }
+    }
+
+    // only the indexes which include an updated column need maintenance
+    List<IndexData> updateIndexDatas = new ArrayList<IndexData>();
+    for(IndexData indexData : _indexDatas) {
+      for(IndexData.ColumnDescriptor col : indexData.getColumns()) {
+        if(updateCols.contains(col.getColumn())) {
+          updateIndexDatas.add(indexData);
+          break;
+        }
+      }
+    }
+
+    RowState rowState = createRowState();
+    ByteBuffer pageBuffer = null;
+    int pageNumber = PageChannel.INVALID_PAGE_NUMBER;
+    int rowsOnPage = 0;
+    boolean modified = false;
+    int updateCount = 0;
+    try {
+
+      for(RowIdImpl rowId : rowIds) {
+
+        if(rowId.getPageNumber() != pageNumber) {
+
+          if(modified) {
+            writeDataPage(pageBuffer, pageNumber);
+            modified = false;
+          }
+
+          pageNumber = rowId.getPageNumber();
+          rowsOnPage = 0;
+          if(_ownedPages.containsPageNumber(pageNumber)) {
+            if(pageBuffer == null) {
+              pageBuffer = getPageChannel().createPageBuffer();
+            }
+            getPageChannel().readPage(pageBuffer, pageNumber);
+            rowsOnPage = getRowsOnDataPage(pageBuffer, format);
+          }
+        }
+
+        int rowNumber = rowId.getRowNumber();
+        if(rowNumber >= rowsOnPage) {
+          throw new IllegalArgumentException(withErrorContext(
+              "Given rowId is invalid for this table: " + rowId));
+        }
+
+        short rowStartFlags = pageBuffer.getShort(
+            getRowStartOffset(rowNumber, format));
+        if(isDeletedRow(rowStartFlags)) {
+          throw new IllegalStateException(withErrorContext(
+              "Row is deleted: " + rowId));
+        }
+
+        int rowStart = findRowStart(pageBuffer, rowNumber, format);
+        int rowEnd = findRowEnd(pageBuffer, rowNumber, format);
+        if(isOverflowRow(rowStartFlags) ||
+           (ByteUtil.getUnsignedVarInt(pageBuffer, rowStart,
+                                       format.SIZE_ROW_COLUMN_COUNT) !=
+            _maxColumnCount)) {
+
+          // the row data is elsewhere or does not match the current column
+          // layout, do a normal update (after writing any pending changes)
+          if(modified) {
+            writeDataPage(pageBuffer, pageNumber);
+            modified = false;
+          }
+          updateRow(rowState, rowId, dupeRow(updateRow, updateRow.length));
+          ++updateCount;
+
+          // force the page to be re-read
+          pageNumber = PageChannel.INVALID_PAGE_NUMBER;
+          continue;
+        }
+
+        if(!updateIndexDatas.isEmpty()) {
+          updateIndexesForPatch(rowState, rowId, updateRow, updateCols,
+                                updateIndexDatas);
+        }
+
+        // patch the fixed length data and the null mask
+        int fixedDataStart =
+          rowStart + format.OFFSET_COLUMN_FIXED_DATA_ROW_OFFSET;
+        int nullMaskStart = rowEnd - ((_maxColumnCount + 7) / 8);
+        for(int i = 0; i < updateCols.size(); ++i) {
+          ColumnImpl column = updateCols.get(i);
+          Object value = column.getRowValue(updateRow);
+          int colNum = column.getColumnNumber();
+          int maskPos = nullMaskStart + (colNum / 8);
+          byte maskBit = (byte)(1 << (colNum % 8));
+
+          boolean notNull = (column.storeInNullMask() ?
+                             column.writeToNullMask(value) : (value != null));
+          byte mask = pageBuffer.get(maskPos);
+          pageBuffer.put(maskPos, (byte)(notNull ? (mask | maskBit) :
+                                         (mask & ~maskBit)));
+
+          if(!column.storeInNullMask()) {
+            pageBuffer.position(fixedDataStart + column.getFixedDataOffset());
+            if(colData[i] != null) {
+              pageBuffer.put(colData[i]);
+            } else {
+              ByteUtil.clearRange(
+                  pageBuffer, pageBuffer.position(),
+                  pageBuffer.position() +
+                  column.getType().getFixedSize(column.getLength()));
+            }
+          }
+        }
+
+        modified = true;
+        ++updateCount;
+      }
+
+      if(modified) {
+        writeDataPage(pageBuffer, pageNumber);
+        modified = false;
+      }
+
+      updateTableDefinition(0);
+
+    } catch(Exception updateFailure) {
+
+      if(modified) {
+        // the index updates for the patched rows have already been made, so
+        // write out the pending row changes
+        try {
+          writeDataPage(pageBuffer, pageNumber);
+        } catch(Exception flushFailure) {
+          LOG.warn(withErrorContext(
+                  "Secondary row failure which preceded the write failure"),
+                   updateFailure);
+          updateCount = 0;
+          updateFailure = flushFailure;
+        }
+      }
+
+      throw new BatchUpdateException(
+          updateCount, withErrorContext("Failed updating rows"),
+          updateFailure);
+    }
+
+    return updateCount;
+  }
+
+  /**
+   * Updates the given indexes (and checks the foreign keys) for a row whose
+   * fixed length columns are being patched in place.
+   */
+  private void updateIndexesForPatch(
+      RowState rowState, RowIdImpl rowId, Object[] updateRow,
+      List<ColumnImpl> updateCols, List<IndexData> updateIndexDatas)
+    throws IOException
+  {
+    // read the current index values (from the unmodified page)
+    ByteBuffer rowBuffer = positionAtRowData(rowState, rowId);
+    for(ColumnImpl idxCol : _indexColumns) {
+      getRowColumn(getFormat(), rowBuffer, idxCol, rowState, null);
+    }
+    Object[] oldRowValues = rowState.getRowCacheValues();
+    Object[] newRowValues = rowState.getRowCacheValues();
+    for(ColumnImpl column : updateCols) {
+      column.setRowValue(newRowValues, column.getRowValue(updateRow));
+    }
+
+    IndexData.PendingChange idxChange = null;
+    try {
+
+      // check foreign keys before actually updating
+      _fkEnforcer.updateRow(oldRowValues, newRowValues);
+
+      // prepare index updates
+      for(IndexData indexData : updateIndexDatas) {
+        idxChange = indexData.prepareUpdateRow(oldRowValues, rowId,
+                                               newRowValues, idxChange);
+      }
+
+      // complete index updates
+      IndexData.commitAll(idxChange);
+
+    } catch(ConstraintViolationException ce) {
+      IndexData.rollbackAll(idxChange);
+      throw ce;
+    }
+  }
+
   public <M extends Map<String,Object>> M updateRowFromMap(
       RowState rowState, RowIdImpl rowId, M row)
      throws IOException
@@ -2469,6 +3431,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
     throws IOException
   {
     requireValidRowId(rowId);
+    requireNotBulkLoading();
 
     getPageChannel().startWrite();
     try {
@@ -2593,12 +3556,14 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
       } else {
 
-        // bummer, need to find a new page for the data
+        // bummer, need to find a new page for the data (note, the header
+        // page cannot be re-organized while we are modifying it)
+        RowIdImpl headerRowId = rowState.getHeaderRowId();
         dataPage = findFreeRowSpace(rowSize, null,
-                                    PageChannel.INVALID_PAGE_NUMBER);
+                                    PageChannel.INVALID_PAGE_NUMBER,
+                                    headerRowId.getPageNumber());
         pageNumber = _addRowBufferH.getPageNumber();
 
-        RowIdImpl headerRowId = rowState.getHeaderRowId();
         ByteBuffer headerPage = rowState.getHeaderPage();
         if(pageNumber == headerRowId.getPageNumber()) {
           // new row is on the same page as header row, share page
@@ -2646,6 +3611,14 @@ public class TableImpl implements Table, PropertyMaps.Owner
   private ByteBuffer findFreeRowSpace(int rowSize, ByteBuffer dataPage,
                                       int pageNumber)
     throws IOException
+  {
+    return findFreeRowSpace(rowSize, dataPage, pageNumber,
+                            PageChannel.INVALID_PAGE_NUMBER);
+  }
+
+  private ByteBuffer findFreeRowSpace(int rowSize, ByteBuffer dataPage,
+                                      int pageNumber, int excludePageNumber)
+    throws IOException
   {
     // assume incoming page is modified
     boolean modifiedPage = true;
@@ -2658,7 +3631,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
       if(dataPage == null) {
         // No data pages exist (with free space).  Create a new one.
-        return newDataPage();
+        return newDataPage(rowSize, excludePageNumber);
       }
 
       // found a page, see if it will work
@@ -2675,12 +3648,58 @@ public class TableImpl implements Table, PropertyMaps.Owner
       }
       _freeSpacePages.removePageNumber(pageNumber);
 
-      dataPage = newDataPage();
+      dataPage = newDataPage(rowSize, excludePageNumber);
     }
 
     return dataPage;
   }
 
+  /**
+   * Returns a data page with enough space for a row of the given size,
+   * reusing the space of deleted rows on an existing page (according to the
+   * current row placement policy) if possible, otherwise a new data page.
+   */
+  private ByteBuffer newDataPage(int rowSize, int excludePageNumber)
+    throws IOException
+  {
+    int spaceNeeded = getRowSpaceUsage(rowSize, getFormat());
+    while(true) {
+
+      int pageNumber = _freeSpaceIndex.findPage(spaceNeeded, _rowPlacement,
+                                                excludePageNumber);
+      if(pageNumber == PageChannel.INVALID_PAGE_NUMBER) {
+        return newDataPage();
+      }
+
+      // the index is only a hint, check the actual page
+      ByteBuffer dataPage = _addRowBufferH.setPage(getPageChannel(),
+                                                   pageNumber);
+      int space = 0;
+      if((dataPage.get(0) == PageTypes.DATA) &&
+         _ownedPages.containsPageNumber(pageNumber)) {
+        space = FreeSpaceIndex.getReclaimableSpace(dataPage, getFormat());
+      }
+
+      if(space < spaceNeeded) {
+        _freeSpaceIndex.update(pageNumber, space);
+        continue;
+      }
+
+      if(!rowFitsOnDataPage(rowSize, dataPage, getFormat())) {
+        // drop the data of the deleted rows (the page will be written after
+        // the new row is added)
+        FreeSpaceIndex.compactDataPage(dataPage, getFormat());
+      }
+
+      // the page is now the "current" page for new rows
+      _freeSpaceIndex.update(pageNumber, 0);
+      if(!_freeSpacePages.containsPageNumber(pageNumber)) {
+        _freeSpacePages.addPageNumber(pageNumber);
+      }
+      return dataPage;
+    }
+  }
+
   static ByteBuffer findFreeRowSpace(
       UsageMap ownedPages, UsageMap freeSpacePages,
       TempPageHolder rowBufferH)
@@ -2711,16 +3730,55 @@ public class TableImpl implements Table, PropertyMaps.Owner
   }
 
   /**
-   * Updates the table definition after rows are modified.
+   * Updates the table definition after rows are modified.  Any index changes
+   * are always written immediately.  If a unit of work is executing (see
+   * {@link DatabaseImpl#batch}), the write of the table definition page (row
+   * count, auto-numbers and index entry counts) is deferred until the
+   * outermost unit of work completes.
    */
   private void updateTableDefinition(int rowCountInc) throws IOException
+  {
+    _rowCount += rowCountInc;
+
+    // write any index changes (index pages must not be left modified past
+    // the end of the current operation)
+    for (IndexData indexData : _indexDatas) {
+      indexData.update();
+    }
+
+    if(getDatabase().deferTableDefinitionUpdate(this)) {
+      _tableDefUpdatePending = true;
+      return;
+    }
+    writeTableDefinitionUpdate();
+  }
+
+  /**
+   * Writes any deferred table definition update.
+   */
+  void writePendingTableDefinition() throws IOException
+  {
+    if(_tableDefUpdatePending) {
+      getPageChannel().startWrite();
+      try {
+        writeTableDefinitionUpdate();
+      } finally {
+        getPageChannel().finishWrite();
+      }
+    }
+  }
+
+  /**
+   * Writes the current row count, auto-numbers and index entry counts to the
+   * table definition.
+   */
+  private void writeTableDefinitionUpdate() throws IOException
   {
     // load table definition
     ByteBuffer tdefPage = _tableDefBufferH.setPage(getPageChannel(),
                                                    _tableDefPageNumber);
 
     // make sure rowcount and autonumber are up-to-date
-    _rowCount += rowCountInc;
     tdefPage.putInt(getFormat().OFFSET_NUM_ROWS, _rowCount);
     tdefPage.putInt(getFormat().OFFSET_NEXT_AUTO_NUMBER, _lastLongAutoNumber);
     int ctypeOff = getFormat().OFFSET_NEXT_COMPLEX_AUTO_NUMBER;
@@ -2728,18 +3786,18 @@ public class TableImpl implements Table, PropertyMaps.Owner
       tdefPage.putInt(ctypeOff, _lastComplexTypeAutoNumber);
     }
 
-    // write any index changes
+    // write the unique entry count for each index to the table definition
+    // page
     for (IndexData indexData : _indexDatas) {
-      // write the unique entry count for the index to the table definition
-      // page
       tdefPage.putInt(indexData.getUniqueEntryCountOffset(),
                       indexData.getUniqueEntryCount());
-      // write the entry page for the index
-      indexData.update();
     }
 
     // write modified table definition
     getPageChannel().writePage(tdefPage, _tableDefPageNumber);
+
+    // only cleared once written (a failed deferred write will be retried)
+    _tableDefUpdatePending = false;
   }
 
   /**
@@ -2813,7 +3871,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
 
         // remainingRowLength is ignored when writing fixed length data
         buffer.position(fixedDataStart + col.getFixedDataOffset());
-        buffer.put(col.write(rowValue, 0));
+        col.write(rowValue, 0, buffer);
       }
 
       // always insert space for the entire fixed data column length
@@ -2865,30 +3923,28 @@ public class TableImpl implements Table, PropertyMaps.Owner
           nullMask.markNotNull(varCol);
 
           byte[] rawValue = null;
-          ByteBuffer varDataBuf = null;
-          if(((rawValue = rawVarValues.get(varCol)) != null) &&
-             (rawValue.length <= maxRowSize)) {
-            // save time and potentially db space, re-use raw value
-            varDataBuf = ByteBuffer.wrap(rawValue);
-          } else {
-            // write column value
-            varDataBuf = varCol.write(rowValue, maxRowSize);
-          }
-
-          maxRowSize -= varDataBuf.remaining();
-          if(varCol.getType().isLongValue()) {
-            // we already accounted for some amount of the long value data
-            // above.  add that space back so we don't double count
-            maxRowSize += getFormat().SIZE_LONG_VALUE_DEF;
-          }
           try {
-            buffer.put(varDataBuf);
+            if(((rawValue = rawVarValues.get(varCol)) != null) &&
+               (rawValue.length <= maxRowSize)) {
+              // save time and potentially db space, re-use raw value
+              buffer.put(rawValue);
+            } else {
+              // write column value directly into the row
+              varCol.write(rowValue, maxRowSize, buffer);
+            }
           } catch(BufferOverflowException e) {
             // if the data is too big for the buffer, then we have gone over
             // the max row size
             throw new InvalidValueException(withErrorContext(
                     "Row size " + buffer.limit() + " is too large"));
           }
+
+          maxRowSize -= (buffer.position() - offset);
+          if(varCol.getType().isLongValue()) {
+            // we already accounted for some amount of the long value data
+            // above.  add that space back so we don't double count
+            maxRowSize += getFormat().SIZE_LONG_VALUE_DEF;
+          }
         }
 
         // we do a loop here so that we fill in offsets for deleted columns
@@ -2931,7 +3987,7 @@ public class TableImpl implements Table, PropertyMaps.Owner
   /**
    * Fill in all autonumber column values for add.
    */
-  private void handleAutoNumbersForAdd(Object[] row, WriteRowState writeRowState)
+  void handleAutoNumbersForAdd(Object[] row, WriteRowState writeRowState)
     throws IOException
   {
     if(_autoNumColumns.isEmpty()) {
@@ -3177,6 +4233,16 @@ public class TableImpl implements Table, PropertyMaps.Owner
     }
   }
 
+  /**
+   * @throws IllegalStateException if a bulk load is active
+   */
+  private void requireNotBulkLoading() {
+    if(_bulkLoad != null) {
+      throw new IllegalStateException(withErrorContext(
+          "Operation not supported while bulk load is active"));
+    }
+  }
+
   /**
    * @throws IllegalStateException if the given row is invalid or deleted
    */
@@ -3346,6 +4412,502 @@ public class TableImpl implements Table, PropertyMaps.Owner
     }
   }
 
+  /**
+   * State for an active bulk load session (see {@link #beginBulkLoad}).
+   * Buffers the index entries for all the rows added during the session,
+   * which are then merged into the indexes when the session is ended.
+   */
+  private final class BulkLoad
+  {
+    /** the loaders for the indexes of this table, in the same order as
+        _indexDatas */
+    private final List<IndexBulkLoader> _loaders =
+      new ArrayList<IndexBulkLoader>();
+    /** the entries for the row currently being added */
+    private final IndexData.Entry[] _rowEntries;
+    /** the ids of all the rows added during the session */
+    private final RowIdSet _rowIds = new RowIdSet();
+
+    private BulkLoad() {
+      for(IndexData indexData : _indexDatas) {
+        _loaders.add(new IndexBulkLoader(indexData));
+      }
+      _rowEntries = new IndexData.Entry[_indexDatas.size()];
+    }
+
+    public void addRow(Object[] row, RowIdImpl rowId) throws IOException {
+      // create all the entries before adding any so that a constraint
+      // violation does not leave the entries for the row partially added
+      for(int i = 0; i < _rowEntries.length; ++i) {
+        _rowEntries[i] = _indexDatas.get(i).createBulkLoadEntry(row, rowId);
+      }
+      for(int i = 0; i < _rowEntries.length; ++i) {
+        _loaders.get(i).addEntry(_rowEntries[i]);
+        _rowEntries[i] = null;
+      }
+      _rowIds.add(rowId);
+    }
+
+    public List<RowId> finish(boolean rollbackOnViolation) throws IOException
+    {
+      // find all the rows which violate a uniqueness constraint
+      RowIdSet violationRowIds = new RowIdSet();
+      for(IndexBulkLoader loader : _loaders) {
+        loader.findUniqueViolations(violationRowIds);
+      }
+
+      int numDeleted = 0;
+      if(!violationRowIds.isEmpty()) {
+
+        if(rollbackOnViolation) {
+          // remove all the rows added during the session
+          updateTableDefinition(-markRowsDeleted(_rowIds));
+          throw new ConstraintViolationException(withErrorContext(
+              violationRowIds.size() + " of " + _rowIds.size() +
+              " bulk loaded rows violate uniqueness constraints, all bulk" +
+              " loaded rows were removed"));
+        }
+
+        // just remove the offending rows
+        numDeleted = markRowsDeleted(violationRowIds);
+      }
+
+      // add the remaining entries to the indexes
+      for(IndexBulkLoader loader : _loaders) {
+        loader.merge(violationRowIds);
+      }
+
+      updateTableDefinition(-numDeleted);
+
+      List<RowId> rejectedRowIds = new ArrayList<RowId>(
+          violationRowIds.size());
+      for(RowIdImpl rowId : violationRowIds) {
+        rejectedRowIds.add(rowId);
+      }
+      return rejectedRowIds;
+    }
+
+    public void close() {
+      for(IndexBulkLoader loader : _loaders) {
+        loader.close();
+      }
+    }
+  }
+
+  /**
+   * Moves the rows off of the last data pages of the table into the free
+   * space on the lowest data pages of the table (see {@link
+   * #defragment(int)}).  Any overflow rows which are moved are re-written as
+   * normal rows, and any leftover overflow row data (from rows which were
+   * previously deleted or updated) on the emptied pages is dropped.
+   */
+  private final class Defragmenter
+  {
+    private final RowState _rowState = createRowState();
+    private final TempPageHolder _sourceBufferH =
+      TempPageHolder.newHolder(TempBufferHolder.Type.SOFT);
+    private final TempPageHolder _targetBufferH =
+      TempPageHolder.newHolder(TempBufferHolder.Type.SOFT);
+    private final TempPageHolder _otherBufferH =
+      TempPageHolder.newHolder(TempBufferHolder.Type.SOFT);
+    /** the page currently being emptied */
+    private ByteBuffer _sourcePage;
+    private int _sourcePageNumber = PageChannel.INVALID_PAGE_NUMBER;
+    /** the page to which rows are currently being moved */
+    private ByteBuffer _targetPage;
+    private int _targetPageNumber = PageChannel.INVALID_PAGE_NUMBER;
+    private boolean _targetModified;
+    /** whether or not any pages have been modified */
+    private boolean _modified;
+
+    private Defragmenter() {}
+
+    public boolean isModified() {
+      return _modified;
+    }
+
+    /**
+     * Moves all the rows off of the last data page of the table and frees
+     * the page.
+     *
+     * @return {@code true} if a page was freed, {@code false} if no more
+     *         pages can be freed
+     */
+    public boolean emptyLastDataPage() throws IOException
+    {
+      if(!findLastDataPage()) {
+        return false;
+      }
+
+      int numMoved = 0;
+      boolean emptied = true;
+      for(MovedRow row : collectRows()) {
+        if(!moveRow(row)) {
+          // no more room on the earlier pages
+          emptied = false;
+          break;
+        }
+        ++numMoved;
+      }
+
+      releaseTargetPage();
+
+      if(!emptied) {
+        if(numMoved > 0) {
+          // the header rows of the moved rows were marked deleted
+          writePage(_sourcePage, _sourcePageNumber);
+        }
+        return false;
+      }
+
+      freeSourcePage();
+      return true;
+    }
+
+    private boolean findLastDataPage() throws IOException
+    {
+      UsageMap.PageCursor revPageCursor = _ownedPages.cursor();
+      revPageCursor.afterLast();
+      while(true) {
+        int pageNumber = revPageCursor.getPreviousPage();
+        if(pageNumber < 0) {
+          return false;
+        }
+        ByteBuffer dataPage = _sourceBufferH.setPage(getPageChannel(),
+                                                     pageNumber);
+        if(isTableDataPage(dataPage)) {
+          _sourcePage = dataPage;
+          _sourcePageNumber = pageNumber;
+          return true;
+        }
+      }
+    }
+
+    /**
+     * Reads all the rows whose data is on the current source page.
+     */
+    private List<MovedRow> collectRows() throws IOException
+    {
+      List<MovedRow> rows = new ArrayList<MovedRow>();
+      boolean hasOverflowData = false;
+      int rowsOnPage = getRowsOnDataPage(_sourcePage, getFormat());
+      for(int i = 0; i < rowsOnPage; ++i) {
+        short rowStart = _sourcePage.getShort(
+            getRowStartOffset(i, getFormat()));
+        if(!isDeletedRow(rowStart)) {
+          rows.add(readRow(new RowIdImpl(_sourcePageNumber, i)));
+        } else if(!FreeSpaceIndex.isDeadRow(rowStart)) {
+          // data for an overflow row (the header row may be on another page)
+          hasOverflowData = true;
+        }
+      }
+
+      if(hasOverflowData) {
+        collectOverflowRows(rows);
+      }
+      return rows;
+    }
+
+    /**
+     * Finds the rows on the other data pages of the table whose data is on
+     * the current source page.  Any overflow row data without a header row is
+     * left behind.
+     */
+    private void collectOverflowRows(List<MovedRow> rows) throws IOException
+    {
+      UsageMap.PageCursor pageCursor = _ownedPages.cursor();
+      while(true) {
+        int pageNumber = pageCursor.getNextPage();
+        if(pageNumber < 0) {
+          break;
+        }
+        if(pageNumber == _sourcePageNumber) {
+          continue;
+        }
+        ByteBuffer dataPage = _otherBufferH.setPage(getPageChannel(),
+                                                    pageNumber);
+        if(!isTableDataPage(dataPage)) {
+          continue;
+        }
+        int rowsOnPage = getRowsOnDataPage(dataPage, getFormat());
+        for(int i = 0; i < rowsOnPage; ++i) {
+          short rowStart = dataPage.getShort(
+              getRowStartOffset(i, getFormat()));
+          if(isDeletedRow(rowStart) || !isOverflowRow(rowStart)) {
+            continue;
+          }
+          int overflowPageNumber = ByteUtil.get3ByteInt(
+              dataPage, cleanRowStart(rowStart) + 1);
+          if(overflowPageNumber == _sourcePageNumber) {
+            rows.add(readRow(new RowIdImpl(pageNumber, i)));
+          }
+        }
+      }
+    }
+
+    private MovedRow readRow(RowIdImpl headerRowId) throws IOException
+    {
+      ByteBuffer rowBuffer = positionAtRowData(_rowState, headerRowId);
+      if(rowBuffer == null) {
+        throw new IOException(withErrorContext(
+            "Could not read row " + headerRowId));
+      }
+
+      Object[] rowValues = null;
+      if(!_indexDatas.isEmpty()) {
+        for(ColumnImpl idxCol : _indexColumns) {
+          getRowColumn(getFormat(), rowBuffer, idxCol, _rowState, null);
+        }
+        rowValues = _rowState.getRowCacheValues();
+      }
+
+      RowIdImpl dataRowId = _rowState.getFinalRowId();
+      ByteBuffer dataPage = _rowState.getFinalPage();
+      byte[] rowData = Arrays.copyOfRange(
+          dataPage.array(),
+          findRowStart(dataPage, dataRowId.getRowNumber(), getFormat()),
+          findRowEnd(dataPage, dataRowId.getRowNumber(), getFormat()));
+
+      return new MovedRow(headerRowId, dataRowId, rowData, rowValues);
+    }
+
+    /**
+     * Writes the given row to a target page, deletes the original row and
+     * updates the indexes.
+     *
+     * @return {@code true} if the row was moved, {@code false} if there is no
+     *         room for the row on an earlier page
+     */
+    private boolean moveRow(MovedRow row) throws IOException
+    {
+      int rowSize = row._rowData.length;
+      if(!findTargetPage(rowSize)) {
+        return false;
+      }
+
+      int rowNum = addDataPageRow(_targetPage, rowSize, getFormat(), 0);
+      _targetPage.put(row._rowData);
+      _targetModified = true;
+      RowIdImpl newRowId = new RowIdImpl(_targetPageNumber, rowNum);
+
+      markRowDeleted(row._headerRowId);
+      if(!row._dataRowId.equals(row._headerRowId)) {
+        markRowDeleted(row._dataRowId);
+      }
+
+      for(IndexData indexData : _indexDatas) {
+        indexData.deleteRow(row._rowValues, row._headerRowId);
+        IndexData.commitAll(
+            indexData.prepareAddRow(row._rowValues, newRowId, null));
+      }
+
+      _defragMovedRows = true;
+      return true;
+    }
+
+    /**
+     * Finds the lowest data page before the current source page with room
+     * for a row of the given size.
+     */
+    private boolean findTargetPage(int rowSize) throws IOException
+    {
+      if((_targetPage != null) &&
+         rowFitsOnDataPage(rowSize, _targetPage, getFormat())) {
+        return true;
+      }
+
+      int spaceNeeded = getRowSpaceUsage(rowSize, getFormat());
+      while(true) {
+
+        releaseTargetPage();
+
+        int pageNumber = _freeSpaceIndex.findLowestPage(spaceNeeded,
+                                                        _sourcePageNumber);
+        if(pageNumber == PageChannel.INVALID_PAGE_NUMBER) {
+          return false;
+        }
+
+        // the index is only a hint, check the actual page
+        ByteBuffer dataPage = _targetBufferH.setPage(getPageChannel(),
+                                                     pageNumber);
+        int space = 0;
+        if(isTableDataPage(dataPage) &&
+           _ownedPages.containsPageNumber(pageNumber)) {
+          space = FreeSpaceIndex.getReclaimableSpace(dataPage, getFormat());
+        }
+
+        if(space < spaceNeeded) {
+          _freeSpaceIndex.update(pageNumber, space);
+          continue;
+        }
+
+        _targetPage = dataPage;
+        _targetPageNumber = pageNumber;
+        _targetModified = false;
+        if(!rowFitsOnDataPage(rowSize, dataPage, getFormat())) {
+          // drop the data of the deleted rows
+          FreeSpaceIndex.compactDataPage(dataPage, getFormat());
+          _targetModified = true;
+        }
+        return true;
+      }
+    }
+
+    /**
+     * Writes the current target page (if modified) and records its
+     * remaining space.
+     */
+    private void releaseTargetPage() throws IOException
+    {
+      if(_targetPage == null) {
+        return;
+      }
+      if(_targetModified) {
+        writePage(_targetPage, _targetPageNumber);
+      }
+      _freeSpaceIndex.update(_targetPageNumber,
+                             FreeSpaceIndex.getReclaimableSpace(
+                                 _targetPage, getFormat()));
+      _targetPage = null;
+      _targetPageNumber = PageChannel.INVALID_PAGE_NUMBER;
+      _targetModified = false;
+    }
+
+    private void markRowDeleted(RowIdImpl rowId) throws IOException
+    {
+      int pageNumber = rowId.getPageNumber();
+      int rowNum = rowId.getRowNumber();
+
+      ByteBuffer dataPage = null;
+      boolean writePage = false;
+      if(pageNumber == _sourcePageNumber) {
+        // written (or freed) once all the rows are moved
+        dataPage = _sourcePage;
+      } else if(pageNumber == _targetPageNumber) {
+        dataPage = _targetPage;
+        _targetModified = true;
+      } else {
+        dataPage = _otherBufferH.setPage(getPageChannel(), pageNumber);
+        writePage = true;
+      }
+
+      int rowIndex = getRowStartOffset(rowNum, getFormat());
+      dataPage.putShort(rowIndex, (short)(dataPage.getShort(rowIndex)
+                                          | DELETED_ROW_MASK |
+                                          OVERFLOW_ROW_MASK));
+
+      if(pageNumber != _sourcePageNumber) {
+        _freeSpaceIndex.rowDeleted(
+            pageNumber, findRowEnd(dataPage, rowNum, getFormat()) -
+            findRowStart(dataPage, rowNum, getFormat()));
+      }
+      if(writePage) {
+        writePage(dataPage, pageNumber);
+      }
+    }
+
+    private void freeSourcePage() throws IOException
+    {
+      int pageNumber = _sourcePageNumber;
+      if(_freeSpacePages.containsPageNumber(pageNumber)) {
+        _freeSpacePages.removePageNumber(pageNumber);
+      }
+      _ownedPages.removePageNumber(pageNumber);
+      _freeSpaceIndex.update(pageNumber, 0);
+      getPageChannel().deallocatePage(pageNumber);
+
+      // discard any cached copies of the page
+      _addRowBufferH.possiblyInvalidate(pageNumber, null);
+      _sourceBufferH.invalidate();
+      _sourcePage = null;
+      _sourcePageNumber = PageChannel.INVALID_PAGE_NUMBER;
+      ++_modCount;
+      _modified = true;
+    }
+
+    private void writePage(ByteBuffer dataPage, int pageNumber)
+      throws IOException
+    {
+      writeDataPage(dataPage, pageNumber);
+      _sourceBufferH.possiblyInvalidate(pageNumber, dataPage);
+      _targetBufferH.possiblyInvalidate(pageNumber, dataPage);
+      _otherBufferH.possiblyInvalidate(pageNumber, dataPage);
+      _modified = true;
+    }
+
+    private boolean isTableDataPage(ByteBuffer dataPage) {
+      return ((dataPage.get(0) == PageTypes.DATA) &&
+              (dataPage.getInt(getFormat().OFFSET_TABLE_DEF_LOCATION) ==
+               _tableDefPageNumber));
+    }
+  }
+
+  /**
+   * A row read by the {@link Defragmenter} which is to be moved.
+   */
+  private static final class MovedRow
+  {
+    private final RowIdImpl _headerRowId;
+    private final RowIdImpl _dataRowId;
+    private final byte[] _rowData;
+    private final Object[] _rowValues;
+
+    private MovedRow(RowIdImpl headerRowId, RowIdImpl dataRowId,
+                     byte[] rowData, Object[] rowValues) {
+      _headerRowId = headerRowId;
+      _dataRowId = dataRowId;
+      _rowData = rowData;
+      _rowValues = rowValues;
+    }
+  }
+
+  /**
+   * Row iterator which reads the rows for a sequence of RowIds, skipping any
+   * deleted rows.  When given RowIds in data page order, each data page will
+   * be read at most once.
+   */
+  private final class PageOrderRowIterator implements Iterator<Row>
+  {
+    private final Iterator<RowIdImpl> _rowIds;
+    private final Collection<String> _columnNames;
+    private final RowState _rowState = createRowState();
+    private Row _next;
+
+    private PageOrderRowIterator(Iterator<RowIdImpl> rowIds,
+                                 Collection<String> columnNames)
+    {
+      _rowIds = rowIds;
+      _columnNames = columnNames;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        while((_next == null) && _rowIds.hasNext()) {
+          RowIdImpl rowId = _rowIds.next();
+          ByteBuffer rowBuffer = positionAtRowData(_rowState, rowId);
+          if(rowBuffer != null) {
+            _next = getRow(getFormat(), _rowState, rowBuffer, _columns,
+                           _columnNames);
+          }
+        }
+      } catch(IOException e) {
+        throw new RuntimeIOException(e);
+      }
+      return (_next != null);
+    }
+
+    @Override
+    public Row next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Row rtn = _next;
+      _next = null;
+      return rtn;
+    }
+  }
+
   /**
    * Maintains the state of reading/updating a row of data.
    * @usage _advanced_class_
@@ -3636,6 +5198,10 @@ public class TableImpl implements Table, PropertyMaps.Owner
       _sorted = false;
     }
 
+    public boolean isEmpty() {
+      return _calcColumns.isEmpty();
+    }
+
     public void calculate(Object[] row) throws IOException {
       if(!_sorted) {
         sortColumnsByDeps();
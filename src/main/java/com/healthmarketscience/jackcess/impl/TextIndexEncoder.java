@@ -0,0 +1,262 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.io.IOException;
+
+import static com.healthmarketscience.jackcess.impl.ByteUtil.ByteStream;
+import static com.healthmarketscience.jackcess.impl.GeneralLegacyIndexCodes.*;
+
+/**
+ * Table driven encoder for "general" and "general legacy" sort order text
+ * index entries.  Produces exactly the same bytes as {@link
+ * GeneralLegacyIndexCodes#writeNonNullIndexTextValue}, but looks up the codes
+ * for each char in flat, precomputed tables (with a fast path for the common
+ * case of simple ascii chars) and re-uses its working buffers between
+ * entries, so encoding a value does not allocate any memory.
+ * <p>
+ * Instances are <i>not</i> thread-safe, each index column has its own.
+ *
+ * @author James Ahlborn
+ */
+final class TextIndexEncoder
+{
+  private final CodeTable _codes;
+  private final ExtraCodesStream _extraCodes = new ExtraCodesStream(32);
+  private final ByteStream _unprintableCodes = new ByteStream();
+  private final ByteStream _crazyCodes = new ByteStream();
+
+  TextIndexEncoder(GeneralLegacyIndexCodes codes) {
+    _codes = codes.getCodeTable();
+  }
+
+  /**
+   * Converts an index value for a text column into the entry value (which
+   * is based on a variety of nifty codes).
+   */
+  void writeNonNullIndexTextValue(
+      Object value, ByteStream bout, boolean isAscending)
+    throws IOException
+  {
+    CharSequence str = ColumnImpl.toCharSequence(value);
+
+    // all text columns (including memos) are only indexed up to the max
+    // number of chars in a VARCHAR column
+    int len = Math.min(str.length(), MAX_TEXT_INDEX_CHAR_LENGTH);
+
+    // record previous entry length so we can do any post-processing
+    // necessary for this entry (handling descending)
+    int prevLength = bout.getLength();
+
+    // most values start with (or consist entirely of) simple ascii chars
+    int i = writeAsciiCodes(str, len, bout);
+
+    ExtraCodesStream extraCodes = null;
+    ByteStream unprintableCodes = null;
+    ByteStream crazyCodes = null;
+    int charOffset = i;
+    for(; i < len; ++i) {
+
+      char c = str.charAt(i);
+      byte type = _codes._types[c];
+
+      if(type == CodeTable.SURROGATE) {
+        throw new IllegalStateException(
+            "Surrogate pair chars are not handled");
+      }
+
+      int curCharOffset = charOffset;
+      int inlineStart = _codes._inlineOffsets[c];
+      int inlineLen = _codes._inlineOffsets[c + 1] - inlineStart;
+      if(inlineLen > 0) {
+        // write the "inline" codes immediately
+        bout.write(_codes._inlineBytes, inlineStart, inlineLen);
+
+        // only increment the charOffset for chars with inline codes
+        ++charOffset;
+      }
+
+      if(type == CodeTable.SIMPLE) {
+        // common case, skip further code handling
+        continue;
+      }
+
+      byte[] bytes = _codes._extraBytes[c];
+      byte extraCodeModifier = _codes._extraByteMods[c];
+      if((bytes != null) || (extraCodeModifier != 0)) {
+        if(extraCodes == null) {
+          extraCodes = _extraCodes;
+          extraCodes.reset();
+        }
+
+        // keep track of the extra codes for later
+        writeExtraCodes(curCharOffset, bytes, extraCodeModifier, extraCodes);
+      }
+
+      bytes = _codes._unprintableBytes[c];
+      if(bytes != null) {
+        if(unprintableCodes == null) {
+          unprintableCodes = _unprintableCodes;
+          unprintableCodes.reset();
+        }
+
+        // keep track of the unprintable codes for later
+        writeUnprintableCodes(curCharOffset, bytes, unprintableCodes,
+                              extraCodes);
+      }
+
+      byte crazyFlag = _codes._crazyFlags[c];
+      if(crazyFlag != 0) {
+        if(crazyCodes == null) {
+          crazyCodes = _crazyCodes;
+          crazyCodes.reset();
+        }
+
+        // keep track of the crazy flags for later
+        crazyCodes.write(crazyFlag);
+      }
+    }
+
+    writeTrailingCodes(bout, prevLength, extraCodes, unprintableCodes,
+                       crazyCodes, isAscending);
+  }
+
+  /**
+   * Writes the single byte codes for the leading run of simple ascii chars
+   * directly into the given stream.
+   *
+   * @return the number of chars written
+   */
+  private int writeAsciiCodes(CharSequence str, int len, ByteStream bout)
+  {
+    byte[] asciiCodes = _codes._asciiCodes;
+    bout.ensureNewCapacity(len);
+    byte[] buf = bout.getBytes();
+    int start = bout.getLength();
+    int i = 0;
+    for(; i < len; ++i) {
+      char c = str.charAt(i);
+      if(c >= asciiCodes.length) {
+        break;
+      }
+      byte code = asciiCodes[c];
+      if(code == 0) {
+        break;
+      }
+      buf[start + i] = code;
+    }
+    bout.skip(i);
+    return i;
+  }
+
+
+  /**
+   * The codes for all the chars in BMP 0, flattened into arrays indexed by
+   * char value.  Built once from the CharHandlers of a codes file pair and
+   * immutable (and therefore shareable) thereafter.
+   */
+  static final class CodeTable
+  {
+    static final byte SIMPLE = 0;
+    static final byte COMPLEX = 1;
+    static final byte SURROGATE = 2;
+
+    private static final int NUM_CHARS = LAST_EXT_CHAR + 1;
+    private static final int NUM_ASCII_CHARS = 0x80;
+
+    /** type of each char (SIMPLE, COMPLEX or SURROGATE) */
+    private final byte[] _types = new byte[NUM_CHARS];
+    /** offsets of the inline codes for each char in _inlineBytes (the codes
+        for char c are in the range [_inlineOffsets[c], _inlineOffsets[c+1])
+        */
+    private final int[] _inlineOffsets = new int[NUM_CHARS + 1];
+    private final byte[] _inlineBytes;
+    private final byte[][] _extraBytes = new byte[NUM_CHARS][];
+    private final byte[][] _unprintableBytes = new byte[NUM_CHARS][];
+    private final byte[] _extraByteMods = new byte[NUM_CHARS];
+    private final byte[] _crazyFlags = new byte[NUM_CHARS];
+    /** single byte code for simple ascii chars, 0 if not a single byte
+        simple char */
+    private final byte[] _asciiCodes = new byte[NUM_ASCII_CHARS];
+
+    private CodeTable(CharHandler[] codes, CharHandler[] extCodes)
+    {
+      int numInlineBytes = 0;
+      for(int i = 0; i < NUM_CHARS; ++i) {
+        byte[] bytes = getInlineBytes(getHandler(codes, extCodes, i));
+        if(bytes != null) {
+          numInlineBytes += bytes.length;
+        }
+      }
+      _inlineBytes = new byte[numInlineBytes];
+
+      int inlineOffset = 0;
+      for(int i = 0; i < NUM_CHARS; ++i) {
+        CharHandler ch = getHandler(codes, extCodes, i);
+        _inlineOffsets[i] = inlineOffset;
+
+        if(ch == SURROGATE_CHAR_HANDLER) {
+          _types[i] = SURROGATE;
+          continue;
+        }
+
+        byte[] bytes = getInlineBytes(ch);
+        if(bytes != null) {
+          System.arraycopy(bytes, 0, _inlineBytes, inlineOffset, bytes.length);
+          inlineOffset += bytes.length;
+        }
+
+        if(ch.getType() == Type.SIMPLE) {
+          _types[i] = SIMPLE;
+          if((i < NUM_ASCII_CHARS) && (bytes.length == 1) && (bytes[0] != 0)) {
+            _asciiCodes[i] = bytes[0];
+          }
+          continue;
+        }
+
+        _types[i] = COMPLEX;
+        _extraBytes[i] = ch.getExtraBytes();
+        _unprintableBytes[i] = ch.getUnprintableBytes();
+        _extraByteMods[i] = ch.getExtraByteModifier();
+        _crazyFlags[i] = ch.getCrazyFlag();
+      }
+      _inlineOffsets[NUM_CHARS] = inlineOffset;
+    }
+
+    private static CharHandler getHandler(
+        CharHandler[] codes, CharHandler[] extCodes, int c)
+    {
+      return ((c <= LAST_CHAR) ? codes[c] : extCodes[c - FIRST_EXT_CHAR]);
+    }
+
+    private static byte[] getInlineBytes(CharHandler ch)
+    {
+      // the surrogate handler throws when asked for its codes
+      return ((ch != SURROGATE_CHAR_HANDLER) ? ch.getInlineBytes() : null);
+    }
+
+    /**
+     * Loads the codes from the given pair of index codes resource files.
+     */
+    static CodeTable load(String codesFilePath, String extCodesFilePath)
+    {
+      return new CodeTable(
+          loadCodes(codesFilePath, FIRST_CHAR, LAST_CHAR),
+          loadCodes(extCodesFilePath, FIRST_EXT_CHAR, LAST_EXT_CHAR));
+    }
+  }
+}
@@ -0,0 +1,499 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.PropertyMap;
+import com.healthmarketscience.jackcess.Relationship;
+import com.healthmarketscience.jackcess.RelationshipBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import com.healthmarketscience.jackcess.TableMetaData;
+import com.healthmarketscience.jackcess.impl.PropertyMapImpl;
+import com.healthmarketscience.jackcess.impl.TopoSorter;
+import com.healthmarketscience.jackcess.query.Query;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility class for compacting an Access database by copying its contents
+ * into a new database (similar to the "Compact &amp; Repair" functionality
+ * of MS Access).  Each table is re-created in the new database (including
+ * the column, index and table properties) and the live rows are copied in
+ * table order, so deleted rows and any orphaned long value data are
+ * dropped, the data pages are densely packed, and the indexes are built
+ * bottom-up (using a bulk load).  The tables are copied in dependency order
+ * (the primary table of a relationship before the tables which reference
+ * it) and then the relationships, linked tables and the database summary
+ * and user-defined properties are re-created.
+ * <p>
+ * Any errors reading the source rows are handled by the ErrorHandler of the
+ * source database (e.g. a {@link ReplacementErrorHandler} can be used to
+ * salvage the readable data from a damaged database).
+ * <p>
+ * Note, the database objects which cannot be created by this library are
+ * not copied: queries (and any other non-table objects) and the internal
+ * "MSys" tables created by ms access are dropped (a warning is logged for
+ * each dropped query) and tables with complex columns (attachments,
+ * multi-value columns, etc.) cannot be compacted.
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public class CompactUtil
+{
+  private static final Log LOG = LogFactory.getLog(CompactUtil.class);
+
+  /** number of rows added to a table at a time */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /** prefix of the internal tables created by ms access */
+  private static final String ACCESS_TABLE_PREFIX = "MSys";
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "jackcess-compactor");
+      t.setDaemon(true);
+      return t;
+    }
+  };
+
+  private CompactUtil() {}
+
+  /**
+   * Compacts the given source database file into a new database file (of
+   * the same format).  The source database is opened read-only.
+   *
+   * @param srcFile the database file to compact
+   * @param destFile the new database file, must not already exist
+   */
+  public static void compactFile(File srcFile, File destFile)
+    throws IOException
+  {
+    Database srcDb = new DatabaseBuilder(srcFile).setReadOnly(true).open();
+    try {
+      compact(srcDb, destFile).close();
+    } finally {
+      srcDb.close();
+    }
+  }
+
+  /**
+   * Compacts the given database files into new database files (with the
+   * same names) in the given directory.  Each database is compacted on a
+   * separate thread, using at most the given number of threads.
+   *
+   * @param srcFiles the database files to compact
+   * @param destDir the directory in which to create the new database files
+   * @param numThreads the max number of databases to compact at once
+   * @throws IOException if compacting any of the databases fails (all the
+   *         databases are attempted)
+   * @throws IllegalArgumentException if multiple source files have the same
+   *         name
+   */
+  public static void compactFiles(Collection<File> srcFiles,
+                                  final File destDir, int numThreads)
+    throws IOException
+  {
+    if(numThreads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads " + numThreads);
+    }
+
+    // the new files are named after the source files, so the names must be
+    // unique
+    Set<String> destNames = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    for(File srcFile : srcFiles) {
+      if(!destNames.add(srcFile.getName())) {
+        throw new IllegalArgumentException(
+            "Multiple database files named " + srcFile.getName());
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+        numThreads, THREAD_FACTORY);
+    try {
+
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for(final File srcFile : srcFiles) {
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            compactFile(srcFile, new File(destDir, srcFile.getName()));
+            return null;
+          }
+        }));
+      }
+
+      IOException failure = null;
+      for(Future<Void> result : results) {
+        try {
+          result.get();
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while compacting databases", e);
+        } catch(ExecutionException e) {
+          Throwable cause = e.getCause();
+          if(failure == null) {
+            failure = new IOException("Failed compacting databases", cause);
+          } else {
+            failure.addSuppressed(cause);
+          }
+        }
+      }
+
+      if(failure != null) {
+        throw failure;
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Compacts the given source database into a new database file (of the
+   * same format).
+   *
+   * @param srcDb the database to compact
+   * @param destFile the new database file, must not already exist (if
+   *                 compacting fails, the file is removed)
+   * @return the new (open) database
+   */
+  public static Database compact(Database srcDb, File destFile)
+    throws IOException
+  {
+    requireCompactable(srcDb);
+
+    if(destFile.exists()) {
+      throw new IOException("Database file " + destFile + " already exists");
+    }
+
+    Database destDb = null;
+    try {
+      destDb = new DatabaseBuilder(destFile)
+        .setFileFormat(srcDb.getFileFormat())
+        .setCharset(srcDb.getCharset())
+        .setTimeZone(srcDb.getTimeZone())
+        .setAutoSync(false)
+        .create();
+      compact(srcDb, destDb);
+      destDb.flush();
+      return destDb;
+    } catch(IOException | RuntimeException e) {
+      if(destDb != null) {
+        try {
+          destDb.close();
+        } catch(IOException | RuntimeException closeFailure) {
+          e.addSuppressed(closeFailure);
+        }
+      }
+      // remove the partial database so that the compaction can be retried
+      if(destFile.exists() && !destFile.delete()) {
+        LOG.warn("Could not remove partially compacted database file " +
+                 destFile);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Copies the contents of the given source database into the given
+   * (presumably new) destination database.
+   *
+   * @param srcDb the database to compact
+   * @param destDb the database into which the contents are copied, must not
+   *               contain any of the source tables
+   */
+  public static void compact(Database srcDb, Database destDb)
+    throws IOException
+  {
+    requireCompactable(srcDb);
+
+    // the source data is copied as is
+    destDb.setAllowAutoNumberInsert(true);
+    destDb.setEvaluateExpressions(false);
+    destDb.setEnforceForeignKeys(false);
+    destDb.setDateTimeType(srcDb.getDateTimeType());
+
+    List<Table> tables = new ArrayList<Table>();
+    List<TableMetaData> linkedTables = new ArrayList<TableMetaData>();
+    for(String tableName : srcDb.getTableNames()) {
+      if(isAccessTable(tableName)) {
+        // re-created by ms access as needed
+        continue;
+      }
+      TableMetaData tmd = srcDb.getTableMetaData(tableName);
+      if(tmd.isLinked()) {
+        linkedTables.add(tmd);
+      } else {
+        tables.add(srcDb.getTable(tableName));
+      }
+    }
+
+    for(Query query : srcDb.getQueries()) {
+      LOG.warn("Query " + query.getName() + " of database " +
+               srcDb.getFile() + " cannot be copied and was dropped");
+    }
+
+    List<Relationship> relationships = srcDb.getRelationships();
+    sortTables(tables, relationships);
+
+    for(Table table : tables) {
+      copyTable(table, destDb);
+    }
+
+    for(TableMetaData tmd : linkedTables) {
+      if(tmd.getLinkedDbName() != null) {
+        destDb.createLinkedTable(tmd.getName(), tmd.getLinkedDbName(),
+                                 tmd.getLinkedTableName());
+      }
+    }
+
+    for(Relationship rel : relationships) {
+      if((destDb.getTable(rel.getFromTable().getName()) != null) &&
+         (destDb.getTable(rel.getToTable().getName()) != null)) {
+        copyRelationship(rel, destDb);
+      }
+    }
+
+    copyProperties(srcDb.getSummaryProperties(),
+                   destDb.getSummaryProperties(), true);
+    copyProperties(srcDb.getUserDefinedProperties(),
+                   destDb.getUserDefinedProperties(), true);
+    copyProperties(srcDb.getDatabaseProperties(),
+                   destDb.getDatabaseProperties(), false);
+
+    // restore the default settings
+    destDb.setAllowAutoNumberInsert(null);
+    destDb.setEvaluateExpressions(null);
+    destDb.setEnforceForeignKeys(null);
+  }
+
+  /**
+   * Creates a copy of the given table in the given database and copies all
+   * the rows of the table.
+   */
+  private static void copyTable(Table srcTable, Database destDb)
+    throws IOException
+  {
+    TableBuilder tb = new TableBuilder(srcTable.getName());
+    for(Column col : srcTable.getColumns()) {
+      tb.addColumn(new ColumnBuilder(col.getName()).setFromColumn(col));
+    }
+    for(Index idx : srcTable.getIndexes()) {
+      if(idx.isForeignKey()) {
+        // re-created along with the relationship
+        continue;
+      }
+      IndexBuilder ib = new IndexBuilder(idx.getName());
+      for(Index.Column idxCol : idx.getColumns()) {
+        ib.addColumns(idxCol.isAscending(), idxCol.getName());
+      }
+      if(idx.isPrimaryKey()) {
+        ib.setPrimaryKey();
+      } else if(idx.isUnique()) {
+        ib.setUnique();
+      }
+      if(idx.isRequired()) {
+        ib.setRequired();
+      }
+      if(idx.shouldIgnoreNulls()) {
+        ib.setIgnoreNulls();
+      }
+      tb.addIndex(ib);
+    }
+    for(PropertyMap.Property prop : srcTable.getProperties()) {
+      // copy everything but guid
+      if(!PropertyMap.GUID_PROP.equalsIgnoreCase(prop.getName())) {
+        tb.putProperty(prop.getName(), prop.getType(), prop.getValue());
+      }
+    }
+
+    Table destTable = tb.toTable(destDb);
+
+    // the indexes are built once all the rows have been added
+    destTable.beginBulkLoad();
+    boolean success = false;
+    try {
+      List<Object[]> rows = new ArrayList<Object[]>(DEFAULT_BATCH_SIZE);
+      Cursor cursor = CursorBuilder.createCursor(srcTable);
+      for(Row row : cursor) {
+        rows.add(destTable.asRow(row));
+        if(rows.size() == DEFAULT_BATCH_SIZE) {
+          destTable.addRows(rows);
+          rows.clear();
+        }
+      }
+      if(!rows.isEmpty()) {
+        destTable.addRows(rows);
+      }
+      success = true;
+    } finally {
+      if(success) {
+        destTable.endBulkLoad();
+      } else {
+        // don't mask the original failure
+        try {
+          destTable.endBulkLoad(false);
+        } catch(IOException | RuntimeException ignored) {
+          // already failing
+        }
+      }
+    }
+  }
+
+  private static void copyRelationship(Relationship rel, Database destDb)
+    throws IOException
+  {
+    RelationshipBuilder rb = new RelationshipBuilder(
+        rel.getFromTable().getName(), rel.getToTable().getName())
+      .setName(rel.getName())
+      .setJoinType(rel.getJoinType());
+    for(int i = 0; i < rel.getFromColumns().size(); ++i) {
+      rb.addColumns(rel.getFromColumns().get(i).getName(),
+                    rel.getToColumns().get(i).getName());
+    }
+    if(rel.hasReferentialIntegrity()) {
+      rb.setReferentialIntegrity();
+      if(rel.cascadeUpdates()) {
+        rb.setCascadeUpdates();
+      }
+      if(rel.cascadeDeletes()) {
+        rb.setCascadeDeletes();
+      } else if(rel.cascadeNullOnDelete()) {
+        rb.setCascadeNullOnDelete();
+      }
+    }
+    rb.toRelationship(destDb);
+  }
+
+  /**
+   * Copies the given properties, optionally only the properties which do
+   * not exist in the destination.
+   */
+  private static void copyProperties(PropertyMap srcProps,
+                                     PropertyMap destProps,
+                                     boolean replace)
+    throws IOException
+  {
+    if((destProps instanceof PropertyMapImpl) &&
+       !((PropertyMapImpl)destProps).getOwner().isSaveable()) {
+      // the new database does not have the object which stores these
+      return;
+    }
+    boolean modified = false;
+    for(PropertyMap.Property prop : srcProps) {
+      if(replace || (destProps.get(prop.getName()) == null)) {
+        destProps.put(prop.getName(), prop.getType(), prop.getValue(),
+                      prop.isDdl());
+        modified = true;
+      }
+    }
+    if(modified) {
+      destProps.save();
+    }
+  }
+
+  /**
+   * Sorts the given tables so that the primary table of each relationship
+   * comes before the tables which reference it.  If the relationships are
+   * circular, the original order is kept (the rows are copied before the
+   * relationships are created, so the order is not required).
+   */
+  private static void sortTables(final List<Table> tables,
+                                 final List<Relationship> relationships)
+  {
+    List<Table> sorted = new ArrayList<Table>(tables);
+    try {
+      (new TopoSorter<Table>(sorted, TopoSorter.REVERSE) {
+        @Override
+        protected void getDescendents(Table from, List<Table> descendents) {
+          for(Relationship rel : relationships) {
+            String primaryName = rel.getFromTable().getName();
+            if(!rel.getToTable().getName().equalsIgnoreCase(from.getName()) ||
+               primaryName.equalsIgnoreCase(from.getName())) {
+              continue;
+            }
+            for(Table table : tables) {
+              if(table.getName().equalsIgnoreCase(primaryName) &&
+                 !descendents.contains(table)) {
+                descendents.add(table);
+              }
+            }
+          }
+        }
+      }).sort();
+    } catch(IllegalStateException e) {
+      // cycle detected, keep the original order
+      return;
+    }
+    tables.clear();
+    tables.addAll(sorted);
+  }
+
+  private static void requireCompactable(Database srcDb) throws IOException
+  {
+    for(String tableName : srcDb.getTableNames()) {
+      if(isAccessTable(tableName) ||
+         srcDb.getTableMetaData(tableName).isLinked()) {
+        continue;
+      }
+      for(Column col : srcDb.getTable(tableName).getColumns()) {
+        if(col.getType() == DataType.COMPLEX_TYPE) {
+          throw new UnsupportedOperationException(
+              "Cannot compact table " + tableName + " with complex column " +
+              col.getName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given table is one of the internal tables
+   * which ms access creates as needed (e.g. "MSysCompactError"), which are
+   * not copied.
+   */
+  private static boolean isAccessTable(String tableName) {
+    return tableName.regionMatches(true, 0, ACCESS_TABLE_PREFIX, 0,
+                                   ACCESS_TABLE_PREFIX.length());
+  }
+}
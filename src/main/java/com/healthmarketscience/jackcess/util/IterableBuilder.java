@@ -16,16 +16,21 @@ limitations under the License.
 
 package com.healthmarketscience.jackcess.util;
 
+import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.healthmarketscience.jackcess.Column;
 import com.healthmarketscience.jackcess.Cursor;
 import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
 import com.healthmarketscience.jackcess.impl.CursorImpl;
 
 /**
@@ -182,4 +187,20 @@ public class IterableBuilder implements Iterable<Row>
   public Iterator<Row> iterator() {
     return ((CursorImpl)_cursor).iterator(this);
   }
+
+  /**
+   * Deletes all the rows which would be returned by this Iterable, as a
+   * single batch (see {@link Table#deleteRows}).  The rows are collected
+   * before any of them are deleted.
+   *
+   * @return the number of rows deleted
+   * @usage _intermediate_method_
+   */
+  public int deleteRows() throws IOException {
+    List<RowId> rowIds = new ArrayList<RowId>();
+    for(Row row : this) {
+      rowIds.add(row.getId());
+    }
+    return _cursor.getTable().deleteRows(rowIds);
+  }
 }
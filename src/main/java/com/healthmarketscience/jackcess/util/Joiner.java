@@ -34,6 +34,8 @@ import com.healthmarketscience.jackcess.impl.IndexImpl;
 /**
  * Utility for finding rows based on pre-defined, foreign-key table
  * relationships.
+ * <p>
+ * For joining all the rows of two tables, see {@link TableJoiner}.
  *
  * @author James Ahlborn
  * @usage _general_class_
@@ -0,0 +1,850 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.impl.ColumnImpl;
+import com.healthmarketscience.jackcess.impl.RowIdImpl;
+import com.healthmarketscience.jackcess.impl.TableImpl;
+
+/**
+ * A non-persistent, in-memory secondary index on one or more columns of a
+ * Table.  Useful for repeated lookups on columns which are not indexed in
+ * the database, without modifying the database file.  The index is built
+ * with a single scan of the table when first used and maps the column
+ * values to the RowIds of the matching rows.  There are two types of index:
+ * <ul>
+ * <li>{@link Type#HASH} supports equality lookups on any number of
+ *     columns</li>
+ * <li>{@link Type#SORTED} supports equality and range lookups on a single
+ *     numeric or date/time column, and is kept as a pair of sorted primitive
+ *     arrays</li>
+ * </ul>
+ * <p>
+ * The index is invalidated by any change to the rows of the table made
+ * through the same Database (the Database shares the Table instance while
+ * this index refers to it), and is rebuilt on the next lookup.  If the
+ * index would need more than the configured max memory (see {@link
+ * #setMaxMemory}), it is not kept and lookups fall back to scanning the
+ * table.
+ * <p>
+ * As with {@link Joiner}, text values are compared case-insensitively and
+ * {@code null} values never match.  Lookup values are converted for the
+ * types of the indexed columns, so, for example, a Double value matches a
+ * FLOAT column value and a LocalDateTime value matches a Date column value
+ * (using the date/time handling of the column).  Instances are <i>not</i>
+ * thread-safe.
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public class MemoryIndex
+{
+  /** the supported types of in-memory indexes */
+  public enum Type {
+    /** equality lookups on any number of columns */
+    HASH,
+    /** equality and range lookups on a single numeric or date/time
+        column */
+    SORTED;
+  }
+
+  private static final long DEFAULT_MAX_MEMORY = 32L * 1024L * 1024L;
+  /** rough estimate of the memory used by each distinct key in a hash index
+      (not including the key itself) */
+  private static final int HASH_ENTRY_OVERHEAD = 64;
+  /** rough estimate of the memory used by a simple (non-text) key */
+  private static final int SIMPLE_KEY_SIZE = 16;
+  /** memory used by each entry in a sorted index (key and rowId) */
+  private static final int SORTED_ENTRY_SIZE = 12;
+  /** ranges smaller than this are sorted using an insertion sort */
+  private static final int MIN_QUICK_SORT_SIZE = 16;
+  private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+  private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+  private final TableImpl _table;
+  private final Type _type;
+  private final List<ColumnImpl> _columns;
+  /** for sorted indexes, whether the keys are floating point values */
+  private final boolean _floatingPoint;
+  private long _maxMemory = DEFAULT_MAX_MEMORY;
+  private Collection<String> _columnNames;
+
+  /** whether or not the current index state is up-to-date */
+  private boolean _loaded;
+  /** the table mod count when the index was built */
+  private int _modCount;
+  /** whether or not the index was too big to keep in memory */
+  private boolean _overBudget;
+  private long _memory;
+  /** hash index, the value arrays have the count of rowIds as the first
+      element */
+  private Map<Object,int[]> _hashEntries;
+  /** sorted index, sorted by key and then rowId */
+  private long[] _sortKeys;
+  private int[] _sortRowIds;
+  private int _numSortEntries;
+
+  private MemoryIndex(TableImpl table, Type type, List<ColumnImpl> columns)
+  {
+    _table = table;
+    _type = type;
+    _columns = columns;
+
+    boolean floatingPoint = false;
+    if(type == Type.SORTED) {
+      if(columns.size() != 1) {
+        throw new IllegalArgumentException(withErrorContext(
+            table, "Sorted index must have a single column"));
+      }
+      switch(columns.get(0).getType()) {
+      case BYTE:
+      case INT:
+      case LONG:
+      case BIG_INT:
+      case SHORT_DATE_TIME:
+        break;
+      case FLOAT:
+      case DOUBLE:
+        floatingPoint = true;
+        break;
+      default:
+        throw new IllegalArgumentException(withErrorContext(
+            table, "Sorted index not supported for column type " +
+            columns.get(0).getType()));
+      }
+    }
+    _floatingPoint = floatingPoint;
+  }
+
+  /**
+   * Creates a new in-memory index of the given type on the given columns of
+   * the given table.  The index is not built until it is first used.
+   * @throws IllegalArgumentException if no columns are given, a column does
+   *         not exist, or the columns are not supported by the index type
+   */
+  public static MemoryIndex create(Table table, Type type,
+                                   String... columnNames)
+  {
+    if(columnNames.length == 0) {
+      throw new IllegalArgumentException("Must have at least one column");
+    }
+    TableImpl tableImpl = (TableImpl)table;
+    List<ColumnImpl> columns = new ArrayList<ColumnImpl>();
+    for(String columnName : columnNames) {
+      columns.add(tableImpl.getColumn(columnName));
+    }
+    return new MemoryIndex(tableImpl, type, columns);
+  }
+
+  public Table getTable() {
+    return _table;
+  }
+
+  public Type getType() {
+    return _type;
+  }
+
+  public List<? extends Column> getColumns() {
+    return Collections.unmodifiableList(_columns);
+  }
+
+  public long getMaxMemory() {
+    return _maxMemory;
+  }
+
+  /**
+   * Sets the max (estimated) memory which this index may use.  If the index
+   * is too big, lookups fall back to scanning the table.  Takes effect the
+   * next time the index is built.
+   */
+  public MemoryIndex setMaxMemory(long maxMemory) {
+    _maxMemory = maxMemory;
+    return this;
+  }
+
+  public Collection<String> getColumnNames() {
+    return _columnNames;
+  }
+
+  /**
+   * Restricts the columns of the rows returned by the {@code findRows}
+   * methods to the given column names ({@code null} for all columns).
+   */
+  public MemoryIndex setColumnNames(Collection<String> columnNames) {
+    _columnNames = columnNames;
+    return this;
+  }
+
+  /**
+   * Returns {@code true} if the index is currently built and held in memory
+   * (and is up-to-date with the table).
+   */
+  public boolean isLoaded() {
+    return (isUpToDate() && !_overBudget);
+  }
+
+  /**
+   * Returns the estimated memory used by the index (if loaded).
+   */
+  public long getMemoryUsage() {
+    return (isLoaded() ? _memory : 0L);
+  }
+
+  /**
+   * Discards the current index state, the index will be rebuilt on the next
+   * lookup.
+   */
+  public void invalidate() {
+    _loaded = false;
+    _overBudget = false;
+    _memory = 0L;
+    _hashEntries = null;
+    _sortKeys = null;
+    _sortRowIds = null;
+    _numSortEntries = 0;
+  }
+
+  /**
+   * Returns the RowIds of all the rows matching the given column values (in
+   * the order of the index columns).
+   * @throws IllegalArgumentException if the wrong number of values are given
+   */
+  public List<RowId> findRowIds(Object... values) throws IOException
+  {
+    if(values.length != _columns.size()) {
+      throw new IllegalArgumentException(withErrorContext(
+          _table, "Wrong number of column values given " + values.length +
+          ", expected " + _columns.size()));
+    }
+
+    if(_type == Type.SORTED) {
+      return findRowIdsInRange(values[0], true, values[0], true);
+    }
+
+    Object key = toHashKey(values);
+    if(key == null) {
+      // nulls never match
+      return new ArrayList<RowId>();
+    }
+
+    if(!load()) {
+      return scanRowIds(key);
+    }
+
+    return toRowIds(_hashEntries.get(key));
+  }
+
+  /**
+   * Returns the RowId of the first row (for a hash index, in table order,
+   * otherwise in index order) matching the given column values, {@code
+   * null} if no rows match.
+   */
+  public RowId findFirstRowId(Object... values) throws IOException
+  {
+    List<RowId> rowIds = findRowIds(values);
+    return (!rowIds.isEmpty() ? rowIds.get(0) : null);
+  }
+
+  /**
+   * Moves the given cursor (which must be for the table of this index) to
+   * the first row matching the given column values (see {@link
+   * #findFirstRowId}).  If no row is found, the cursor is not moved.
+   * @return {@code true} if a matching row was found, {@code false}
+   *         otherwise
+   */
+  public boolean findFirstRow(Cursor cursor, Object... values)
+    throws IOException
+  {
+    if(cursor.getTable() != _table) {
+      throw new IllegalArgumentException(withErrorContext(
+          _table, "Cursor is for a different table"));
+    }
+    RowId rowId = findFirstRowId(values);
+    return ((rowId != null) && cursor.findRow(rowId));
+  }
+
+  /**
+   * Returns all the rows matching the given column values (fetched in data
+   * page order, see {@link Table#getRows}).
+   */
+  public Iterable<Row> findRows(Object... values) throws IOException
+  {
+    return _table.getRows(findRowIds(values), _columnNames);
+  }
+
+  /**
+   * Returns the RowIds of the rows whose values are within the given range,
+   * in index order.  Only supported for {@link Type#SORTED} indexes.  For an
+   * integer column, non-integral bounds are rounded towards the inside of
+   * the range (e.g. a lower bound of 1.5 matches values from 2).
+   * @param lower the lower bound, or {@code null} for no lower bound
+   * @param lowerInclusive whether or not the lower bound is inclusive
+   * @param upper the upper bound, or {@code null} for no upper bound
+   * @param upperInclusive whether or not the upper bound is inclusive
+   */
+  public List<RowId> findRowIdsInRange(Object lower, boolean lowerInclusive,
+                                       Object upper, boolean upperInclusive)
+    throws IOException
+  {
+    if(_type != Type.SORTED) {
+      throw new UnsupportedOperationException(withErrorContext(
+          _table, "Range lookups are only supported by sorted indexes"));
+    }
+
+    // a non-integral bound for an integer column is rounded towards the
+    // inside of the range, and the rounded bound is then within the range
+    long lowerKey = Long.MIN_VALUE;
+    if(lower != null) {
+      lowerKey = toSortKey(lower, RoundingMode.CEILING);
+      lowerInclusive |= !isExactKey(lower, lowerKey);
+    } else {
+      lowerInclusive = true;
+    }
+    long upperKey = Long.MAX_VALUE;
+    if(upper != null) {
+      upperKey = toSortKey(upper, RoundingMode.FLOOR);
+      upperInclusive |= !isExactKey(upper, upperKey);
+    } else {
+      upperInclusive = true;
+    }
+
+    if(!load()) {
+      return scanRowIds(lowerKey, lowerInclusive, upperKey, upperInclusive);
+    }
+
+    int start = findIndex(_sortKeys, _numSortEntries, lowerKey,
+                          lowerInclusive);
+    int end = findIndex(_sortKeys, _numSortEntries, upperKey,
+                        !upperInclusive);
+    List<RowId> rowIds = new ArrayList<RowId>(Math.max(end - start, 0));
+    for(int i = start; i < end; ++i) {
+      rowIds.add(unpackRowId(_sortRowIds[i]));
+    }
+    return rowIds;
+  }
+
+  /**
+   * Returns all the rows whose values are within the given range (see
+   * {@link #findRowIdsInRange}), fetched in data page order (see {@link
+   * Table#getRows}).
+   */
+  public Iterable<Row> findRowsInRange(Object lower, boolean lowerInclusive,
+                                       Object upper, boolean upperInclusive)
+    throws IOException
+  {
+    return _table.getRows(
+        findRowIdsInRange(lower, lowerInclusive, upper, upperInclusive),
+        _columnNames);
+  }
+
+  private boolean isUpToDate() {
+    return (_loaded && (_modCount == _table.getModCount()));
+  }
+
+  /**
+   * Builds the index, if necessary.
+   * @return {@code true} if the index is available in memory, {@code false}
+   *         if it is too big (and lookups should scan the table)
+   */
+  private boolean load() throws IOException
+  {
+    if(isUpToDate()) {
+      return !_overBudget;
+    }
+
+    invalidate();
+    int modCount = _table.getModCount();
+    if(_type == Type.HASH) {
+      buildHashIndex();
+    } else {
+      buildSortedIndex();
+    }
+    _modCount = modCount;
+    _loaded = true;
+    return !_overBudget;
+  }
+
+  private void buildHashIndex()
+    throws IOException
+  {
+    Map<Object,int[]> entries = new HashMap<Object,int[]>();
+    for(Row row : newTableIterable()) {
+      Object key = toRowHashKey(row);
+      if(key == null) {
+        continue;
+      }
+
+      int[] rowIds = entries.get(key);
+      if(rowIds == null) {
+        rowIds = new int[2];
+        entries.put(key, rowIds);
+        _memory += HASH_ENTRY_OVERHEAD + estimateKeySize(key);
+      } else if(rowIds[0] == (rowIds.length - 1)) {
+        rowIds = Arrays.copyOf(rowIds, rowIds.length * 2);
+        entries.put(key, rowIds);
+      }
+      rowIds[++rowIds[0]] = packRowId(row.getId());
+      _memory += 4;
+
+      if(_memory > _maxMemory) {
+        _overBudget = true;
+        return;
+      }
+    }
+    _hashEntries = entries;
+  }
+
+  private void buildSortedIndex()
+    throws IOException
+  {
+    SortEntries entries = new SortEntries();
+    for(Row row : newTableIterable()) {
+      Object value = _columns.get(0).getRowValue(row);
+      if(value == null) {
+        continue;
+      }
+
+      entries.add(toSortKey(value, RoundingMode.UNNECESSARY),
+                  packRowId(row.getId()));
+      _memory += SORTED_ENTRY_SIZE;
+
+      if(_memory > _maxMemory) {
+        _overBudget = true;
+        return;
+      }
+    }
+    entries.sort();
+    _sortKeys = entries._keys;
+    _sortRowIds = entries._rowIds;
+    _numSortEntries = entries._size;
+  }
+
+  /**
+   * Finds the matching rows by scanning the table (for an index which is
+   * too big to keep in memory).
+   */
+  private List<RowId> scanRowIds(Object key)
+    throws IOException
+  {
+    List<RowId> rowIds = new ArrayList<RowId>();
+    for(Row row : newTableIterable()) {
+      if(key.equals(toRowHashKey(row))) {
+        rowIds.add(row.getId());
+      }
+    }
+    return rowIds;
+  }
+
+  /**
+   * Finds the rows within the given range by scanning the table (for an
+   * index which is too big to keep in memory).
+   */
+  private List<RowId> scanRowIds(long lowerKey, boolean lowerInclusive,
+                                 long upperKey, boolean upperInclusive)
+    throws IOException
+  {
+    SortEntries entries = new SortEntries();
+    for(Row row : newTableIterable()) {
+      Object value = _columns.get(0).getRowValue(row);
+      if(value == null) {
+        continue;
+      }
+      long key = toSortKey(value, RoundingMode.UNNECESSARY);
+      if(((key > lowerKey) || (lowerInclusive && (key == lowerKey))) &&
+         ((key < upperKey) || (upperInclusive && (key == upperKey)))) {
+        entries.add(key, packRowId(row.getId()));
+      }
+    }
+    entries.sort();
+
+    List<RowId> rowIds = new ArrayList<RowId>(entries._size);
+    for(int i = 0; i < entries._size; ++i) {
+      rowIds.add(unpackRowId(entries._rowIds[i]));
+    }
+    return rowIds;
+  }
+
+  private Iterable<Row> newTableIterable()
+    throws IOException
+  {
+    Set<String> colNames = new LinkedHashSet<String>();
+    for(ColumnImpl col : _columns) {
+      colNames.add(col.getName());
+    }
+    return CursorBuilder.createCursor(_table).newIterable()
+      .setColumnNames(colNames);
+  }
+
+  /**
+   * Returns the hash key for the given lookup values, {@code null} if any
+   * value is {@code null}.
+   */
+  private Object toHashKey(Object[] values)
+    throws IOException
+  {
+    if(values.length == 1) {
+      return ((values[0] != null) ? toHashKeyValue(0, values[0]) : null);
+    }
+    Object[] key = new Object[values.length];
+    for(int i = 0; i < values.length; ++i) {
+      if(values[i] == null) {
+        return null;
+      }
+      key[i] = toHashKeyValue(i, values[i]);
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Returns the hash key for the given row, {@code null} if any index
+   * column value is {@code null}.
+   */
+  private Object toRowHashKey(Row row)
+    throws IOException
+  {
+    Object[] values = new Object[_columns.size()];
+    for(int i = 0; i < values.length; ++i) {
+      values[i] = _columns.get(i).getRowValue(row);
+    }
+    return toHashKey(values);
+  }
+
+  /**
+   * Returns the given (non-{@code null}) value normalized for the type of
+   * the index column at the given position, so that equal values of the
+   * various types supported by the column have equal hash keys (e.g. a
+   * Double lookup value for a FLOAT column or a LocalDateTime lookup value
+   * for a date/time column).
+   */
+  private Object toHashKeyValue(int colIdx, Object value)
+    throws IOException
+  {
+    ColumnImpl col = _columns.get(colIdx);
+    if(col.getType() == DataType.SHORT_DATE_TIME) {
+      return toDateKey(col, value);
+    }
+    if(!(value instanceof Number)) {
+      return TableJoiner.toHashKeyValue(value);
+    }
+
+    Number num = (Number)value;
+    switch(col.getType()) {
+    case BYTE:
+    case INT:
+    case LONG:
+    case BIG_INT:
+      if(!isDecimal(num)) {
+        return num.longValue();
+      }
+      // a non-integral (or out of range) value never matches an integer
+      // column, so it can be left as a decimal
+      Object dec = toBigDecimal(num);
+      if((dec instanceof BigDecimal) && (((BigDecimal)dec).scale() <= 0) &&
+         (((BigDecimal)dec).compareTo(MIN_LONG) >= 0) &&
+         (((BigDecimal)dec).compareTo(MAX_LONG) <= 0)) {
+        return ((BigDecimal)dec).longValue();
+      }
+      return dec;
+    case FLOAT:
+      // match the precision of the column values
+      return Double.valueOf(num.floatValue());
+    case DOUBLE:
+      // a Float value is widened using its decimal representation (so 1.1f
+      // matches 1.1)
+      return ((num instanceof Float) ? Double.valueOf(num.toString()) :
+              Double.valueOf(num.doubleValue()));
+    case MONEY:
+    case NUMERIC:
+      return toBigDecimal(num);
+    default:
+      return TableJoiner.toHashKeyValue(value);
+    }
+  }
+
+  /**
+   * Returns the given number as a BigDecimal without trailing zeros (or, if
+   * it is not a finite number, the number as a Double).  Float values are
+   * converted using their (shortest) decimal representation.
+   */
+  private static Object toBigDecimal(Number num)
+  {
+    if(num instanceof BigDecimal) {
+      return ((BigDecimal)num).stripTrailingZeros();
+    }
+    if((num instanceof Double) || (num instanceof Float)) {
+      double dbl = num.doubleValue();
+      if(Double.isNaN(dbl) || Double.isInfinite(dbl)) {
+        return dbl;
+      }
+      return new BigDecimal(num.toString()).stripTrailingZeros();
+    }
+    return BigDecimal.valueOf(num.longValue());
+  }
+
+  private static boolean isDecimal(Number num) {
+    return ((num instanceof Double) || (num instanceof Float) ||
+            (num instanceof BigDecimal));
+  }
+
+  /**
+   * Returns the given date/time value as the local date/time in the
+   * column's timezone, as millis.  The date/time handling of the column is
+   * used, so all the supported date/time types of the same value map to the
+   * same key.
+   */
+  private static long toDateKey(ColumnImpl col, Object value)
+    throws IOException
+  {
+    return ColumnImpl.ldtFromLocalDateDouble(col.toDateDouble(value))
+      .toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  /**
+   * Converts the given (non-{@code null}) value into a sort key, where the
+   * sort keys compare (as signed longs) in the same order as the values.
+   * Date/time values are converted as for hash keys (see {@link
+   * #toDateKey}).
+   *
+   * @param roundingMode how a non-integral value for an integer column is
+   *                     rounded
+   */
+  private long toSortKey(Object value, RoundingMode roundingMode)
+    throws IOException
+  {
+    ColumnImpl col = _columns.get(0);
+    if(col.getType() == DataType.SHORT_DATE_TIME) {
+      return toDateKey(col, value);
+    }
+    if(!(value instanceof Number)) {
+      throw new IllegalArgumentException(withErrorContext(
+          _table, "Unexpected value " + value +
+          " for sorted index on column " + col.getName()));
+    }
+    Number num = (Number)value;
+    if(!_floatingPoint) {
+      return toIntegerKey(num, roundingMode);
+    }
+    // make the double bits compare correctly as a signed long
+    long bits = Double.doubleToLongBits(num.doubleValue());
+    return (bits ^ ((bits >> 63) & Long.MAX_VALUE));
+  }
+
+  /**
+   * Returns the sort key for the given number for an integer column,
+   * rounding a non-integral number using the given rounding mode.
+   */
+  private long toIntegerKey(Number num, RoundingMode roundingMode)
+  {
+    if(num instanceof BigDecimal) {
+      BigDecimal dec = ((BigDecimal)num).setScale(0, roundingMode);
+      return dec.max(MIN_LONG).min(MAX_LONG).longValue();
+    }
+    if((num instanceof Double) || (num instanceof Float)) {
+      double dbl = num.doubleValue();
+      if(Double.isNaN(dbl)) {
+        throw new IllegalArgumentException(withErrorContext(
+            _table, "Unexpected value " + num + " for sorted index on column " +
+            _columns.get(0).getName()));
+      }
+      // note, the cast saturates at the min/max long values
+      return (long)((roundingMode == RoundingMode.CEILING) ? Math.ceil(dbl) :
+                    ((roundingMode == RoundingMode.FLOOR) ? Math.floor(dbl) :
+                     dbl));
+    }
+    return num.longValue();
+  }
+
+  /**
+   * Returns {@code true} if the given sort key for the given value
+   * represents the value exactly, {@code false} if the value was rounded.
+   */
+  private boolean isExactKey(Object value, long key)
+  {
+    if(_floatingPoint || !(value instanceof Number) ||
+       (_columns.get(0).getType() == DataType.SHORT_DATE_TIME)) {
+      return true;
+    }
+    if(value instanceof BigDecimal) {
+      return (((BigDecimal)value).compareTo(BigDecimal.valueOf(key)) == 0);
+    }
+    if((value instanceof Double) || (value instanceof Float)) {
+      return (((Number)value).doubleValue() == key);
+    }
+    return true;
+  }
+
+  private static String withErrorContext(Table table, String msg) {
+    return msg + " (Table: " + table.getName() + ")";
+  }
+
+  private static int estimateKeySize(Object key)
+  {
+    if(key instanceof List<?>) {
+      int size = SIMPLE_KEY_SIZE;
+      for(Object keyVal : (List<?>)key) {
+        size += 8 + estimateKeySize(keyVal);
+      }
+      return size;
+    }
+    if(key instanceof String) {
+      return 40 + (2 * ((String)key).length());
+    }
+    if(key instanceof ByteBuffer) {
+      return 64 + ((ByteBuffer)key).remaining();
+    }
+    return SIMPLE_KEY_SIZE;
+  }
+
+  private static int packRowId(RowId rowId)
+  {
+    // page numbers are at most 3 bytes and row numbers 1 byte
+    RowIdImpl rowIdImpl = (RowIdImpl)rowId;
+    return ((rowIdImpl.getPageNumber() << 8) | rowIdImpl.getRowNumber());
+  }
+
+  private static RowIdImpl unpackRowId(int packedRowId)
+  {
+    return new RowIdImpl(packedRowId >>> 8, packedRowId & 0xFF);
+  }
+
+  private static List<RowId> toRowIds(int[] packedRowIds)
+  {
+    if(packedRowIds == null) {
+      return new ArrayList<RowId>();
+    }
+    List<RowId> rowIds = new ArrayList<RowId>(packedRowIds[0]);
+    for(int i = 1; i <= packedRowIds[0]; ++i) {
+      rowIds.add(unpackRowId(packedRowIds[i]));
+    }
+    return rowIds;
+  }
+
+  /**
+   * Returns the index of the first key greater than or equal to (if
+   * inclusive, otherwise greater than) the given key.
+   */
+  private static int findIndex(long[] keys, int numKeys, long key,
+                               boolean inclusive)
+  {
+    int low = 0;
+    int high = numKeys;
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      long midKey = keys[mid];
+      if((midKey < key) || (!inclusive && (midKey == key))) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Growable pair of key and (packed) rowId arrays which can be sorted by
+   * key and then rowId.
+   */
+  private static final class SortEntries
+  {
+    private long[] _keys = new long[16];
+    private int[] _rowIds = new int[16];
+    private int _size;
+
+    public void add(long key, int rowId) {
+      if(_size == _keys.length) {
+        _keys = Arrays.copyOf(_keys, _size * 2);
+        _rowIds = Arrays.copyOf(_rowIds, _size * 2);
+      }
+      _keys[_size] = key;
+      _rowIds[_size] = rowId;
+      ++_size;
+    }
+
+    public void sort() {
+      sort(0, _size - 1);
+    }
+
+    private void sort(int lo, int hi) {
+      // quick sort, recursing on the smaller partition
+      while((hi - lo) >= MIN_QUICK_SORT_SIZE) {
+        // rows are read in page order, and the keys are often (somewhat)
+        // ordered as well, so use the middle entry as the pivot
+        swap((lo + hi) >>> 1, hi);
+        int store = lo;
+        for(int i = lo; i < hi; ++i) {
+          if(compare(i, hi) < 0) {
+            swap(i, store++);
+          }
+        }
+        swap(store, hi);
+
+        if((store - lo) < (hi - store)) {
+          sort(lo, store - 1);
+          lo = store + 1;
+        } else {
+          sort(store + 1, hi);
+          hi = store - 1;
+        }
+      }
+
+      // finish up with an insertion sort
+      for(int i = lo + 1; i <= hi; ++i) {
+        for(int j = i; (j > lo) && (compare(j - 1, j) > 0); --j) {
+          swap(j - 1, j);
+        }
+      }
+    }
+
+    private int compare(int idx1, int idx2) {
+      int cmp = Long.compare(_keys[idx1], _keys[idx2]);
+      // rowIds are unique, so this is a total ordering
+      return ((cmp != 0) ? cmp :
+              Integer.compareUnsigned(_rowIds[idx1], _rowIds[idx2]));
+    }
+
+    private void swap(int idx1, int idx2) {
+      long tmpKey = _keys[idx1];
+      _keys[idx1] = _keys[idx2];
+      _keys[idx2] = tmpKey;
+      int tmpRowId = _rowIds[idx1];
+      _rowIds[idx1] = _rowIds[idx2];
+      _rowIds[idx2] = tmpRowId;
+    }
+  }
+}
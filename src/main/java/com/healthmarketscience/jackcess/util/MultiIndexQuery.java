@@ -0,0 +1,209 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.impl.RowIdSet;
+
+/**
+ * Utility for finding rows in a Table using ranges on multiple indexes.  The
+ * RowIds matching each index range are collected (using only the index
+ * pages) and then combined as either an intersection (all ranges must match)
+ * or a union (any range may match).  The surviving rows are then fetched in
+ * data page order (see {@link Table#getRows}).
+ * <p>
+ * Example (all orders for a customer within a date range, where the
+ * customer id and order date columns have separate indexes):
+ * <pre>
+ *   Iterable&lt;Row&gt; rows = MultiIndexQuery.intersection(orderTable)
+ *     .addEntry(orderTable.getIndex("CustomerId"), custId)
+ *     .addRange(orderTable.getIndex("OrderDate"),
+ *               new Object[]{startDate}, true, new Object[]{endDate}, false)
+ *     .findRows();
+ * </pre>
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public class MultiIndexQuery
+{
+  private final Table _table;
+  private final boolean _intersection;
+  private final List<IndexRange> _ranges = new ArrayList<IndexRange>();
+
+  private MultiIndexQuery(Table table, boolean intersection) {
+    _table = table;
+    _intersection = intersection;
+  }
+
+  /**
+   * Creates a new MultiIndexQuery for the given table which finds the rows
+   * matching <i>all</i> of the added index ranges.
+   */
+  public static MultiIndexQuery intersection(Table table) {
+    return new MultiIndexQuery(table, true);
+  }
+
+  /**
+   * Creates a new MultiIndexQuery for the given table which finds the rows
+   * matching <i>any</i> of the added index ranges.
+   */
+  public static MultiIndexQuery union(Table table) {
+    return new MultiIndexQuery(table, false);
+  }
+
+  public Table getTable() {
+    return _table;
+  }
+
+  public boolean isIntersection() {
+    return _intersection;
+  }
+
+  /**
+   * Adds an index range to this query, see {@link Index#range} for details
+   * on the range parameters.
+   * @throws IllegalArgumentException if the given index is not an index of
+   *         this query's table
+   */
+  public MultiIndexQuery addRange(Index index,
+                                  Object[] lower, boolean lowerInclusive,
+                                  Object[] upper, boolean upperInclusive)
+  {
+    if(index.getTable() != _table) {
+      throw new IllegalArgumentException(
+          "Index " + index.getName() + " is not an index of table " +
+          _table.getName());
+    }
+    _ranges.add(new IndexRange(index, lower, lowerInclusive,
+                               upper, upperInclusive));
+    return this;
+  }
+
+  /**
+   * Adds an index range to this query which matches the index entries with
+   * the given values (which may be a prefix of the index columns).
+   * @throws IllegalArgumentException if the given index is not an index of
+   *         this query's table
+   */
+  public MultiIndexQuery addEntry(Index index, Object... entryValues)
+  {
+    return addRange(index, entryValues, true, entryValues, true);
+  }
+
+  /**
+   * Returns the unique RowIds matching this query (in data page order).
+   * Only index pages are read.
+   * @throws IllegalStateException if no index ranges have been added
+   * @throws com.healthmarketscience.jackcess.RuntimeIOException if an
+   *         IOException is thrown while reading the indexes
+   */
+  public List<RowId> findRowIds()
+  {
+    RowIdSet rowIdSet = findRowIdSet();
+    List<RowId> rowIds = new ArrayList<RowId>(rowIdSet.size());
+    for(RowId rowId : rowIdSet) {
+      rowIds.add(rowId);
+    }
+    return rowIds;
+  }
+
+  /**
+   * Returns the set of RowIds matching this query.
+   */
+  private RowIdSet findRowIdSet()
+  {
+    if(_ranges.isEmpty()) {
+      throw new IllegalStateException(
+          "At least one index range must be added to the query");
+    }
+
+    RowIdSet rowIds = null;
+    for(IndexRange range : _ranges) {
+      RowIdSet rangeRowIds = range.findRowIds();
+      if(rowIds == null) {
+        rowIds = rangeRowIds;
+      } else if(_intersection) {
+        rowIds.retainAll(rangeRowIds);
+      } else {
+        rowIds.addAll(rangeRowIds);
+      }
+
+      if(_intersection && rowIds.isEmpty()) {
+        // nothing more can match
+        break;
+      }
+    }
+    return rowIds;
+  }
+
+  /**
+   * Returns the rows matching this query (in data page order).
+   * @see #findRowIds
+   */
+  public Iterable<Row> findRows()
+  {
+    return findRows(null);
+  }
+
+  /**
+   * Returns the rows matching this query (in data page order), with only the
+   * given columns.
+   * @see #findRowIds
+   */
+  public Iterable<Row> findRows(Collection<String> columnNames)
+  {
+    return _table.getRows(findRowIdSet(), columnNames);
+  }
+
+  /**
+   * A single index range within the query.
+   */
+  private static final class IndexRange
+  {
+    private final Index _index;
+    private final Object[] _lower;
+    private final boolean _lowerInclusive;
+    private final Object[] _upper;
+    private final boolean _upperInclusive;
+
+    private IndexRange(Index index,
+                       Object[] lower, boolean lowerInclusive,
+                       Object[] upper, boolean upperInclusive)
+    {
+      _index = index;
+      _lower = lower;
+      _lowerInclusive = lowerInclusive;
+      _upper = upper;
+      _upperInclusive = upperInclusive;
+    }
+
+    private RowIdSet findRowIds() {
+      RowIdSet rowIds = new RowIdSet();
+      rowIds.addAll(_index.range(_lower, _lowerInclusive,
+                                 _upper, _upperInclusive));
+      return rowIds;
+    }
+  }
+}
@@ -0,0 +1,683 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.Relationship;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RuntimeIOException;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.impl.ColumnImpl;
+import com.healthmarketscience.jackcess.impl.IndexData;
+import com.healthmarketscience.jackcess.impl.IndexImpl;
+
+/**
+ * Utility for joining all the rows of two tables on a set of columns.
+ * Unlike {@link Joiner} (which looks up the matching "to" rows for a single
+ * "from" row using an index), this utility processes the entire tables at
+ * once using either a hash join (which does not require any indexes) or a
+ * sort-merge join (which requires an index on the join columns of each
+ * table).  The joined rows are streamed as {@link RowPair}s of "left" and
+ * "right" rows.
+ * <p>
+ * The hash join builds an in-memory table of the rows of the smaller table
+ * (by row count), so the memory required can be reduced by limiting the
+ * columns read (see {@link #setLeftColumnNames} and {@link
+ * #setRightColumnNames}).  The merge join only holds the rows for a single
+ * join key in memory.
+ * <p>
+ * As with Joiner, text values are compared case-insensitively and
+ * {@code null} join values never match.
+ *
+ * @author James Ahlborn
+ * @usage _intermediate_class_
+ */
+public class TableJoiner
+{
+  /** the supported types of joins */
+  public enum Type {
+    /** returns a pair for each matching left and right row */
+    INNER,
+    /** returns a pair for each matching left and right row, as well as each
+        left row which has no matching right rows (with a {@code null} right
+        row) */
+    LEFT_OUTER,
+    /** returns each left row which has at least one matching right row
+        (with a {@code null} right row) */
+    SEMI,
+    /** returns each left row which has no matching right rows (with a
+        {@code null} right row) */
+    ANTI;
+  }
+
+  private final Table _leftTable;
+  private final List<? extends Column> _leftCols;
+  private final Table _rightTable;
+  private final List<? extends Column> _rightCols;
+  private Type _type = Type.INNER;
+  private Collection<String> _leftColumnNames;
+  private Collection<String> _rightColumnNames;
+
+  private TableJoiner(Table leftTable, List<? extends Column> leftCols,
+                      Table rightTable, List<? extends Column> rightCols)
+  {
+    if(leftCols.isEmpty() || (leftCols.size() != rightCols.size())) {
+      throw new IllegalArgumentException(
+          "Must have the same, non-zero number of join columns for each table");
+    }
+    _leftTable = leftTable;
+    _leftCols = leftCols;
+    _rightTable = rightTable;
+    _rightCols = rightCols;
+  }
+
+  /**
+   * Creates a new TableJoiner for the given relationship, where the "from"
+   * table is the left table and the "to" table is the right table.
+   */
+  public static TableJoiner create(Relationship rel)
+  {
+    return new TableJoiner(rel.getFromTable(), rel.getFromColumns(),
+                           rel.getToTable(), rel.getToColumns());
+  }
+
+  /**
+   * Creates a new TableJoiner for the given tables, joined on the given
+   * columns (where the columns are matched by position).
+   * @throws IllegalArgumentException if a column does not exist or the
+   *         column lists are not the same size
+   */
+  public static TableJoiner create(Table leftTable,
+                                   List<String> leftColumnNames,
+                                   Table rightTable,
+                                   List<String> rightColumnNames)
+  {
+    return new TableJoiner(leftTable, getColumns(leftTable, leftColumnNames),
+                           rightTable, getColumns(rightTable, rightColumnNames));
+  }
+
+  public Table getLeftTable() {
+    return _leftTable;
+  }
+
+  public List<? extends Column> getLeftColumns() {
+    return Collections.unmodifiableList(_leftCols);
+  }
+
+  public Table getRightTable() {
+    return _rightTable;
+  }
+
+  public List<? extends Column> getRightColumns() {
+    return Collections.unmodifiableList(_rightCols);
+  }
+
+  public Type getType() {
+    return _type;
+  }
+
+  public TableJoiner setType(Type type) {
+    _type = type;
+    return this;
+  }
+
+  /**
+   * Sets the columns of the left table to return (the join columns are
+   * always read), {@code null} for all columns.
+   */
+  public TableJoiner setLeftColumnNames(Collection<String> columnNames) {
+    _leftColumnNames = columnNames;
+    return this;
+  }
+
+  /**
+   * Sets the columns of the right table to return (the join columns are
+   * always read), {@code null} for all columns.
+   */
+  public TableJoiner setRightColumnNames(Collection<String> columnNames) {
+    _rightColumnNames = columnNames;
+    return this;
+  }
+
+  /**
+   * Returns an Iterable over the joined rows using a hash join.  An
+   * in-memory hash table is built from the rows of the smaller table and
+   * the other table is then scanned once.  The order of the returned pairs
+   * is unspecified.
+   * @throws RuntimeIOException if an IOException is thrown by one of the
+   *         operations, the actual exception will be contained within
+   */
+  public Iterable<RowPair> hashJoin()
+  {
+    return new Iterable<RowPair>() {
+      @Override
+      public Iterator<RowPair> iterator() {
+        try {
+          return new HashJoinIterator();
+        } catch(IOException e) {
+          throw new RuntimeIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns an Iterable over the joined rows using a sort-merge join, using
+   * indexes on each table whose leading columns are the join columns.  The
+   * pairs are returned in the order of the left index.
+   * @throws IllegalStateException if either table does not have a
+   *         compatible index
+   * @throws RuntimeIOException if an IOException is thrown by one of the
+   *         operations, the actual exception will be contained within
+   */
+  public Iterable<RowPair> mergeJoin()
+  {
+    return mergeJoin(findJoinIndex(_leftTable, _leftCols),
+                     findJoinIndex(_rightTable, _rightCols));
+  }
+
+  /**
+   * Returns an Iterable over the joined rows using a sort-merge join, using
+   * the given indexes (whose leading columns must be the join columns).  The
+   * pairs are returned in the order of the left index.
+   * @throws IllegalArgumentException if the given indexes are not usable for
+   *         this join
+   * @throws RuntimeIOException if an IOException is thrown by one of the
+   *         operations, the actual exception will be contained within
+   */
+  public Iterable<RowPair> mergeJoin(final Index leftIndex,
+                                     final Index rightIndex)
+  {
+    if(!isJoinIndex(leftIndex, _leftTable, _leftCols) ||
+       !isJoinIndex(rightIndex, _rightTable, _rightCols)) {
+      throw new IllegalArgumentException(
+          "Indexes " + leftIndex.getName() + " and " + rightIndex.getName() +
+          " do not lead with the join columns");
+    }
+    for(int i = 0; i < _leftCols.size(); ++i) {
+      if(!isCompatible(leftIndex.getColumns().get(i),
+                       rightIndex.getColumns().get(i))) {
+        throw new IllegalArgumentException(
+            "Indexes " + leftIndex.getName() + " and " + rightIndex.getName() +
+            " do not have the same ordering for the join columns");
+      }
+    }
+
+    return new Iterable<RowPair>() {
+      @Override
+      public Iterator<RowPair> iterator() {
+        try {
+          return new MergeJoinIterator(leftIndex, rightIndex);
+        } catch(IOException e) {
+          throw new RuntimeIOException(e);
+        }
+      }
+    };
+  }
+
+  private static List<Column> getColumns(Table table, List<String> colNames)
+  {
+    List<Column> cols = new ArrayList<Column>(colNames.size());
+    for(String colName : colNames) {
+      cols.add(table.getColumn(colName));
+    }
+    return cols;
+  }
+
+  private static Index findJoinIndex(Table table, List<? extends Column> cols)
+  {
+    for(Index idx : table.getIndexes()) {
+      if(isJoinIndex(idx, table, cols)) {
+        return idx;
+      }
+    }
+    throw new IllegalStateException(
+        "Table " + table.getName() + " has no index on the join columns");
+  }
+
+  private static boolean isJoinIndex(Index idx, Table table,
+                                     List<? extends Column> cols)
+  {
+    if((idx.getTable() != table) || (idx.getColumnCount() < cols.size())) {
+      return false;
+    }
+    for(int i = 0; i < cols.size(); ++i) {
+      if(!idx.getColumns().get(i).getName().equals(cols.get(i).getName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if the given index columns encode (and therefore
+   * order) their values identically.
+   */
+  private static boolean isCompatible(Index.Column leftCol,
+                                      Index.Column rightCol)
+  {
+    ColumnImpl left = (ColumnImpl)leftCol.getColumn();
+    ColumnImpl right = (ColumnImpl)rightCol.getColumn();
+    return ((left.getType() == right.getType()) &&
+            (leftCol.isAscending() == rightCol.isAscending()) &&
+            Objects.equals(left.getTextSortOrder(), right.getTextSortOrder()));
+  }
+
+  private static Collection<String> withJoinColumns(
+      Collection<String> columnNames, List<? extends Column> cols)
+  {
+    if(columnNames == null) {
+      return null;
+    }
+    Set<String> allNames = new LinkedHashSet<String>(columnNames);
+    for(Column col : cols) {
+      allNames.add(col.getName());
+    }
+    return allNames;
+  }
+
+  private Iterator<Row> rowIterator(Table table, Index index,
+                                    Collection<String> columnNames,
+                                    List<? extends Column> cols)
+    throws IOException
+  {
+    return ((index != null) ?
+            CursorBuilder.createCursor(index) :
+            CursorBuilder.createCursor(table))
+      .newIterable().setColumnNames(withJoinColumns(columnNames, cols))
+      .iterator();
+  }
+
+  /**
+   * Returns the join key used in the hash table for the given row, or
+   * {@code null} if the row has a {@code null} join value (which never
+   * matches).
+   */
+  private static List<Object> toHashKey(Row row, List<? extends Column> cols)
+  {
+    Object[] key = new Object[cols.size()];
+    for(int i = 0; i < key.length; ++i) {
+      Object value = cols.get(i).getRowValue(row);
+      if(value == null) {
+        return null;
+      }
+      key[i] = toHashKeyValue(value);
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Returns the given (non-{@code null}) column value normalized so that
+   * values which should match have equal hash keys.
+   */
+  static Object toHashKeyValue(Object value)
+  {
+    if(value instanceof String) {
+      // text lookups are always case-insensitive
+      value = ((String)value).toUpperCase();
+    } else if((value instanceof Byte) || (value instanceof Short) ||
+              (value instanceof Integer)) {
+      value = ((Number)value).longValue();
+    } else if(value instanceof BigDecimal) {
+      value = ((BigDecimal)value).stripTrailingZeros();
+    } else if(value instanceof byte[]) {
+      value = ByteBuffer.wrap((byte[])value);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the join key used for merging the given row, or {@code null} if
+   * the row has a {@code null} join value (which never matches).  The key
+   * bytes are encoded using the left index, and therefore compare in the
+   * left index order.
+   */
+  private static byte[] toMergeKey(IndexData indexData, Row row,
+                                   List<? extends Column> cols)
+    throws IOException
+  {
+    Object[] values = new Object[cols.size()];
+    for(int i = 0; i < values.length; ++i) {
+      values[i] = cols.get(i).getRowValue(row);
+      if(values[i] == null) {
+        return null;
+      }
+    }
+    return indexData.createEntryBytesFromEntry(values);
+  }
+
+  /**
+   * A joined pair of rows.
+   */
+  public static final class RowPair
+  {
+    private final Row _left;
+    private final Row _right;
+
+    private RowPair(Row left, Row right) {
+      _left = left;
+      _right = right;
+    }
+
+    /**
+     * @return the row from the left table
+     */
+    public Row getLeft() {
+      return _left;
+    }
+
+    /**
+     * @return the row from the right table, may be {@code null} depending on
+     *         the join type
+     */
+    public Row getRight() {
+      return _right;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + _left + ", " + _right + "]";
+    }
+  }
+
+  /**
+   * Base iterator for the join results.  Subclasses generate the pairs for
+   * each scanned row into the pending queue.
+   */
+  private abstract class JoinIterator implements Iterator<RowPair>
+  {
+    protected final ArrayDeque<RowPair> _pending = new ArrayDeque<RowPair>();
+
+    @Override
+    public boolean hasNext() {
+      try {
+        while(_pending.isEmpty()) {
+          if(!fillPending()) {
+            return false;
+          }
+        }
+        return true;
+      } catch(IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+
+    @Override
+    public RowPair next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return _pending.removeFirst();
+    }
+
+    /**
+     * Adds the results for a left row with the given matching right rows.
+     */
+    protected void addLeftResults(Row left, List<Row> rights) {
+      switch(_type) {
+      case INNER:
+      case LEFT_OUTER:
+        for(Row right : rights) {
+          _pending.add(new RowPair(left, right));
+        }
+        if(rights.isEmpty() && (_type == Type.LEFT_OUTER)) {
+          _pending.add(new RowPair(left, null));
+        }
+        break;
+      case SEMI:
+        if(!rights.isEmpty()) {
+          _pending.add(new RowPair(left, null));
+        }
+        break;
+      case ANTI:
+        if(rights.isEmpty()) {
+          _pending.add(new RowPair(left, null));
+        }
+        break;
+      default:
+        throw new RuntimeException("unexpected type " + _type);
+      }
+    }
+
+    /**
+     * Processes more rows, adding any results to the pending queue.
+     * @return {@code false} if all rows have been processed, {@code true}
+     *         otherwise
+     */
+    protected abstract boolean fillPending() throws IOException;
+  }
+
+  /**
+   * Iterator for the results of a hash join.
+   */
+  private final class HashJoinIterator extends JoinIterator
+  {
+    private final boolean _buildLeft;
+    private final Map<List<Object>,List<BuildRow>> _buildRows =
+      new HashMap<List<Object>,List<BuildRow>>();
+    private final List<BuildRow> _unmatchableBuildRows =
+      new ArrayList<BuildRow>();
+    private final Iterator<Row> _probeIter;
+    private boolean _finished;
+
+    private HashJoinIterator() throws IOException {
+      // build the hash table from the smaller table
+      _buildLeft = (_leftTable.getRowCount() < _rightTable.getRowCount());
+
+      Table buildTable = (_buildLeft ? _leftTable : _rightTable);
+      List<? extends Column> buildCols = (_buildLeft ? _leftCols : _rightCols);
+      Iterator<Row> buildIter = rowIterator(
+          buildTable, null,
+          (_buildLeft ? _leftColumnNames : _rightColumnNames), buildCols);
+      while(buildIter.hasNext()) {
+        Row row = buildIter.next();
+        List<Object> key = toHashKey(row, buildCols);
+        if(key == null) {
+          _unmatchableBuildRows.add(new BuildRow(row));
+          continue;
+        }
+        List<BuildRow> rows = _buildRows.get(key);
+        if(rows == null) {
+          rows = new ArrayList<BuildRow>(1);
+          _buildRows.put(key, rows);
+        }
+        rows.add(new BuildRow(row));
+      }
+
+      _probeIter = (_buildLeft ?
+                    rowIterator(_rightTable, null, _rightColumnNames,
+                                _rightCols) :
+                    rowIterator(_leftTable, null, _leftColumnNames,
+                                _leftCols));
+    }
+
+    @Override
+    protected boolean fillPending() {
+      if(_finished) {
+        return false;
+      }
+
+      if(!_probeIter.hasNext()) {
+        _finished = true;
+        if(_buildLeft) {
+          addUnmatchedLeftResults();
+        }
+        return true;
+      }
+
+      Row probeRow = _probeIter.next();
+      List<Object> key = toHashKey(probeRow,
+                                   (_buildLeft ? _rightCols : _leftCols));
+      List<BuildRow> matches = ((key != null) ? _buildRows.get(key) : null);
+      if(matches == null) {
+        matches = Collections.emptyList();
+      }
+
+      if(!_buildLeft) {
+        List<Row> rights = new ArrayList<Row>(matches.size());
+        for(BuildRow match : matches) {
+          rights.add(match._row);
+        }
+        addLeftResults(probeRow, rights);
+        return true;
+      }
+
+      // the probe row is a right row
+      for(BuildRow match : matches) {
+        switch(_type) {
+        case INNER:
+        case LEFT_OUTER:
+          _pending.add(new RowPair(match._row, probeRow));
+          break;
+        case SEMI:
+          if(!match._matched) {
+            _pending.add(new RowPair(match._row, null));
+          }
+          break;
+        default:
+          // anti results are handled at the end
+        }
+        match._matched = true;
+      }
+      return true;
+    }
+
+    private void addUnmatchedLeftResults() {
+      if((_type != Type.LEFT_OUTER) && (_type != Type.ANTI)) {
+        return;
+      }
+      for(List<BuildRow> rows : _buildRows.values()) {
+        for(BuildRow row : rows) {
+          if(!row._matched) {
+            _pending.add(new RowPair(row._row, null));
+          }
+        }
+      }
+      for(BuildRow row : _unmatchableBuildRows) {
+        _pending.add(new RowPair(row._row, null));
+      }
+    }
+  }
+
+  /**
+   * A row in the hash table for a hash join.
+   */
+  private static final class BuildRow
+  {
+    private final Row _row;
+    private boolean _matched;
+
+    private BuildRow(Row row) {
+      _row = row;
+    }
+  }
+
+  /**
+   * Iterator for the results of a sort-merge join.
+   */
+  private final class MergeJoinIterator extends JoinIterator
+  {
+    private final IndexData _keyIndexData;
+    private final Iterator<Row> _leftIter;
+    private final Iterator<Row> _rightIter;
+    private Row _nextRight;
+    private byte[] _nextRightKey;
+    private byte[] _groupKey;
+    private final List<Row> _rightGroup = new ArrayList<Row>();
+
+    private MergeJoinIterator(Index leftIndex, Index rightIndex)
+      throws IOException
+    {
+      _keyIndexData = ((IndexImpl)leftIndex).getIndexData();
+      _leftIter = rowIterator(_leftTable, leftIndex, _leftColumnNames,
+                              _leftCols);
+      _rightIter = rowIterator(_rightTable, rightIndex, _rightColumnNames,
+                               _rightCols);
+      advanceRight();
+    }
+
+    @Override
+    protected boolean fillPending() throws IOException {
+      if(!_leftIter.hasNext()) {
+        return false;
+      }
+
+      Row left = _leftIter.next();
+      byte[] key = toMergeKey(_keyIndexData, left, _leftCols);
+      if(key == null) {
+        addLeftResults(left, Collections.<Row>emptyList());
+        return true;
+      }
+
+      if((_groupKey == null) || !Arrays.equals(_groupKey, key)) {
+        loadRightGroup(key);
+      }
+      addLeftResults(left, _rightGroup);
+      return true;
+    }
+
+    /**
+     * Loads the right rows matching the given key into the current group.
+     */
+    private void loadRightGroup(byte[] key) throws IOException {
+      _groupKey = key;
+      _rightGroup.clear();
+
+      // skip all right rows less than the given key
+      while((_nextRight != null) &&
+            ((_nextRightKey == null) ||
+             (IndexData.BYTE_CODE_COMPARATOR.compare(_nextRightKey, key) < 0))) {
+        advanceRight();
+      }
+
+      while((_nextRight != null) && (_nextRightKey != null) &&
+            Arrays.equals(_nextRightKey, key)) {
+        _rightGroup.add(_nextRight);
+        advanceRight();
+      }
+    }
+
+    private void advanceRight() throws IOException {
+      if(_rightIter.hasNext()) {
+        _nextRight = _rightIter.next();
+        _nextRightKey = toMergeKey(_keyIndexData, _nextRight, _rightCols);
+      } else {
+        _nextRight = null;
+        _nextRightKey = null;
+      }
+    }
+  }
+}
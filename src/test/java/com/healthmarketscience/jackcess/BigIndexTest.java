@@ -22,7 +22,10 @@ import java.util.Random;
 
 import junit.framework.TestCase;
 
+import static com.healthmarketscience.jackcess.Database.*;
 import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import com.healthmarketscience.jackcess.impl.DatabaseImpl;
+import com.healthmarketscience.jackcess.impl.IndexData;
 import com.healthmarketscience.jackcess.impl.TableImpl;
 import com.healthmarketscience.jackcess.impl.IndexImpl;
 import static com.healthmarketscience.jackcess.TestUtil.*;
@@ -196,4 +199,129 @@ public class BigIndexTest extends TestCase {
     }
   }
 
+
+  public void testSequentialAppend() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      String extraText = " some random text to fill out the index and make it fill up pages";
+
+      // the same index values added in increasing and decreasing order
+      TableImpl[] tables = new TableImpl[2];
+      for(int i = 0; i < tables.length; ++i) {
+        tables[i] = (TableImpl)new TableBuilder("Test" + i)
+          .addColumn(new ColumnBuilder("id", DataType.LONG)
+                     .setAutoNumber(true))
+          .addColumn(new ColumnBuilder("data", DataType.TEXT))
+          .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                    .addColumns("id").setPrimaryKey())
+          .addIndex(new IndexBuilder("data").addColumns("data"))
+          .toTable(db);
+      }
+
+      for(int i = 0; i < 3000; ++i) {
+        tables[0].addRow(Column.AUTO_NUMBER, String.format("%05d", i) +
+                         extraText);
+        tables[1].addRow(Column.AUTO_NUMBER, String.format("%05d", 3000 - i) +
+                         extraText);
+      }
+
+      IndexData appendData = tables[0].getIndex("data").getIndexData();
+      IndexData prependData = tables[1].getIndex("data").getIndexData();
+      appendData.validate();
+      prependData.validate();
+      assertEquals(3000, appendData.getEntryCount());
+      int numAppendPages = appendData.getOwnedPageCount();
+      int numPrependPages = prependData.getOwnedPageCount();
+
+      // appended pages are split unevenly, so they end up much more densely
+      // packed
+      assertTrue(numAppendPages + " vs " + numPrependPages,
+                 (numAppendPages * 3) < (numPrependPages * 2));
+
+      // the appended index should be close to as compact as a bulk loaded
+      // index
+      tables[0].rebuildIndexes();
+      int numRebuiltPages = appendData.getOwnedPageCount();
+      assertTrue(numAppendPages + " vs " + numRebuiltPages,
+                 (numAppendPages * 10) <= (numRebuiltPages * 11));
+
+      // the auto-number primary key is also appended
+      IndexData pkData = tables[0].getPrimaryKeyIndex().getIndexData();
+      pkData.validate();
+      assertEquals(3000, pkData.getEntryCount());
+
+      db.close();
+    }
+  }
+
+  public void testIndexPageCacheSize() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+      assertEquals(0, db.getIndexPageCacheSize());
+      db.setIndexPageCacheSize(8);
+      assertEquals(8, db.getIndexPageCacheSize());
+
+      try {
+        db.setIndexPageCacheSize(-1);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      String extraText = " some random text to fill out the index and make it fill up pages";
+
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .toTable(db);
+
+      for(int i = 0; i < 2000; ++i) {
+        t.addRow(i, String.format("%05d", i) + extraText);
+      }
+
+      IndexImpl index = (IndexImpl)t.getIndex("data");
+      index.getIndexData().validate();
+
+      DatabaseImpl dbImpl = (DatabaseImpl)db;
+      dbImpl.resetIndexPageCacheStats();
+      assertEquals(0L, dbImpl.getIndexPageCacheHitCount());
+      assertEquals(0L, dbImpl.getIndexPageCacheMissCount());
+
+      IndexCursor cursor = CursorBuilder.createCursor(index);
+      Random rand = new Random(42L);
+      for(int i = 0; i < 500; ++i) {
+        int id = rand.nextInt(2000);
+        assertTrue(cursor.findFirstRowByEntry(
+                       String.format("%05d", id) + extraText));
+        assertEquals(id, cursor.getCurrentRow().getInt("id").intValue());
+      }
+      assertTrue(dbImpl.getIndexPageCacheHitCount() > 0L);
+      assertTrue(dbImpl.getIndexPageCacheMissCount() > 0L);
+
+      // with a big enough cache, all the index pages are retained
+      db.setIndexPageCacheSize(10000);
+      for(int i = 0; i < 2; ++i) {
+        dbImpl.resetIndexPageCacheStats();
+        rand = new Random(42L);
+        for(int j = 0; j < 500; ++j) {
+          int id = rand.nextInt(2000);
+          assertTrue(cursor.findFirstRowByEntry(
+                         String.format("%05d", id) + extraText));
+          assertEquals(id, cursor.getCurrentRow().getInt("id").intValue());
+        }
+      }
+      assertTrue(dbImpl.getIndexPageCacheHitCount() > 0L);
+      assertEquals(0L, dbImpl.getIndexPageCacheMissCount());
+
+      db.setIndexPageCacheSize(null);
+      assertEquals(0, db.getIndexPageCacheSize());
+
+      db.close();
+    }
+  }
+
 }
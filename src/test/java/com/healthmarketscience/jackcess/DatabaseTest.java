@@ -20,17 +20,21 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeSet;
@@ -43,6 +47,7 @@ import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
 import com.healthmarketscience.jackcess.impl.RowIdImpl;
 import com.healthmarketscience.jackcess.impl.RowImpl;
 import com.healthmarketscience.jackcess.impl.TableImpl;
+import com.healthmarketscience.jackcess.impl.UsageMap;
 import com.healthmarketscience.jackcess.util.LinkResolver;
 import com.healthmarketscience.jackcess.util.RowFilterTest;
 import junit.framework.TestCase;
@@ -288,6 +293,626 @@ public class DatabaseTest extends TestCase
     }
   }
 
+  public void testDeleteRows() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+      TableImpl table = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .addColumn(new ColumnBuilder("data", DataType.MEMO))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("nameIdx").addColumns("name"))
+        .toTable(db);
+
+      for(int i = 0; i < 3000; ++i) {
+        table.addRow(null, "name" + (i % 10), "data " + i);
+      }
+
+      List<RowId> toDelete = new ArrayList<RowId>();
+      List<Row> expectedRows = new ArrayList<Row>();
+      for(Row row : table) {
+        if((row.getInt("id") % 3) == 0) {
+          toDelete.add(row.getId());
+        } else {
+          expectedRows.add(row);
+        }
+      }
+      // order and duplicates do not matter
+      Collections.reverse(toDelete);
+      toDelete.add(toDelete.get(10));
+
+      assertEquals(1000, table.deleteRows(toDelete));
+      assertTable(expectedRows, table);
+      assertTrue(table.checkIndexes().isEmpty());
+
+      // already deleted
+      assertEquals(0, table.deleteRows(toDelete));
+      assertEquals(0, table.deleteRows(Collections.<RowId>emptyList()));
+
+      assertEquals(200, CursorBuilder.createCursor(table).newIterable()
+                   .setMatchPattern("name", "name4").deleteRows());
+      assertRowCount(1800, table);
+      assertFalse(CursorBuilder.createCursor(table)
+                  .findFirstRow(table.getColumn("name"), "name4"));
+      assertTrue(table.checkIndexes().isEmpty());
+
+      try {
+        table.deleteRows(Arrays.asList(new RowIdImpl(-1, -1)));
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      // the rows before the bad row (in page order) are deleted
+      toDelete.clear();
+      for(Row row : CursorBuilder.createCursor(table).newIterable()
+            .setMatchPattern("name", "name7")) {
+        toDelete.add(row.getId());
+      }
+      toDelete.add(new RowIdImpl(Integer.MAX_VALUE >>> 8, 0));
+      try {
+        table.deleteRows(toDelete);
+        fail("BatchUpdateException should have been thrown");
+      } catch(BatchUpdateException be) {
+        assertTrue(be.getCause() instanceof IllegalArgumentException);
+        assertEquals(200, be.getUpdateCount());
+      }
+      assertRowCount(1600, table);
+      assertTrue(table.checkIndexes().isEmpty());
+
+      db.close();
+    }
+  }
+
+  public void testTruncate() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+      TableImpl table = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .addColumn(new ColumnBuilder("data", DataType.MEMO))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("nameIdx").addColumns("name"))
+        .toTable(db);
+
+      int emptyPageCount = table.getApproximateOwnedPageCount();
+      String longData = createString(5000);
+      for(int i = 0; i < 2000; ++i) {
+        table.addRow(null, "name" + i, (((i % 100) == 0) ? longData : "data"));
+      }
+      assertTrue(table.getApproximateOwnedPageCount() > emptyPageCount);
+
+      assertEquals(2000, table.truncate());
+      assertEquals(0, table.getRowCount());
+      assertRowCount(0, table);
+      assertEquals(emptyPageCount, table.getApproximateOwnedPageCount());
+      assertTrue(table.checkIndexes().isEmpty());
+      assertEquals(0, table.truncate());
+
+      // the table is usable afterwards and the auto-number starts over
+      for(int i = 0; i < 100; ++i) {
+        table.addRow(null, "name" + i, longData);
+      }
+      assertEquals(1, CursorBuilder.createCursor(table.getPrimaryKeyIndex())
+                   .getNextRow().get("id"));
+      assertRowCount(100, table);
+      assertTrue(table.checkIndexes().isEmpty());
+      assertTrue(CursorBuilder.findRowByPrimaryKey(table, 50)
+                 .getString("data").equals(longData));
+
+      // the freed pages are reused
+      Table other = new TableBuilder("Other")
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .toTable(db);
+      for(int i = 0; i < 2000; ++i) {
+        other.addRow("name" + i);
+      }
+      assertRowCount(100, table);
+      assertRowCount(2000, other);
+
+      db.close();
+    }
+  }
+
+  public void testRowPlacement() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+
+      int appendPageCount = 0;
+      for(Table.RowPlacement placement : Table.RowPlacement.values()) {
+        TableImpl table = (TableImpl)new TableBuilder("Test" + placement)
+          .addColumn(new ColumnBuilder("id", DataType.LONG)
+                     .setAutoNumber(true))
+          .addColumn(new ColumnBuilder("data", DataType.TEXT))
+          .setPrimaryKey("id")
+          .addIndex(new IndexBuilder("dataIdx").addColumns("data"))
+          .toTable(db);
+        assertEquals(Table.RowPlacement.APPEND, table.getRowPlacement());
+
+        String data = createString(100);
+        for(int i = 0; i < 2000; ++i) {
+          table.addRow(null, data + i);
+        }
+
+        List<RowId> toDelete = new ArrayList<RowId>();
+        for(Row row : table) {
+          if((row.getInt("id") % 3) != 0) {
+            toDelete.add(row.getId());
+          }
+        }
+        table.deleteRows(toDelete.subList(0, toDelete.size() / 2));
+        for(RowId rowId : toDelete.subList(toDelete.size() / 2,
+                                           toDelete.size())) {
+          table.deleteRow(rowId);
+        }
+        assertEquals(666, table.getRowCount());
+        int pageCount = table.getApproximateOwnedPageCount();
+
+        table.setRowPlacement(placement);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for(int i = 0; i < 1000; ++i) {
+          rows.add(new Object[]{null, data + "new" + i});
+        }
+        table.addRows(rows);
+
+        int newPageCount = table.getApproximateOwnedPageCount();
+        if(placement == Table.RowPlacement.APPEND) {
+          appendPageCount = newPageCount;
+          assertTrue(newPageCount > pageCount);
+        } else {
+          // the space of the deleted rows is reused
+          assertTrue(newPageCount < appendPageCount);
+        }
+
+        assertEquals(1666, table.getRowCount());
+        assertRowCount(1666, table);
+        int numNew = 0;
+        for(Row row : table) {
+          int id = row.getInt("id");
+          if(id <= 2000) {
+            assertEquals(0, id % 3);
+            assertEquals(data + (id - 1), row.getString("data"));
+          } else {
+            assertEquals(data + "new" + (id - 2001), row.getString("data"));
+            ++numNew;
+          }
+        }
+        assertEquals(1000, numNew);
+        assertTrue(table.checkIndexes().isEmpty());
+
+        // updates which grow rows move the data to other pages
+        Cursor cursor = CursorBuilder.createCursor(table);
+        while(cursor.moveToNextRow()) {
+          cursor.setCurrentRowValue(
+              table.getColumn("data"),
+              cursor.getCurrentRowValue(table.getColumn("data")) + data);
+        }
+        assertRowCount(1666, table);
+        assertTrue(table.checkIndexes().isEmpty());
+        for(Row row : table) {
+          assertTrue(row.getString("data").endsWith(data));
+        }
+
+        table.setRowPlacement(null);
+        assertEquals(Table.RowPlacement.APPEND, table.getRowPlacement());
+      }
+
+      db.close();
+    }
+  }
+
+  public void testDefragment() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+      TableImpl table = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addColumn(new ColumnBuilder("memo", DataType.MEMO))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("dataIdx").addColumns("data"))
+        .toTable(db);
+
+      String data = createString(100);
+      for(int i = 0; i < 3000; ++i) {
+        table.addRow(null, data + i, (((i % 100) == 0) ?
+                                      createString(5000) : "memo" + i));
+      }
+
+      List<RowId> toDelete = new ArrayList<RowId>();
+      for(Row row : table) {
+        if((row.getInt("id") % 3) != 0) {
+          toDelete.add(row.getId());
+        }
+      }
+      table.deleteRows(toDelete);
+      assertEquals(1000, table.getRowCount());
+
+      // updates which grow rows create overflow rows
+      Cursor cursor = CursorBuilder.createCursor(table);
+      while(cursor.moveToNextRow()) {
+        int id = (Integer)cursor.getCurrentRowValue(table.getColumn("id"));
+        if((id % 10) == 0) {
+          cursor.setCurrentRowValue(table.getColumn("data"),
+                                    data + (id - 1) + data);
+        }
+      }
+      int pageCount = countDataPages(table);
+
+      try {
+        table.defragment(0);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      int numSteps = 0;
+      while(table.defragment(5)) {
+        ++numSteps;
+        if(numSteps == 1) {
+          // the table is consistent between steps
+          assertRowCount(1000, table);
+          assertTrue(table.checkIndexes().isEmpty());
+        }
+      }
+      assertTrue(numSteps > 1);
+
+      // the rows are packed into the first data pages
+      int newPageCount = countDataPages(table);
+      assertTrue(newPageCount < (pageCount / 2));
+
+      assertEquals(1000, table.getRowCount());
+      assertRowCount(1000, table);
+      assertTrue(table.checkIndexes().isEmpty());
+      for(Row row : table) {
+        int id = row.getInt("id");
+        assertEquals(0, id % 3);
+        String expectedData = data + (id - 1);
+        if((id % 10) == 0) {
+          expectedData += data;
+        }
+        assertEquals(expectedData, row.getString("data"));
+        assertEquals(((((id - 1) % 100) == 0) ? createString(5000) :
+                      "memo" + (id - 1)), row.getString("memo"));
+      }
+
+      // the indexes find the moved rows
+      Row row = CursorBuilder.findRowByPrimaryKey(table, 300);
+      assertEquals(data + 299 + data, row.getString("data"));
+      row = CursorBuilder.findRow(table.getIndex("dataIdx"),
+                                  Collections.singletonMap("data",
+                                                           data + 2));
+      assertEquals(3, (int)row.getInt("id"));
+
+      // nothing left to move
+      table.defragment();
+      assertEquals(newPageCount, countDataPages(table));
+      assertTrue(table.checkIndexes().isEmpty());
+
+      table.addRow(null, "new", "memo");
+      assertEquals(1001, table.getRowCount());
+      assertRowCount(1001, table);
+      assertTrue(table.checkIndexes().isEmpty());
+
+      db.close();
+    }
+  }
+
+  public void testBatch() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      final Database db = createMem(fileFormat);
+      final TableImpl table = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("dataIdx").addColumns("data").setUnique())
+        .toTable(db);
+
+      for(int i = 0; i < 10; ++i) {
+        table.addRow(null, "row" + i);
+      }
+      assertEquals(10, readTdefInt(table, table.getFormat().OFFSET_NUM_ROWS));
+
+      int result = db.batch(new Database.UnitOfWork<Integer>() {
+        @Override
+        public Integer execute() throws IOException {
+          for(int i = 10; i < 110; ++i) {
+            table.addRow(null, "row" + i);
+          }
+          List<RowId> toDelete = new ArrayList<RowId>();
+          for(Row row : table) {
+            if(row.getInt("id") <= 5) {
+              toDelete.add(row.getId());
+            }
+          }
+          table.deleteRows(toDelete);
+
+          db.batch(new Database.UnitOfWork<Void>() {
+            @Override
+            public Void execute() throws IOException {
+              for(int i = 110; i < 115; ++i) {
+                table.addRow(null, "row" + i);
+              }
+              return null;
+            }
+          });
+
+          // the table definition is not written until the outermost unit of
+          // work completes
+          assertEquals(10, readTdefInt(table,
+                                       table.getFormat().OFFSET_NUM_ROWS));
+          return table.getRowCount();
+        }
+      });
+
+      assertEquals(110, result);
+      assertEquals(110, readTdefInt(table, table.getFormat().OFFSET_NUM_ROWS));
+      assertEquals(115, readTdefInt(
+                       table, table.getFormat().OFFSET_NEXT_AUTO_NUMBER));
+      assertRowCount(110, table);
+      assertTrue(table.checkIndexes().isEmpty());
+
+      // the changes are written even if the work fails
+      try {
+        db.batch(new Database.UnitOfWork<Void>() {
+          @Override
+          public Void execute() throws IOException {
+            for(int i = 115; i < 118; ++i) {
+              table.addRow(null, "row" + i);
+            }
+            table.addRow(null, "row10");
+            return null;
+          }
+        });
+        fail("ConstraintViolationException should have been thrown");
+      } catch(ConstraintViolationException expected) {
+        // success
+      }
+
+      assertEquals(113, table.getRowCount());
+      assertEquals(113, readTdefInt(table, table.getFormat().OFFSET_NUM_ROWS));
+      assertEquals(118, readTdefInt(
+                       table, table.getFormat().OFFSET_NEXT_AUTO_NUMBER));
+      assertRowCount(113, table);
+      assertTrue(table.checkIndexes().isEmpty());
+
+      db.close();
+
+      // a bulk load within a unit of work (after other index modifications)
+      Database fileDb = create(fileFormat, true);
+      File dbFile = fileDb.getFile();
+      final Table bulkTable = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .setPrimaryKey("id")
+        .toTable(fileDb);
+
+      fileDb.batch(new Database.UnitOfWork<Void>() {
+        @Override
+        public Void execute() throws IOException {
+          bulkTable.addRow(null, "deleted");
+          bulkTable.deleteRow(bulkTable.iterator().next());
+          bulkTable.beginBulkLoad();
+          bulkTable.addRow(null, "bulk0");
+          bulkTable.addRow(null, "bulk1");
+          bulkTable.endBulkLoad();
+          return null;
+        }
+      });
+      fileDb.close();
+
+      fileDb = open(fileFormat, dbFile);
+      TableImpl reopenedTable = (TableImpl)fileDb.getTable("Test");
+      assertEquals(2, reopenedTable.getRowCount());
+      assertRowCount(2, reopenedTable);
+      assertTrue(reopenedTable.checkIndexes().isEmpty());
+      assertEquals("bulk1", CursorBuilder.findRowByPrimaryKey(
+                       reopenedTable, 3).getString("data"));
+      fileDb.close();
+      dbFile.delete();
+    }
+  }
+
+  public void testGroupCommit() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+      DatabaseImpl dbImpl = (DatabaseImpl)db;
+      Table table = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .toTable(db);
+
+      // every write is synced by default
+      dbImpl.resetSyncStats();
+      table.addRow(null, "row0");
+      table.addRow(null, "row1");
+      assertEquals(2L, dbImpl.getSyncCount());
+
+      // nothing left to sync
+      db.sync();
+      assertEquals(2L, dbImpl.getSyncCount());
+
+      dbImpl.setGroupCommit(0L, 10);
+      dbImpl.resetSyncStats();
+      for(int i = 0; i < 25; ++i) {
+        table.addRow(null, "row" + i);
+      }
+      assertEquals(2L, dbImpl.getSyncCount());
+      assertEquals(5, dbImpl.getPageChannel().getUnsyncedWriteCount());
+
+      db.sync();
+      assertEquals(3L, dbImpl.getSyncCount());
+      assertEquals(0, dbImpl.getPageChannel().getUnsyncedWriteCount());
+      db.sync();
+      assertEquals(3L, dbImpl.getSyncCount());
+      assertTrue(dbImpl.getSyncTimeNanos() >= dbImpl.getMaxSyncTimeNanos());
+
+      // a unit of work is a single write
+      db.batch(new Database.UnitOfWork<Void>() {
+        @Override
+        public Void execute() throws IOException {
+          for(int i = 0; i < 50; ++i) {
+            table.addRow(null, "batch" + i);
+          }
+          return null;
+        }
+      });
+      assertEquals(3L, dbImpl.getSyncCount());
+      assertEquals(1, dbImpl.getPageChannel().getUnsyncedWriteCount());
+
+      // time window
+      dbImpl.setGroupCommit(1L, 1000);
+      table.addRow(null, "late");
+      assertEquals(3L, dbImpl.getSyncCount());
+      Thread.sleep(5L);
+      table.addRow(null, "later");
+      assertEquals(4L, dbImpl.getSyncCount());
+
+      dbImpl.resetSyncStats();
+      assertEquals(0L, dbImpl.getSyncCount());
+      assertEquals(0L, dbImpl.getSyncTimeNanos());
+      assertEquals(79, table.getRowCount());
+
+      db.close();
+    }
+
+    try {
+      new DatabaseBuilder().setGroupCommit(10L, 0);
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException expected) {
+      // success
+    }
+  }
+
+  private static int readTdefInt(TableImpl table, int offset)
+    throws IOException
+  {
+    ByteBuffer buffer = table.getPageChannel().createPageBuffer();
+    table.getPageChannel().readPage(buffer, table.getTableDefPageNumber());
+    return buffer.getInt(offset);
+  }
+
+  private static int countDataPages(TableImpl table) {
+    int count = 0;
+    UsageMap.PageCursor pageCursor = table.getOwnedPagesCursor();
+    while(pageCursor.getNextPage() >= 0) {
+      ++count;
+    }
+    return count;
+  }
+
+  public void testUpdateRows() throws Exception {
+
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+      TableImpl table = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG)
+                   .setAutoNumber(true))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .addColumn(new ColumnBuilder("status", DataType.LONG))
+        .addColumn(new ColumnBuilder("flag", DataType.BOOLEAN))
+        .addColumn(new ColumnBuilder("code", DataType.LONG))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("codeIdx").addColumns("code").setUnique())
+        .toTable(db);
+
+      for(int i = 0; i < 3000; ++i) {
+        table.addRow(null, "name" + (i % 10), i % 5, false, i);
+      }
+
+      List<RowId> toUpdate = new ArrayList<RowId>();
+      for(Row row : table) {
+        if((row.getInt("id") % 3) == 0) {
+          toUpdate.add(row.getId());
+        }
+      }
+
+      // fixed length, non-indexed columns (patched in place)
+      Map<String,Object> values = new HashMap<String,Object>();
+      values.put("status", 3);
+      values.put("flag", true);
+      assertEquals(1000, table.updateRows(toUpdate, values));
+      for(Row row : table) {
+        boolean updated = ((row.getInt("id") % 3) == 0);
+        int code = row.getInt("code");
+        assertEquals((updated ? 3 : (code % 5)), (int)row.getInt("status"));
+        assertEquals(updated, (boolean)row.getBoolean("flag"));
+        assertEquals("name" + (code % 10), row.getString("name"));
+      }
+      assertTrue(table.checkIndexes().isEmpty());
+
+      // null values
+      values.put("status", null);
+      values.put("flag", null);
+      assertEquals(1000, table.updateRows(toUpdate, values));
+      for(Row row : table) {
+        if((row.getInt("id") % 3) == 0) {
+          assertNull(row.get("status"));
+          assertFalse(row.getBoolean("flag"));
+        }
+      }
+
+      // indexed column
+      values.clear();
+      values.put("code", null);
+      assertEquals(1000, table.updateRows(toUpdate, values));
+      assertTrue(table.checkIndexes().isEmpty());
+      assertEquals(1000, countRows(table, "code", null));
+
+      // var length column (normal update)
+      values.clear();
+      values.put("name", "updated");
+      assertEquals(1000, table.updateRows(toUpdate, values));
+      assertEquals(1000, countRows(table, "name", "updated"));
+      assertTrue(table.checkIndexes().isEmpty());
+
+      // unique index violation after the first update (in page order)
+      values.clear();
+      values.put("code", 5000);
+      try {
+        table.updateRows(toUpdate, values);
+        fail("BatchUpdateException should have been thrown");
+      } catch(BatchUpdateException be) {
+        assertTrue(be.getCause() instanceof ConstraintViolationException);
+        assertEquals(1, be.getUpdateCount());
+      }
+      assertEquals(1, countRows(table, "code", 5000));
+      assertTrue(table.checkIndexes().isEmpty());
+
+      try {
+        table.updateRows(Arrays.asList(new RowIdImpl(-1, -1)), values);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  private static int countRows(Table table, String colName, Object value)
+    throws Exception
+  {
+    int count = 0;
+    for(Row row : table) {
+      if(Objects.equals(value, row.get(colName))) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
   public void testMissingFile() throws Exception {
     File bogusFile = new File("fooby-dooby.mdb");
     assertTrue(!bogusFile.exists());
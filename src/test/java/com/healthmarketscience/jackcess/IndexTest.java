@@ -16,10 +16,14 @@ limitations under the License.
 
 package com.healthmarketscience.jackcess;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
@@ -27,6 +31,7 @@ import java.util.TreeSet;
 
 import static com.healthmarketscience.jackcess.Database.*;
 import com.healthmarketscience.jackcess.impl.ByteUtil;
+import com.healthmarketscience.jackcess.impl.ColumnImpl;
 import com.healthmarketscience.jackcess.impl.IndexCodesTest;
 import com.healthmarketscience.jackcess.impl.IndexData;
 import com.healthmarketscience.jackcess.impl.IndexImpl;
@@ -735,6 +740,352 @@ public class IndexTest extends TestCase {
     }
   }
 
+  public void testIndexRange() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("grp", DataType.LONG))
+        .addColumn(new ColumnBuilder("seq", DataType.LONG))
+        .addIndex(new IndexBuilder("grp_seq").addColumns("grp", "seq"))
+        .toTable(db);
+
+      for(int grp = 4; grp >= 1; --grp) {
+        for(int seq = 1; seq <= 5; ++seq) {
+          t.addRow(grp, seq);
+        }
+      }
+
+      Index idx = t.getIndex("grp_seq");
+
+      assertEquals(20, countRange(idx, null, true, null, true));
+      assertEquals(10, countRange(idx, new Object[]{2}, true,
+                                  new Object[]{3}, true));
+      assertEquals(5, countRange(idx, new Object[]{2}, false,
+                                 new Object[]{3}, true));
+      assertEquals(5, countRange(idx, new Object[]{2}, true,
+                                 new Object[]{3}, false));
+      assertEquals(0, countRange(idx, new Object[]{2}, false,
+                                 new Object[]{3}, false));
+      assertEquals(3, countRange(idx, new Object[]{2, 3}, true,
+                                 new Object[]{3}, false));
+      assertEquals(2, countRange(idx, new Object[]{2, 3}, false,
+                                 new Object[]{2}, true));
+      assertEquals(15, countRange(idx, new Object[]{2}, true, null, true));
+      assertEquals(0, countRange(idx, new Object[]{5}, true, null, true));
+
+      Cursor c = CursorBuilder.createCursor(t);
+      int expectedSeq = 2;
+      for(RowId rowId : idx.range(new Object[]{3, 2}, true,
+                                  new Object[]{3, 4}, true)) {
+        assertTrue(c.findRow(rowId));
+        Row row = c.getCurrentRow();
+        assertEquals(3, row.get("grp"));
+        assertEquals(expectedSeq++, row.get("seq"));
+      }
+      assertEquals(5, expectedSeq);
+
+      db.close();
+    }
+  }
+
+  public void testIndexRangeRows() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("val", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder("val").addColumns("val"))
+        .toTable(db);
+
+      // scatter the index values across the data pages
+      for(int i = 0; i < 500; ++i) {
+        t.addRow(i, ((i * 37) % 500), "some data for row " + i);
+      }
+
+      Index idx = t.getIndex("val");
+      List<RowId> rowIds = new ArrayList<RowId>();
+      for(RowId rowId : idx.range(new Object[]{100}, true,
+                                  new Object[]{300}, false)) {
+        rowIds.add(rowId);
+      }
+      assertEquals(200, rowIds.size());
+
+      // duplicates should be ignored
+      rowIds.addAll(rowIds.subList(0, 10));
+
+      IndexCursor c = CursorBuilder.createCursor(idx);
+      assertTrue(c.findFirstRowByEntry(150));
+      c.deleteCurrentRow();
+
+      RowId prevRowId = null;
+      SortedSet<Integer> vals = new TreeSet<Integer>();
+      for(Row row : t.getRows(rowIds, Arrays.asList("val"))) {
+        if(prevRowId != null) {
+          assertTrue(prevRowId.compareTo(row.getId()) < 0);
+        }
+        prevRowId = row.getId();
+        assertNull(row.get("id"));
+        vals.add(row.getInt("val"));
+      }
+
+      assertEquals(199, vals.size());
+      assertEquals(100, (int)vals.first());
+      assertEquals(299, (int)vals.last());
+      assertFalse(vals.contains(150));
+
+      db.close();
+    }
+  }
+
+  public void testLookupAll() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("val", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("val_data").addColumns("val", "data"))
+        .toTable(db);
+
+      // enough rows to span many index pages
+      for(int i = 0; i < 2000; ++i) {
+        t.addRow(i, ((i * 7) % 600), "data" + (i % 3));
+      }
+
+      Index pk = t.getPrimaryKeyIndex();
+      List<Object[]> keys = new ArrayList<Object[]>();
+      for(int i = 2500; i >= -10; i -= 3) {
+        keys.add(new Object[]{i});
+      }
+      keys.add(new Object[]{42});
+      List<List<RowId>> results = pk.lookupAll(keys);
+      assertEquals(keys.size(), results.size());
+      Cursor c = CursorBuilder.createCursor(t);
+      for(int i = 0; i < keys.size(); ++i) {
+        int id = (Integer)keys.get(i)[0];
+        List<RowId> rowIds = results.get(i);
+        if((id < 0) || (id >= 2000)) {
+          assertTrue(rowIds.isEmpty());
+        } else {
+          assertEquals(1, rowIds.size());
+          assertTrue(c.findRow(rowIds.get(0)));
+          assertEquals(id, c.getCurrentRow().get("id"));
+        }
+      }
+
+      Index idx = t.getIndex("val_data");
+      keys.clear();
+      for(int i = 620; i >= 0; i -= 11) {
+        keys.add(new Object[]{i});
+        keys.add(new Object[]{i, "data1"});
+      }
+      results = idx.lookupAll(keys);
+      for(int i = 0; i < keys.size(); ++i) {
+        Object[] key = keys.get(i);
+        List<RowId> expected = new ArrayList<RowId>();
+        for(RowId rowId : idx.range(key, true, key, true)) {
+          expected.add(rowId);
+        }
+        assertEquals(expected, results.get(i));
+      }
+
+      db.close();
+    }
+  }
+
+  public void testPreparedLookup() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("small", DataType.INT))
+        .addColumn(new ColumnBuilder("big", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("small").addColumns(false, "small"))
+        .addIndex(new IndexBuilder("big").addColumns("big"))
+        .addIndex(new IndexBuilder("small_data").addColumns("small", "data"))
+        .toTable(db);
+
+      // enough rows to span many index pages
+      for(int i = 0; i < 2000; ++i) {
+        t.addRow(i * 2, (i % 500) - 250, (i * 1000000) - 1000000000,
+                 "Data" + (i % 7));
+      }
+
+      PreparedLookup pkLookup = t.getPrimaryKeyIndex().prepareLookup();
+      for(int i = -5; i < 4010; ++i) {
+        RowId rowId = pkLookup.findRowId(i);
+        assertEquals(rowId, pkLookup.findRowId((long)i));
+        assertEquals(rowId, pkLookup.findRowId(i));
+        if(((i % 2) != 0) || (i < 0) || (i >= 4000)) {
+          assertNull(rowId);
+          assertNull(pkLookup.findRow(i));
+          continue;
+        }
+        assertEquals(i, pkLookup.findRow(i).get("id"));
+        assertEquals(rowId, pkLookup.findRow(i).getId());
+      }
+      // values which do not fit in the column
+      assertNull(pkLookup.findRowId(1L << 32));
+      assertNull(pkLookup.findRowId(-(1L << 40)));
+
+      // descending index on a short column
+      IndexCursor smallCursor = CursorBuilder.createCursor(t.getIndex("small"));
+      PreparedLookup smallLookup = t.getIndex("small").prepareLookup()
+        .setColumnNames(Arrays.asList("id", "small"));
+      for(int i = -260; i < 260; ++i) {
+        Row row = smallLookup.findRow(i);
+        if((i < -250) || (i >= 250)) {
+          assertNull(row);
+          continue;
+        }
+        assertTrue(smallCursor.findFirstRowByEntry((short)i));
+        assertEquals(smallCursor.getCurrentRow().getId(), row.getId());
+        assertEquals(2, row.size());
+        assertEquals((short)i, row.get("small"));
+      }
+      assertNull(smallLookup.findRowId(Short.MAX_VALUE + 1));
+
+      PreparedLookup bigLookup = t.getIndex("big").prepareLookup();
+      assertEquals(1999 * 2, bigLookup.findRow(999000000L).get("id"));
+      assertEquals(0, bigLookup.findRow(-1000000000).get("id"));
+      assertNull(bigLookup.findRowId(999000001));
+      assertEquals(bigLookup.findRowId(-5000000),
+                   bigLookup.findRowId(Integer.valueOf(-5000000)));
+
+      // multi-column, text index (text lookups ignore case)
+      IndexCursor dataCursor = CursorBuilder.createCursor(
+          t.getIndex("small_data"));
+      PreparedLookup dataLookup = t.getIndex("small_data").prepareLookup();
+      for(int i = -10; i < 10; ++i) {
+        for(int j = 0; j < 8; ++j) {
+          String data = "Data" + j;
+          RowId rowId = dataLookup.findRowId(i, data);
+          assertEquals(rowId, dataLookup.findRowId(i, data.toUpperCase()));
+          if(dataCursor.findFirstRowByEntry(i, data)) {
+            assertEquals(dataCursor.getCurrentRow().getId(), rowId);
+          } else {
+            assertNull(rowId);
+          }
+        }
+      }
+      try {
+        dataLookup.findRowId(1);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      // lookups see index updates
+      assertNull(pkLookup.findRowId(4001));
+      t.addRow(4001, 1, 1, "new");
+      assertEquals(4001, pkLookup.findRow(4001).get("id"));
+      Cursor c = CursorBuilder.createCursor(t);
+      assertTrue(c.findFirstRow(Collections.singletonMap("id", (Object)8)));
+      c.deleteCurrentRow();
+      assertNull(pkLookup.findRowId(8));
+
+      db.close();
+    }
+  }
+
+  public void testIndexRangeValues() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("num", DataType.INT))
+        .addColumn(new ColumnBuilder("dbl", DataType.DOUBLE))
+        .addColumn(new ColumnBuilder("date", DataType.SHORT_DATE_TIME))
+        .addColumn(new ColumnBuilder("flag", DataType.BOOLEAN))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder("num_dbl_data")
+                  .addColumns("num", "dbl", "data"))
+        .addIndex(new IndexBuilder("date_flag")
+                  .addColumns(false, "date").addColumns("flag"))
+        .addIndex(new IndexBuilder("dbl_desc").addColumns(false, "dbl"))
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .toTable(db);
+
+      long baseTime = 1326000000000L;
+      double[] dbls = {-3.75d, 0.0d, 12.5d, -0.5d, 1.0e10d, -1.0e-10d};
+      for(int i = 0; i < 12; ++i) {
+        Object num = ((i == 5) ? null : (short)(i - 6));
+        Object date = ((i == 7) ? null : new Date(baseTime + (i * 86400000L)));
+        t.addRow(i, num, dbls[i % dbls.length], date, ((i % 3) == 0),
+                 "row" + i);
+      }
+
+      for(String idxName : Arrays.asList("num_dbl_data", "date_flag",
+                                         "dbl_desc")) {
+        Index idx = t.getIndex(idxName);
+        int numDecodable = idxName.equals("num_dbl_data") ? 2 :
+          idx.getColumnCount();
+
+        IndexCursor c = CursorBuilder.createCursor(idx);
+        Iterator<Object[]> values = idx.rangeValues(
+            null, true, null, true).iterator();
+        for(Row row : c) {
+          assertTrue(values.hasNext());
+          Object[] rowValues = values.next();
+          assertEquals(numDecodable, rowValues.length);
+          for(int i = 0; i < numDecodable; ++i) {
+            assertEquals(row.get(idx.getColumns().get(i).getName()),
+                         rowValues[i]);
+          }
+        }
+        assertFalse(values.hasNext());
+      }
+
+      Index idx = t.getIndex("num_dbl_data");
+      List<Object> nums = new ArrayList<Object>();
+      for(Object[] rowValues : idx.rangeValues(
+              new Object[]{(short)-2}, true, new Object[]{(short)2}, false)) {
+        nums.add(rowValues[0]);
+      }
+      // row with num -1 has a null value
+      assertEquals(Arrays.<Object>asList((short)-2, (short)0, (short)1),
+                   nums);
+
+      try {
+        t.getIndex("data").rangeValues(null, true, null, true);
+        fail("UnsupportedOperationException should have been thrown");
+      } catch(UnsupportedOperationException expected) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  private static int countRange(Index idx, Object[] lower,
+                                boolean lowerInclusive, Object[] upper,
+                                boolean upperInclusive)
+  {
+    int count = 0;
+    for(RowId rowId : idx.range(lower, lowerInclusive, upper,
+                                upperInclusive)) {
+      assertNotNull(rowId);
+      ++count;
+    }
+    return count;
+  }
+
   private static void doTestBinaryIndex(Index idx, String colName, boolean forward)
     throws Exception
   {
@@ -757,6 +1108,194 @@ public class IndexTest extends TestCase {
     }
   }
 
+  public void testBulkLoad() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .toTable(db);
+
+      // bulk load into empty indexes
+      assertFalse(t.isBulkLoading());
+      t.beginBulkLoad();
+      assertTrue(t.isBulkLoading());
+      List<Object[]> rows = new ArrayList<Object[]>();
+      for(int i = 0; i < 1000; ++i) {
+        int id = ((i * 7919) % 1000);
+        rows.add(new Object[]{id, "data " + (id % 50)});
+        if(rows.size() == 100) {
+          t.addRows(rows);
+          rows.clear();
+        }
+      }
+
+      // indexes are not updated until the end of the session
+      assertEquals(0, ((IndexImpl)t.getPrimaryKeyIndex()).getIndexData()
+                   .getEntryCount());
+      try {
+        t.deleteRow(t.getNextRow());
+        fail("IllegalStateException should have been thrown");
+      } catch(IllegalStateException expected) {
+        // success
+      }
+
+      assertTrue(t.endBulkLoad(false).isEmpty());
+      assertFalse(t.isBulkLoading());
+      assertEquals(1000, t.getRowCount());
+      checkBulkLoadIndexes(t, 1000);
+
+      try {
+        t.endBulkLoad();
+        fail("IllegalStateException should have been thrown");
+      } catch(IllegalStateException expected) {
+        // success
+      }
+
+      // bulk load into existing indexes with duplicate keys, rolling back
+      t.beginBulkLoad();
+      t.addRow(1000, "data 1000");
+      t.addRow(5, "data dupe");
+      t.addRow(1001, "data 1001");
+      try {
+        t.endBulkLoad();
+        fail("ConstraintViolationException should have been thrown");
+      } catch(ConstraintViolationException expected) {
+        // success
+      }
+      assertFalse(t.isBulkLoading());
+      assertEquals(1000, t.getRowCount());
+      assertEquals(1000, countRows(t));
+      checkBulkLoadIndexes(t, 1000);
+
+      // bulk load into existing indexes, rejecting the duplicate keys
+      t.beginBulkLoad();
+      List<RowId> expectedRejects = new ArrayList<RowId>();
+      for(int i = 1000; i < 1500; ++i) {
+        t.addRow(i, "data " + (i % 50));
+        if((i % 100) == 0) {
+          // duplicates an existing row
+          expectedRejects.add(addRowWithId(t, 17, "data dupe"));
+        } else if((i % 100) == 1) {
+          // duplicates another bulk loaded row
+          expectedRejects.add(addRowWithId(t, i, "data dupe"));
+        }
+      }
+      List<RowId> rejects = t.endBulkLoad(false);
+      assertEquals(expectedRejects, rejects);
+      assertEquals(1500, t.getRowCount());
+      assertEquals(1500, countRows(t));
+      checkBulkLoadIndexes(t, 1500);
+
+      // the table is fully updatable after the session
+      Cursor c = CursorBuilder.createCursor(t.getPrimaryKeyIndex());
+      assertTrue(c.findFirstRow(Collections.singletonMap("id", 1250)));
+      c.deleteCurrentRow();
+      t.addRow(1250, "data 1250");
+      checkBulkLoadIndexes(t, 1500);
+
+      db.close();
+    }
+  }
+
+  public void testBulkLoadClose() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat, true);
+      File dbFile = db.getFile();
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .toTable(db);
+      for(int i = 0; i < 10; ++i) {
+        t.addRow(i, "data " + i);
+      }
+
+      // closing the database ends the session
+      t.beginBulkLoad();
+      for(int i = 10; i < 100; ++i) {
+        t.addRow(i, "data " + i);
+      }
+      try {
+        db.flush();
+        fail("IllegalStateException should have been thrown");
+      } catch(IllegalStateException expected) {
+        // success
+      }
+      db.close();
+      assertFalse(t.isBulkLoading());
+
+      db = new DatabaseBuilder(dbFile).open();
+      t = db.getTable("TestTable");
+      assertEquals(100, t.getRowCount());
+      assertEquals(100, countRows(t));
+      checkBulkLoadIndexes(t, 100);
+
+      // a failed session is rolled back and the database is still closed
+      t.beginBulkLoad();
+      t.addRow(100, "data 100");
+      t.addRow(5, "data dupe");
+      try {
+        db.close();
+        fail("ConstraintViolationException should have been thrown");
+      } catch(ConstraintViolationException expected) {
+        // success
+      }
+      assertFalse(t.isBulkLoading());
+
+      db = new DatabaseBuilder(dbFile).open();
+      t = db.getTable("TestTable");
+      assertEquals(100, t.getRowCount());
+      assertEquals(100, countRows(t));
+      checkBulkLoadIndexes(t, 100);
+      db.close();
+
+      assertTrue(dbFile.delete());
+    }
+  }
+
+  private static RowId addRowWithId(Table t, Object... row) throws Exception
+  {
+    Object[] rowWithId = Arrays.copyOf(row, t.getColumnCount() + 1);
+    rowWithId[t.getColumnCount()] = ColumnImpl.RETURN_ROW_ID;
+    t.addRow(rowWithId);
+    return (RowId)rowWithId[t.getColumnCount()];
+  }
+
+  private static void checkBulkLoadIndexes(Table t, int numRows)
+    throws Exception
+  {
+    for(Index idx : t.getIndexes()) {
+      ((IndexImpl)idx).getIndexData().validate();
+      assertEquals(numRows, ((IndexImpl)idx).getIndexData().getEntryCount());
+    }
+
+    int expectedId = 0;
+    for(Row row : CursorBuilder.createCursor(t.getPrimaryKeyIndex())) {
+      assertEquals(expectedId++, row.get("id"));
+    }
+    assertEquals(numRows, expectedId);
+
+    String prevData = null;
+    int numFound = 0;
+    for(Row row : CursorBuilder.createCursor(t.getIndex("data"))) {
+      String data = row.getString("data");
+      assertTrue((prevData == null) || (prevData.compareTo(data) <= 0));
+      prevData = data;
+      ++numFound;
+    }
+    assertEquals(numRows, numFound);
+  }
+
   private void doCheckForeignKeyIndex(Table ta, Index ia, Table tb)
     throws Exception
   {
@@ -16,25 +16,35 @@ limitations under the License.
 
 package com.healthmarketscience.jackcess.impl;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.healthmarketscience.jackcess.BatchUpdateException;
 import com.healthmarketscience.jackcess.Column;
 import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.ConstraintViolationException;
 import com.healthmarketscience.jackcess.Cursor;
 import com.healthmarketscience.jackcess.CursorBuilder;
 import com.healthmarketscience.jackcess.DataType;
 import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.InvalidValueException;
 import static com.healthmarketscience.jackcess.Database.*;
 import com.healthmarketscience.jackcess.Row;
 import com.healthmarketscience.jackcess.Table;
 import com.healthmarketscience.jackcess.TableBuilder;
 import static com.healthmarketscience.jackcess.TestUtil.*;
 import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import com.healthmarketscience.jackcess.util.ColumnValidator;
 import com.healthmarketscience.jackcess.util.RowFilterTest;
 import junit.framework.TestCase;
 
@@ -120,6 +130,170 @@ public class DatabaseReadWriteTest extends TestCase
     }
   }
 
+  public void testWriteAndReadParallel() throws Exception {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+
+      for(boolean withMemo : new boolean[]{false, true}) {
+        String tableName = "test" + (withMemo ? "Memo" : "");
+        TableBuilder tb = new TableBuilder(tableName)
+          .addColumn(new ColumnBuilder("id", DataType.LONG)
+                     .setAutoNumber(true))
+          .addColumn(new ColumnBuilder("name", DataType.TEXT)
+                     .setLength(20))
+          .addColumn(new ColumnBuilder("val", DataType.LONG))
+          .addColumn(new ColumnBuilder("amount", DataType.DOUBLE))
+          .setPrimaryKey("id")
+          .addIndex(new IndexBuilder("valIdx").addColumns("val")
+                    .setUnique());
+        if(withMemo) {
+          tb.addColumn(new ColumnBuilder("data", DataType.MEMO));
+        }
+        TableImpl t = (TableImpl)tb.toTable(db);
+
+        int count = 2000;
+        List<Object[]> rows = new ArrayList<Object[]>(count);
+        for(int i = 0; i < count; ++i) {
+          rows.add(new Object[]{null, "name" + i, i, i * 1.5d,
+                                (withMemo ? createString(i % 3000) : null)});
+        }
+        t.addRowsParallel(rows, 4);
+
+        assertEquals(count, t.getRowCount());
+        int i = 0;
+        for(Row row : t) {
+          assertEquals(i + 1, row.get("id"));
+          assertEquals(i + 1, rows.get(i)[0]);
+          assertEquals("name" + i, row.get("name"));
+          assertEquals(i, row.get("val"));
+          assertEquals(i * 1.5d, row.get("amount"));
+          if(withMemo) {
+            assertEquals(createString(i % 3000), row.get("data"));
+          }
+          ++i;
+        }
+        assertEquals(count, i);
+
+        // duplicate unique value (failure on the writer thread)
+        rows.clear();
+        for(i = 0; i < 1000; ++i) {
+          rows.add(new Object[]{null, "more" + i,
+                                ((i == 600) ? 7 : (count + i))});
+        }
+        try {
+          t.addRowsParallel(rows, 3);
+          fail("BatchUpdateException should have been thrown");
+        } catch(BatchUpdateException be) {
+          assertTrue(be.getCause() instanceof ConstraintViolationException);
+          assertEquals(600, be.getUpdateCount());
+        }
+        assertEquals(count + 600, t.getRowCount());
+
+        // invalid value (failure on a worker thread)
+        rows.clear();
+        for(i = 0; i < 1000; ++i) {
+          rows.add(new Object[]{null, ((i == 300) ? createString(30) : "ok"),
+                                (count + 1000 + i)});
+        }
+        try {
+          t.addRowsParallel(rows, 2);
+          fail("BatchUpdateException should have been thrown");
+        } catch(BatchUpdateException be) {
+          assertTrue(be.getCause() instanceof InvalidValueException);
+          assertEquals(300, be.getUpdateCount());
+        }
+        assertEquals(count + 900, t.getRowCount());
+
+        // the unused autonumbers were restored
+        Object[] row = t.addRow(null, "last", -1);
+        assertEquals(count + 901, row[0]);
+
+        // no worker touches the rows once the failure has been reported
+        final AtomicInteger numValidated = new AtomicInteger();
+        t.getColumn("name").setColumnValidator(new ColumnValidator() {
+          @Override
+          public Object validate(Column col, Object val) throws IOException {
+            if(numValidated.incrementAndGet() == 10) {
+              throw new InvalidValueException("invalid " + val);
+            }
+            return val;
+          }
+        });
+        rows.clear();
+        for(i = 0; i < 5000; ++i) {
+          rows.add(new Object[]{null, "more" + i, (count + 2000 + i)});
+        }
+        try {
+          t.addRowsParallel(rows, 4);
+          fail("BatchUpdateException should have been thrown");
+        } catch(BatchUpdateException be) {
+          assertTrue(be.getCause() instanceof InvalidValueException);
+        }
+        int numValidatedAfterFailure = numValidated.get();
+        Thread.sleep(50L);
+        assertEquals(numValidatedAfterFailure, numValidated.get());
+        t.getColumn("name").setColumnValidator(null);
+      }
+
+      db.close();
+    }
+  }
+
+  public void testDirectColumnWrite() throws Exception {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = createMem(fileFormat);
+
+      Table t = new TableBuilder("test")
+        .addColumn(new ColumnBuilder("byte", DataType.BYTE))
+        .addColumn(new ColumnBuilder("int", DataType.INT))
+        .addColumn(new ColumnBuilder("long", DataType.LONG))
+        .addColumn(new ColumnBuilder("money", DataType.MONEY))
+        .addColumn(new ColumnBuilder("float", DataType.FLOAT))
+        .addColumn(new ColumnBuilder("double", DataType.DOUBLE))
+        .addColumn(new ColumnBuilder("date", DataType.SHORT_DATE_TIME))
+        .addColumn(new ColumnBuilder("guid", DataType.GUID))
+        .addColumn(new ColumnBuilder("numeric", DataType.NUMERIC)
+                   .setScale(3).setPrecision(12))
+        .addColumn(new ColumnBuilder("text", DataType.TEXT))
+        .addColumn(new ColumnBuilder("cText", DataType.TEXT)
+                   .setCompressedUnicode(true))
+        .addColumn(new ColumnBuilder("binary", DataType.BINARY))
+        .addColumn(new ColumnBuilder("memo", DataType.MEMO))
+        .toTable(db);
+
+      Object[] row = {(byte)7, (short)-300, 123456789, "1234.5678", 1.5f,
+                      -3.25d, new Date(1000000000000L),
+                      "{32A59F01-AA34-3E29-453F-4523453CD2E6}", "-123.456",
+                      "some text \u00e9\ud83d\ude00", "compressed text",
+                      new byte[]{1, 2, 3}, "memo text"};
+      String[] texts = {"", "ab", "plain ascii", "\u0100\u2603 wide",
+                        "lone \ud83d surrogate", "compressed \u00ff"};
+
+      int maxRowSize = ((TableImpl)t).getFormat().MAX_ROW_SIZE;
+      for(Column c : t.getColumns()) {
+        ColumnImpl col = (ColumnImpl)c;
+        List<Object> values = new ArrayList<Object>();
+        values.add(row[col.getColumnIndex()]);
+        if(col.getType() == DataType.TEXT) {
+          values.addAll(Arrays.asList((Object[])texts));
+        }
+
+        for(Object value : values) {
+          ByteBuffer expected = col.write(value, maxRowSize);
+          ByteBuffer buffer = ByteBuffer.allocate(maxRowSize)
+            .order(PageChannel.DEFAULT_BYTE_ORDER);
+          buffer.position(5);
+          col.write(value, maxRowSize, buffer);
+          buffer.flip();
+          buffer.position(5);
+          assertEquals(col.getName() + " " + value, expected, buffer);
+        }
+      }
+
+      db.close();
+    }
+  }
+
   public void testUpdateRow() throws Exception
   {
     for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
@@ -135,6 +135,36 @@ public class FKEnforcerTest extends TestCase
     
   }
 
+  public void testTruncateEnforceForeignKeys() throws Exception {
+    for (final TestDB testDB : TestDB.getSupportedForBasename(Basename.INDEX)) {
+
+      Database db = openCopy(testDB);
+      Table t1 = db.getTable("Table1");
+      Table t2 = db.getTable("Table2");
+      Table t3 = db.getTable("Table3");
+
+      int t3RowCount = t3.getRowCount();
+      try {
+        t3.truncate();
+        fail("IOException should have been thrown");
+      } catch(IOException ignored) {
+        // success
+        assertTrue(ignored.getMessage().contains("Table3[id]"));
+      }
+      assertEquals(t3RowCount, t3.getRowCount());
+      assertTrue(CursorBuilder.createCursor(t3).moveToNextRow());
+
+      // deletes cascade to Table1
+      assertEquals(t2.getRowCount(), t2.truncate());
+      assertEquals(0, t2.getRowCount());
+      assertFalse(CursorBuilder.createCursor(t2).moveToNextRow());
+      assertEquals(0, t1.getRowCount());
+      assertFalse(CursorBuilder.createCursor(t1).moveToNextRow());
+
+      db.close();
+    }
+  }
+
   private static Row createT1Row(
       int id1, Integer fk1, Integer fk2, String data, Integer fk3)
   {
@@ -0,0 +1,315 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.ConstraintViolationException;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import static com.healthmarketscience.jackcess.Database.*;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import static com.healthmarketscience.jackcess.TestUtil.*;
+import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class IndexBulkLoaderTest extends TestCase
+{
+  private static final String EXTRA_TEXT =
+    " some random text to fill out the index entries";
+
+  public IndexBulkLoaderTest(String name) {
+    super(name);
+  }
+
+  public void testAddIndexToTable() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .toTable(db);
+
+      List<String> expected = new ArrayList<String>();
+      Random rand = new Random(42L);
+      for(int i = 0; i < 3000; ++i) {
+        String data = null;
+        if((i % 100) != 0) {
+          data = String.format("%08d", rand.nextInt(1000000)) + EXTRA_TEXT;
+          expected.add(data);
+        }
+        t.addRow(i, data);
+      }
+      Collections.sort(expected);
+
+      IndexImpl idx = (IndexImpl)new IndexBuilder("data")
+        .addColumns("data").addToTable(t);
+      IndexData idxData = idx.getIndexData();
+      idxData.validate();
+      assertTrue(idxData.getOwnedPageCount() > 1);
+
+      checkIndex(idx, expected, 30);
+
+      // the index should still be updatable
+      for(int i = 0; i < 500; ++i) {
+        String data = String.format("%08d", rand.nextInt(1000000)) +
+          EXTRA_TEXT;
+        expected.add(data);
+        t.addRow(3000 + i, data);
+      }
+      Collections.sort(expected);
+      idxData.validate();
+      checkIndex(idx, expected, 30);
+
+      IndexImpl idIdx = (IndexImpl)new IndexBuilder("id")
+        .addColumns("id").setUnique().addToTable(t);
+      idIdx.getIndexData().validate();
+      assertEquals(3500, idIdx.getIndexData().getEntryCount());
+
+      try {
+        new IndexBuilder("dataUnique").addColumns("data").setUnique()
+          .addToTable(t);
+        fail("ConstraintViolationException should have been thrown");
+      } catch(ConstraintViolationException expectedEx) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  public void testSpillAndFillFactor() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addColumn(new ColumnBuilder("data2", DataType.TEXT))
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .addIndex(new IndexBuilder("data2").addColumns("data2"))
+        .toTable(db);
+
+      IndexImpl idx = (IndexImpl)t.getIndex("data");
+      IndexImpl idx2 = (IndexImpl)t.getIndex("data2");
+
+      final List<Object[]> rows = new ArrayList<Object[]>();
+      Random rand = new Random(13L);
+      for(int i = 0; i < 2000; ++i) {
+        // include some duplicate values
+        String data = String.format("%08d", rand.nextInt(1500)) + EXTRA_TEXT;
+        rows.add(new Object[]{i, data, data});
+      }
+
+      IndexBulkLoader loader = new IndexBulkLoader(idx.getIndexData());
+      IndexBulkLoader loader2 = new IndexBulkLoader(idx2.getIndexData());
+      try {
+        // force multiple sorted runs
+        loader.setMaxMemory(20000L);
+        loader.setFillFactor(100);
+        loader2.setFillFactor(50);
+        for(int i = 0; i < rows.size(); ++i) {
+          // the rowIds need not be valid for building the index
+          RowIdImpl rowId = toRowId(i);
+          loader.addRow(rows.get(i), rowId);
+          loader2.addRow(rows.get(i), rowId);
+        }
+        PageChannel pageChannel = ((DatabaseImpl)db).getPageChannel();
+        pageChannel.startWrite();
+        try {
+          loader.load();
+          loader2.load();
+        } finally {
+          pageChannel.finishWrite();
+        }
+      } finally {
+        loader.close();
+        loader2.close();
+      }
+
+      for(IndexImpl curIdx : new IndexImpl[]{idx, idx2}) {
+        IndexData idxData = curIdx.getIndexData();
+        idxData.validate();
+        assertEquals(2000, idxData.getEntryCount());
+
+        assertEquals(expectedRowIds(rows), indexRowIds(curIdx));
+      }
+
+      // the fuller pages should need fewer pages
+      assertTrue(idx.getIndexData().getOwnedPageCount() <
+                 idx2.getIndexData().getOwnedPageCount());
+
+      // loading requires an empty index
+      loader = new IndexBulkLoader(idx.getIndexData());
+      try {
+        loader.load();
+        fail("IllegalStateException should have been thrown");
+      } catch(IllegalStateException expectedEx) {
+        // success
+      } finally {
+        loader.close();
+      }
+
+      db.close();
+    }
+  }
+
+  public void testRebuildIndexes() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      TableImpl t = (TableImpl)new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("num", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("num").addColumns("num"))
+        .addIndex(new IndexBuilder("data").addColumns("data"))
+        .addIndex(new IndexBuilder("num_data").addColumns("num", "data"))
+        .toTable(db);
+
+      List<String> expected = new ArrayList<String>();
+      Random rand = new Random(42L);
+      for(int i = 0; i < 3000; ++i) {
+        String data = String.format("%08d", rand.nextInt(1000000)) +
+          EXTRA_TEXT;
+        t.addRow(i, (i % 77), data);
+        expected.add(data);
+      }
+
+      // delete most of the rows, leaving the indexes sparse
+      Iterator<Row> iter = t.iterator();
+      for(int i = 0; iter.hasNext(); ++i) {
+        Row row = iter.next();
+        if((i % 4) != 0) {
+          expected.remove(row.getString("data"));
+          iter.remove();
+        }
+      }
+      Collections.sort(expected);
+
+      assertTrue(t.checkIndexes().isEmpty());
+
+      // corrupt one of the indexes
+      IndexImpl idx = t.getIndex("data");
+      Row row = CursorBuilder.findRow(t, Collections.singletonMap("id", 8));
+      Object[] rowVals = new Object[]{null, null, row.getString("data")};
+      PageChannel pageChannel = ((DatabaseImpl)db).getPageChannel();
+      pageChannel.startWrite();
+      try {
+        idx.getIndexData().deleteRow(rowVals, (RowIdImpl)row.getId());
+        idx.getIndexData().update();
+      } finally {
+        pageChannel.finishWrite();
+      }
+      assertEquals(Arrays.asList(idx), t.checkIndexes());
+
+      int numPages = idx.getIndexData().getOwnedPageCount();
+      t.rebuildIndexes();
+
+      assertTrue(t.checkIndexes().isEmpty());
+      for(IndexImpl curIdx : t.getIndexes()) {
+        curIdx.getIndexData().validate();
+        assertEquals(750, curIdx.getIndexData().getEntryCount());
+      }
+      checkIndex(idx, expected, 0);
+      assertTrue(idx.getIndexData().getOwnedPageCount() < numPages);
+
+      // the rebuilt indexes are still updatable
+      t.addRow(3000, 1, "new data");
+      assertTrue(t.checkIndexes().isEmpty());
+
+      db.close();
+    }
+  }
+
+  private static void checkIndex(IndexImpl idx, List<String> expected,
+                                 int numNulls)
+    throws Exception
+  {
+    List<String> found = new ArrayList<String>();
+    for(Row row : CursorBuilder.createCursor(idx)) {
+      String data = row.getString("data");
+      if(data == null) {
+        --numNulls;
+        continue;
+      }
+      found.add(data);
+    }
+    assertEquals(0, numNulls);
+    assertEquals(expected, found);
+  }
+
+  private static RowIdImpl toRowId(int i) {
+    return new RowIdImpl(1000 + (i / 100), i % 100);
+  }
+
+  private static List<RowId> expectedRowIds(final List<Object[]> rows) {
+    List<Integer> rowIdxs = new ArrayList<Integer>();
+    for(int i = 0; i < rows.size(); ++i) {
+      rowIdxs.add(i);
+    }
+    // text index entries sort by value, then rowId
+    Collections.sort(rowIdxs, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        int cmp = ((String)rows.get(i1)[1]).compareTo(
+            (String)rows.get(i2)[1]);
+        return ((cmp != 0) ? cmp : toRowId(i1).compareTo(toRowId(i2)));
+      }
+    });
+    List<RowId> rowIds = new ArrayList<RowId>();
+    for(Integer i : rowIdxs) {
+      rowIds.add(toRowId(i));
+    }
+    return rowIds;
+  }
+
+  private static List<RowId> indexRowIds(IndexImpl idx) throws Exception
+  {
+    // walk the index entries (the rows do not actually exist)
+    List<RowId> rowIds = new ArrayList<RowId>();
+    IndexData.EntryCursor cursor = idx.getIndexData().cursor();
+    IndexData.Entry endEntry = cursor.getLastEntry();
+    IndexData.Entry entry = null;
+    while(!endEntry.equals(entry = cursor.getNextEntry())) {
+      rowIds.add(entry.getRowId());
+    }
+    return rowIds;
+  }
+}
@@ -22,6 +22,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -142,6 +143,98 @@ public class IndexCodesTest extends TestCase {
          entryToString(startPos));
   }
 
+  public void testTextIndexEncoder() throws Exception
+  {
+    for(GeneralLegacyIndexCodes codes : new GeneralLegacyIndexCodes[]{
+          GeneralLegacyIndexCodes.GEN_LEG_INSTANCE,
+          GeneralIndexCodes.GEN_INSTANCE}) {
+
+      TextIndexEncoder encoder = new TextIndexEncoder(codes);
+      ByteUtil.ByteStream expected = new ByteUtil.ByteStream();
+      ByteUtil.ByteStream actual = new ByteUtil.ByteStream();
+      Random rand = new Random(42L);
+
+      // every char in BMP 0, on its own and mixed in with other chars
+      for(int i = 0; i <= GeneralLegacyIndexCodes.LAST_EXT_CHAR; ++i) {
+        char c = (char)i;
+        if(Character.isSurrogate(c)) {
+          checkSurrogate(codes, encoder, "ab" + c);
+          continue;
+        }
+        checkTextIndexEncoder(codes, encoder, String.valueOf(c),
+                              expected, actual);
+        checkTextIndexEncoder(codes, encoder,
+                              "a" + c + randomChar(rand) + "Bc" + c,
+                              expected, actual);
+      }
+
+      // random strings of mostly "interesting" chars
+      for(int i = 0; i < 20000; ++i) {
+        StringBuilder sb = new StringBuilder();
+        int len = rand.nextInt(30);
+        for(int j = 0; j < len; ++j) {
+          sb.append(((rand.nextInt(4) == 0) ?
+                     (char)('a' + rand.nextInt(26)) : randomChar(rand)));
+        }
+        checkTextIndexEncoder(codes, encoder, sb.toString(), expected, actual);
+      }
+
+      // values longer than the max indexed length
+      StringBuilder sb = new StringBuilder();
+      while(sb.length() < 300) {
+        sb.append("abc\u00e9\u0001 ");
+      }
+      checkTextIndexEncoder(codes, encoder, sb.toString(), expected, actual);
+    }
+  }
+
+  private static char randomChar(Random rand) {
+    // mostly latin, with some of the rest of BMP 0 (minus surrogates)
+    return (char)((rand.nextInt(3) == 0) ? rand.nextInt(0xD800) :
+                  rand.nextInt(0x250));
+  }
+
+  private static void checkTextIndexEncoder(
+      GeneralLegacyIndexCodes codes, TextIndexEncoder encoder, String str,
+      ByteUtil.ByteStream expected, ByteUtil.ByteStream actual)
+    throws Exception
+  {
+    for(boolean isAscending : new boolean[]{true, false}) {
+      // start with a few bytes in the stream (like a multi-column entry)
+      expected.reset();
+      expected.write(0x7F);
+      actual.reset();
+      actual.write(0x7F);
+
+      codes.writeNonNullIndexTextValue(str, expected, isAscending);
+      encoder.writeNonNullIndexTextValue(str, actual, isAscending);
+
+      assertEquals(toUnicodeStr(str) + " " + isAscending,
+                   ByteUtil.toHexString(Arrays.copyOf(
+                       expected.getBytes(), expected.getLength())),
+                   ByteUtil.toHexString(Arrays.copyOf(
+                       actual.getBytes(), actual.getLength())));
+    }
+  }
+
+  private static void checkSurrogate(
+      GeneralLegacyIndexCodes codes, TextIndexEncoder encoder, String str)
+    throws Exception
+  {
+    try {
+      codes.writeNonNullIndexTextValue(str, new ByteUtil.ByteStream(), true);
+      fail("IllegalStateException should have been thrown");
+    } catch(IllegalStateException expectedEx) {
+      // success
+    }
+    try {
+      encoder.writeNonNullIndexTextValue(str, new ByteUtil.ByteStream(), true);
+      fail("IllegalStateException should have been thrown");
+    } catch(IllegalStateException expectedEx) {
+      // success
+    }
+  }
+
   
   //////
   //
@@ -0,0 +1,295 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.healthmarketscience.jackcess.Database.*;
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.Relationship;
+import com.healthmarketscience.jackcess.RelationshipBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import com.healthmarketscience.jackcess.impl.JetFormatTest;
+import com.healthmarketscience.jackcess.impl.TableImpl;
+import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import junit.framework.TestCase;
+import static com.healthmarketscience.jackcess.TestUtil.*;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class CompactTest extends TestCase
+{
+
+  public CompactTest(String name) {
+    super(name);
+  }
+
+  public void testCompact() throws Exception
+  {
+    for (final FileFormat fileFormat : JetFormatTest.SUPPORTED_FILEFORMATS) {
+      Database srcDb = createMem(fileFormat);
+
+      // child table created first, should still be copied after the parent
+      Table child = new TableBuilder("Child")
+        .addColumn(new ColumnBuilder("id", DataType.LONG).setAutoNumber(true))
+        .addColumn(new ColumnBuilder("parentId", DataType.LONG))
+        .addColumn(new ColumnBuilder("data", DataType.MEMO))
+        .setPrimaryKey("id")
+        .toTable(srcDb);
+      Table parent = new TableBuilder("Parent")
+        .addColumn(new ColumnBuilder("id", DataType.LONG).setAutoNumber(true))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT)
+                   .putProperty("Description", "the name"))
+        .setPrimaryKey("id")
+        .addIndex(new IndexBuilder("nameIdx").addColumns(false, "name")
+                  .setUnique())
+        .putProperty("Description", "parent table")
+        .toTable(srcDb);
+      new RelationshipBuilder(parent, child)
+        .addColumns("id", "parentId")
+        .setReferentialIntegrity()
+        .setCascadeDeletes()
+        .toRelationship(srcDb);
+      srcDb.getDatabaseProperties().put("CompactTest", DataType.TEXT,
+                                        "compact test");
+      srcDb.getDatabaseProperties().save();
+
+      String longData = createString(3000);
+      for(int i = 0; i < 300; ++i) {
+        parent.addRow(null, "parent" + i);
+      }
+      for(int i = 0; i < 1500; ++i) {
+        child.addRow(null, (i % 300) + 1, (((i % 10) == 0) ? longData :
+                                          "data" + i));
+      }
+
+      // cascades to the child table
+      List<RowId> toDelete = new ArrayList<RowId>();
+      for(Row row : parent) {
+        if((row.getInt("id") % 2) == 0) {
+          toDelete.add(row.getId());
+        }
+      }
+      parent.deleteRows(toDelete);
+      assertEquals(150, parent.getRowCount());
+      assertEquals(750, child.getRowCount());
+
+      Database destDb = createMem(fileFormat);
+      CompactUtil.compact(srcDb, destDb);
+
+      assertEquals(srcDb.getTableNames(), destDb.getTableNames());
+      for(String tableName : srcDb.getTableNames()) {
+        Table srcTable = srcDb.getTable(tableName);
+        TableImpl destTable = (TableImpl)destDb.getTable(tableName);
+
+        List<Row> expectedRows = new ArrayList<Row>();
+        for(Row row : srcTable) {
+          expectedRows.add(row);
+        }
+        assertTable(expectedRows, destTable);
+        assertEquals(srcTable.getRowCount(), destTable.getRowCount());
+        assertTrue(destTable.checkIndexes().isEmpty());
+
+        assertEquals(getIndexNames(srcTable), getIndexNames(destTable));
+      }
+
+      // the deleted child rows were dropped
+      assertTrue(((TableImpl)destDb.getTable("Child"))
+                 .getApproximateOwnedPageCount() <
+                 ((TableImpl)child).getApproximateOwnedPageCount());
+
+      Table destParent = destDb.getTable("Parent");
+      assertEquals("parent table",
+                   destParent.getProperties().getValue("Description"));
+      assertEquals("the name", destParent.getColumn("name").getProperties()
+                   .getValue("Description"));
+      assertTrue(destParent.getIndex("nameIdx").isUnique());
+      assertFalse(destParent.getIndex("nameIdx").getColumns().get(0)
+                  .isAscending());
+      assertEquals("compact test",
+                   destDb.getDatabaseProperties().getValue("CompactTest"));
+
+      List<Relationship> rels = destDb.getRelationships();
+      assertEquals(1, rels.size());
+      Relationship rel = rels.get(0);
+      assertEquals("Parent", rel.getFromTable().getName());
+      assertEquals("Child", rel.getToTable().getName());
+      assertTrue(rel.hasReferentialIntegrity());
+      assertTrue(rel.cascadeDeletes());
+      assertFalse(rel.cascadeUpdates());
+
+      // the relationship is enforced in the new database
+      destParent.deleteRow(destParent.iterator().next());
+      assertEquals(745, destDb.getTable("Child").getRowCount());
+
+      // the next autonumber continues after the copied rows
+      assertEquals(300, destParent.addRow(null, "another")[0]);
+
+      srcDb.close();
+      destDb.close();
+    }
+  }
+
+  public void testCompactFiles() throws Exception
+  {
+    List<File> srcFiles = new ArrayList<File>();
+    for (final TestDB testDB : TestDB.getSupportedForBasename(
+             Basename.INDEX)) {
+      srcFiles.add(testDB.getFile());
+    }
+
+    File destDir = Files.createTempDirectory("compact").toFile();
+    try {
+      CompactUtil.compactFiles(srcFiles, destDir, 2);
+
+      for(File srcFile : srcFiles) {
+        File destFile = new File(destDir, srcFile.getName());
+        assertTrue(destFile.exists());
+
+        Database srcDb = new DatabaseBuilder(srcFile).setReadOnly(true).open();
+        Database destDb = new DatabaseBuilder(destFile).setReadOnly(true)
+          .open();
+
+        assertEquals(srcDb.getFileFormat(), destDb.getFileFormat());
+        Set<String> tableNames = new TreeSet<String>(
+            String.CASE_INSENSITIVE_ORDER);
+        tableNames.addAll(srcDb.getTableNames());
+        tableNames.remove("MSysCompactError");
+        assertEquals(tableNames, destDb.getTableNames());
+        for(String tableName : tableNames) {
+          List<Row> expectedRows = new ArrayList<Row>();
+          for(Row row : srcDb.getTable(tableName)) {
+            expectedRows.add(row);
+          }
+          assertTable(expectedRows, destDb.getTable(tableName));
+        }
+        assertEquals(srcDb.getRelationships().size(),
+                     destDb.getRelationships().size());
+
+        srcDb.close();
+        destDb.close();
+      }
+
+      // the destination files already exist
+      try {
+        CompactUtil.compactFiles(srcFiles.subList(0, 1), destDir, 1);
+        fail("IOException should have been thrown");
+      } catch(IOException expected) {
+        // success
+      }
+
+      // multiple sources with the same name
+      File otherDir = new File(destDir, "other");
+      try {
+        CompactUtil.compactFiles(
+            Arrays.asList(srcFiles.get(0),
+                          new File(otherDir, srcFiles.get(0).getName())),
+            otherDir, 1);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+      assertFalse(otherDir.exists());
+
+    } finally {
+      for(File f : destDir.listFiles()) {
+        f.delete();
+      }
+      destDir.delete();
+    }
+  }
+
+  public void testCompactFailure() throws Exception
+  {
+    final Database srcDb = createMem(FileFormat.V2010);
+    Table table = new TableBuilder("Test")
+      .addColumn(new ColumnBuilder("id", DataType.LONG).setAutoNumber(true))
+      .addColumn(new ColumnBuilder("data", DataType.TEXT))
+      .toTable(srcDb);
+    table.addRow(null, "data");
+
+    // fails after the tables have been copied
+    Database failingDb = (Database)Proxy.newProxyInstance(
+        Database.class.getClassLoader(), new Class<?>[]{Database.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+          {
+            if(method.getName().equals("getRelationships")) {
+              throw new IOException("failed reading relationships");
+            }
+            try {
+              return method.invoke(srcDb, args);
+            } catch(InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+
+    File destFile = File.createTempFile("compact", ".accdb");
+    assertTrue(destFile.delete());
+    try {
+      CompactUtil.compact(failingDb, destFile);
+      fail("IOException should have been thrown");
+    } catch(IOException expected) {
+      assertEquals("failed reading relationships", expected.getMessage());
+    }
+
+    // the partial database was removed, so the compaction can be retried
+    assertFalse(destFile.exists());
+    Database destDb = CompactUtil.compact(srcDb, destFile);
+    assertTable(createExpectedTable(createExpectedRow("id", 1,
+                                                      "data", "data")),
+                destDb.getTable("Test"));
+    destDb.close();
+    assertTrue(destFile.delete());
+
+    srcDb.close();
+  }
+
+  private static List<String> getIndexNames(Table table) {
+    List<String> names = new ArrayList<String>();
+    for(Index idx : table.getIndexes()) {
+      if(!idx.isForeignKey()) {
+        names.add(idx.getName());
+      }
+    }
+    return names;
+  }
+}
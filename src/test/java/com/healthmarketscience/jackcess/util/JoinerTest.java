@@ -24,10 +24,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.DataType;
 import com.healthmarketscience.jackcess.Database;
+import static com.healthmarketscience.jackcess.Database.*;
 import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.IndexBuilder;
 import com.healthmarketscience.jackcess.Row;
 import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
 import com.healthmarketscience.jackcess.impl.RowImpl;
 import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
 import junit.framework.TestCase;
@@ -81,6 +86,113 @@ public class JoinerTest extends TestCase {
     }    
   }
 
+  public void testTableJoiner() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table cust = new TableBuilder("Cust")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .addIndex(new IndexBuilder(IndexBuilder.PRIMARY_KEY_NAME)
+                  .addColumns("id").setPrimaryKey())
+        .addIndex(new IndexBuilder("name").addColumns("name"))
+        .toTable(db);
+      Table orders = new TableBuilder("Orders")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("custId", DataType.LONG))
+        .addColumn(new ColumnBuilder("custName", DataType.TEXT))
+        .addIndex(new IndexBuilder("custId").addColumns("custId"))
+        .addIndex(new IndexBuilder("custName").addColumns("custName"))
+        .toTable(db);
+
+      for(int i = 0; i < 20; ++i) {
+        cust.addRow(i, ((i == 7) ? null : "Name" + i));
+      }
+      for(int i = 0; i < 60; ++i) {
+        Integer custId = (((i % 13) == 0) ? null : ((i * 7) % 31));
+        orders.addRow(i, custId, ((custId != null) ? "NAME" + custId : null));
+      }
+
+      for(TableJoiner.Type type : TableJoiner.Type.values()) {
+        TableJoiner joiner = TableJoiner.create(
+            cust, Arrays.asList("id"), orders, Arrays.asList("custId"))
+          .setType(type);
+        Set<String> expected = expectedJoin(cust, "id", orders, "custId", type);
+        assertEquals(expected, toJoinResults(joiner.hashJoin()));
+        assertEquals(expected, toJoinResults(joiner.mergeJoin()));
+
+        // text join columns are case-insensitive
+        joiner = TableJoiner.create(
+            cust, Arrays.asList("name"), orders, Arrays.asList("custName"))
+          .setType(type);
+        expected = expectedJoin(cust, "name", orders, "custName", type);
+        assertEquals(expected, toJoinResults(joiner.hashJoin()));
+        assertEquals(expected, toJoinResults(joiner.mergeJoin()));
+
+        // hash join building on the left table
+        joiner = TableJoiner.create(
+            orders, Arrays.asList("custId"), cust, Arrays.asList("id"))
+          .setType(type)
+          .setLeftColumnNames(Arrays.asList("id"));
+        expected = expectedJoin(orders, "custId", cust, "id", type);
+        assertEquals(expected, toJoinResults(joiner.hashJoin()));
+        assertEquals(expected, toJoinResults(joiner.mergeJoin()));
+      }
+
+      try {
+        TableJoiner.create(cust, Arrays.asList("id"), orders,
+                           Arrays.asList("custId"))
+          .mergeJoin(cust.getPrimaryKeyIndex(), orders.getIndex("custName"));
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  private static Set<String> expectedJoin(
+      Table left, String leftCol, Table right, String rightCol,
+      TableJoiner.Type type)
+  {
+    Set<String> results = new HashSet<String>();
+    for(Row l : left) {
+      Object lv = l.get(leftCol);
+      boolean matched = false;
+      for(Row r : right) {
+        Object rv = r.get(rightCol);
+        if((lv == null) || (rv == null) ||
+           !lv.toString().equalsIgnoreCase(rv.toString())) {
+          continue;
+        }
+        matched = true;
+        if((type == TableJoiner.Type.INNER) ||
+           (type == TableJoiner.Type.LEFT_OUTER)) {
+          results.add(l.get("id") + ":" + r.get("id"));
+        }
+      }
+      if((!matched && ((type == TableJoiner.Type.LEFT_OUTER) ||
+                       (type == TableJoiner.Type.ANTI))) ||
+         (matched && (type == TableJoiner.Type.SEMI))) {
+        results.add(l.get("id") + ":");
+      }
+    }
+    return results;
+  }
+
+  private static Set<String> toJoinResults(Iterable<TableJoiner.RowPair> pairs)
+  {
+    Set<String> results = new HashSet<String>();
+    for(TableJoiner.RowPair pair : pairs) {
+      String result = pair.getLeft().get("id") + ":" +
+        ((pair.getRight() != null) ? pair.getRight().get("id") : "");
+      assertTrue(results.add(result));
+    }
+    return results;
+  }
+
   private static void doTestJoiner(
       Joiner join, Map<Integer,List<Row>> expectedData)
     throws Exception
@@ -0,0 +1,291 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import static com.healthmarketscience.jackcess.Database.*;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import junit.framework.TestCase;
+import static com.healthmarketscience.jackcess.TestUtil.*;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class MemoryIndexTest extends TestCase {
+
+  public MemoryIndexTest(String name) {
+    super(name);
+  }
+
+  public void testMemoryIndex() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("name", DataType.TEXT))
+        .addColumn(new ColumnBuilder("num", DataType.LONG))
+        .addColumn(new ColumnBuilder("val", DataType.DOUBLE))
+        .toTable(db);
+
+      for(int i = 0; i < 500; ++i) {
+        t.addRow(i, (((i % 25) != 0) ? "Name" + (i % 20) : null),
+                 ((i * 37) % 101), (((i % 50) * 0.5) - 10.0));
+      }
+
+      MemoryIndex nameIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                               "name");
+      assertFalse(nameIdx.isLoaded());
+      assertEquals(expectedIds(t, "name", "NAME3", null),
+                   toIds(nameIdx.findRows("name3")));
+      assertTrue(nameIdx.isLoaded());
+      assertTrue(nameIdx.getMemoryUsage() > 0L);
+      assertTrue(nameIdx.findRowIds("Name20").isEmpty());
+      assertTrue(nameIdx.findRowIds((Object)null).isEmpty());
+
+      MemoryIndex nameNumIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                                  "name", "num");
+      RowId rowId = nameNumIdx.findFirstRowId("Name7", 57);
+      assertNotNull(rowId);
+      Cursor c = CursorBuilder.createCursor(t);
+      assertTrue(nameNumIdx.findFirstRow(c, "Name7", 57));
+      assertEquals(rowId, c.getCurrentRow().getId());
+      assertEquals(7, c.getCurrentRow().get("id"));
+
+      MemoryIndex numIdx = MemoryIndex.create(t, MemoryIndex.Type.SORTED,
+                                              "num");
+      List<Integer> rangeIds = toIds(numIdx.findRowsInRange(
+                                         10, true, 20, false));
+      assertEquals(expectedIds(t, "num", 10, 20), rangeIds);
+      assertFalse(rangeIds.isEmpty());
+      assertEquals(expectedIds(t, "num", 42, 43), toIds(numIdx.findRows(42)));
+      checkSortedOrder(t, numIdx.findRowIdsInRange(null, false, null, false),
+                       "num", 500);
+
+      MemoryIndex valIdx = MemoryIndex.create(t, MemoryIndex.Type.SORTED,
+                                              "val");
+      List<RowId> valRowIds = valIdx.findRowIdsInRange(-5.0, false, 5, true);
+      checkSortedOrder(t, valRowIds, "val", 200);
+
+      // writes invalidate the indexes
+      t.addRow(500, "name3", 15, -5.0);
+      assertFalse(nameIdx.isLoaded());
+      assertEquals(expectedIds(t, "name", "NAME3", null),
+                   toIds(nameIdx.findRows("Name3")));
+      assertTrue(toIds(nameIdx.findRows("Name3")).contains(500));
+      assertEquals(rangeIds.size() + 1,
+                   numIdx.findRowIdsInRange(10, true, 20, false).size());
+      assertEquals(200, valIdx.findRowIdsInRange(-5.0, false, 5, true).size());
+      assertTrue(c.findRow(rowId));
+      c.deleteCurrentRow();
+      assertNull(nameNumIdx.findFirstRowId("Name7", 57));
+
+      // too big for memory, falls back to scanning
+      MemoryIndex smallIdx = MemoryIndex.create(t, MemoryIndex.Type.SORTED,
+                                                "num").setMaxMemory(1000L);
+      assertEquals(numIdx.findRowIdsInRange(10, true, 20, false),
+                   smallIdx.findRowIdsInRange(10, true, 20, false));
+      assertFalse(smallIdx.isLoaded());
+      MemoryIndex smallNameIdx = MemoryIndex.create(
+          t, MemoryIndex.Type.HASH, "name").setMaxMemory(1000L);
+      assertEquals(nameIdx.findRowIds("name3"),
+                   smallNameIdx.findRowIds("name3"));
+      assertFalse(smallNameIdx.isLoaded());
+
+      // non-integral bounds for an integer column
+      assertEquals(expectedIds(t, "num", 2, 4),
+                   toIds(numIdx.findRowsInRange(1.5, true, 3.5, false)));
+      assertEquals(expectedIds(t, "num", 2, 4),
+                   toIds(numIdx.findRowsInRange(1.5, false, 3.5, true)));
+      assertEquals(expectedIds(t, "num", 10, 21),
+                   toIds(numIdx.findRowsInRange(new BigDecimal("9.5"), false,
+                                                20.0, true)));
+      assertTrue(numIdx.findRowIds(42.5).isEmpty());
+      assertEquals(numIdx.findRowIds(42), numIdx.findRowIds(42.0));
+
+      // all the date/time types are converted using the column's timezone
+      ZoneId zoneId = ZoneId.of("America/New_York");
+      db.setTimeZone(TimeZone.getTimeZone(zoneId));
+      Table dt = new TableBuilder("Dates")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("date", DataType.SHORT_DATE_TIME))
+        .toTable(db);
+      LocalDateTime baseLdt = LocalDateTime.of(2019, 6, 1, 12, 0);
+      for(int i = 0; i < 10; ++i) {
+        dt.addRow(i, baseLdt.plusHours(i));
+      }
+      MemoryIndex dateIdx = MemoryIndex.create(dt, MemoryIndex.Type.SORTED,
+                                               "date");
+      LocalDateTime ldt = baseLdt.plusHours(3);
+      Date date = Date.from(ldt.atZone(zoneId).toInstant());
+      assertEquals(Arrays.asList(3), toIds(dateIdx.findRows(ldt)));
+      assertEquals(Arrays.asList(3), toIds(dateIdx.findRows(date)));
+      assertEquals(Arrays.asList(3, 4, 5),
+                   toIds(dateIdx.findRowsInRange(date, true, ldt.plusHours(2),
+                                                 true)));
+
+      try {
+        MemoryIndex.create(t, MemoryIndex.Type.SORTED, "name");
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected) {
+        // success
+      }
+      try {
+        nameIdx.findRowIdsInRange("a", true, "b", true);
+        fail("UnsupportedOperationException should have been thrown");
+      } catch(UnsupportedOperationException expected) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  public void testHashKeyConversion() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+      ZoneId zoneId = ZoneId.of("America/New_York");
+      db.setTimeZone(TimeZone.getTimeZone(zoneId));
+
+      Table t = new TableBuilder("Test")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("flt", DataType.FLOAT))
+        .addColumn(new ColumnBuilder("dbl", DataType.DOUBLE))
+        .addColumn(new ColumnBuilder("num", DataType.INT))
+        .addColumn(new ColumnBuilder("date", DataType.SHORT_DATE_TIME))
+        .toTable(db);
+
+      LocalDateTime baseLdt = LocalDateTime.of(2019, 6, 1, 12, 0);
+      for(int i = 0; i < 10; ++i) {
+        t.addRow(i, Float.valueOf(i + ".1"), Double.valueOf(i + ".1"), i,
+                 baseLdt.plusHours(i));
+      }
+
+      List<Integer> expected = Arrays.asList(3);
+
+      MemoryIndex fltIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                              "flt");
+      assertEquals(expected, toIds(fltIdx.findRows(3.1f)));
+      assertEquals(expected, toIds(fltIdx.findRows(3.1d)));
+
+      MemoryIndex dblIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                              "dbl");
+      assertEquals(expected, toIds(dblIdx.findRows(3.1d)));
+      assertEquals(expected, toIds(dblIdx.findRows(3.1f)));
+      assertEquals(expected,
+                   toIds(dblIdx.findRows(new BigDecimal("3.10"))));
+
+      MemoryIndex numIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                              "num");
+      assertEquals(expected, toIds(numIdx.findRows(3)));
+      assertEquals(expected, toIds(numIdx.findRows(3L)));
+      assertEquals(expected, toIds(numIdx.findRows(3.0d)));
+      assertEquals(expected, toIds(numIdx.findRows(new BigDecimal("3.00"))));
+      assertTrue(numIdx.findRowIds(3.5d).isEmpty());
+
+      LocalDateTime ldt = baseLdt.plusHours(3);
+      Date date = Date.from(ldt.atZone(zoneId).toInstant());
+      MemoryIndex dateIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                               "date");
+      assertEquals(expected, toIds(dateIdx.findRows(ldt)));
+      assertEquals(expected, toIds(dateIdx.findRows(date)));
+
+      MemoryIndex numDateIdx = MemoryIndex.create(t, MemoryIndex.Type.HASH,
+                                                  "num", "date");
+      assertEquals(expected, toIds(numDateIdx.findRows(3.0d, date)));
+      assertTrue(numDateIdx.findRowIds(3, ldt.plusHours(1)).isEmpty());
+
+      // the table scan fallback uses the same conversions
+      MemoryIndex smallIdx = MemoryIndex.create(
+          t, MemoryIndex.Type.HASH, "date").setMaxMemory(100L);
+      assertEquals(expected, toIds(smallIdx.findRows(date)));
+      assertFalse(smallIdx.isLoaded());
+
+      db.close();
+    }
+  }
+
+  private static List<Integer> expectedIds(Table t, String colName,
+                                           Object lower, Object upper)
+  {
+    List<Integer> ids = new ArrayList<Integer>();
+    for(Row row : t) {
+      Object value = row.get(colName);
+      if(value == null) {
+        continue;
+      }
+      if(value instanceof String) {
+        if(((String)value).toUpperCase().equals(lower)) {
+          ids.add(row.getInt("id"));
+        }
+      } else if((((Integer)value) >= (Integer)lower) &&
+                (((Integer)value) < (Integer)upper)) {
+        ids.add(row.getInt("id"));
+      }
+    }
+    return ids;
+  }
+
+  private static List<Integer> toIds(Iterable<Row> rows)
+  {
+    // rows are returned in table order
+    List<Integer> ids = new ArrayList<Integer>();
+    for(Row row : rows) {
+      ids.add(row.getInt("id"));
+    }
+    return ids;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void checkSortedOrder(Table t, List<RowId> rowIds,
+                                       String colName, int expectedSize)
+    throws Exception
+  {
+    assertEquals(expectedSize, rowIds.size());
+    Cursor c = CursorBuilder.createCursor(t);
+    Comparable<Object> prevValue = null;
+    for(RowId rowId : rowIds) {
+      assertTrue(c.findRow(rowId));
+      Comparable<Object> value =
+        (Comparable<Object>)c.getCurrentRow().get(colName);
+      if(prevValue != null) {
+        assertTrue(prevValue.compareTo(value) <= 0);
+      }
+      prevValue = value;
+    }
+  }
+}
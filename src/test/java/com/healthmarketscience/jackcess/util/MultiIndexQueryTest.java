@@ -0,0 +1,196 @@
+/*
+Copyright (c) 2019 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.jackcess.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import static com.healthmarketscience.jackcess.Database.*;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.RowId;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+import com.healthmarketscience.jackcess.impl.RowIdImpl;
+import com.healthmarketscience.jackcess.impl.RowIdSet;
+import static com.healthmarketscience.jackcess.impl.JetFormatTest.*;
+import junit.framework.TestCase;
+import static com.healthmarketscience.jackcess.TestUtil.*;
+
+/**
+ *
+ * @author James Ahlborn
+ */
+public class MultiIndexQueryTest extends TestCase
+{
+
+  public MultiIndexQueryTest(String name) {
+    super(name);
+  }
+
+  public void testRowIdSet() throws Exception
+  {
+    RowIdSet s1 = new RowIdSet(2);
+    s1.add(new RowIdImpl(7, 3));
+    s1.add(new RowIdImpl(2, 10));
+    s1.add(new RowIdImpl(7, 1));
+    s1.add(new RowIdImpl(2, 10));
+    s1.add(new RowIdImpl(300, 255));
+
+    assertEquals(4, s1.size());
+    assertEquals(Arrays.asList(new RowIdImpl(2, 10), new RowIdImpl(7, 1),
+                               new RowIdImpl(7, 3), new RowIdImpl(300, 255)),
+                 toList(s1));
+    assertTrue(s1.contains(new RowIdImpl(7, 1)));
+    assertFalse(s1.contains(new RowIdImpl(1, 7)));
+    assertFalse(s1.contains(RowIdImpl.FIRST_ROW_ID));
+
+    RowIdSet s2 = new RowIdSet();
+    s2.add(new RowIdImpl(7, 3));
+    s2.add(new RowIdImpl(1, 1));
+    s2.add(new RowIdImpl(300, 255));
+
+    RowIdSet union = new RowIdSet();
+    union.addAll(s1);
+    union.addAll(s2);
+    assertEquals(Arrays.asList(new RowIdImpl(1, 1), new RowIdImpl(2, 10),
+                               new RowIdImpl(7, 1), new RowIdImpl(7, 3),
+                               new RowIdImpl(300, 255)),
+                 toList(union));
+
+    s1.retainAll(s2);
+    assertEquals(Arrays.asList(new RowIdImpl(7, 3), new RowIdImpl(300, 255)),
+                 toList(s1));
+
+    s1.retainAll(new RowIdSet());
+    assertTrue(s1.isEmpty());
+
+    try {
+      s1.add(RowIdImpl.LAST_ROW_ID);
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException expected) {
+      // success
+    }
+  }
+
+  public void testMultiIndexQuery() throws Exception
+  {
+    for (final FileFormat fileFormat : SUPPORTED_FILEFORMATS) {
+      Database db = create(fileFormat);
+
+      Table t = new TableBuilder("TestTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addColumn(new ColumnBuilder("cust", DataType.LONG))
+        .addColumn(new ColumnBuilder("amount", DataType.DOUBLE))
+        .addIndex(new IndexBuilder("cust").addColumns("cust"))
+        .addIndex(new IndexBuilder("amount").addColumns("amount"))
+        .toTable(db);
+
+      for(int i = 0; i < 300; ++i) {
+        t.addRow(i, (i % 7), (double)((i * 13) % 100));
+      }
+
+      SortedSet<Integer> expected = new TreeSet<Integer>();
+      for(int i = 0; i < 300; ++i) {
+        int amount = (i * 13) % 100;
+        if(((i % 7) == 3) && (amount >= 20) && (amount < 50)) {
+          expected.add(i);
+        }
+      }
+
+      MultiIndexQuery query = MultiIndexQuery.intersection(t)
+        .addEntry(t.getIndex("cust"), 3)
+        .addRange(t.getIndex("amount"), new Object[]{20d}, true,
+                  new Object[]{50d}, false);
+      assertTrue(query.isIntersection());
+      assertEquals(expected, findIds(query));
+
+      expected.clear();
+      for(int i = 0; i < 300; ++i) {
+        int amount = (i * 13) % 100;
+        if(((i % 7) == 3) || (amount >= 90)) {
+          expected.add(i);
+        }
+      }
+
+      query = MultiIndexQuery.union(t)
+        .addEntry(t.getIndex("cust"), 3)
+        .addRange(t.getIndex("amount"), new Object[]{90d}, true, null, true);
+      assertFalse(query.isIntersection());
+      assertEquals(expected, findIds(query));
+      List<RowId> rowIds = query.findRowIds();
+      assertEquals(expected.size(), rowIds.size());
+      for(int i = 1; i < rowIds.size(); ++i) {
+        assertTrue(rowIds.get(i - 1).compareTo(rowIds.get(i)) < 0);
+      }
+
+      query = MultiIndexQuery.intersection(t)
+        .addEntry(t.getIndex("cust"), 42)
+        .addEntry(t.getIndex("amount"), 13d);
+      assertTrue(query.findRowIds().isEmpty());
+
+      Table other = new TableBuilder("OtherTable")
+        .addColumn(new ColumnBuilder("id", DataType.LONG))
+        .addIndex(new IndexBuilder("id").addColumns("id"))
+        .toTable(db);
+      try {
+        MultiIndexQuery.union(t).addEntry(other.getIndex("id"), 1);
+        fail("IllegalArgumentException should have been thrown");
+      } catch(IllegalArgumentException expected2) {
+        // success
+      }
+
+      try {
+        MultiIndexQuery.union(t).findRowIds();
+        fail("IllegalStateException should have been thrown");
+      } catch(IllegalStateException expected2) {
+        // success
+      }
+
+      db.close();
+    }
+  }
+
+  private static SortedSet<Integer> findIds(MultiIndexQuery query)
+  {
+    SortedSet<Integer> ids = new TreeSet<Integer>();
+    RowId prevRowId = null;
+    for(Row row : query.findRows(Arrays.asList("id"))) {
+      if(prevRowId != null) {
+        assertTrue(prevRowId.compareTo(row.getId()) < 0);
+      }
+      prevRowId = row.getId();
+      assertTrue(ids.add(row.getInt("id")));
+    }
+    return ids;
+  }
+
+  private static List<RowIdImpl> toList(RowIdSet rowIds)
+  {
+    List<RowIdImpl> list = new ArrayList<RowIdImpl>();
+    for(RowIdImpl rowId : rowIds) {
+      list.add(rowId);
+    }
+    return list;
+  }
+}